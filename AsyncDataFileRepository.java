@@ -0,0 +1,496 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       AsyncDataFileRepository
+/// \brief       Non-blocking access to the data file repository. The
+///              repository calls run on a small bounded I/O executor and
+///              return a Future, and can also report to a callback.
+///
+///              Identical read only requests made while one is still
+///              running, such as several hasFilesToSend checks during one
+///              discovery burst, share a single execution and its result.
+///              The selection and the requests changing the repository
+///              always run on their own. Each caller gets its own future.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class AsyncDataFileRepository
+{
+    private static final String LOG_TAG = AsyncDataFileRepository.class.getSimpleName(); ///< Tag for logging.
+    private static final int IO_THREADS = 2; ///< Number of threads doing the repository I/O.
+    private static final int MAX_QUEUED_REQUESTS = 64; ///< Requests waiting beyond this are rejected.
+    private static final long IDLE_THREAD_SECONDS = 30; ///< Idle threads stop after this time.
+
+    private static final ThreadPoolExecutor executor = createExecutor(); ///< The executor running the repository calls.
+    private static final Map<String, SharedRequest<?>> runningTasks = new HashMap<String, SharedRequest<?>>(); ///< The read only requests queued or running, by request.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \interface   Callback
+    /// \brief       Receives the outcome of an asynchronous request.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public interface Callback<T>
+    {
+        //////////////////////////////////////////////////////////////////////
+        /// \fn         onCompleted(T result)
+        /// \brief      Called on the I/O thread when the request succeeded.
+        /// \param[in]  result - the result of the request.
+        //////////////////////////////////////////////////////////////////////
+        void onCompleted(T result);
+
+        //////////////////////////////////////////////////////////////////////
+        /// \fn         onFailed(Exception exception)
+        /// \brief      Called on the I/O thread when the request failed.
+        /// \param[in]  exception - the cause of the failure.
+        //////////////////////////////////////////////////////////////////////
+        void onFailed(Exception exception);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         hasFilesToSend(Callback<Boolean> callback)
+    /// \brief      Checks if there are complete files to send.
+    /// \param[in]  callback - gets the result, or null.
+    /// \return     Future<Boolean> - TRUE if there is at least one file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Future<Boolean> hasFilesToSend(Callback<Boolean> callback)
+    {
+        return submitCoalesced("hasFilesToSend", new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return DataFileRepository.hasFilesToSend();
+            }
+        }, callback);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         selectNextFileForTransfer(long maxFileSize,
+    ///             Callback<DataFile> callback)
+    /// \brief      Selects the file to be transferred.
+    /// \param[in]  maxFileSize - the maximum file size in bytes.
+    /// \param[in]  callback - gets the result, or null.
+    /// \return     Future<DataFile> - the selected file, or null if none
+    ///             meets the criteria.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Future<DataFile> selectNextFileForTransfer(final long maxFileSize, Callback<DataFile> callback)
+    {
+        return submit(new Callable<DataFile>()
+        {
+            @Override
+            public DataFile call() throws Exception
+            {
+                return DataFileRepository.selectNextFileForTransfer(maxFileSize);
+            }
+        }, callback);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         selectNextFileForCollector(long maxFileSize,
+    ///             Callback<DataFile> callback)
+    /// \brief      Selects the file to be delivered to a collector, which
+    ///             also gets the files whose copy budget is used up.
+    /// \param[in]  maxFileSize - the maximum file size in bytes.
+    /// \param[in]  callback - gets the result, or null.
+    /// \return     Future<DataFile> - the selected file, or null if none
+    ///             meets the criteria.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Future<DataFile> selectNextFileForCollector(final long maxFileSize, Callback<DataFile> callback)
+    {
+        return submit(new Callable<DataFile>()
+        {
+            @Override
+            public DataFile call() throws Exception
+            {
+                return DataFileRepository.selectNextFileForCollector(maxFileSize);
+            }
+        }, callback);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         retrieve(String fileId, Callback<DataFile> callback)
+    /// \brief      Gets a data file by its ID.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \param[in]  callback - gets the result, or null.
+    /// \return     Future<DataFile> - the data file, or null if it does
+    ///             not exist.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Future<DataFile> retrieve(final String fileId, Callback<DataFile> callback)
+    {
+        return submitCoalesced("retrieve:" + fileId, new Callable<DataFile>()
+        {
+            @Override
+            public DataFile call()
+            {
+                return DataFile.retrieve(fileId);
+            }
+        }, callback);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         hasEnoughSpaceAvailable(long targetSize,
+    ///             Callback<Boolean> callback)
+    /// \brief      Checks if there is a certain amount of space available.
+    /// \param[in]  targetSize - the space needed in bytes.
+    /// \param[in]  callback - gets the result, or null.
+    /// \return     Future<Boolean> - TRUE if there is enough space.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Future<Boolean> hasEnoughSpaceAvailable(final long targetSize, Callback<Boolean> callback)
+    {
+        return submitCoalesced("hasEnoughSpaceAvailable:" + targetSize, new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return DataFileRepository.hasEnoughSpaceAvailable(targetSize);
+            }
+        }, callback);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         deleteIncompleteFilesForSpace(String fileId, long fileSize,
+    ///             Callback<Boolean> callback)
+    /// \brief      Deletes incomplete files to make space for a new file.
+    /// \param[in]  fileId - the ID of the file to receive.
+    /// \param[in]  fileSize - the size of the file to receive in bytes.
+    /// \param[in]  callback - gets the result, or null.
+    /// \return     Future<Boolean> - TRUE if there is enough space now.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Future<Boolean> deleteIncompleteFilesForSpace(final String fileId, final long fileSize, Callback<Boolean> callback)
+    {
+        return submit(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call() throws Exception
+            {
+                return DataFileRepository.deleteIncompleteFilesForSpace(fileId, fileSize);
+            }
+        }, callback);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         submit(Callable<T> request, Callback<T> callback)
+    /// \brief      Runs a request on the I/O executor on its own. Used for
+    ///             the requests changing the repository, and for the
+    ///             selection, where each caller has to get its own file.
+    /// \param[in]  request - the repository call.
+    /// \param[in]  callback - gets the result, or null.
+    /// \return     Future<T> - the result of the request.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static <T> Future<T> submit(Callable<T> request, Callback<T> callback)
+    {
+        SharedRequest<T> sharedRequest = new SharedRequest<T>(null, request);
+        CallerFuture<T> future = new CallerFuture<T>(sharedRequest, callback);
+        sharedRequest.addCaller(future);
+        execute(sharedRequest);
+        return future;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         submitCoalesced(String requestKey, Callable<T> request,
+    ///             Callback<T> callback)
+    /// \brief      Runs a read only request on the I/O executor, or joins
+    ///             the same request if it is already queued or running.
+    ///             Each caller gets its own future, so one caller
+    ///             cancelling does not cancel the others.
+    /// \param[in]  requestKey - identifies the request and its arguments.
+    /// \param[in]  request - the repository call.
+    /// \param[in]  callback - gets the result, or null.
+    /// \return     Future<T> - the result of the request.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    @SuppressWarnings("unchecked")
+    private static <T> Future<T> submitCoalesced(String requestKey, Callable<T> request, Callback<T> callback)
+    {
+        SharedRequest<T> sharedRequest = null;
+        CallerFuture<T> future = null;
+        boolean isNewRequest = false;
+        synchronized(runningTasks)
+        {
+            sharedRequest = (SharedRequest<T>) runningTasks.get(requestKey);
+            future = sharedRequest != null ? new CallerFuture<T>(sharedRequest, callback) : null;
+            boolean hasJoined = future != null && sharedRequest.addCaller(future);
+            if(hasJoined)
+            {
+                Log.d(LOG_TAG, "Joining request already running: " + requestKey);
+            }
+            else
+            {
+                sharedRequest = new SharedRequest<T>(requestKey, request);
+                future = new CallerFuture<T>(sharedRequest, callback);
+                sharedRequest.addCaller(future);
+                runningTasks.put(requestKey, sharedRequest);
+                isNewRequest = true;
+            }
+        }
+
+        if(isNewRequest)
+        {
+            execute(sharedRequest);
+        }
+        return future;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         execute(SharedRequest<?> sharedRequest)
+    /// \brief      Queues a request on the I/O executor. If the queue is
+    ///             full, the request fails for all its callers before the
+    ///             rejection is thrown.
+    /// \param[in]  sharedRequest - the request to run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void execute(SharedRequest<?> sharedRequest)
+    {
+        try
+        {
+            executor.execute(sharedRequest);
+        }
+        catch(RuntimeException exception)
+        {
+            sharedRequest.reject(exception);
+            throw exception;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createExecutor()
+    /// \brief      Creates the bounded executor running the repository calls.
+    /// \return     ThreadPoolExecutor - the executor.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static ThreadPoolExecutor createExecutor()
+    {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REQUESTS), new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, LOG_TAG);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       SharedRequest
+    /// \brief       A repository call shared by all the identical requests
+    ///              made while it is queued or running. It is cancelled
+    ///              once all its callers cancelled.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class SharedRequest<T> extends FutureTask<T>
+    {
+        private final String requestKey; ///< Identifies the request and its arguments, null if it is not shared.
+        private final List<CallerFuture<T>> callers = new ArrayList<CallerFuture<T>>(); ///< The callers waiting for the result.
+        private boolean closed = false; ///< TRUE once no caller can join anymore.
+
+        private SharedRequest(String requestKey, Callable<T> request)
+        {
+            super(request);
+            this.requestKey = requestKey;
+        }
+
+        private boolean addCaller(CallerFuture<T> caller)
+        {
+            synchronized(callers)
+            {
+                if(closed)
+                {
+                    return false;
+                }
+                callers.add(caller);
+                return true;
+            }
+        }
+
+        private void removeCaller(CallerFuture<T> caller, boolean mayInterruptIfRunning)
+        {
+            boolean isAbandoned = false;
+            synchronized(callers)
+            {
+                callers.remove(caller);
+                isAbandoned = callers.isEmpty() && !closed;
+                if(isAbandoned)
+                {
+                    closed = true;
+                }
+            }
+
+            if(isAbandoned)
+            {
+                cancel(mayInterruptIfRunning);
+                executor.remove(this);
+            }
+        }
+
+        private void reject(RuntimeException exception)
+        {
+            setException(exception);
+        }
+
+        @Override
+        protected void done()
+        {
+            // New requests start a new execution from now on, as the result may be outdated.
+            if(requestKey != null)
+            {
+                synchronized(runningTasks)
+                {
+                    if(runningTasks.get(requestKey) == this)
+                    {
+                        runningTasks.remove(requestKey);
+                    }
+                }
+            }
+
+            List<CallerFuture<T>> callersToComplete = null;
+            synchronized(callers)
+            {
+                closed = true;
+                callersToComplete = new ArrayList<CallerFuture<T>>(callers);
+                callers.clear();
+            }
+
+            T result = null;
+            Throwable failure = null;
+            try
+            {
+                result = get();
+            }
+            catch(ExecutionException executionException)
+            {
+                failure = executionException.getCause();
+            }
+            catch(CancellationException cancellationException)
+            {
+                failure = cancellationException;
+            }
+            catch(InterruptedException interruptedException)
+            {
+                // Cannot happen, the request is done.
+                failure = interruptedException;
+            }
+            for(CallerFuture<T> caller : callersToComplete)
+            {
+                caller.complete(result, failure);
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       CallerFuture
+    /// \brief       The future given to one caller of a request. Cancelling
+    ///              it only cancels the request if no other caller waits
+    ///              for it.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class CallerFuture<T> extends FutureTask<T>
+    {
+        private final SharedRequest<T> sharedRequest; ///< The request giving the result.
+        private final Callback<T> callback; ///< Gets the result, or null.
+
+        private CallerFuture(SharedRequest<T> sharedRequest, Callback<T> callback)
+        {
+            super(new Callable<T>()
+            {
+                @Override
+                public T call()
+                {
+                    throw new IllegalStateException("A caller future is completed by its request.");
+                }
+            });
+            this.sharedRequest = sharedRequest;
+            this.callback = callback;
+        }
+
+        private void complete(T result, Throwable failure)
+        {
+            if(failure != null)
+            {
+                setException(failure);
+            }
+            else
+            {
+                set(result);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean isCancelled = super.cancel(false);
+            if(isCancelled)
+            {
+                sharedRequest.removeCaller(this, mayInterruptIfRunning);
+            }
+            return isCancelled;
+        }
+
+        @Override
+        protected void done()
+        {
+            if(callback == null)
+            {
+                return;
+            }
+
+            T result = null;
+            try
+            {
+                result = get();
+            }
+            catch(ExecutionException executionException)
+            {
+                Throwable cause = executionException.getCause();
+                callback.onFailed(cause instanceof Exception ? (Exception) cause : executionException);
+                return;
+            }
+            catch(Exception exception)
+            {
+                callback.onFailed(exception);
+                return;
+            }
+            callback.onCompleted(result);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       BufferPool
+/// \brief       Shared, size bounded pool of I/O buffers, so that the
+///              transfer, hashing and packaging paths do not allocate a
+///              new buffer for every file or chunk.
+///
+///              Buffers are handed out as leases, in power of two sizes
+///              from MIN_BUFFER_SIZE to MAX_BUFFER_SIZE, and go back to the
+///              pool when the lease is released. Direct buffers are used
+///              with channels. Heap buffers are used with streams and byte
+///              loops, which need an array anyway.
+///
+///              With leak tracking on, a lease that is garbage collected
+///              without being released is reported as a leak, with the
+///              place it was leased at. Its buffer is dropped, not taken
+///              back, since whatever leaked the lease may still be using
+///              it. Leak tracking is meant for debugging. With it off, a
+///              lease allocates nothing but itself, and a leaked buffer
+///              is only lost to the pool.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class BufferPool
+{
+    private static final String LOG_TAG = BufferPool.class.getSimpleName(); ///< Tag for logging.
+    private static final int MIN_BUFFER_SIZE = 4*1024; ///< Size of the smallest pooled buffer.
+    private static final int MAX_BUFFER_SIZE = 64*1024; ///< Size of the largest pooled buffer. Larger leases are not pooled.
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1; ///< Number of pooled buffer sizes.
+    private static final long DEFAULT_MAX_POOLED_BYTES = 1024L*1024L; ///< Default bound on the memory kept by the pool.
+    private static final int COPY_BUFFER_SIZE = 16*1024; ///< Size of the buffer used by the copy helpers.
+
+    private static final ArrayDeque<ByteBuffer>[] directBuffers = createSizeClasses(); ///< The free direct buffers of each size.
+    private static final ArrayDeque<ByteBuffer>[] heapBuffers = createSizeClasses(); ///< The free heap buffers of each size.
+    private static final ReferenceQueue<Lease> releasedLeases = new ReferenceQueue<Lease>(); ///< Gets the leases collected by the garbage collector.
+    private static final Set<LeaseReference> outstandingLeases = new HashSet<LeaseReference>(); ///< The leases not released yet.
+    private static long maxPooledBytes = DEFAULT_MAX_POOLED_BYTES; ///< Bound on the memory kept by the pool.
+    private static long pooledBytes = 0; ///< Memory kept by the free buffers of the pool.
+    private static boolean leakTracking = false; ///< TRUE to track the leases and report the ones never released.
+    private static long leaseCount = 0; ///< Number of leases made.
+    private static long allocationCount = 0; ///< Number of buffers allocated because none was free.
+    private static long allocatedBytes = 0; ///< Bytes allocated because no buffer was free.
+    private static long leakCount = 0; ///< Number of leases collected without being released.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Lease
+    /// \brief       A buffer borrowed from the pool. It has to be released
+    ///              once, after which the buffer must not be used anymore.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Lease
+    {
+        private ByteBuffer buffer; ///< The leased buffer, null once released.
+        private LeaseReference reference; ///< Tracks the lease until it is released, null if leak tracking was off.
+
+        private Lease(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        //////////////////////////////////////////////////////////////////////
+        /// \fn         getBuffer()
+        /// \brief      Gets the leased buffer, cleared.
+        /// \return     ByteBuffer - the buffer. Its capacity may be larger
+        ///             than asked for.
+        /// \author     agent
+        /// \date       10/18/2026
+        //////////////////////////////////////////////////////////////////////
+        public ByteBuffer getBuffer()
+        {
+            if(buffer == null)
+            {
+                throw new IllegalStateException("Buffer lease already released.");
+            }
+            return buffer;
+        }
+
+        //////////////////////////////////////////////////////////////////////
+        /// \fn         getArray()
+        /// \brief      Gets the array behind a heap buffer lease.
+        /// \return     byte[] - the array.
+        /// \author     agent
+        /// \date       10/18/2026
+        //////////////////////////////////////////////////////////////////////
+        public byte[] getArray()
+        {
+            return getBuffer().array();
+        }
+
+        //////////////////////////////////////////////////////////////////////
+        /// \fn         release()
+        /// \brief      Gives the buffer back to the pool. Releasing a lease
+        ///             twice does nothing.
+        /// \author     agent
+        /// \date       10/18/2026
+        //////////////////////////////////////////////////////////////////////
+        public void release()
+        {
+            ByteBuffer releasedBuffer = null;
+            synchronized(BufferPool.class)
+            {
+                releasedBuffer = buffer;
+                buffer = null;
+                if(reference != null)
+                {
+                    outstandingLeases.remove(reference);
+                    reference.clear();
+                    reference = null;
+                }
+            }
+            if(releasedBuffer != null)
+            {
+                giveBack(releasedBuffer);
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       LeaseReference
+    /// \brief       Tracks a lease, to report it if it is garbage collected
+    ///              without being released. It does not keep the buffer, so
+    ///              that a leaked buffer is collected along with its lease.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class LeaseReference extends WeakReference<Lease>
+    {
+        private final Throwable leaseSite; ///< Where the lease was made.
+
+        private LeaseReference(Lease lease, Throwable leaseSite)
+        {
+            super(lease, releasedLeases);
+            this.leaseSite = leaseSite;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         leaseDirect(int size)
+    /// \brief      Leases a direct buffer, to be used with channels.
+    /// \param[in]  size - the minimum capacity in bytes.
+    /// \return     Lease - the lease of the buffer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Lease leaseDirect(int size)
+    {
+        return lease(size, true);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         leaseHeap(int size)
+    /// \brief      Leases a heap buffer, to be used with streams and arrays.
+    /// \param[in]  size - the minimum capacity in bytes.
+    /// \return     Lease - the lease of the buffer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Lease leaseHeap(int size)
+    {
+        return lease(size, false);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         copy(InputStream inputStream, OutputStream outputStream)
+    /// \brief      Copies a stream to another with a pooled buffer. Neither
+    ///             stream is closed.
+    /// \param[in]  inputStream - the stream to read.
+    /// \param[in]  outputStream - the stream to write.
+    /// \return     long - the number of bytes copied.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static long copy(InputStream inputStream, OutputStream outputStream) throws IOException
+    {
+        Lease lease = leaseHeap(COPY_BUFFER_SIZE);
+        try
+        {
+            byte[] buffer = lease.getArray();
+            long copiedBytes = 0;
+            int bytesRead = 0;
+            while((bytesRead = inputStream.read(buffer)) != -1)
+            {
+                outputStream.write(buffer, 0, bytesRead);
+                copiedBytes += bytesRead;
+            }
+            return copiedBytes;
+        }
+        finally
+        {
+            lease.release();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         copy(ReadableByteChannel inputChannel,
+    ///             WritableByteChannel outputChannel)
+    /// \brief      Copies a channel to another with a pooled direct buffer.
+    ///             Neither channel is closed.
+    /// \param[in]  inputChannel - the channel to read.
+    /// \param[in]  outputChannel - the channel to write.
+    /// \return     long - the number of bytes copied.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static long copy(ReadableByteChannel inputChannel, WritableByteChannel outputChannel) throws IOException
+    {
+        Lease lease = leaseDirect(COPY_BUFFER_SIZE);
+        try
+        {
+            ByteBuffer buffer = lease.getBuffer();
+            long copiedBytes = 0;
+            while(inputChannel.read(buffer) != -1)
+            {
+                buffer.flip();
+                while(buffer.hasRemaining())
+                {
+                    copiedBytes += outputChannel.write(buffer);
+                }
+                buffer.clear();
+            }
+            return copiedBytes;
+        }
+        finally
+        {
+            lease.release();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setMaxPooledBytes(long maxPooledBytes)
+    /// \brief      Sets the bound on the memory kept by the free buffers of
+    ///             the pool. Buffers given back above it are dropped.
+    /// \param[in]  maxPooledBytes - the bound in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setMaxPooledBytes(long maxPooledBytes)
+    {
+        BufferPool.maxPooledBytes = maxPooledBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setLeakTracking(boolean leakTracking)
+    /// \brief      Tracks the following leases, and records where each one
+    ///             is made, so that leaks are reported and can be traced
+    ///             back. This allocates a reference and a stack trace on
+    ///             every lease, so it is meant for debugging.
+    /// \param[in]  leakTracking - TRUE to track the leases.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setLeakTracking(boolean leakTracking)
+    {
+        BufferPool.leakTracking = leakTracking;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getLeaseCount()
+    /// \brief      Gets the number of leases made.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getLeaseCount()
+    {
+        return leaseCount;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getAllocationCount()
+    /// \brief      Gets the number of buffers allocated because no free
+    ///             buffer was in the pool. Stays flat in steady state.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getAllocationCount()
+    {
+        return allocationCount;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getAllocatedBytes()
+    /// \brief      Gets the bytes allocated because no free buffer was in
+    ///             the pool.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getAllocatedBytes()
+    {
+        return allocatedBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getLeakCount()
+    /// \brief      Gets the number of tracked leases collected without
+    ///             being released.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getLeakCount()
+    {
+        reportLeakedLeases();
+        return leakCount;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         lease(int size, boolean direct)
+    /// \brief      Leases a free buffer of the pool, or allocates one.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static synchronized Lease lease(int size, boolean direct)
+    {
+        reportLeakedLeases();
+        leaseCount++;
+
+        ByteBuffer buffer = null;
+        int sizeClass = getSizeClass(size);
+        boolean isPooledSize = sizeClass < SIZE_CLASSES;
+        if(isPooledSize)
+        {
+            ArrayDeque<ByteBuffer> freeBuffers = direct ? directBuffers[sizeClass] : heapBuffers[sizeClass];
+            buffer = freeBuffers.poll();
+            if(buffer != null)
+            {
+                pooledBytes -= buffer.capacity();
+            }
+        }
+
+        if(buffer == null)
+        {
+            int capacity = isPooledSize ? MIN_BUFFER_SIZE << sizeClass : size;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            allocationCount++;
+            allocatedBytes += capacity;
+        }
+        buffer.clear();
+
+        Lease lease = new Lease(buffer);
+        if(leakTracking)
+        {
+            lease.reference = new LeaseReference(lease, new Throwable("Buffer leased here"));
+            outstandingLeases.add(lease.reference);
+        }
+        return lease;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         giveBack(ByteBuffer buffer)
+    /// \brief      Puts a buffer back in the pool, unless the pool is full
+    ///             or the buffer is not of a pooled size.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static synchronized void giveBack(ByteBuffer buffer)
+    {
+        int capacity = buffer.capacity();
+        int sizeClass = getSizeClass(capacity);
+        boolean canBePooled = sizeClass < SIZE_CLASSES && capacity == MIN_BUFFER_SIZE << sizeClass
+                && pooledBytes + capacity <= maxPooledBytes;
+        if(canBePooled)
+        {
+            ArrayDeque<ByteBuffer> freeBuffers = buffer.isDirect() ? directBuffers[sizeClass] : heapBuffers[sizeClass];
+            freeBuffers.add(buffer);
+            pooledBytes += capacity;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         reportLeakedLeases()
+    /// \brief      Reports the leases collected without being released.
+    ///             Their buffers are left to the garbage collector.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void reportLeakedLeases()
+    {
+        LeaseReference reference = null;
+        while((reference = (LeaseReference) releasedLeases.poll()) != null)
+        {
+            boolean wasOutstanding = outstandingLeases.remove(reference);
+            if(!wasOutstanding)
+            {
+                continue;
+            }
+
+            leakCount++;
+            Log.w(LOG_TAG, "Buffer lease was never released.", reference.leaseSite);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getSizeClass(int size)
+    /// \brief      Gets the index of the smallest pooled size holding a
+    ///             number of bytes.
+    /// \return     int - the size class, SIZE_CLASSES if the size is larger
+    ///             than the largest pooled buffer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int getSizeClass(int size)
+    {
+        if(size > MAX_BUFFER_SIZE)
+        {
+            return SIZE_CLASSES;
+        }
+        int sizeClass = 0;
+        while((MIN_BUFFER_SIZE << sizeClass) < size)
+        {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createSizeClasses()
+    /// \brief      Creates one free list per pooled size.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<ByteBuffer>[] createSizeClasses()
+    {
+        ArrayDeque<ByteBuffer>[] sizeClasses = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[SIZE_CLASSES];
+        for(int i = 0; i < sizeClasses.length; i++)
+        {
+            sizeClasses[i] = new ArrayDeque<ByteBuffer>();
+        }
+        return sizeClasses;
+    }
+}
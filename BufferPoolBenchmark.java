@@ -0,0 +1,168 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.os.Debug;
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       BufferPoolBenchmark
+/// \brief       Measures the time and the memory allocated per stream
+///              copy. It compares a copy through BufferPool.copy, with and
+///              without leak tracking, against the same copy through a
+///              buffer allocated for each copy, as the code did before the
+///              pool.
+///
+///              Each copy reads an in-memory stream into an output that
+///              discards the bytes, so that only the buffer handling is
+///              measured. The allocated bytes are counted for the calling
+///              thread. Each mode is run once to warm up before it is
+///              measured.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class BufferPoolBenchmark
+{
+    private static final String LOG_TAG = BufferPoolBenchmark.class.getSimpleName(); ///< Tag for logging.
+    private static final int COPY_BUFFER_SIZE = 16*1024; ///< Size of the buffer allocated per copy, the one BufferPool.copy leases.
+    private static final int ROUND_COPIES = 1000; ///< Copies between two reads of the allocation counter, which is an int.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(int copies, int streamSize)
+    /// \brief      Runs the copies in each mode.
+    /// \param[in]  copies - the number of copies per mode.
+    /// \param[in]  streamSize - the size of the copied stream in bytes.
+    /// \return     Result[] - the result of the pooled copy, of the pooled
+    ///             copy with leak tracking, then of the allocated buffer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result[] run(int copies, int streamSize) throws IOException
+    {
+        byte[] content = new byte[streamSize];
+        Result[] results = new Result[Mode.values().length];
+        Debug.startAllocCounting();
+        try
+        {
+            for(Mode mode : Mode.values())
+            {
+                run(mode, copies, content);
+                results[mode.ordinal()] = run(mode, copies, content);
+                Log.i(LOG_TAG, mode + ": " + results[mode.ordinal()].getNanosPerCopy() + " ns and "
+                        + results[mode.ordinal()].getAllocatedBytesPerCopy() + " bytes allocated per copy, "
+                        + results[mode.ordinal()].getPoolAllocations() + " pool allocations");
+            }
+        }
+        finally
+        {
+            Debug.stopAllocCounting();
+            BufferPool.setLeakTracking(false);
+        }
+        return results;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(Mode mode, int copies, byte[] content)
+    /// \brief      Runs the copies in one mode.
+    /// \param[in]  mode - the way the copy buffer is obtained.
+    /// \param[in]  copies - the number of copies.
+    /// \param[in]  content - the content of the copied stream.
+    /// \return     Result - the measures of the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static Result run(Mode mode, int copies, byte[] content) throws IOException
+    {
+        BufferPool.setLeakTracking(mode == Mode.POOLED_TRACKED);
+        OutputStream discardingStream = new OutputStream()
+        {
+            @Override
+            public void write(int value)
+            {
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length)
+            {
+            }
+        };
+
+        Result result = new Result();
+        long poolAllocations = BufferPool.getAllocationCount();
+        long startNanos = System.nanoTime();
+        for(int copy = 0; copy < copies; copy++)
+        {
+            boolean roundStart = copy % ROUND_COPIES == 0;
+            if(roundStart)
+            {
+                result.allocatedBytes += Debug.getThreadAllocSize();
+                Debug.resetThreadAllocSize();
+            }
+
+            InputStream inputStream = new ByteArrayInputStream(content);
+            if(mode == Mode.ALLOCATED)
+            {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int bytesRead = 0;
+                while((bytesRead = inputStream.read(buffer)) != -1)
+                {
+                    discardingStream.write(buffer, 0, bytesRead);
+                }
+            }
+            else
+            {
+                BufferPool.copy(inputStream, discardingStream);
+            }
+        }
+        result.allocatedBytes += Debug.getThreadAllocSize();
+        result.elapsedNanos = System.nanoTime() - startNanos;
+        result.poolAllocations = BufferPool.getAllocationCount() - poolAllocations;
+        result.copies = copies;
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \enum        Mode
+    /// \brief       The way a copy gets its buffer.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private enum Mode
+    {
+        POOLED, ///< Leased from the pool, leak tracking off.
+        POOLED_TRACKED, ///< Leased from the pool, leak tracking on.
+        ALLOCATED; ///< Allocated for each copy.
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Result
+    /// \brief       The measures of one mode.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Result
+    {
+        private long elapsedNanos = 0; ///< Time taken by the copies.
+        private long allocatedBytes = 0; ///< Bytes allocated by the thread during the copies.
+        private long poolAllocations = 0; ///< Buffers the pool allocated during the copies.
+        private int copies = 0; ///< Number of copies.
+
+        public long getNanosPerCopy()
+        {
+            return copies == 0 ? 0 : elapsedNanos / copies;
+        }
+
+        public long getAllocatedBytesPerCopy()
+        {
+            return copies == 0 ? 0 : allocatedBytes / copies;
+        }
+
+        public long getPoolAllocations()
+        {
+            return poolAllocations;
+        }
+    }
+}
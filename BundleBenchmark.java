@@ -0,0 +1,314 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       BundleBenchmark
+/// \brief       Measures the transfer of many small files one by one and
+///              in bundles, in files per second and goodput.
+///
+///              Both runs loop the transfer back into this agent. A file
+///              or bundle is read with DataFileRepository.sendDataFile,
+///              the sent files are moved out of the data file directory
+///              as if they were on the peer, and the bytes are received
+///              with openIncomingFile or openIncomingBundle and committed.
+///              The bundles are made by BundleStore.createBundle with the
+///              limits set by BundleStore.setLimits, as many as the files
+///              need. Moving the files is not timed.
+///
+///              The time of a real contact also depends on the link and on
+///              the round trip each file or bundle pays to be offered and
+///              acknowledged, which a loopback does not have. The goodput
+///              of such a contact is modeled from the measured time, the
+///              bytes sent and the number of transfers.
+///              The files and bundles are removed afterwards.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class BundleBenchmark
+{
+    private static final String LOG_TAG = BundleBenchmark.class.getSimpleName(); ///< Tag for logging.
+    private static final String FILE_PREFIX = "small-benchmark-"; ///< Beginning of the name of the small files, which must not look like a bundle.
+    private static final String PEER_DIRECTORY = "small-benchmark-peer"; ///< Directory next to the data file directory the sent files are moved to.
+    private static final long PAYLOAD_SEED = 3L; ///< Seed of the payloads of the small files.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(int fileCount, int payloadSize)
+    /// \brief      Transfers small files one by one, then in bundles.
+    /// \param[in]  fileCount - the number of small files.
+    /// \param[in]  payloadSize - the payload size of each file in bytes.
+    /// \return     Result[] - the result one by one, then in bundles.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result[] run(int fileCount, int payloadSize) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+        File peerDirectory = new File(dataFileDirectory.getParentFile(), PEER_DIRECTORY);
+        boolean peerDirectoryReady = peerDirectory.isDirectory() || peerDirectory.mkdirs();
+        if(!peerDirectoryReady)
+        {
+            throw new IOException("Directory " + peerDirectory.getName() + " could not be created.");
+        }
+
+        boolean wasEnabled = BundleStore.isEnabled();
+        BundleStore.setEnabled(true);
+        try
+        {
+            Result singleResult = runSingleFiles(storeFiles(dataFileDirectory, fileCount, payloadSize), peerDirectory);
+            deleteFiles(dataFileDirectory);
+            Result bundleResult = runBundles(storeFiles(dataFileDirectory, fileCount, payloadSize), peerDirectory);
+            Log.i(LOG_TAG, "One by one: " + singleResult.getFilesPerSecond() + " files/s, in bundles: "
+                    + bundleResult.getFilesPerSecond() + " files/s");
+            return new Result[] { singleResult, bundleResult };
+        }
+        finally
+        {
+            BundleStore.setEnabled(wasEnabled);
+            deleteFiles(dataFileDirectory);
+            deleteFiles(peerDirectory);
+            peerDirectory.delete();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runSingleFiles(List<DataFile> dataFiles,
+    ///             File peerDirectory)
+    /// \brief      Sends and receives each file on its own.
+    /// \param[in]  dataFiles - the small files.
+    /// \param[in]  peerDirectory - the directory the sent files go to.
+    /// \return     Result - the measures of the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static Result runSingleFiles(List<DataFile> dataFiles, File peerDirectory) throws IOException
+    {
+        Result result = new Result();
+        for(DataFile dataFile : dataFiles)
+        {
+            long startNanos = System.nanoTime();
+            byte[] content = send(dataFile);
+            result.elapsedNanos += System.nanoTime() - startNanos;
+            moveTo(dataFile, peerDirectory);
+
+            startNanos = System.nanoTime();
+            DurableDataFileWriter writer = DataFileRepository.openIncomingFile(dataFile.getFileId(), content.length);
+            writer.write(content, 0, content.length);
+            DataFileRepository.commitIncomingFile(writer, DataFileRepository.getDefaultCopyBudget());
+            result.elapsedNanos += System.nanoTime() - startNanos;
+
+            result.payloadBytes += content.length;
+            result.sentBytes += content.length;
+            result.receivedFiles++;
+            result.transfers++;
+        }
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runBundles(List<DataFile> dataFiles, File peerDirectory)
+    /// \brief      Sends and receives the files in bundles until all of
+    ///             them were received.
+    /// \param[in]  dataFiles - the small files.
+    /// \param[in]  peerDirectory - the directory the sent files go to.
+    /// \return     Result - the measures of the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static Result runBundles(List<DataFile> dataFiles, File peerDirectory) throws IOException
+    {
+        Result result = new Result();
+        List<DataFile> remainingFiles = new ArrayList<DataFile>(dataFiles);
+        while(!remainingFiles.isEmpty())
+        {
+            long startNanos = System.nanoTime();
+            DataFile bundle = BundleStore.createBundle(remainingFiles, Long.MAX_VALUE);
+            if(bundle == null)
+            {
+                throw new IOException(remainingFiles.size() + " files could not be bundled, check the bundle limits.");
+            }
+            byte[] content = send(bundle);
+            result.elapsedNanos += System.nanoTime() - startNanos;
+
+            // The receiver does not hold any of the files yet.
+            for(DataFile dataFile : remainingFiles)
+            {
+                moveTo(dataFile, peerDirectory);
+            }
+
+            startNanos = System.nanoTime();
+            BundleWriter writer = DataFileRepository.openIncomingBundle(bundle.getFileId(), content.length);
+            writer.write(content, 0, content.length);
+            writer.commit();
+            result.elapsedNanos += System.nanoTime() - startNanos;
+
+            List<DataFile> unpackedFiles = new ArrayList<DataFile>();
+            for(DataFile dataFile : remainingFiles)
+            {
+                File sentFile = new File(peerDirectory, dataFile.getName());
+                boolean isUnpacked = writer.getUnpackedFileIds().contains(dataFile.getFileId());
+                if(isUnpacked)
+                {
+                    result.payloadBytes += sentFile.length();
+                    unpackedFiles.add(dataFile);
+                }
+                else
+                {
+                    moveTo(new DataFile(peerDirectory, dataFile.getName()), dataFile.getParentFile());
+                }
+            }
+            if(unpackedFiles.isEmpty())
+            {
+                throw new IOException("Bundle " + bundle.getFileId() + " unpacked no file.");
+            }
+            remainingFiles.removeAll(unpackedFiles);
+
+            bundle.delete();
+            DataFileCatalog.remove(bundle.getFileId());
+            result.sentBytes += content.length;
+            result.receivedFiles += unpackedFiles.size();
+            result.transfers++;
+        }
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         send(DataFile dataFile)
+    /// \brief      Reads a file or bundle through the send path.
+    /// \param[in]  dataFile - the file or bundle.
+    /// \return     byte[] - the bytes sent.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static byte[] send(DataFile dataFile) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) dataFile.length());
+        DataFileRepository.sendDataFile(dataFile, 0, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         storeFiles(File dataFileDirectory, int fileCount,
+    ///             int payloadSize)
+    /// \brief      Stores the small files.
+    /// \return     List<DataFile> - the files stored.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static List<DataFile> storeFiles(File dataFileDirectory, int fileCount, int payloadSize) throws IOException
+    {
+        Random random = new Random(PAYLOAD_SEED);
+        List<DataFile> dataFiles = new ArrayList<DataFile>();
+        for(int index = 0; index < fileCount; index++)
+        {
+            String fileId = String.format("%s%05d", FILE_PREFIX, index);
+            dataFiles.add(SampleCorpus.writeRandomFile(dataFileDirectory, fileId, payloadSize, random));
+        }
+        return dataFiles;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         moveTo(File file, File directory)
+    /// \brief      Moves a file to another directory.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void moveTo(File file, File directory) throws IOException
+    {
+        boolean successfullyMoved = file.renameTo(new File(directory, file.getName()));
+        if(!successfullyMoved)
+        {
+            throw new IOException("File " + file.getName() + " could not be moved to " + directory.getName());
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         deleteFiles(File directory)
+    /// \brief      Deletes the small files of a directory and forgets their
+    ///             catalog entries.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void deleteFiles(File directory) throws IOException
+    {
+        File[] files = directory.listFiles();
+        if(files == null)
+        {
+            return;
+        }
+        for(File file : files)
+        {
+            boolean isSmallFile = file.getName().startsWith(FILE_PREFIX);
+            if(isSmallFile)
+            {
+                file.delete();
+                DataFileCatalog.remove(new DataFile(directory, file.getName()).getFileId());
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Result
+    /// \brief       The measures of one run.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Result
+    {
+        private long payloadBytes = 0; ///< Size of the files received.
+        private long sentBytes = 0; ///< Bytes sent, with the bundle headers.
+        private long elapsedNanos = 0; ///< Time spent sending and receiving.
+        private int receivedFiles = 0; ///< Number of files received.
+        private int transfers = 0; ///< Number of files or bundles sent.
+
+        public double getFilesPerSecond()
+        {
+            return elapsedNanos == 0 ? 0 : receivedFiles * 1e9 / elapsedNanos;
+        }
+
+        public double getGoodput()
+        {
+            return elapsedNanos == 0 ? 0 : payloadBytes * 1e9 / elapsedNanos;
+        }
+
+        public int getTransfers()
+        {
+            return transfers;
+        }
+
+        public long getSentBytes()
+        {
+            return sentBytes;
+        }
+
+        //////////////////////////////////////////////////////////////////////
+        /// \fn         getModeledGoodput(long linkBytesPerSecond,
+        ///             long roundTripMillis)
+        /// \brief      Models the goodput of a contact, adding the time the
+        ///             sent bytes take on the link and one round trip per
+        ///             transfer to the measured time.
+        /// \param[in]  linkBytesPerSecond - the throughput of the link.
+        /// \param[in]  roundTripMillis - the time each transfer waits to be
+        ///             offered and acknowledged.
+        /// \return     double - the goodput in bytes per second.
+        /// \author     agent
+        /// \date       10/18/2026
+        //////////////////////////////////////////////////////////////////////
+        public double getModeledGoodput(long linkBytesPerSecond, long roundTripMillis)
+        {
+            double seconds = elapsedNanos / 1e9 + (double) sentBytes / linkBytesPerSecond + transfers * roundTripMillis / 1e3;
+            return seconds == 0 ? 0 : payloadBytes / seconds;
+        }
+    }
+}
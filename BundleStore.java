@@ -0,0 +1,678 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.g3ti.droidhopper.phoneagent.util.FileManager;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       BundleStore
+/// \brief       Optional stage that groups small complete data files into
+///              one bundle, so that a contact pays the per-file round trip
+///              and metadata cost once for the whole bundle.
+///
+///              A bundle is a header followed by its members, each with its
+///              file ID, size, SHA-1 hash and the copy budget handed over
+///              with it, then its content. Bundles are named by the hash of
+///              their content and kept in their own directory, so they are
+///              never taken for data files. The same members always give
+///              the same bundle, so a transfer cut in a bundle resumes like
+///              the transfer of any file. The receiver unpacks each member
+///              as soon as it has fully arrived, see BundleWriter.
+///
+///              Bundles are only sent to the peers that announced they can
+///              read this bundle format. The last bundle is kept with the
+///              files it was made of, so that the next contact reuses it
+///              without reading the files again while they are unchanged.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class BundleStore
+{
+    private static final String LOG_TAG = BundleStore.class.getSimpleName(); ///< Tag for logging.
+    private static final String BUNDLE_DIRECTORY = "bundles"; ///< The bundle directory name.
+    private static final String BUNDLE_PREFIX = "bundle-"; ///< Beginning of the name of every bundle.
+    private static final String TEMPORARY_SUFFIX = ".tmp"; ///< Suffix of the bundles while they are being written.
+    private static final String HASH_ALGORITHM = "SHA-1"; ///< The hash of the members and of the bundles.
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); ///< Digits of the bundle IDs.
+    static final int MAGIC = 0x4448424E; ///< Marks the beginning of a bundle ("DHBN").
+    static final int VERSION = 1; ///< Version of the bundle format.
+    static final int HEADER_SIZE = 8; ///< Magic and version.
+    static final int HASH_SIZE = 20; ///< Size in bytes of a SHA-1 hash.
+    static final int MAX_FILE_ID_LENGTH = 255; ///< Longest file ID in bytes a member may have.
+    private static final int MIN_MEMBERS = 2; ///< A single file is sent as it is.
+    private static final long DEFAULT_MAX_MEMBER_SIZE = 64L*1024L; ///< Default size up to which a file is bundled.
+    private static final long DEFAULT_MAX_BUNDLE_SIZE = 4L*1024L*1024L; ///< Default size of the members of a bundle.
+    private static final long BUNDLE_EXPIRY_MILLIS = 24L*60L*60L*1000L; ///< Bundles not used for this long are deleted.
+
+    private static boolean enabled = false; ///< TRUE if small files should be bundled.
+    private static long maxMemberSize = DEFAULT_MAX_MEMBER_SIZE; ///< Size up to which a file is bundled.
+    private static long maxBundleSize = DEFAULT_MAX_BUNDLE_SIZE; ///< Size of the members of a bundle.
+    private static final Map<String, Integer> peerBundleVersions = new HashMap<String, Integer>(); ///< The bundle format version announced by each peer.
+    private static DataFile cachedBundle = null; ///< The last bundle made, NULL if none.
+    private static String cachedMembersKey = null; ///< Describes the files the last bundle was made of.
+
+    static final IMaintenancePass MAINTENANCE_PASS = new IMaintenancePass()
+    {
+        @Override
+        public void runPass()
+        {
+            deleteExpiredBundles();
+        }
+    }; ///< Deletes the expired bundles in the background.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Member
+    /// \brief       A file of a bundle, as described by its header.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static class Member
+    {
+        final String fileId; ///< The ID of the file.
+        final long size; ///< The size of the file in bytes.
+        final byte[] hash; ///< The SHA-1 hash of the file.
+        final int copyBudget; ///< The copy budget handed over with the file.
+        final long contentOffset; ///< The offset of the content in the bundle.
+
+        Member(String fileId, long size, byte[] hash, int copyBudget, long contentOffset)
+        {
+            this.fileId = fileId;
+            this.size = size;
+            this.hash = hash;
+            this.copyBudget = copyBudget;
+            this.contentOffset = contentOffset;
+        }
+
+        long getEndOffset()
+        {
+            return contentOffset + size;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setEnabled(boolean enabled)
+    /// \brief      Enables or disables the bundling of small files.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setEnabled(boolean enabled)
+    {
+        BundleStore.enabled = enabled;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isEnabled()
+    /// \brief      Checks whether small files are bundled.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setLimits(long maxMemberSize, long maxBundleSize)
+    /// \brief      Sets which files are bundled, and how many at once.
+    /// \param[in]  maxMemberSize - the size in bytes up to which a file is
+    ///             bundled.
+    /// \param[in]  maxBundleSize - the total size in bytes of the members
+    ///             of a bundle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setLimits(long maxMemberSize, long maxBundleSize)
+    {
+        boolean validLimits = 0 < maxMemberSize && maxMemberSize <= maxBundleSize;
+        if(!validLimits)
+        {
+            throw new IllegalArgumentException("Invalid limits (member: " + maxMemberSize + ", bundle: " + maxBundleSize + ")");
+        }
+        BundleStore.maxMemberSize = maxMemberSize;
+        BundleStore.maxBundleSize = maxBundleSize;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getBundleVersion()
+    /// \brief      Gets the bundle format version this agent reads, to be
+    ///             announced to the peers.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static int getBundleVersion()
+    {
+        return VERSION;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordPeerBundleVersion(String peerId, int bundleVersion)
+    /// \brief      Records the bundle format version a peer announced.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \param[in]  bundleVersion - the version the peer reads, 0 if it
+    ///             does not read bundles.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void recordPeerBundleVersion(String peerId, int bundleVersion)
+    {
+        peerBundleVersions.put(peerId, bundleVersion);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         canReceiveBundles(String peerId)
+    /// \brief      Checks whether a peer announced it reads the bundles of
+    ///             this agent. Peers that announced nothing get the files
+    ///             one by one.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \return     boolean - TRUE if bundles may be sent to the peer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized boolean canReceiveBundles(String peerId)
+    {
+        Integer bundleVersion = peerBundleVersions.get(peerId);
+        return bundleVersion != null && bundleVersion >= VERSION;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isBundle(String fileId)
+    /// \brief      Checks whether a file sent or received is a bundle.
+    /// \param[in]  fileId - the ID of the file.
+    /// \return     boolean - TRUE if the file is a bundle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean isBundle(String fileId)
+    {
+        return fileId.startsWith(BUNDLE_PREFIX);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createBundle(List<DataFile> candidateDataFiles, long maxFileSize)
+    /// \brief      Bundles the smallest of the candidate files, up to the
+    ///             bundle size. If the same bundle already exists, as when a
+    ///             transfer of it is resumed, it is reused.
+    /// \param[in]  candidateDataFiles - the complete files that may be sent.
+    /// \param[in]  maxFileSize - the size in bytes the bundle must not
+    ///             exceed.
+    /// \return     DataFile - the bundle, or NULL if bundling is disabled or
+    ///             there are not enough small files.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized DataFile createBundle(List<DataFile> candidateDataFiles, long maxFileSize) throws IOException
+    {
+        if(!enabled)
+        {
+            return null;
+        }
+
+        // Files kept by another store would have to be rebuilt first, so they are sent on their own.
+        List<DataFile> smallDataFiles = new ArrayList<DataFile>();
+        for(DataFile dataFile : candidateDataFiles)
+        {
+            boolean isSmall = !(dataFile instanceof StoredDataFile) && dataFile.isComplete()
+                    && dataFile.length() <= maxMemberSize && !isBundle(dataFile.getFileId());
+            if(isSmall)
+            {
+                smallDataFiles.add(dataFile);
+            }
+        }
+
+        // Smallest first, then by ID, so that the same files always give the same bundle.
+        Collections.sort(smallDataFiles, new Comparator<DataFile>()
+        {
+            @Override
+            public int compare(DataFile first, DataFile second)
+            {
+                long firstLength = first.length();
+                long secondLength = second.length();
+                int result = firstLength < secondLength ? -1 : (firstLength == secondLength ? 0 : 1);
+                return result != 0 ? result : first.getFileId().compareTo(second.getFileId());
+            }
+        });
+
+        long bundleSizeLimit = Math.min(maxBundleSize, maxFileSize);
+        List<DataFile> members = new ArrayList<DataFile>();
+        long bundleSize = HEADER_SIZE;
+        for(DataFile dataFile : smallDataFiles)
+        {
+            long memberSize = getMemberHeaderSize(dataFile.getFileId()) + dataFile.length();
+            boolean fits = bundleSize + memberSize <= bundleSizeLimit;
+            if(fits)
+            {
+                members.add(dataFile);
+                bundleSize += memberSize;
+            }
+        }
+        boolean hasEnoughMembers = members.size() >= MIN_MEMBERS;
+        if(!hasEnoughMembers)
+        {
+            return null;
+        }
+
+        // The members are unchanged since the last bundle, so it is still the same bundle.
+        String membersKey = getMembersKey(members);
+        boolean isCached = cachedBundle != null && membersKey.equals(cachedMembersKey) && cachedBundle.exists();
+        if(isCached)
+        {
+            cachedBundle.setLastModified(System.currentTimeMillis());
+            return cachedBundle;
+        }
+        cachedBundle = writeBundle(members);
+        cachedMembersKey = membersKey;
+        return cachedBundle;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         handOffCustody(DataFile bundle,
+    ///             Collection<String> acceptedFileIds, String peerId)
+    /// \brief      Splits the copy budget of the members of a bundle that
+    ///             the peer unpacked, and deletes the bundle. The members
+    ///             the peer skipped, because it already held them or their
+    ///             hash did not match, keep their whole budget.
+    /// \param[in]  bundle - the bundle handed to the peer.
+    /// \param[in]  acceptedFileIds - the IDs of the members the peer
+    ///             unpacked, as reported by its BundleWriter.
+    /// \param[in]  peerId - the ID of the peer, to record the transfer of
+    ///             the bundle in the contact estimator.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void handOffCustody(DataFile bundle, Collection<String> acceptedFileIds, String peerId) throws IOException
+    {
+        DataFileRepository.recordTransfer(peerId, bundle);
+        TransferRegistry.finishSending(bundle.getFileId());
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+
+        for(Member member : readMembers(bundle))
+        {
+            DataFile dataFile = new DataFile(dataFileDirectory, member.fileId);
+            boolean wasAccepted = acceptedFileIds.contains(member.fileId);
+            if(wasAccepted && dataFile.exists())
+            {
+                DataFileRepository.handOffCustody(dataFile);
+            }
+        }
+        bundle.delete();
+        if(bundle.equals(cachedBundle))
+        {
+            cachedBundle = null;
+            cachedMembersKey = null;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         openIncoming(String bundleId, long bundleSize)
+    /// \brief      Opens a bundle to be received. Receiving resumes from
+    ///             the offset given by the writer, and the members that
+    ///             already arrived are not unpacked again.
+    /// \param[in]  bundleId - the ID of the bundle.
+    /// \param[in]  bundleSize - the full size of the bundle in bytes.
+    /// \return     BundleWriter - the writer of the bundle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static BundleWriter openIncoming(String bundleId, long bundleSize) throws IOException
+    {
+        boolean validId = isBundle(bundleId) && bundleId.indexOf(File.separatorChar) == -1;
+        if(!validId)
+        {
+            throw new IOException("Invalid bundle ID " + bundleId);
+        }
+        return new BundleWriter(getBundleDirectory(), bundleId, bundleSize);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         deleteExpiredBundles()
+    /// \brief      Deletes the bundles, sent or partially received, that
+    ///             have not been used for a day.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void deleteExpiredBundles()
+    {
+        File bundleDirectory = FileManager.getFileDirectory(BUNDLE_DIRECTORY);
+        File[] bundles = bundleDirectory == null ? null : bundleDirectory.listFiles();
+        if(bundles == null)
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for(File bundle : bundles)
+        {
+            boolean isExpired = now - bundle.lastModified() > BUNDLE_EXPIRY_MILLIS;
+            if(isExpired && bundle.delete())
+            {
+                Log.d(LOG_TAG, "Deleted expired bundle " + bundle.getName());
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readMember(FileChannel channel, long offset, long availableSize)
+    /// \brief      Reads the header of the member starting at an offset.
+    /// \param[in]  channel - the channel of the bundle.
+    /// \param[in]  offset - the offset of the member header.
+    /// \param[in]  availableSize - the number of bytes of the bundle
+    ///             available so far.
+    /// \return     Member - the member, or NULL if its header has not fully
+    ///             arrived yet.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static Member readMember(FileChannel channel, long offset, long availableSize) throws IOException
+    {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(2);
+        boolean hasLength = readAt(channel, offset, availableSize, lengthBuffer);
+        if(!hasLength)
+        {
+            return null;
+        }
+        int idLength = lengthBuffer.getShort(0) & 0xFFFF;
+        boolean validLength = 0 < idLength && idLength <= MAX_FILE_ID_LENGTH;
+        if(!validLength)
+        {
+            throw new IOException("Bundle is corrupt at offset " + offset);
+        }
+
+        ByteBuffer headerBuffer = ByteBuffer.allocate(idLength + 8 + HASH_SIZE + 4);
+        boolean hasHeader = readAt(channel, offset + 2, availableSize, headerBuffer);
+        if(!hasHeader)
+        {
+            return null;
+        }
+        headerBuffer.flip();
+        byte[] idBytes = new byte[idLength];
+        headerBuffer.get(idBytes);
+        long size = headerBuffer.getLong();
+        byte[] hash = new byte[HASH_SIZE];
+        headerBuffer.get(hash);
+        int copyBudget = headerBuffer.getInt();
+        String fileId = new String(idBytes, "UTF-8");
+        boolean validMember = size >= 0 && fileId.indexOf(File.separatorChar) == -1;
+        if(!validMember)
+        {
+            throw new IOException("Bundle is corrupt at offset " + offset);
+        }
+        return new Member(fileId, size, hash, copyBudget, offset + 2 + headerBuffer.capacity());
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createDigest()
+    /// \brief      Creates a digest computing the hashes of the bundles.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch(NoSuchAlgorithmException noSuchAlgorithmException)
+        {
+            // Every Java platform has to provide SHA-1.
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeBundle(List<DataFile> members)
+    /// \brief      Writes a bundle of files, named by its hash.
+    /// \return     DataFile - the bundle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static DataFile writeBundle(List<DataFile> members) throws IOException
+    {
+        File bundleDirectory = getBundleDirectory();
+        File temporaryBundle = new File(bundleDirectory, BUNDLE_PREFIX + System.nanoTime() + TEMPORARY_SUFFIX);
+        MessageDigest bundleDigest = createDigest();
+        MessageDigest memberDigest = createDigest();
+        DataOutputStream outputStream = new DataOutputStream(new DigestOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryBundle)), bundleDigest));
+        try
+        {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            for(DataFile member : members)
+            {
+                // The members are small, so each is read once, to hash it and then to copy it.
+                int memberSize = (int) member.length();
+                BufferPool.Lease lease = BufferPool.leaseHeap(Math.max(memberSize, 1));
+                try
+                {
+                    byte[] content = lease.getArray();
+                    readFully(member, content, memberSize);
+                    memberDigest.update(content, 0, memberSize);
+                    byte[] idBytes = member.getFileId().getBytes("UTF-8");
+                    outputStream.writeShort(idBytes.length);
+                    outputStream.write(idBytes);
+                    outputStream.writeLong(memberSize);
+                    outputStream.write(memberDigest.digest());
+                    outputStream.writeInt(member.getCopyBudget() / 2);
+                    outputStream.write(content, 0, memberSize);
+                }
+                finally
+                {
+                    lease.release();
+                }
+            }
+        }
+        catch(IOException ioException)
+        {
+            outputStream.close();
+            temporaryBundle.delete();
+            throw ioException;
+        }
+        finally
+        {
+            outputStream.close();
+        }
+
+        DataFile bundle = new DataFile(bundleDirectory, BUNDLE_PREFIX + toHex(bundleDigest.digest()));
+        boolean alreadyExists = bundle.exists();
+        if(alreadyExists)
+        {
+            // The same members give the same content, so keep the bundle a transfer may be resuming, and keep it from expiring.
+            temporaryBundle.delete();
+            bundle.setLastModified(System.currentTimeMillis());
+            return bundle;
+        }
+        boolean renamed = temporaryBundle.renameTo(bundle);
+        if(!renamed)
+        {
+            temporaryBundle.delete();
+            throw new IOException("Bundle " + bundle.getName() + " could not be stored.");
+        }
+        Log.d(LOG_TAG, "Bundled " + members.size() + " files into " + bundle.getName());
+        return bundle;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readMembers(DataFile bundle)
+    /// \brief      Reads the member headers of a complete bundle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static List<Member> readMembers(DataFile bundle) throws IOException
+    {
+        List<Member> members = new ArrayList<Member>();
+        FileInputStream inputStream = new FileInputStream(bundle);
+        try
+        {
+            FileChannel channel = inputStream.getChannel();
+            long bundleSize = channel.size();
+            long offset = HEADER_SIZE;
+            while(offset < bundleSize)
+            {
+                Member member = readMember(channel, offset, bundleSize);
+                if(member == null)
+                {
+                    throw new IOException("Bundle " + bundle.getName() + " is truncated.");
+                }
+                members.add(member);
+                offset = member.getEndOffset();
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        return members;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readAt(FileChannel channel, long offset, long availableSize,
+    ///             ByteBuffer buffer)
+    /// \brief      Fills a buffer from an offset, if that many bytes are
+    ///             available.
+    /// \return     boolean - TRUE if the buffer was filled.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static boolean readAt(FileChannel channel, long offset, long availableSize, ByteBuffer buffer) throws IOException
+    {
+        boolean isAvailable = offset + buffer.remaining() <= availableSize;
+        if(!isAvailable)
+        {
+            return false;
+        }
+        long position = offset;
+        while(buffer.hasRemaining())
+        {
+            int bytesRead = channel.read(buffer, position);
+            if(bytesRead == -1)
+            {
+                return false;
+            }
+            position += bytesRead;
+        }
+        return true;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readFully(File file, byte[] buffer, int length)
+    /// \brief      Reads the first bytes of a file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void readFully(File file, byte[] buffer, int length) throws IOException
+    {
+        InputStream inputStream = new FileInputStream(file);
+        try
+        {
+            int offset = 0;
+            while(offset < length)
+            {
+                int bytesRead = inputStream.read(buffer, offset, length - offset);
+                if(bytesRead == -1)
+                {
+                    throw new IOException("File: " + file.getName() + " is shorter than expected.");
+                }
+                offset += bytesRead;
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getMembersKey(List<DataFile> members)
+    /// \brief      Describes the files of a bundle and the budget handed
+    ///             over with each, to tell whether a bundle can be reused.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String getMembersKey(List<DataFile> members)
+    {
+        StringBuilder membersKey = new StringBuilder();
+        for(DataFile member : members)
+        {
+            membersKey.append(member.getFileId()).append('/').append(member.length()).append('/')
+                    .append(member.lastModified()).append('/').append(member.getCopyBudget() / 2).append('\n');
+        }
+        return membersKey.toString();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getMemberHeaderSize(String fileId)
+    /// \brief      Gets the size of the header of a member.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int getMemberHeaderSize(String fileId)
+    {
+        try
+        {
+            return 2 + fileId.getBytes("UTF-8").length + 8 + HASH_SIZE + 4;
+        }
+        catch(UnsupportedEncodingException unsupportedEncodingException)
+        {
+            // Every Java platform has to support UTF-8.
+            throw new IllegalStateException(unsupportedEncodingException);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getBundleDirectory()
+    /// \brief      Gets the bundle directory.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static File getBundleDirectory() throws IOException
+    {
+        File directory = FileManager.getFileDirectory(BUNDLE_DIRECTORY);
+        if(directory == null)
+        {
+            throw new IOException("Directory " + BUNDLE_DIRECTORY + " is not available.");
+        }
+        return directory;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         toHex(byte[] hash)
+    /// \brief      Writes a hash in hexadecimal.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String toHex(byte[] hash)
+    {
+        char[] hex = new char[hash.length * 2];
+        for(int i = 0; i < hash.length; i++)
+        {
+            hex[2*i] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+            hex[2*i + 1] = HEX_DIGITS[hash[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,349 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       BundleWriter
+/// \brief       Writes a bundle being received, and unpacks each member
+///              into a data file of its own as soon as it has fully
+///              arrived.
+///
+///              The members unpacked by one write are committed together,
+///              so they share one catalog sync. A member whose hash does
+///              not match is dropped. If the transfer is cut, the partial
+///              bundle is kept: the transfer resumes after its last byte,
+///              and the members already unpacked are skipped.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class BundleWriter
+{
+    private static final String LOG_TAG = BundleWriter.class.getSimpleName(); ///< Tag for logging.
+    private static final int COPY_BUFFER_SIZE = 64*1024; ///< Size of the buffer members are copied through.
+
+    private final String bundleId; ///< The ID of the bundle.
+    private final long bundleSize; ///< The full size of the bundle in bytes.
+    private final File partialBundle; ///< The bundle while it is being received.
+    private final RandomAccessFile randomAccessFile; ///< The open partial bundle.
+    private final FileChannel channel; ///< The channel of the partial bundle.
+    private final MessageDigest digest = BundleStore.createDigest(); ///< Hashes the members.
+    private long unpackedOffset = BundleStore.HEADER_SIZE; ///< Offset of the first member not unpacked yet.
+    private final List<String> unpackedFileIds = new ArrayList<String>(); ///< The IDs of the members unpacked by this writer.
+    private boolean closed = false; ///< TRUE once the bundle is closed.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         BundleWriter(File bundleDirectory, String bundleId,
+    ///             long bundleSize)
+    /// \brief      Opens the partial bundle, and unpacks the members that
+    ///             are in it but were not unpacked yet.
+    /// \param[in]  bundleDirectory - the bundle directory.
+    /// \param[in]  bundleId - the ID of the bundle.
+    /// \param[in]  bundleSize - the full size of the bundle in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    BundleWriter(File bundleDirectory, String bundleId, long bundleSize) throws IOException
+    {
+        this.bundleId = bundleId;
+        this.bundleSize = bundleSize;
+        this.partialBundle = new File(bundleDirectory, bundleId + '.' + DataFile.INCOMPLETE_FILE_APPENDIX);
+        this.randomAccessFile = new RandomAccessFile(partialBundle, "rw");
+        this.channel = randomAccessFile.getChannel();
+
+        // A partial bundle longer than the bundle is not the same bundle, receive it again.
+        boolean isSameBundle = channel.size() <= bundleSize;
+        if(!isSameBundle)
+        {
+            channel.truncate(0);
+        }
+        channel.position(channel.size());
+        try
+        {
+            unpackAvailableMembers();
+        }
+        catch(IOException ioException)
+        {
+            close();
+            throw ioException;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getPosition()
+    /// \brief      Gets the offset the transfer has to resume from.
+    /// \return     long - the number of bytes already received.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long getPosition() throws IOException
+    {
+        return channel.position();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         write(byte[] buffer, int offset, int length)
+    /// \brief      Appends received bytes, and unpacks the members they
+    ///             complete.
+    /// \param[in]  buffer - the buffer holding the bytes.
+    /// \param[in]  offset - the offset of the bytes in the buffer.
+    /// \param[in]  length - the number of bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void write(byte[] buffer, int offset, int length) throws IOException
+    {
+        write(ByteBuffer.wrap(buffer, offset, length));
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         write(ByteBuffer buffer)
+    /// \brief      Appends the remaining bytes of a buffer, and unpacks the
+    ///             members they complete.
+    /// \param[in]  buffer - the buffer holding the bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void write(ByteBuffer buffer) throws IOException
+    {
+        boolean fits = channel.position() + buffer.remaining() <= bundleSize;
+        if(!fits)
+        {
+            throw new IOException("Bundle " + bundleId + " is longer than " + bundleSize + " bytes.");
+        }
+        IoScheduler.acquire(IoScheduler.IoClass.FOREGROUND, buffer.remaining());
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        unpackAvailableMembers();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         commit()
+    /// \brief      Unpacks the last members of a complete bundle, and
+    ///             deletes the bundle.
+    /// \return     int - the number of members unpacked by this writer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public int commit() throws IOException
+    {
+        boolean isComplete = channel.size() == bundleSize;
+        if(!isComplete)
+        {
+            throw new IOException("Bundle " + bundleId + " has " + channel.size() + " of " + bundleSize + " bytes.");
+        }
+        unpackAvailableMembers();
+        boolean fullyUnpacked = unpackedOffset == bundleSize;
+        if(!fullyUnpacked)
+        {
+            throw new IOException("Bundle " + bundleId + " ends inside a member.");
+        }
+
+        close();
+        partialBundle.delete();
+        Log.i(LOG_TAG, "Received bundle " + bundleId + ", " + unpackedFileIds.size() + " files unpacked.");
+        return unpackedFileIds.size();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getUnpackedFileIds()
+    /// \brief      Gets the IDs of the members unpacked by this writer, to
+    ///             be reported to the sender, which hands over custody of
+    ///             these files only.
+    /// \return     List<String> - the IDs of the unpacked members.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public List<String> getUnpackedFileIds()
+    {
+        return Collections.unmodifiableList(unpackedFileIds);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         close()
+    /// \brief      Closes the bundle without completing it, for example
+    ///             when the contact is lost. The partial bundle is kept for
+    ///             the transfer to resume.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void close() throws IOException
+    {
+        if(!closed)
+        {
+            closed = true;
+            randomAccessFile.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         unpackAvailableMembers()
+    /// \brief      Unpacks the members that have fully arrived, and commits
+    ///             them in one batch.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void unpackAvailableMembers() throws IOException
+    {
+        long availableSize = channel.size();
+        boolean hasHeader = availableSize >= BundleStore.HEADER_SIZE;
+        if(!hasHeader)
+        {
+            return;
+        }
+        checkHeader();
+
+        List<DurableDataFileWriter> writers = new ArrayList<DurableDataFileWriter>();
+        List<BundleStore.Member> members = new ArrayList<BundleStore.Member>();
+        try
+        {
+            while(true)
+            {
+                BundleStore.Member member = BundleStore.readMember(channel, unpackedOffset, availableSize);
+                boolean hasArrived = member != null && member.getEndOffset() <= availableSize;
+                if(!hasArrived)
+                {
+                    break;
+                }
+
+                DurableDataFileWriter writer = unpack(member);
+                if(writer != null)
+                {
+                    writers.add(writer);
+                    members.add(member);
+                }
+                unpackedOffset = member.getEndOffset();
+            }
+
+            DataFileCommitter.commitAll(writers);
+        }
+        catch(IOException ioException)
+        {
+            for(DurableDataFileWriter writer : writers)
+            {
+                writer.close();
+            }
+            throw ioException;
+        }
+
+        for(int i = 0; i < writers.size(); i++)
+        {
+            DataFileRepository.acceptCustody(writers.get(i).getCompleteFile(), members.get(i).copyBudget);
+            unpackedFileIds.add(members.get(i).fileId);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         unpack(BundleStore.Member member)
+    /// \brief      Writes a member into its incomplete data file, checking
+    ///             its hash.
+    /// \return     DurableDataFileWriter - the writer of the member, ready
+    ///             to be committed, or NULL if the member is skipped.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private DurableDataFileWriter unpack(BundleStore.Member member) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+
+        // Skip the files already held, or already delivered.
+        DataFile dataFile = new DataFile(dataFileDirectory, member.fileId);
+        boolean alreadyHeld = dataFile.exists() || ChunkStore.contains(member.fileId)
+                || DataFileRepository.isDeliveryAcknowledged(member.fileId);
+        if(alreadyHeld)
+        {
+            return null;
+        }
+
+        // The whole member is hashed, and only the bytes after a previous partial transfer are written.
+        DurableDataFileWriter writer = DataFileCommitter.open(member.fileId, member.size);
+        BufferPool.Lease lease = BufferPool.leaseHeap(COPY_BUFFER_SIZE);
+        boolean unpacked = false;
+        try
+        {
+            long resumeOffset = writer.getPosition();
+            byte[] buffer = lease.getArray();
+            digest.reset();
+            for(long offset = 0; offset < member.size; )
+            {
+                int length = (int) Math.min(buffer.length, member.size - offset);
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+                while(byteBuffer.hasRemaining())
+                {
+                    channel.read(byteBuffer, member.contentOffset + offset + byteBuffer.position());
+                }
+                digest.update(buffer, 0, length);
+
+                long writeStart = Math.max(offset, resumeOffset);
+                if(writeStart < offset + length)
+                {
+                    writer.write(buffer, (int) (writeStart - offset), (int) (offset + length - writeStart));
+                }
+                offset += length;
+            }
+
+            boolean validHash = Arrays.equals(digest.digest(), member.hash);
+            if(!validHash)
+            {
+                Log.w(LOG_TAG, "File " + member.fileId + " of bundle " + bundleId + " is corrupt, dropped.");
+                return null;
+            }
+            unpacked = true;
+            return writer;
+        }
+        finally
+        {
+            lease.release();
+            if(!unpacked)
+            {
+                writer.close();
+                writer.getIncompleteFile().delete();
+                try
+                {
+                    DataFileCatalog.remove(member.fileId);
+                }
+                catch(IOException ioException)
+                {
+                    // Do not hide why the member failed, the entry is gone from memory already.
+                    Log.e(LOG_TAG, "Error occured while removing " + member.fileId + " from the catalog.", ioException);
+                }
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         checkHeader()
+    /// \brief      Checks that the bundle has a known format.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void checkHeader() throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(BundleStore.HEADER_SIZE);
+        while(header.hasRemaining())
+        {
+            channel.read(header, header.position());
+        }
+        boolean isKnownFormat = header.getInt(0) == BundleStore.MAGIC && header.getInt(4) == BundleStore.VERSION;
+        if(!isKnownFormat)
+        {
+            throw new IOException("Bundle " + bundleId + " has an unknown format.");
+        }
+    }
+}
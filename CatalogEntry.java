@@ -0,0 +1,278 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       CatalogEntry
+/// \brief       Represents what the catalog knows about one data file,
+///              so that it does not have to be read from the storage.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class CatalogEntry
+{
+    private final String fileId; ///< The ID of the data file.
+    private final long size; ///< The full size of the data file in bytes.
+    private final boolean complete; ///< TRUE if the data file is complete.
+    private final long progress; ///< The number of bytes of the data file that are stored.
+    private final long creationTimestamp; ///< The creation timestamp from the metadata, 0 if unknown.
+    private final String originUID; ///< The origin UID from the metadata, empty if unknown.
+    private final int copyBudget; ///< The number of copies this agent may still hand out, 0 if not assigned yet.
+    private final boolean acknowledged; ///< TRUE if the delivery of the data file was acknowledged.
+    private final PriorityClass priorityClass; ///< The priority class from the metadata, null if the metadata was not read yet.
+    private final long acknowledgedTimestamp; ///< When the delivery of the data file was acknowledged, 0 if it was not.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         CatalogEntry(String fileId, long size, boolean complete,
+    ///             long progress, long creationTimestamp, String originUID)
+    /// \brief      Initializes the entry with all its values.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \param[in]  size - the full size of the data file in bytes.
+    /// \param[in]  complete - TRUE if the data file is complete.
+    /// \param[in]  progress - the number of bytes that are stored.
+    /// \param[in]  creationTimestamp - the creation timestamp, 0 if unknown.
+    /// \param[in]  originUID - the origin UID, empty if unknown.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public CatalogEntry(String fileId, long size, boolean complete, long progress, long creationTimestamp, String originUID)
+    {
+        this(fileId, size, complete, progress, creationTimestamp, originUID, 0, false);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         CatalogEntry(String fileId, long size, boolean complete,
+    ///             long progress, long creationTimestamp, String originUID,
+    ///             int copyBudget, boolean acknowledged)
+    /// \brief      Initializes the entry with all its values, including the
+    ///             custody of the data file.
+    /// \param[in]  copyBudget - the number of copies this agent may still
+    ///             hand out, 0 if not assigned yet.
+    /// \param[in]  acknowledged - TRUE if the delivery was acknowledged.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public CatalogEntry(String fileId, long size, boolean complete, long progress, long creationTimestamp, String originUID,
+            int copyBudget, boolean acknowledged)
+    {
+        this(fileId, size, complete, progress, creationTimestamp, originUID, copyBudget, acknowledged, PriorityClass.NORMAL);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         CatalogEntry(String fileId, long size, boolean complete,
+    ///             long progress, long creationTimestamp, String originUID,
+    ///             int copyBudget, boolean acknowledged,
+    ///             PriorityClass priorityClass)
+    /// \brief      Initializes the entry with all its values, including the
+    ///             custody and the priority class of the data file. An
+    ///             acknowledged entry counts as acknowledged now.
+    /// \param[in]  priorityClass - the priority class from the metadata,
+    ///             null if the metadata was not read yet.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public CatalogEntry(String fileId, long size, boolean complete, long progress, long creationTimestamp, String originUID,
+            int copyBudget, boolean acknowledged, PriorityClass priorityClass)
+    {
+        this(fileId, size, complete, progress, creationTimestamp, originUID, copyBudget, acknowledged, priorityClass,
+                acknowledged ? System.currentTimeMillis() : 0);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         CatalogEntry(String fileId, long size, boolean complete,
+    ///             long progress, long creationTimestamp, String originUID,
+    ///             int copyBudget, boolean acknowledged,
+    ///             PriorityClass priorityClass, long acknowledgedTimestamp)
+    /// \brief      Initializes the entry with all its values, including
+    ///             when the delivery was acknowledged.
+    /// \param[in]  acknowledgedTimestamp - when the delivery was
+    ///             acknowledged, 0 if it was not.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    CatalogEntry(String fileId, long size, boolean complete, long progress, long creationTimestamp, String originUID,
+            int copyBudget, boolean acknowledged, PriorityClass priorityClass, long acknowledgedTimestamp)
+    {
+        this.fileId = fileId;
+        this.size = size;
+        this.complete = complete;
+        this.progress = progress;
+        this.creationTimestamp = creationTimestamp;
+        this.originUID = originUID;
+        this.copyBudget = copyBudget;
+        this.acknowledged = acknowledged;
+        this.priorityClass = priorityClass;
+        this.acknowledgedTimestamp = acknowledged ? acknowledgedTimestamp : 0;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getFileId()
+    /// \brief      Gets the ID of the data file.
+    /// \return     String - the ID of the data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public String getFileId()
+    {
+        return fileId;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getSize()
+    /// \brief      Gets the full size of the data file.
+    /// \return     long - the size in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long getSize()
+    {
+        return size;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isComplete()
+    /// \brief      Checks whether the data file is complete.
+    /// \return     boolean - TRUE if the data file is complete.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getProgress()
+    /// \brief      Gets the number of bytes of the data file that are stored.
+    /// \return     long - the progress in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long getProgress()
+    {
+        return progress;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCreationTimestamp()
+    /// \brief      Gets the creation timestamp from the metadata.
+    /// \return     long - the creation timestamp, 0 if unknown.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long getCreationTimestamp()
+    {
+        return creationTimestamp;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getOriginUID()
+    /// \brief      Gets the origin UID from the metadata.
+    /// \return     String - the origin UID, empty if unknown.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public String getOriginUID()
+    {
+        return originUID;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         hasMetadata()
+    /// \brief      Checks whether the metadata of the data file was read.
+    ///             A value the metadata does not have stays unknown, and is
+    ///             not looked for again.
+    /// \return     boolean - TRUE if the metadata was read.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public boolean hasMetadata()
+    {
+        return priorityClass != null;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCopyBudget()
+    /// \brief      Gets the number of copies this agent may still hand out.
+    /// \return     int - the copy budget, 0 if not assigned yet.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public int getCopyBudget()
+    {
+        return copyBudget;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isAcknowledged()
+    /// \brief      Checks whether the delivery of the data file was
+    ///             acknowledged.
+    /// \return     boolean - TRUE if the delivery was acknowledged.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public boolean isAcknowledged()
+    {
+        return acknowledged;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getAcknowledgedTimestamp()
+    /// \brief      Gets when the delivery of the data file was acknowledged,
+    ///             to know when its tombstone may be forgotten.
+    /// \return     long - the timestamp in milliseconds, 0 if the delivery
+    ///             was not acknowledged.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long getAcknowledgedTimestamp()
+    {
+        return acknowledgedTimestamp;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getPriorityClass()
+    /// \brief      Gets the priority class from the metadata.
+    /// \return     PriorityClass - the priority class, NORMAL if unknown.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public PriorityClass getPriorityClass()
+    {
+        return priorityClass == null ? PriorityClass.NORMAL : priorityClass;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         withCustody(int copyBudget, boolean acknowledged)
+    /// \brief      Creates a copy of the entry with another custody. An
+    ///             entry that becomes acknowledged counts as acknowledged
+    ///             now, one that already was keeps its timestamp.
+    /// \param[in]  copyBudget - the new copy budget.
+    /// \param[in]  acknowledged - TRUE if the delivery was acknowledged.
+    /// \return     CatalogEntry - the new entry.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public CatalogEntry withCustody(int copyBudget, boolean acknowledged)
+    {
+        long newAcknowledgedTimestamp = this.acknowledged ? acknowledgedTimestamp : System.currentTimeMillis();
+        return withCustody(copyBudget, acknowledged, newAcknowledgedTimestamp);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         withCustody(int copyBudget, boolean acknowledged,
+    ///             long acknowledgedTimestamp)
+    /// \brief      Creates a copy of the entry with another custody,
+    ///             acknowledged at a given time.
+    /// \param[in]  copyBudget - the new copy budget.
+    /// \param[in]  acknowledged - TRUE if the delivery was acknowledged.
+    /// \param[in]  acknowledgedTimestamp - when the delivery was
+    ///             acknowledged.
+    /// \return     CatalogEntry - the new entry.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    CatalogEntry withCustody(int copyBudget, boolean acknowledged, long acknowledgedTimestamp)
+    {
+        return new CatalogEntry(fileId, size, complete, progress, creationTimestamp, originUID, copyBudget, acknowledged, priorityClass,
+                acknowledgedTimestamp);
+    }
+}
@@ -0,0 +1,1081 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.g3ti.droidhopper.phoneagent.util.FileManager;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       ChunkStore
+/// \brief       Optional store that keeps complete data files as content
+///              defined chunks, so that data files that are mostly the same
+///              share their storage.
+///
+///              Chunk boundaries are found with a gear rolling hash, so an
+///              insertion only changes the chunks around it. Each chunk is
+///              stored once, named by its SHA-1 hash, and each data file is
+///              kept as a recipe listing its chunks. The reference counts
+///              of the chunks are rebuilt from the recipes when the store
+///              is loaded, and the chunks no recipe uses are deleted then.
+///              A data file is rebuilt from its chunks into a temporary
+///              copy when it is read, and keeps its recipe until it is
+///              released. Peers can ask which chunks of a recipe are
+///              missing to only send those.
+///
+///              The maintenance pass ingests the complete files held for
+///              a while, when no transfer is active. The chunks and the
+///              recipe are synced, with their directories, before the
+///              data file is deleted, so a crash never loses a file.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class ChunkStore
+{
+    private static final String LOG_TAG = ChunkStore.class.getSimpleName(); ///< Tag for logging.
+    private static final String CHUNK_DIRECTORY = "chunks"; ///< The chunk directory name.
+    private static final String RECIPE_DIRECTORY = "recipes"; ///< The recipe directory name.
+    private static final String REBUILT_DIRECTORY = "rebuilt"; ///< The directory of the temporary copies rebuilt from the chunks.
+    private static final String TEMPORARY_SUFFIX = ".tmp"; ///< Suffix of the chunks and recipes while they are being written.
+    private static final String HASH_ALGORITHM = "SHA-1"; ///< The hash naming the chunks.
+    private static final int MIN_CHUNK_SIZE = 2*1024; ///< No boundary is cut before this size.
+    private static final int MAX_CHUNK_SIZE = 64*1024; ///< A boundary is always cut at this size.
+    private static final long BOUNDARY_MASK = ((1L << 13) - 1) << 51; ///< Gives an average chunk size of about 8 KB. Uses the high bits, which depend on the most bytes.
+    private static final long GEAR_SEED = 0x4448434843L; ///< Seed of the gear table, the same on every agent so that they cut the same chunks.
+    private static final long[] GEAR = createGearTable(); ///< Random value added to the rolling hash for each byte value.
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); ///< Digits of the chunk IDs.
+    private static final long DEFAULT_IDLE_MILLIS = 24L*60L*60L*1000L; ///< Default time a complete file is held before it is ingested.
+    private static final long REBUILT_COPY_LIFETIME_MILLIS = 10L*60L*1000L; ///< Time a rebuilt copy is kept after its last use, when it is not in a transfer.
+    private static final long MAX_BYTES_PER_PASS = 64L*1024L*1024L; ///< Most bytes ingested by one pass, so that a pass stays short.
+
+    private static boolean enabled = false; ///< TRUE if complete files should be kept as chunks.
+    private static long idleMillis = DEFAULT_IDLE_MILLIS; ///< Time a complete file is held before it is ingested.
+    private static MessageDigest digest = null; ///< The digest hashing the chunks, reused between chunks.
+    private static Map<String, Integer> referenceCounts = null; ///< The number of recipes using each chunk, null until loaded.
+    private static long logicalBytes = 0; ///< The total size of the data files kept as chunks.
+    private static long storedBytes = 0; ///< The total size of the chunks actually stored.
+    private static long ingestedBytes = 0; ///< The bytes ingested since the agent started.
+    private static long ingestNanos = 0; ///< The time spent ingesting since the agent started.
+    private static long rebuiltBytes = 0; ///< The bytes rebuilt since the agent started.
+    private static long rebuildNanos = 0; ///< The time spent rebuilding since the agent started.
+
+    static final IMaintenancePass MAINTENANCE_PASS = new IMaintenancePass()
+    {
+        @Override
+        public void runPass()
+        {
+            runIngestPass();
+        }
+    }; ///< Moves the complete files into the chunk store in the background.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setEnabled(boolean enabled)
+    /// \brief      Enables or disables keeping complete files as chunks.
+    ///             Files already kept as chunks stay readable either way.
+    /// \param[in]  enabled - TRUE to enable the chunk store.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setEnabled(boolean enabled)
+    {
+        ChunkStore.enabled = enabled;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isEnabled()
+    /// \brief      Checks whether complete files should be kept as chunks.
+    /// \return     boolean - TRUE if the chunk store is enabled.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setIdlePeriod(long idleMillis)
+    /// \brief      Sets the time a complete file is held before it is
+    ///             ingested.
+    /// \param[in]  idleMillis - the time in milliseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setIdlePeriod(long idleMillis)
+    {
+        ChunkStore.idleMillis = idleMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getIdlePeriod()
+    /// \brief      Gets the time a complete file is held before it is
+    ///             ingested.
+    /// \return     long - the time in milliseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getIdlePeriod()
+    {
+        return idleMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runIngestPass()
+    /// \brief      Deletes the rebuilt copies no longer used, and ingests
+    ///             the complete files held for longer than the idle period
+    ///             while no transfer is active. Only the copies are deleted
+    ///             if the chunk store is disabled.
+    /// \return     long - the space freed by the pass, in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static long runIngestPass()
+    {
+        long passReclaimedBytes = deleteRebuiltCopies();
+        boolean canRun = isEnabled() && !TransferRegistry.isTransferActive();
+        if(!canRun)
+        {
+            return passReclaimedBytes;
+        }
+        long idlePeriodMillis = getIdlePeriod();
+
+        long passBytes = 0;
+        long now = System.currentTimeMillis();
+        for(DataFile dataFile : DataFileRepository.getCompleteDataFiles())
+        {
+            boolean passFull = passBytes >= MAX_BYTES_PER_PASS;
+            if(passFull || TransferRegistry.isTransferActive())
+            {
+                break;
+            }
+
+            // Files kept by another store, files in a transfer and fragments, which are already spread, are left alone.
+            String fileId = dataFile.getFileId();
+            boolean isCandidate = !(dataFile instanceof StoredDataFile) && dataFile.exists() && !TransferRegistry.isInTransfer(fileId)
+                    && !FragmentStore.isFragment(fileId) && now - dataFile.lastModified() >= idlePeriodMillis;
+            if(!isCandidate)
+            {
+                continue;
+            }
+
+            try
+            {
+                long fileSize = dataFile.length();
+                long storedBytesBefore = getStoredBytes();
+                boolean ingested = ingest(dataFile);
+                if(ingested)
+                {
+                    passBytes += fileSize;
+                    passReclaimedBytes += fileSize - (getStoredBytes() - storedBytesBefore);
+                }
+            }
+            catch(InterruptedIOException interruptedIOException)
+            {
+                Log.d(LOG_TAG, "Ingest pass interrupted.");
+                break;
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while ingesting file " + dataFile.getName(), ioException);
+            }
+        }
+
+        if(passReclaimedBytes > 0)
+        {
+            Log.i(LOG_TAG, "Ingest pass reclaimed " + passReclaimedBytes + " bytes.");
+        }
+        return passReclaimedBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         ingest(DataFile dataFile)
+    /// \brief      Splits a complete data file into chunks, stores the ones
+    ///             that are not stored yet and deletes the data file. A
+    ///             file being received or sent is left as it is.
+    /// \param[in]  dataFile - the complete data file to ingest.
+    /// \return     boolean - TRUE if the file was ingested, FALSE if the
+    ///             store is disabled, the file is not complete or it is in
+    ///             a transfer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean ingest(DataFile dataFile) throws IOException
+    {
+        // Chunking is background work: wait for the transfers before taking the lock they need.
+        boolean canIngest = isEnabled() && dataFile.isComplete() && dataFile.exists() && !TransferRegistry.isInTransfer(dataFile.getFileId());
+        if(canIngest)
+        {
+            IoScheduler.acquire(IoScheduler.IoClass.BACKGROUND, dataFile.length());
+        }
+        return ingestFile(dataFile);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         ingestFile(DataFile dataFile)
+    /// \brief      Ingests a data file once the scheduler let it through.
+    ///             If anything fails, the data file is kept and the
+    ///             references and chunks added for it are taken back.
+    /// \param[in]  dataFile - the complete data file to ingest.
+    /// \return     boolean - TRUE if the file was ingested.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static synchronized boolean ingestFile(DataFile dataFile) throws IOException
+    {
+        String fileId = dataFile.getFileId();
+        boolean canIngest = enabled && dataFile.isComplete() && dataFile.exists() && !TransferRegistry.isInTransfer(fileId);
+        if(!canIngest)
+        {
+            return false;
+        }
+        load();
+
+        // A crash after the recipe was stored leaves the data file behind, and its recipe is already durable.
+        boolean alreadyIngested = contains(fileId);
+        if(alreadyIngested)
+        {
+            return dataFile.delete();
+        }
+
+        // Make sure the catalog knows the metadata, as the ZIP file is about to go away.
+        DataFileCatalog.update(dataFile);
+
+        long startTime = System.nanoTime();
+        long fileSize = dataFile.length();
+        List<String> chunkIds = new ArrayList<String>();
+        boolean ingested = false;
+        try
+        {
+            InputStream inputStream = new FileInputStream(dataFile);
+            try
+            {
+                storeChunks(inputStream, chunkIds);
+            }
+            finally
+            {
+                inputStream.close();
+            }
+            DirectorySync.sync(getDirectory(CHUNK_DIRECTORY));
+            writeRecipe(fileId, fileSize, chunkIds);
+
+            // The file may have been selected for a transfer while it was being chunked.
+            boolean selectedMeanwhile = TransferRegistry.isInTransfer(fileId);
+            if(selectedMeanwhile)
+            {
+                return false;
+            }
+            boolean successfullyDeleted = dataFile.delete();
+            if(!successfullyDeleted)
+            {
+                throw new IOException("File: " + dataFile.getName() + " could not be deleted after being chunked.");
+            }
+            ingested = true;
+        }
+        finally
+        {
+            if(!ingested)
+            {
+                // Keep the file as it is, and forget the recipe and the references taken for it.
+                getRecipeFile(fileId).delete();
+                removeReferences(chunkIds);
+            }
+        }
+
+        logicalBytes += fileSize;
+        ingestedBytes += fileSize;
+        ingestNanos += System.nanoTime() - startTime;
+        Log.d(LOG_TAG, "Ingested file " + dataFile.getName() + " as " + chunkIds.size() + " chunks.");
+        return true;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         contains(String fileId)
+    /// \brief      Checks whether a data file is kept as chunks.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     boolean - TRUE if the store has a recipe for the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean contains(String fileId)
+    {
+        File recipeDirectory = FileManager.getFileDirectory(RECIPE_DIRECTORY);
+        return recipeDirectory != null && new File(recipeDirectory, fileId).exists();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getDataFiles()
+    /// \brief      Gets the data files kept as chunks, as they would appear
+    ///             in the data file directory.
+    /// \return     List<DataFile> - the data files, reporting their size.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized List<DataFile> getDataFiles()
+    {
+        List<DataFile> dataFiles = new LinkedList<DataFile>();
+        File recipeDirectory = FileManager.getFileDirectory(RECIPE_DIRECTORY);
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        boolean directoriesAvailable = recipeDirectory != null && dataFileDirectory != null;
+        if(!directoriesAvailable)
+        {
+            return dataFiles;
+        }
+
+        String[] fileIds = recipeDirectory.list();
+        if(fileIds == null)
+        {
+            return dataFiles;
+        }
+        for(String fileId : fileIds)
+        {
+            boolean isTemporary = fileId.endsWith(TEMPORARY_SUFFIX);
+            if(isTemporary)
+            {
+                continue;
+            }
+
+            try
+            {
+                long fileSize = readRecipeSize(new File(recipeDirectory, fileId));
+                dataFiles.add(new StoredDataFile(dataFileDirectory, fileId, fileSize));
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while reading the recipe of " + fileId, ioException);
+            }
+        }
+        return dataFiles;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         rebuild(String fileId)
+    /// \brief      Rebuilds a data file from its chunks into a temporary
+    ///             copy, keeping its recipe, so that sending the file does
+    ///             not undo the deduplication. The copy is reused while it
+    ///             exists, and deleted by the ingest pass once it is no
+    ///             longer used.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     DataFile - the rebuilt copy of the data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized DataFile rebuild(String fileId) throws IOException
+    {
+        load();
+        File rebuiltDirectory = getDirectory(REBUILT_DIRECTORY);
+        DataFile rebuiltFile = new DataFile(rebuiltDirectory, fileId);
+        boolean alreadyRebuilt = rebuiltFile.exists();
+        if(alreadyRebuilt)
+        {
+            rebuiltFile.setLastModified(System.currentTimeMillis());
+            return rebuiltFile;
+        }
+
+        // The recipe stays, so the copy does not have to be durable.
+        return assemble(rebuiltDirectory, fileId, getRecipe(fileId), false);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getRecipe(String fileId)
+    /// \brief      Gets the IDs of the chunks of a data file, in order, so
+    ///             that they can be offered to a peer.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     List<String> - the chunk IDs.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized List<String> getRecipe(String fileId) throws IOException
+    {
+        File recipeFile = getRecipeFile(fileId);
+        List<String> chunkIds = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(recipeFile));
+        try
+        {
+            // The first line is the size of the file, the chunk IDs follow.
+            reader.readLine();
+            String chunkId = null;
+            while((chunkId = reader.readLine()) != null)
+            {
+                chunkIds.add(chunkId);
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return chunkIds;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getMissingChunks(Collection<String> chunkIds)
+    /// \brief      Gets the chunks of a recipe that are not stored here, so
+    ///             that a peer only sends those.
+    /// \param[in]  chunkIds - the chunk IDs offered by the peer.
+    /// \return     List<String> - the chunk IDs that are not stored.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized List<String> getMissingChunks(Collection<String> chunkIds)
+    {
+        List<String> missingChunkIds = new ArrayList<String>();
+        File chunkDirectory = FileManager.getFileDirectory(CHUNK_DIRECTORY);
+        for(String chunkId : chunkIds)
+        {
+            boolean isStored = chunkDirectory != null && new File(chunkDirectory, chunkId).exists();
+            if(!isStored && !missingChunkIds.contains(chunkId))
+            {
+                missingChunkIds.add(chunkId);
+            }
+        }
+        return missingChunkIds;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readChunk(String chunkId)
+    /// \brief      Reads the content of a chunk, to send it to a peer.
+    /// \param[in]  chunkId - the ID of the chunk.
+    /// \return     byte[] - the content of the chunk.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized byte[] readChunk(String chunkId) throws IOException
+    {
+        File chunkFile = new File(getDirectory(CHUNK_DIRECTORY), chunkId);
+        byte[] content = new byte[(int) chunkFile.length()];
+        InputStream inputStream = new FileInputStream(chunkFile);
+        try
+        {
+            int offset = 0;
+            while(offset < content.length)
+            {
+                int bytesRead = inputStream.read(content, offset, content.length - offset);
+                if(bytesRead == -1)
+                {
+                    throw new IOException("Chunk " + chunkId + " is shorter than expected.");
+                }
+                offset += bytesRead;
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        return content;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         receiveChunk(String chunkId, byte[] content)
+    /// \brief      Stores a chunk received from a peer, after checking that
+    ///             its content matches its ID.
+    /// \param[in]  chunkId - the ID of the chunk.
+    /// \param[in]  content - the content of the chunk.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void receiveChunk(String chunkId, byte[] content) throws IOException
+    {
+        String actualChunkId = hash(content, content.length);
+        boolean matches = actualChunkId.equals(chunkId);
+        if(!matches)
+        {
+            throw new IOException("Received chunk " + chunkId + " does not match its content.");
+        }
+        boolean written = writeChunkIfMissing(chunkId, content, content.length);
+        if(written)
+        {
+            DirectorySync.sync(getDirectory(CHUNK_DIRECTORY));
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         assemble(String fileId, List<String> chunkIds)
+    /// \brief      Writes a complete data file from its chunks. The file is
+    ///             written with the incomplete suffix and renamed at the end.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \param[in]  chunkIds - the chunk IDs of the data file, in order.
+    /// \return     DataFile - the complete data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized DataFile assemble(String fileId, List<String> chunkIds) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+        return assemble(dataFileDirectory, fileId, chunkIds, true);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         assemble(File directory, String fileId, List<String> chunkIds, boolean durable)
+    /// \brief      Writes a complete data file from its chunks into a
+    ///             directory.
+    /// \param[in]  directory - the directory of the data file.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \param[in]  chunkIds - the chunk IDs of the data file, in order.
+    /// \param[in]  durable - TRUE to sync the data before the rename.
+    /// \return     DataFile - the complete data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static DataFile assemble(File directory, String fileId, List<String> chunkIds, boolean durable) throws IOException
+    {
+        long startTime = System.nanoTime();
+        DataFile dataFile = new DataFile(directory, fileId);
+        File incompleteFile = new File(directory, dataFile.getRemoteIncompleteDataFileName());
+        FileOutputStream outputStream = new FileOutputStream(incompleteFile);
+        long fileSize = 0;
+        try
+        {
+            // Copy the chunks through a pooled buffer, instead of reading each one into a new array.
+            FileChannel outputChannel = outputStream.getChannel();
+            File chunkDirectory = getDirectory(CHUNK_DIRECTORY);
+            for(String chunkId : chunkIds)
+            {
+                FileInputStream chunkStream = new FileInputStream(new File(chunkDirectory, chunkId));
+                try
+                {
+                    fileSize += BufferPool.copy(chunkStream.getChannel(), outputChannel);
+                }
+                finally
+                {
+                    chunkStream.close();
+                }
+            }
+            
+            // A file assembled from received chunks has no recipe, so its data has to be durable before the rename.
+            if(durable)
+            {
+                outputChannel.force(false);
+            }
+        }
+        finally
+        {
+            outputStream.close();
+        }
+
+        boolean renamed = incompleteFile.renameTo(dataFile);
+        if(!renamed)
+        {
+            throw new IOException("File: " + incompleteFile.getName() + " could not be renamed.");
+        }
+
+        rebuiltBytes += fileSize;
+        rebuildNanos += System.nanoTime() - startTime;
+        return dataFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         release(String fileId)
+    /// \brief      Forgets the recipe and the rebuilt copy of a data file,
+    ///             and deletes the chunks no other recipe uses.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void release(String fileId) throws IOException
+    {
+        load();
+        new DataFile(getDirectory(REBUILT_DIRECTORY), fileId).delete();
+        File recipeFile = getRecipeFile(fileId);
+        boolean recipeExists = recipeFile.exists();
+        if(!recipeExists)
+        {
+            return;
+        }
+
+        long fileSize = readRecipeSize(recipeFile);
+        List<String> chunkIds = getRecipe(fileId);
+        recipeFile.delete();
+        removeReferences(chunkIds);
+        logicalBytes -= fileSize;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         deleteRebuiltCopies()
+    /// \brief      Deletes the rebuilt copies that are not in a transfer
+    ///             and were not used for a while.
+    /// \return     long - the space freed, in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static synchronized long deleteRebuiltCopies()
+    {
+        File rebuiltDirectory = FileManager.getFileDirectory(REBUILT_DIRECTORY);
+        File[] rebuiltFiles = rebuiltDirectory == null ? null : rebuiltDirectory.listFiles();
+        if(rebuiltFiles == null)
+        {
+            return 0;
+        }
+
+        long reclaimedBytes = 0;
+        long now = System.currentTimeMillis();
+        for(File rebuiltFile : rebuiltFiles)
+        {
+            // An incomplete copy is named after its file ID too, so it is kept while its file is in a transfer.
+            String fileId = new DataFile(rebuiltDirectory, rebuiltFile.getName()).getFileId();
+            boolean unused = now - rebuiltFile.lastModified() >= REBUILT_COPY_LIFETIME_MILLIS && !TransferRegistry.isInTransfer(fileId);
+            if(!unused)
+            {
+                continue;
+            }
+
+            long fileSize = rebuiltFile.length();
+            boolean successfullyDeleted = rebuiltFile.delete();
+            if(successfullyDeleted)
+            {
+                reclaimedBytes += fileSize;
+            }
+        }
+        return reclaimedBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getDeduplicationRatio()
+    /// \brief      Gets how much bigger the data files are than the chunks
+    ///             actually stored for them.
+    /// \return     double - the logical size divided by the stored size,
+    ///             1 if nothing is stored.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized double getDeduplicationRatio()
+    {
+        load();
+        return storedBytes == 0 ? 1 : (double) logicalBytes / storedBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getIngestThroughput()
+    /// \brief      Gets the ingest throughput since the agent started.
+    /// \return     double - the throughput in bytes per second, 0 if
+    ///             nothing was ingested.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized double getIngestThroughput()
+    {
+        return ingestNanos == 0 ? 0 : ingestedBytes * 1e9 / ingestNanos;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getRebuildThroughput()
+    /// \brief      Gets the read-back throughput since the agent started.
+    /// \return     double - the throughput in bytes per second, 0 if
+    ///             nothing was rebuilt.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized double getRebuildThroughput()
+    {
+        return rebuildNanos == 0 ? 0 : rebuiltBytes * 1e9 / rebuildNanos;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         load()
+    /// \brief      Rebuilds the reference counts and sizes from the recipes
+    ///             and chunks on disk, the first time the store is used.
+    ///             The chunks no recipe uses, left by an ingest that did
+    ///             not finish, and the temporary files are deleted.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void load()
+    {
+        boolean isLoaded = referenceCounts != null;
+        if(isLoaded)
+        {
+            return;
+        }
+
+        referenceCounts = new HashMap<String, Integer>();
+        File recipeDirectory = FileManager.getFileDirectory(RECIPE_DIRECTORY);
+        String[] fileIds = recipeDirectory == null ? null : recipeDirectory.list();
+        if(fileIds != null)
+        {
+            for(String fileId : fileIds)
+            {
+                boolean isTemporary = fileId.endsWith(TEMPORARY_SUFFIX);
+                if(isTemporary)
+                {
+                    new File(recipeDirectory, fileId).delete();
+                    continue;
+                }
+
+                try
+                {
+                    logicalBytes += readRecipeSize(new File(recipeDirectory, fileId));
+                    for(String chunkId : getRecipe(fileId))
+                    {
+                        addReference(chunkId);
+                    }
+                }
+                catch(IOException ioException)
+                {
+                    Log.e(LOG_TAG, "Error occured while reading the recipe of " + fileId, ioException);
+                }
+            }
+        }
+
+        File chunkDirectory = FileManager.getFileDirectory(CHUNK_DIRECTORY);
+        File[] chunkFiles = chunkDirectory == null ? null : chunkDirectory.listFiles();
+        if(chunkFiles != null)
+        {
+            int deletedCount = 0;
+            for(File chunkFile : chunkFiles)
+            {
+                boolean isReferenced = referenceCounts.containsKey(chunkFile.getName());
+                if(!isReferenced)
+                {
+                    chunkFile.delete();
+                    deletedCount++;
+                    continue;
+                }
+                storedBytes += chunkFile.length();
+            }
+
+            if(deletedCount > 0)
+            {
+                Log.i(LOG_TAG, "Deleted " + deletedCount + " chunks no recipe uses.");
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         storeChunks(InputStream inputStream, List<String> chunkIds)
+    /// \brief      Cuts a stream into content defined chunks and stores the
+    ///             chunks that are not stored yet.
+    /// \param[in]  inputStream - the stream to cut.
+    /// \param[out] chunkIds - gets the IDs of the chunks referenced so
+    ///             far, in order, even if storing a chunk fails.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void storeChunks(InputStream inputStream, List<String> chunkIds) throws IOException
+    {
+        BufferPool.Lease chunkLease = BufferPool.leaseHeap(MAX_CHUNK_SIZE);
+        BufferPool.Lease readLease = BufferPool.leaseHeap(MAX_CHUNK_SIZE);
+        try
+        {
+            byte[] chunk = chunkLease.getArray();
+            byte[] readBuffer = readLease.getArray();
+            int chunkLength = 0;
+            long rollingHash = 0;
+            int bytesRead = 0;
+            while((bytesRead = inputStream.read(readBuffer, 0, MAX_CHUNK_SIZE)) != -1)
+            {
+                for(int i = 0; i < bytesRead; i++)
+                {
+                    byte value = readBuffer[i];
+                    chunk[chunkLength++] = value;
+                    rollingHash = (rollingHash << 1) + GEAR[value & 0xFF];
+
+                    boolean isBoundary = (chunkLength >= MIN_CHUNK_SIZE && (rollingHash & BOUNDARY_MASK) == 0) || chunkLength == MAX_CHUNK_SIZE;
+                    if(isBoundary)
+                    {
+                        chunkIds.add(storeChunk(chunk, chunkLength));
+                        chunkLength = 0;
+                        rollingHash = 0;
+                    }
+                }
+            }
+
+            boolean hasLastChunk = chunkLength > 0;
+            if(hasLastChunk)
+            {
+                chunkIds.add(storeChunk(chunk, chunkLength));
+            }
+        }
+        finally
+        {
+            chunkLease.release();
+            readLease.release();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         storeChunk(byte[] chunk, int length)
+    /// \brief      Stores a chunk if it is not stored yet, and counts the
+    ///             new reference to it.
+    /// \param[in]  chunk - the buffer holding the chunk.
+    /// \param[in]  length - the length of the chunk in the buffer.
+    /// \return     String - the ID of the chunk.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String storeChunk(byte[] chunk, int length) throws IOException
+    {
+        String chunkId = hash(chunk, length);
+        writeChunkIfMissing(chunkId, chunk, length);
+        addReference(chunkId);
+        return chunkId;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeChunkIfMissing(String chunkId, byte[] chunk, int length)
+    /// \brief      Writes and syncs a chunk file, unless it already exists.
+    ///             The caller syncs the chunk directory.
+    /// \return     boolean - TRUE if the chunk was written.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static boolean writeChunkIfMissing(String chunkId, byte[] chunk, int length) throws IOException
+    {
+        File chunkFile = new File(getDirectory(CHUNK_DIRECTORY), chunkId);
+        boolean isStored = chunkFile.exists();
+        if(isStored)
+        {
+            return false;
+        }
+
+        // Write under a temporary name so that a crash never leaves a truncated chunk behind.
+        File temporaryChunkFile = new File(chunkFile.getParentFile(), chunkId + TEMPORARY_SUFFIX);
+        FileOutputStream outputStream = new FileOutputStream(temporaryChunkFile);
+        try
+        {
+            outputStream.write(chunk, 0, length);
+            outputStream.getChannel().force(false);
+        }
+        finally
+        {
+            outputStream.close();
+        }
+
+        boolean renamed = temporaryChunkFile.renameTo(chunkFile);
+        if(!renamed)
+        {
+            temporaryChunkFile.delete();
+            throw new IOException("Chunk " + chunkId + " could not be stored.");
+        }
+        storedBytes += length;
+        return true;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         addReference(String chunkId)
+    /// \brief      Counts one more recipe using a chunk.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void addReference(String chunkId)
+    {
+        Integer referenceCount = referenceCounts.get(chunkId);
+        referenceCounts.put(chunkId, referenceCount == null ? 1 : referenceCount + 1);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         removeReferences(List<String> chunkIds)
+    /// \brief      Counts one recipe less using each of the chunks, and
+    ///             deletes the chunks no recipe uses anymore.
+    /// \param[in]  chunkIds - the chunks, once per reference to remove.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void removeReferences(List<String> chunkIds) throws IOException
+    {
+        File chunkDirectory = getDirectory(CHUNK_DIRECTORY);
+        for(String chunkId : chunkIds)
+        {
+            Integer referenceCount = referenceCounts.get(chunkId);
+            boolean stillReferenced = referenceCount != null && referenceCount > 1;
+            if(stillReferenced)
+            {
+                referenceCounts.put(chunkId, referenceCount - 1);
+                continue;
+            }
+
+            referenceCounts.remove(chunkId);
+            File chunkFile = new File(chunkDirectory, chunkId);
+            long chunkSize = chunkFile.length();
+            boolean successfullyDeleted = chunkFile.delete();
+            if(successfullyDeleted)
+            {
+                storedBytes -= chunkSize;
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getStoredBytes()
+    /// \brief      Gets the total size of the chunks actually stored.
+    /// \return     long - the size in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static synchronized long getStoredBytes()
+    {
+        load();
+        return storedBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeRecipe(String fileId, long fileSize, List<String> chunkIds)
+    /// \brief      Writes the recipe of a data file: its size, then its
+    ///             chunk IDs, one per line. The recipe and its directory
+    ///             are synced before it is used.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void writeRecipe(String fileId, long fileSize, List<String> chunkIds) throws IOException
+    {
+        File recipeFile = getRecipeFile(fileId);
+        File temporaryRecipeFile = new File(recipeFile.getParentFile(), fileId + TEMPORARY_SUFFIX);
+        FileOutputStream outputStream = new FileOutputStream(temporaryRecipeFile);
+        PrintWriter writer = new PrintWriter(outputStream);
+        boolean renamed = false;
+        try
+        {
+            writer.println(fileSize);
+            for(String chunkId : chunkIds)
+            {
+                writer.println(chunkId);
+            }
+
+            // A PrintWriter hides its errors, so check them before the recipe replaces the data file.
+            boolean writeFailed = writer.checkError();
+            if(writeFailed)
+            {
+                throw new IOException("Recipe of " + fileId + " could not be written.");
+            }
+            outputStream.getChannel().force(false);
+            writer.close();
+            renamed = temporaryRecipeFile.renameTo(recipeFile);
+            if(!renamed)
+            {
+                throw new IOException("Recipe of " + fileId + " could not be stored.");
+            }
+        }
+        finally
+        {
+            writer.close();
+            if(!renamed)
+            {
+                temporaryRecipeFile.delete();
+            }
+        }
+        DirectorySync.sync(recipeFile.getParentFile());
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readRecipeSize(File recipeFile)
+    /// \brief      Reads the size of the data file from its recipe.
+    /// \return     long - the size of the data file in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long readRecipeSize(File recipeFile) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new FileReader(recipeFile));
+        try
+        {
+            return Long.parseLong(reader.readLine());
+        }
+        catch(NumberFormatException numberFormatException)
+        {
+            throw new IOException("Recipe " + recipeFile.getName() + " is corrupt.");
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getRecipeFile(String fileId)
+    /// \brief      Gets the recipe file of a data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static File getRecipeFile(String fileId) throws IOException
+    {
+        return new File(getDirectory(RECIPE_DIRECTORY), fileId);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getDirectory(String directoryName)
+    /// \brief      Gets one of the directories of the store.
+    /// \return     File - the directory.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static File getDirectory(String directoryName) throws IOException
+    {
+        File directory = FileManager.getFileDirectory(directoryName);
+        if(directory == null)
+        {
+            throw new IOException("Directory " + directoryName + " is not available.");
+        }
+        return directory;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         hash(byte[] content, int length)
+    /// \brief      Calculates the ID of a chunk from its content.
+    /// \return     String - the SHA-1 hash of the content in hexadecimal.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String hash(byte[] content, int length)
+    {
+        // The callers hold the store lock, so the digest can be shared.
+        if(digest == null)
+        {
+            try
+            {
+                digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            }
+            catch(NoSuchAlgorithmException noSuchAlgorithmException)
+            {
+                // Every Java platform has to provide SHA-1.
+                throw new IllegalStateException(noSuchAlgorithmException);
+            }
+        }
+
+        digest.update(content, 0, length);
+        byte[] hash = digest.digest();
+        char[] chunkId = new char[hash.length * 2];
+        for(int i = 0; i < hash.length; i++)
+        {
+            chunkId[2*i] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+            chunkId[2*i + 1] = HEX_DIGITS[hash[i] & 0x0F];
+        }
+        return new String(chunkId);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createGearTable()
+    /// \brief      Creates the table of the gear rolling hash.
+    /// \return     long[] - one random value per byte value.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long[] createGearTable()
+    {
+        Random random = new Random(GEAR_SEED);
+        long[] gear = new long[256];
+        for(int i = 0; i < gear.length; i++)
+        {
+            gear[i] = random.nextLong();
+        }
+        return gear;
+    }
+}
@@ -0,0 +1,190 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       ChunkStoreBenchmark
+/// \brief       Measures the chunk store on a sample corpus: the
+///              deduplication ratio, the ingest throughput and the read-back
+///              throughput.
+///
+///              The corpus is a series of sensor log files, each a sliding
+///              window over the same log, as an origin re-exporting its
+///              recent history writes them. It is stored once with the
+///              payloads stored and once with them deflated. The files are
+///              ingested with ChunkStore.ingest, then rebuilt with
+///              ChunkStore.rebuild and checked against the CRC they had
+///              before. Ingesting goes through the BACKGROUND limit of the
+///              IoScheduler, which has to be lifted to measure the store
+///              alone. The files, their chunks and their catalog entries
+///              are removed after each run.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class ChunkStoreBenchmark
+{
+    private static final String LOG_TAG = ChunkStoreBenchmark.class.getSimpleName(); ///< Tag for logging.
+    private static final String FILE_PREFIX = "chunk-benchmark-"; ///< Beginning of the name of the files of the corpus.
+    private static final long SENSOR_LOG_SEED = 1L; ///< Seed of the sensor log the corpus is cut from.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(int fileCount, int linesPerFile, int newLinesPerFile)
+    /// \brief      Runs the benchmark on the stored corpus, then on the
+    ///             deflated one.
+    /// \param[in]  fileCount - the number of files of the corpus.
+    /// \param[in]  linesPerFile - the number of log lines of each file.
+    /// \param[in]  newLinesPerFile - the number of lines each file has that
+    ///             the previous one did not.
+    /// \return     Result[] - the result of the stored corpus, then of the
+    ///             deflated one.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result[] run(int fileCount, int linesPerFile, int newLinesPerFile) throws IOException
+    {
+        List<String> sensorLog = SampleCorpus.createSensorLog((fileCount - 1) * newLinesPerFile + linesPerFile, SENSOR_LOG_SEED);
+        boolean wasEnabled = ChunkStore.isEnabled();
+        ChunkStore.setEnabled(true);
+        try
+        {
+            Result storedResult = run(sensorLog, fileCount, linesPerFile, newLinesPerFile, true);
+            Result deflatedResult = run(sensorLog, fileCount, linesPerFile, newLinesPerFile, false);
+            return new Result[] { storedResult, deflatedResult };
+        }
+        finally
+        {
+            ChunkStore.setEnabled(wasEnabled);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(List<String> sensorLog, int fileCount,
+    ///             int linesPerFile, int newLinesPerFile, boolean stored)
+    /// \brief      Stores the corpus, ingests it and reads it back.
+    /// \param[in]  sensorLog - the lines the files are cut from.
+    /// \param[in]  fileCount - the number of files of the corpus.
+    /// \param[in]  linesPerFile - the number of log lines of each file.
+    /// \param[in]  newLinesPerFile - the number of lines each file has that
+    ///             the previous one did not.
+    /// \param[in]  stored - TRUE to store the payloads, FALSE to deflate
+    ///             them.
+    /// \return     Result - the measures of the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static Result run(List<String> sensorLog, int fileCount, int linesPerFile, int newLinesPerFile, boolean stored) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+
+        Result result = new Result();
+        List<String> fileIds = new ArrayList<String>();
+        List<Long> crcs = new ArrayList<Long>();
+        try
+        {
+            for(int index = 0; index < fileCount; index++)
+            {
+                String fileId = String.format("%s%s%03d", FILE_PREFIX, stored ? "stored-" : "deflated-", index);
+                DataFile dataFile = SampleCorpus.writeSensorLogFile(dataFileDirectory, fileId, sensorLog, index * newLinesPerFile, linesPerFile, stored);
+                fileIds.add(fileId);
+                crcs.add(SampleCorpus.getCrc(dataFile));
+                result.corpusBytes += dataFile.length();
+            }
+
+            long storedBytesBefore = ChunkStore.getStoredBytes();
+            long startNanos = System.nanoTime();
+            for(String fileId : fileIds)
+            {
+                boolean ingested = ChunkStore.ingest(new DataFile(dataFileDirectory, fileId));
+                if(!ingested)
+                {
+                    throw new IOException("File " + fileId + " was not ingested.");
+                }
+            }
+            result.ingestNanos = System.nanoTime() - startNanos;
+            result.chunkBytes = ChunkStore.getStoredBytes() - storedBytesBefore;
+
+            startNanos = System.nanoTime();
+            for(int index = 0; index < fileIds.size(); index++)
+            {
+                DataFile rebuiltFile = ChunkStore.rebuild(fileIds.get(index));
+                result.rebuiltBytes += rebuiltFile.length();
+                boolean isIntact = SampleCorpus.getCrc(rebuiltFile) == crcs.get(index);
+                if(!isIntact)
+                {
+                    result.corruptFiles++;
+                    Log.e(LOG_TAG, "Rebuilt file " + fileIds.get(index) + " differs from the ingested one.");
+                }
+            }
+            result.rebuildNanos = System.nanoTime() - startNanos;
+        }
+        finally
+        {
+            for(String fileId : fileIds)
+            {
+                ChunkStore.release(fileId);
+                new DataFile(dataFileDirectory, fileId).delete();
+                DataFileCatalog.remove(fileId);
+            }
+        }
+
+        Log.i(LOG_TAG, (stored ? "Stored" : "Deflated") + " corpus of " + result.corpusBytes + " bytes: deduplication ratio "
+                + result.getDeduplicationRatio() + ", ingest " + result.getIngestThroughput() + " B/s, rebuild "
+                + result.getRebuildThroughput() + " B/s, " + result.corruptFiles + " corrupt files");
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Result
+    /// \brief       The measures of one corpus.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Result
+    {
+        private long corpusBytes = 0; ///< Size of the files of the corpus.
+        private long chunkBytes = 0; ///< Size of the chunks the corpus added to the store.
+        private long rebuiltBytes = 0; ///< Size of the rebuilt files.
+        private long ingestNanos = 0; ///< Time taken to ingest the corpus.
+        private long rebuildNanos = 0; ///< Time taken to rebuild the corpus.
+        private int corruptFiles = 0; ///< Number of rebuilt files that differ from the ingested ones.
+
+        public long getCorpusBytes()
+        {
+            return corpusBytes;
+        }
+
+        public long getReclaimedBytes()
+        {
+            return corpusBytes - chunkBytes;
+        }
+
+        public double getDeduplicationRatio()
+        {
+            return chunkBytes == 0 ? 1 : (double) corpusBytes / chunkBytes;
+        }
+
+        public double getIngestThroughput()
+        {
+            return ingestNanos == 0 ? 0 : corpusBytes * 1e9 / ingestNanos;
+        }
+
+        public double getRebuildThroughput()
+        {
+            return rebuildNanos == 0 ? 0 : rebuiltBytes * 1e9 / rebuildNanos;
+        }
+
+        public int getCorruptFiles()
+        {
+            return corruptFiles;
+        }
+    }
+}
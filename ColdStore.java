@@ -0,0 +1,609 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import net.g3ti.droidhopper.phoneagent.util.FileManager;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Debug;
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       ColdStore
+/// \brief       Optional cold tier that recompresses the complete data
+///              files held for days, to free space for new transfers.
+///
+///              A data file is packaged by its origin, often with light or
+///              no compression, and its ID comes from its bytes, so its
+///              entries cannot be repacked. Instead, the whole file is
+///              compressed with the default deflate level and kept in the
+///              cold directory, and it is decompressed back to the exact
+///              same bytes when it is read, like a file kept by the chunk
+///              store. Peers see the same file ID, size and metadata.
+///
+///              The cold pass only runs while no transfer is active, and
+///              only when the agent is charging or no transfer happened for
+///              a while. Files that do not shrink enough are left as they
+///              are. The pass reads through the I/O scheduler as background
+///              I/O, without holding the lock of the store, so a transfer
+///              that starts meanwhile can still thaw files.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class ColdStore
+{
+    private static final String LOG_TAG = ColdStore.class.getSimpleName(); ///< Tag for logging.
+    private static final String COLD_DIRECTORY = "cold"; ///< The cold file directory name.
+    private static final String TEMPORARY_SUFFIX = ".tmp"; ///< Suffix of the cold files while they are being written.
+    private static final int MAGIC = 0x4448434C; ///< Marks the beginning of a cold file ("DHCL").
+    private static final long DEFAULT_IDLE_MILLIS = 2L*24L*60L*60L*1000L; ///< Default time a complete file is held before it is recompressed.
+    private static final long QUIET_MILLIS = 10L*60L*1000L; ///< Time without transfers after which the agent is idle, when it is not charging.
+    private static final long MAX_BYTES_PER_PASS = 64L*1024L*1024L; ///< Most bytes recompressed by one pass, so that a pass stays short.
+    private static final int COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION; ///< The deflate level, the strongest level costs several times the CPU for about 1% of space.
+    private static final double MAX_COMPRESSION_RATIO = 0.90; ///< A file is only kept cold if it shrinks at least to this fraction.
+    private static final Object PASS_LOCK = new Object(); ///< Held while recompressing, so that one file is recompressed at a time.
+
+    private static boolean enabled = false; ///< TRUE if long held files should be recompressed.
+    private static long idleMillis = DEFAULT_IDLE_MILLIS; ///< Time a complete file is held before it is recompressed.
+    private static final Set<String> incompressibleFileIds = Collections.synchronizedSet(new HashSet<String>()); ///< IDs of the files that did not shrink enough.
+    private static long logicalBytes = 0; ///< The bytes of data files recompressed since the agent started.
+    private static long reclaimedBytes = 0; ///< The space freed by recompression since the agent started.
+    private static long compressionCpuNanos = 0; ///< The CPU time spent recompressing since the agent started.
+
+    static final IMaintenancePass MAINTENANCE_PASS = new IMaintenancePass()
+    {
+        @Override
+        public void runPass()
+        {
+            runColdPass();
+        }
+    }; ///< Compresses the long-held complete files in the background.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setEnabled(boolean enabled)
+    /// \brief      Enables or disables the cold pass. Files already cold
+    ///             stay cold until they are read.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setEnabled(boolean enabled)
+    {
+        ColdStore.enabled = enabled;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isEnabled()
+    /// \brief      Checks whether long held files are recompressed.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setIdlePeriod(long idleMillis)
+    /// \brief      Sets the time a complete file is held before it is
+    ///             recompressed.
+    /// \param[in]  idleMillis - the time in milliseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setIdlePeriod(long idleMillis)
+    {
+        ColdStore.idleMillis = idleMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getIdlePeriod()
+    /// \brief      Gets the time a complete file is held before it is
+    ///             recompressed.
+    /// \return     long - the time in milliseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getIdlePeriod()
+    {
+        return idleMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runColdPass()
+    /// \brief      Recompresses the complete files held for longer than
+    ///             the idle period, if the agent is idle or charging. Does
+    ///             nothing if the cold tier is disabled.
+    /// \return     long - the space freed by the pass, in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static long runColdPass()
+    {
+        synchronized(PASS_LOCK)
+        {
+            return runPass();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runPass()
+    /// \brief      Runs the cold pass while holding the pass lock.
+    /// \return     long - the space freed by the pass, in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long runPass()
+    {
+        boolean canRun = isEnabled() && !TransferRegistry.isTransferActive()
+                && (isCharging() || TransferRegistry.getMillisSinceLastTransfer() >= QUIET_MILLIS);
+        if(!canRun)
+        {
+            return 0;
+        }
+        long idlePeriodMillis = getIdlePeriod();
+
+        long passReclaimedBytes = 0;
+        long passBytes = 0;
+        long now = System.currentTimeMillis();
+        for(DataFile dataFile : DataFileRepository.getCompleteDataFiles())
+        {
+            boolean passFull = passBytes >= MAX_BYTES_PER_PASS;
+            if(passFull || TransferRegistry.isTransferActive())
+            {
+                break;
+            }
+
+            // Files kept by another store, files in a transfer, and files already found incompressible, are left alone.
+            String fileId = dataFile.getFileId();
+            boolean isCandidate = !(dataFile instanceof StoredDataFile) && dataFile.exists() && !TransferRegistry.isInTransfer(fileId)
+                    && now - dataFile.lastModified() >= idlePeriodMillis && !incompressibleFileIds.contains(fileId);
+            if(!isCandidate)
+            {
+                continue;
+            }
+
+            try
+            {
+                passBytes += dataFile.length();
+                passReclaimedBytes += freeze(dataFile);
+            }
+            catch(InterruptedIOException interruptedIOException)
+            {
+                Log.d(LOG_TAG, "Cold pass interrupted.");
+                break;
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while recompressing file " + dataFile.getName(), ioException);
+            }
+        }
+
+        if(passReclaimedBytes > 0)
+        {
+            Log.i(LOG_TAG, "Cold pass reclaimed " + passReclaimedBytes + " bytes.");
+        }
+        return passReclaimedBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         freeze(DataFile dataFile)
+    /// \brief      Recompresses a complete data file into the cold
+    ///             directory, and deletes the data file, if it shrinks
+    ///             enough. A file being received or sent is left as it is.
+    /// \param[in]  dataFile - the complete data file.
+    /// \return     long - the space freed, 0 if the file was left as it is.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static long freeze(DataFile dataFile) throws IOException
+    {
+        synchronized(PASS_LOCK)
+        {
+            return freezeFile(dataFile);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         freezeFile(DataFile dataFile)
+    /// \brief      Recompresses a data file while holding the pass lock.
+    ///             Only storing the cold file and deleting the data file
+    ///             are done under the lock of the store.
+    /// \param[in]  dataFile - the complete data file.
+    /// \return     long - the space freed, 0 if the file was left as it is.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long freezeFile(DataFile dataFile) throws IOException
+    {
+        boolean canFreeze = dataFile.isComplete() && dataFile.exists() && !TransferRegistry.isInTransfer(dataFile.getFileId());
+        if(!canFreeze)
+        {
+            return 0;
+        }
+
+        // Make sure the catalog knows the metadata, as the ZIP file is about to go away.
+        DataFileCatalog.update(dataFile);
+
+        long startCpuNanos = Debug.threadCpuTimeNanos();
+        String fileId = dataFile.getFileId();
+        long fileSize = dataFile.length();
+        File coldFile = getColdFile(fileId);
+        File temporaryColdFile = new File(coldFile.getParentFile(), fileId + TEMPORARY_SUFFIX);
+        Deflater deflater = new Deflater(COMPRESSION_LEVEL);
+        FileOutputStream fileStream = new FileOutputStream(temporaryColdFile);
+        boolean written = false;
+        try
+        {
+            // The header is written in place once the CRC of the content is known.
+            DataOutputStream header = new DataOutputStream(fileStream);
+            writeHeader(header, fileSize, 0, dataFile.lastModified());
+            CRC32 crc = new CRC32();
+            InputStream inputStream = new CheckedInputStream(IoScheduler.throttle(new FileInputStream(dataFile), IoScheduler.IoClass.BACKGROUND), crc);
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(fileStream, deflater, 64*1024);
+            try
+            {
+                BufferPool.copy(inputStream, deflaterStream);
+                deflaterStream.finish();
+            }
+            finally
+            {
+                inputStream.close();
+            }
+            fileStream.getChannel().position(0);
+            writeHeader(header, fileSize, crc.getValue(), dataFile.lastModified());
+
+            // The data file is deleted next, so the cold file has to be durable before.
+            fileStream.getChannel().force(false);
+            written = true;
+        }
+        finally
+        {
+            deflater.end();
+            fileStream.close();
+            if(!written)
+            {
+                temporaryColdFile.delete();
+            }
+        }
+
+        long coldSize = temporaryColdFile.length();
+        long freedBytes = fileSize - coldSize;
+        boolean shrankEnough = coldSize <= fileSize * MAX_COMPRESSION_RATIO;
+        synchronized(ColdStore.class)
+        {
+            if(!shrankEnough)
+            {
+                // Already compressed, keep it as it is and do not try again.
+                temporaryColdFile.delete();
+                incompressibleFileIds.add(fileId);
+                compressionCpuNanos += Debug.threadCpuTimeNanos() - startCpuNanos;
+                return 0;
+            }
+
+            // The file may have been selected to be sent while it was being compressed, keep it then.
+            boolean isInTransfer = TransferRegistry.isInTransfer(fileId);
+            if(isInTransfer)
+            {
+                temporaryColdFile.delete();
+                compressionCpuNanos += Debug.threadCpuTimeNanos() - startCpuNanos;
+                return 0;
+            }
+
+            // The file may have been delivered while it was being compressed.
+            boolean stillHeld = dataFile.exists();
+            boolean renamed = stillHeld && temporaryColdFile.renameTo(coldFile);
+            if(!renamed)
+            {
+                temporaryColdFile.delete();
+                throw new IOException("Cold file of " + fileId + " could not be stored.");
+            }
+            boolean successfullyDeleted = dataFile.delete();
+            if(!successfullyDeleted)
+            {
+                // Keep the file as it is, and forget the cold file.
+                coldFile.delete();
+                throw new IOException("File: " + dataFile.getName() + " could not be deleted after being recompressed.");
+            }
+
+            logicalBytes += fileSize;
+            reclaimedBytes += freedBytes;
+            compressionCpuNanos += Debug.threadCpuTimeNanos() - startCpuNanos;
+        }
+        Log.d(LOG_TAG, "Recompressed file " + dataFile.getName() + " from " + fileSize + " to " + coldSize + " bytes.");
+        return freedBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         contains(String fileId)
+    /// \brief      Checks whether a data file is kept cold.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     boolean - TRUE if the file is in the cold directory.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean contains(String fileId)
+    {
+        File coldDirectory = FileManager.getFileDirectory(COLD_DIRECTORY);
+        return coldDirectory != null && new File(coldDirectory, fileId).exists();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getDataFiles()
+    /// \brief      Gets the data files kept cold, as they would appear in
+    ///             the data file directory.
+    /// \return     List<DataFile> - the data files, reporting their size.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized List<DataFile> getDataFiles()
+    {
+        List<DataFile> dataFiles = new LinkedList<DataFile>();
+        File coldDirectory = FileManager.getFileDirectory(COLD_DIRECTORY);
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        boolean directoriesAvailable = coldDirectory != null && dataFileDirectory != null;
+        if(!directoriesAvailable)
+        {
+            return dataFiles;
+        }
+
+        String[] fileIds = coldDirectory.list();
+        if(fileIds == null)
+        {
+            return dataFiles;
+        }
+        for(String fileId : fileIds)
+        {
+            boolean isTemporary = fileId.endsWith(TEMPORARY_SUFFIX);
+            if(isTemporary)
+            {
+                continue;
+            }
+
+            try
+            {
+                long fileSize = readFileSize(new File(coldDirectory, fileId));
+                dataFiles.add(new StoredDataFile(dataFileDirectory, fileId, fileSize));
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while reading the cold file of " + fileId, ioException);
+            }
+        }
+        return dataFiles;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         thaw(String fileId)
+    /// \brief      Decompresses a cold data file back into the data file
+    ///             directory, with the same bytes, and deletes its cold
+    ///             file. The file is written with the incomplete suffix and
+    ///             renamed at the end. It keeps the time it was thawed as
+    ///             its modification time, so that the next cold pass does
+    ///             not compress it again right away.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     DataFile - the data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized DataFile thaw(String fileId) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+
+        File coldFile = getColdFile(fileId);
+        DataFile dataFile = new DataFile(dataFileDirectory, fileId);
+        File incompleteFile = new File(dataFileDirectory, dataFile.getRemoteIncompleteDataFileName());
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(coldFile));
+        Inflater inflater = new Inflater();
+        try
+        {
+            boolean isColdFile = inputStream.readInt() == MAGIC;
+            if(!isColdFile)
+            {
+                throw new IOException("Cold file of " + fileId + " is corrupt.");
+            }
+            long fileSize = inputStream.readLong();
+            long expectedCrc = inputStream.readLong();
+
+            // The modification time of the original file is only kept for reference.
+            inputStream.readLong();
+
+            CRC32 crc = new CRC32();
+            FileOutputStream outputStream = new FileOutputStream(incompleteFile);
+            try
+            {
+                long copiedBytes = BufferPool.copy(new InflaterInputStream(inputStream, inflater, 64*1024),
+                        new CheckedOutputStream(outputStream, crc));
+                boolean isIntact = copiedBytes == fileSize && crc.getValue() == expectedCrc;
+                if(!isIntact)
+                {
+                    throw new IOException("Cold file of " + fileId + " does not match the original file.");
+                }
+
+                // The cold file is deleted once the file is rebuilt, so its data has to be durable before the rename.
+                outputStream.getChannel().force(false);
+            }
+            finally
+            {
+                outputStream.close();
+            }
+        }
+        catch(IOException ioException)
+        {
+            incompleteFile.delete();
+            throw ioException;
+        }
+        finally
+        {
+            inflater.end();
+            inputStream.close();
+        }
+
+        boolean renamed = incompleteFile.renameTo(dataFile);
+        if(!renamed)
+        {
+            throw new IOException("File: " + incompleteFile.getName() + " could not be renamed.");
+        }
+        coldFile.delete();
+        return dataFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         release(String fileId)
+    /// \brief      Deletes the cold file of a data file, for example once
+    ///             it was delivered.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void release(String fileId)
+    {
+        File coldDirectory = FileManager.getFileDirectory(COLD_DIRECTORY);
+        if(coldDirectory != null)
+        {
+            new File(coldDirectory, fileId).delete();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getReclaimedBytes()
+    /// \brief      Gets the space freed by recompression since the agent
+    ///             started.
+    /// \return     long - the space in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getReclaimedBytes()
+    {
+        return reclaimedBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCompressionRatio()
+    /// \brief      Gets the size of the cold files over the size of the
+    ///             files they hold, since the agent started.
+    /// \return     double - the ratio, 1 if nothing was recompressed.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized double getCompressionRatio()
+    {
+        return logicalBytes == 0 ? 1 : (double) (logicalBytes - reclaimedBytes) / logicalBytes;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCpuMillisPerReclaimedMegabyte()
+    /// \brief      Gets the CPU time spent per MB freed, including the
+    ///             files that did not shrink enough.
+    /// \return     double - the CPU time in milliseconds, 0 if nothing was
+    ///             freed.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized double getCpuMillisPerReclaimedMegabyte()
+    {
+        return reclaimedBytes == 0 ? 0 : (compressionCpuNanos / 1e6) / (reclaimedBytes / (1024.0 * 1024.0));
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isCharging()
+    /// \brief      Checks whether the agent is plugged in.
+    /// \return     boolean - TRUE if it is charging, FALSE if it is not or
+    ///             this is not known.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static boolean isCharging()
+    {
+        Context context = DataFileRepository.getContext();
+        if(context == null)
+        {
+            return false;
+        }
+        Intent batteryStatus = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeHeader(DataOutputStream header, long fileSize,
+    ///             long crc, long lastModified)
+    /// \brief      Writes the header of a cold file: the size, CRC and
+    ///             modification time of the data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void writeHeader(DataOutputStream header, long fileSize, long crc, long lastModified) throws IOException
+    {
+        header.writeInt(MAGIC);
+        header.writeLong(fileSize);
+        header.writeLong(crc);
+        header.writeLong(lastModified);
+        header.flush();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readFileSize(File coldFile)
+    /// \brief      Reads the size of the data file from its cold file.
+    /// \return     long - the size of the data file in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long readFileSize(File coldFile) throws IOException
+    {
+        DataInputStream inputStream = new DataInputStream(new FileInputStream(coldFile));
+        try
+        {
+            boolean isColdFile = inputStream.readInt() == MAGIC;
+            if(!isColdFile)
+            {
+                throw new IOException("Cold file " + coldFile.getName() + " is corrupt.");
+            }
+            return inputStream.readLong();
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getColdFile(String fileId)
+    /// \brief      Gets the cold file of a data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static File getColdFile(String fileId) throws IOException
+    {
+        File directory = FileManager.getFileDirectory(COLD_DIRECTORY);
+        if(directory == null)
+        {
+            throw new IOException("Directory " + COLD_DIRECTORY + " is not available.");
+        }
+        return new File(directory, fileId);
+    }
+}
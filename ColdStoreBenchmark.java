@@ -0,0 +1,188 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.os.Debug;
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       ColdStoreBenchmark
+/// \brief       Measures the cold tier on a sample corpus: the CPU time
+///              spent per MB reclaimed, the space reclaimed and the CPU
+///              time spent thawing.
+///
+///              The corpus is a series of sensor log files covering
+///              consecutive lines of the same log. It is stored once with
+///              the payloads stored, as agents writing their files without
+///              compression do, and once with them deflated, which the cold
+///              tier cannot shrink enough and leaves as they are. Each file
+///              is frozen with ColdStore.freeze and the thread CPU time of
+///              each call is summed, including the files left as they are.
+///              The files kept cold are then thawed and checked against the
+///              CRC they had before. Freezing reads through the BACKGROUND
+///              limit of the IoScheduler, which slows the run but not the
+///              CPU time. The files, their cold copies and their catalog
+///              entries are removed after each run.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class ColdStoreBenchmark
+{
+    private static final String LOG_TAG = ColdStoreBenchmark.class.getSimpleName(); ///< Tag for logging.
+    private static final String FILE_PREFIX = "cold-benchmark-"; ///< Beginning of the name of the files of the corpus.
+    private static final long SENSOR_LOG_SEED = 2L; ///< Seed of the sensor log the corpus is cut from.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(int fileCount, int linesPerFile)
+    /// \brief      Runs the benchmark on the stored corpus, then on the
+    ///             deflated one.
+    /// \param[in]  fileCount - the number of files of the corpus.
+    /// \param[in]  linesPerFile - the number of log lines of each file.
+    /// \return     Result[] - the result of the stored corpus, then of the
+    ///             deflated one.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result[] run(int fileCount, int linesPerFile) throws IOException
+    {
+        List<String> sensorLog = SampleCorpus.createSensorLog(fileCount * linesPerFile, SENSOR_LOG_SEED);
+        Result storedResult = run(sensorLog, fileCount, linesPerFile, true);
+        Result deflatedResult = run(sensorLog, fileCount, linesPerFile, false);
+        return new Result[] { storedResult, deflatedResult };
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(List<String> sensorLog, int fileCount,
+    ///             int linesPerFile, boolean stored)
+    /// \brief      Stores the corpus, freezes it and thaws it.
+    /// \param[in]  sensorLog - the lines the files are cut from.
+    /// \param[in]  fileCount - the number of files of the corpus.
+    /// \param[in]  linesPerFile - the number of log lines of each file.
+    /// \param[in]  stored - TRUE to store the payloads, FALSE to deflate
+    ///             them.
+    /// \return     Result - the measures of the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static Result run(List<String> sensorLog, int fileCount, int linesPerFile, boolean stored) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+
+        Result result = new Result();
+        List<String> fileIds = new ArrayList<String>();
+        List<Long> crcs = new ArrayList<Long>();
+        try
+        {
+            for(int index = 0; index < fileCount; index++)
+            {
+                String fileId = String.format("%s%s%03d", FILE_PREFIX, stored ? "stored-" : "deflated-", index);
+                DataFile dataFile = SampleCorpus.writeSensorLogFile(dataFileDirectory, fileId, sensorLog, index * linesPerFile, linesPerFile, stored);
+                fileIds.add(fileId);
+                crcs.add(SampleCorpus.getCrc(dataFile));
+                result.corpusBytes += dataFile.length();
+            }
+
+            List<Integer> frozenIndexes = new ArrayList<Integer>();
+            for(int index = 0; index < fileIds.size(); index++)
+            {
+                long startCpuNanos = Debug.threadCpuTimeNanos();
+                long freedBytes = ColdStore.freeze(new DataFile(dataFileDirectory, fileIds.get(index)));
+                result.freezeCpuNanos += Debug.threadCpuTimeNanos() - startCpuNanos;
+                result.reclaimedBytes += freedBytes;
+                boolean isFrozen = ColdStore.contains(fileIds.get(index));
+                if(isFrozen)
+                {
+                    frozenIndexes.add(index);
+                }
+            }
+            result.frozenFiles = frozenIndexes.size();
+
+            for(int index : frozenIndexes)
+            {
+                long startCpuNanos = Debug.threadCpuTimeNanos();
+                DataFile thawedFile = ColdStore.thaw(fileIds.get(index));
+                result.thawCpuNanos += Debug.threadCpuTimeNanos() - startCpuNanos;
+                result.thawedBytes += thawedFile.length();
+                boolean isIntact = SampleCorpus.getCrc(thawedFile) == crcs.get(index);
+                if(!isIntact)
+                {
+                    result.corruptFiles++;
+                    Log.e(LOG_TAG, "Thawed file " + fileIds.get(index) + " differs from the frozen one.");
+                }
+            }
+        }
+        finally
+        {
+            for(String fileId : fileIds)
+            {
+                ColdStore.release(fileId);
+                new DataFile(dataFileDirectory, fileId).delete();
+                DataFileCatalog.remove(fileId);
+            }
+        }
+
+        Log.i(LOG_TAG, (stored ? "Stored" : "Deflated") + " corpus of " + result.corpusBytes + " bytes: " + result.frozenFiles
+                + " files kept cold, " + result.reclaimedBytes + " bytes reclaimed, " + result.getCpuMillisPerReclaimedMegabyte()
+                + " ms CPU per reclaimed MB, " + result.corruptFiles + " corrupt files");
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Result
+    /// \brief       The measures of one corpus.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Result
+    {
+        private long corpusBytes = 0; ///< Size of the files of the corpus.
+        private long reclaimedBytes = 0; ///< Space freed by freezing the corpus.
+        private long thawedBytes = 0; ///< Size of the thawed files.
+        private long freezeCpuNanos = 0; ///< Thread CPU time taken to freeze the corpus.
+        private long thawCpuNanos = 0; ///< Thread CPU time taken to thaw the files kept cold.
+        private int frozenFiles = 0; ///< Number of files kept cold.
+        private int corruptFiles = 0; ///< Number of thawed files that differ from the frozen ones.
+
+        public long getCorpusBytes()
+        {
+            return corpusBytes;
+        }
+
+        public long getReclaimedBytes()
+        {
+            return reclaimedBytes;
+        }
+
+        public int getFrozenFiles()
+        {
+            return frozenFiles;
+        }
+
+        public double getFreezeCpuMillis()
+        {
+            return freezeCpuNanos / 1e6;
+        }
+
+        public double getCpuMillisPerReclaimedMegabyte()
+        {
+            return reclaimedBytes == 0 ? 0 : (freezeCpuNanos / 1e6) / (reclaimedBytes / (1024.0 * 1024.0));
+        }
+
+        public double getThawCpuMillisPerMegabyte()
+        {
+            return thawedBytes == 0 ? 0 : (thawCpuNanos / 1e6) / (thawedBytes / (1024.0 * 1024.0));
+        }
+
+        public int getCorruptFiles()
+        {
+            return corruptFiles;
+        }
+    }
+}
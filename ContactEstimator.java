@@ -0,0 +1,340 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       ContactEstimator
+/// \brief       Learns the link throughput and the contact durations from
+///              past transfers, per peer, to predict how much can still
+///              be sent during the current contact.
+///
+///              The throughput is an exponentially weighted moving
+///              average. The remaining contact time is a quantile of the
+///              past contact durations that lasted longer than the time
+///              already elapsed.
+///
+///              The history is saved to a file, one line per peer, so that
+///              the predictions survive a restart of the agent.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class ContactEstimator
+{
+    public static final long UNKNOWN = -1; ///< Returned when there is not enough history to estimate a value.
+    private static final String LOG_TAG = ContactEstimator.class.getSimpleName(); ///< Tag for logging.
+    private static final String TEMPORARY_SUFFIX = ".tmp"; ///< Suffix of the history file while it is being written.
+    private static final String FIELD_SEPARATOR = "\t"; ///< Separates the fields of a line of the history file.
+    private static final String DURATION_SEPARATOR = ","; ///< Separates the contact durations of a peer.
+    private static final String ALL_PEERS = ""; ///< Key of the statistics of all the peers together, used for unknown peers.
+    private static final double THROUGHPUT_WEIGHT = 0.25; ///< Weight of the newest sample in the throughput average.
+    private static final int MAX_CONTACT_SAMPLES = 64; ///< Number of contact durations kept per peer.
+    private static final double CONTACT_QUANTILE = 0.25; ///< Quantile of the remaining contact time, low to stay on the safe side.
+
+    private final Map<String, PeerStatistics> statistics = new HashMap<String, PeerStatistics>(); ///< The statistics by peer ID.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordTransfer(String peerId, long bytes, long durationMillis)
+    /// \brief      Records a transfer to a peer, to learn the throughput.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \param[in]  bytes - the number of bytes transferred.
+    /// \param[in]  durationMillis - how long the transfer took.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized void recordTransfer(String peerId, long bytes, long durationMillis)
+    {
+        boolean validSample = bytes > 0 && durationMillis > 0;
+        if(!validSample)
+        {
+            return;
+        }
+
+        double throughput = (double) bytes / durationMillis;
+        getStatistics(peerId).addThroughput(throughput);
+        getStatistics(ALL_PEERS).addThroughput(throughput);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordContact(String peerId, long durationMillis)
+    /// \brief      Records the duration of a finished contact with a peer.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \param[in]  durationMillis - how long the contact lasted.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized void recordContact(String peerId, long durationMillis)
+    {
+        getStatistics(peerId).addContactDuration(durationMillis);
+        getStatistics(ALL_PEERS).addContactDuration(durationMillis);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getThroughput(String peerId)
+    /// \brief      Gets the expected throughput of the link to a peer.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \return     double - the throughput in bytes per millisecond, or
+    ///             UNKNOWN if there is no history.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized double getThroughput(String peerId)
+    {
+        PeerStatistics peerStatistics = getKnownStatistics(peerId);
+        boolean hasThroughput = peerStatistics != null && peerStatistics.throughput > 0;
+        if(!hasThroughput)
+        {
+            return UNKNOWN;
+        }
+        return peerStatistics.throughput;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         predictRemainingContactTime(String peerId, long elapsedMillis)
+    /// \brief      Predicts how long the current contact with a peer will
+    ///             still last.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \param[in]  elapsedMillis - how long the contact has lasted so far.
+    /// \return     long - the remaining time in milliseconds, or UNKNOWN
+    ///             if there is no history.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized long predictRemainingContactTime(String peerId, long elapsedMillis)
+    {
+        PeerStatistics peerStatistics = getKnownStatistics(peerId);
+        boolean hasContacts = peerStatistics != null && !peerStatistics.contactDurations.isEmpty();
+        if(!hasContacts)
+        {
+            return UNKNOWN;
+        }
+
+        // Only the contacts that lasted longer than the current one tell us something about it.
+        List<Long> remainingTimes = new ArrayList<Long>();
+        for(long contactDuration : peerStatistics.contactDurations)
+        {
+            boolean lastedLonger = contactDuration > elapsedMillis;
+            if(lastedLonger)
+            {
+                remainingTimes.add(contactDuration - elapsedMillis);
+            }
+        }
+
+        boolean contactAlreadyLonger = remainingTimes.isEmpty();
+        if(contactAlreadyLonger)
+        {
+            return 0;
+        }
+
+        Collections.sort(remainingTimes);
+        int quantileIndex = (int) (CONTACT_QUANTILE * (remainingTimes.size() - 1));
+        return remainingTimes.get(quantileIndex);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         predictTransferTime(String peerId, long bytes)
+    /// \brief      Predicts how long it takes to transfer a number of bytes
+    ///             to a peer.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \param[in]  bytes - the number of bytes to transfer.
+    /// \return     long - the transfer time in milliseconds, or UNKNOWN if
+    ///             there is no history.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized long predictTransferTime(String peerId, long bytes)
+    {
+        double throughput = getThroughput(peerId);
+        boolean throughputKnown = throughput != UNKNOWN;
+        if(!throughputKnown)
+        {
+            return UNKNOWN;
+        }
+        return (long) Math.ceil(bytes / throughput);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         save(File historyFile)
+    /// \brief      Saves the history of all the peers. Each line holds the
+    ///             throughput, the contact durations and the peer ID.
+    /// \param[in]  historyFile - the file to write.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized void save(File historyFile) throws IOException
+    {
+        File temporaryHistoryFile = new File(historyFile.getParentFile(), historyFile.getName() + TEMPORARY_SUFFIX);
+        PrintWriter writer = new PrintWriter(temporaryHistoryFile);
+        boolean renamed = false;
+        try
+        {
+            for(Map.Entry<String, PeerStatistics> entry : statistics.entrySet())
+            {
+                StringBuilder durations = new StringBuilder();
+                for(long contactDuration : entry.getValue().contactDurations)
+                {
+                    if(durations.length() > 0)
+                    {
+                        durations.append(DURATION_SEPARATOR);
+                    }
+                    durations.append(contactDuration);
+                }
+                writer.println(entry.getValue().throughput + FIELD_SEPARATOR + durations + FIELD_SEPARATOR + entry.getKey());
+            }
+
+            // A PrintWriter hides its errors, so check them before the history is replaced.
+            boolean writeFailed = writer.checkError();
+            if(writeFailed)
+            {
+                throw new IOException("Contact history could not be written.");
+            }
+            writer.close();
+            renamed = temporaryHistoryFile.renameTo(historyFile);
+            if(!renamed)
+            {
+                throw new IOException("Contact history could not be stored.");
+            }
+        }
+        finally
+        {
+            writer.close();
+            if(!renamed)
+            {
+                temporaryHistoryFile.delete();
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         load(File historyFile)
+    /// \brief      Loads the history saved by save(). Invalid lines are
+    ///             skipped.
+    /// \param[in]  historyFile - the file to read.
+    /// \return     ContactEstimator - the estimator with the history, empty
+    ///             if the file does not exist.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static ContactEstimator load(File historyFile) throws IOException
+    {
+        ContactEstimator estimator = new ContactEstimator();
+        if(!historyFile.exists())
+        {
+            return estimator;
+        }
+
+        BufferedReader reader = new BufferedReader(new FileReader(historyFile));
+        try
+        {
+            String line = null;
+            while((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split(FIELD_SEPARATOR, 3);
+                boolean isPeerLine = fields.length == 3;
+                if(!isPeerLine)
+                {
+                    continue;
+                }
+
+                try
+                {
+                    PeerStatistics peerStatistics = new PeerStatistics();
+                    peerStatistics.throughput = Double.parseDouble(fields[0]);
+                    boolean hasDurations = fields[1].length() > 0;
+                    String[] durations = hasDurations ? fields[1].split(DURATION_SEPARATOR) : new String[0];
+                    for(String contactDuration : durations)
+                    {
+                        peerStatistics.addContactDuration(Long.parseLong(contactDuration));
+                    }
+                    estimator.statistics.put(fields[2], peerStatistics);
+                }
+                catch(NumberFormatException numberFormatException)
+                {
+                    Log.w(LOG_TAG, "Skipping invalid contact history line: " + line);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return estimator;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getStatistics(String peerId)
+    /// \brief      Gets the statistics of a peer, creating them if needed.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \return     PeerStatistics - the statistics of the peer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private PeerStatistics getStatistics(String peerId)
+    {
+        PeerStatistics peerStatistics = statistics.get(peerId);
+        if(peerStatistics == null)
+        {
+            peerStatistics = new PeerStatistics();
+            statistics.put(peerId, peerStatistics);
+        }
+        return peerStatistics;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getKnownStatistics(String peerId)
+    /// \brief      Gets the statistics of a peer, or the ones of all the
+    ///             peers if this peer was never seen.
+    /// \param[in]  peerId - the ID of the peer.
+    /// \return     PeerStatistics - the statistics, or null if no peer
+    ///             was ever seen.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private PeerStatistics getKnownStatistics(String peerId)
+    {
+        PeerStatistics peerStatistics = statistics.get(peerId);
+        if(peerStatistics == null)
+        {
+            peerStatistics = statistics.get(ALL_PEERS);
+        }
+        return peerStatistics;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       PeerStatistics
+    /// \brief       The history kept for one peer.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class PeerStatistics
+    {
+        private double throughput = 0; ///< Average throughput in bytes per millisecond, 0 if unknown.
+        private final List<Long> contactDurations = new ArrayList<Long>(); ///< The most recent contact durations.
+
+        private void addThroughput(double sample)
+        {
+            boolean isFirstSample = throughput == 0;
+            throughput = isFirstSample ? sample : THROUGHPUT_WEIGHT * sample + (1 - THROUGHPUT_WEIGHT) * throughput;
+        }
+
+        private void addContactDuration(long durationMillis)
+        {
+            boolean historyFull = contactDurations.size() == MAX_CONTACT_SAMPLES;
+            if(historyFull)
+            {
+                contactDurations.remove(0);
+            }
+            contactDurations.add(durationMillis);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import net.g3ti.droidhopper.phoneagent.util.InvalidConfigurationException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       ContactTraceReplay
+/// \brief       Replays a recorded contact trace through the repository,
+///              to measure how many bytes get completed per contact with
+///              the configured file chooser alone and with the contact
+///              estimator driving the selection, and with and without the
+///              large files split into fragments by the fragment store.
+///
+///              Each line of the trace is one contact, in chronological
+///              order: "peerId,durationMillis,throughputBytesPerSecond".
+///              The replay stores files of the given sizes in the empty
+///              data file directory and selects them with
+///              DataFileRepository.selectNextFileForTransfer. The transfers
+///              are timed from the trace instead of the clock. A file or
+///              fragment that finishes within its contact is delivered,
+///              one that does not counts as wasted and is selected again
+///              later. A fragmented file is completed once k of its
+///              fragments arrived, and its other fragments are dropped.
+///              The files are deleted after each run.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class ContactTraceReplay
+{
+    private static final String LOG_TAG = ContactTraceReplay.class.getSimpleName(); ///< Tag for logging.
+    private static final String FILE_PREFIX = "replay-"; ///< Beginning of the name of the files stored by the replay.
+    private static final String ORIGIN_UID = "replay"; ///< Origin UID in the metadata of the files stored by the replay.
+    private static final String METADATA_ENTRY = "metadata.json"; ///< Name of the metadata entry of the files stored by the replay.
+    private static final String PAYLOAD_ENTRY = "payload.bin"; ///< Name of the payload entry of the files stored by the replay.
+    private static final int BLOCK_SIZE = 64*1024; ///< Number of payload bytes written at once.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         replay(File traceFile, List<Long> fileSizes)
+    /// \brief      Replays the trace once with the configured file chooser
+    ///             alone and once with the estimator, starting from the
+    ///             same files, with fragmentation disabled.
+    /// \param[in]  traceFile - the recorded contact trace.
+    /// \param[in]  fileSizes - the sizes of the files waiting to be sent,
+    ///             oldest first.
+    /// \return     Result[] - the result of the file chooser alone, then
+    ///             the result of the estimator selection.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result[] replay(File traceFile, List<Long> fileSizes) throws IOException, InvalidConfigurationException
+    {
+        List<Contact> contacts = readTrace(traceFile);
+        boolean fragmentationEnabled = FragmentStore.isEnabled();
+        FragmentStore.setEnabled(false);
+        try
+        {
+            Result plainResult = replay(contacts, fileSizes, false);
+            Result estimatorResult = replay(contacts, fileSizes, true);
+            Log.i(LOG_TAG, "Completed bytes per contact, plain: " + plainResult.getCompletedBytesPerContact()
+                    + ", estimator: " + estimatorResult.getCompletedBytesPerContact());
+            return new Result[] { plainResult, estimatorResult };
+        }
+        finally
+        {
+            FragmentStore.setEnabled(fragmentationEnabled);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         replayFragmented(File traceFile, List<Long> fileSizes,
+    ///             long minFileSize, int k, int m)
+    /// \brief      Replays the trace with the estimator, once with the files
+    ///             whole and once with the files of at least a size split
+    ///             into k + m fragments by the fragment store, to measure
+    ///             the gain of the fragmentation on the trace. The settings
+    ///             of the fragment store are restored afterwards.
+    /// \param[in]  traceFile - the recorded contact trace.
+    /// \param[in]  fileSizes - the sizes of the files waiting to be sent,
+    ///             oldest first.
+    /// \param[in]  minFileSize - the size from which files are fragmented.
+    /// \param[in]  k - the number of fragments needed to rebuild a file.
+    /// \param[in]  m - the number of fragments that may be lost.
+    /// \return     Result[] - the result with the files whole, then the
+    ///             result with the large files fragmented.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result[] replayFragmented(File traceFile, List<Long> fileSizes, long minFileSize, int k, int m) throws IOException, InvalidConfigurationException
+    {
+        List<Contact> contacts = readTrace(traceFile);
+        boolean fragmentationEnabled = FragmentStore.isEnabled();
+        int dataFragments = FragmentStore.getDataFragments();
+        int parityFragments = FragmentStore.getParityFragments();
+        long fragmentationMinFileSize = FragmentStore.getMinFileSize();
+        try
+        {
+            FragmentStore.setEnabled(false);
+            Result wholeResult = replay(contacts, fileSizes, true);
+
+            FragmentStore.setCoding(k, m);
+            FragmentStore.setMinFileSize(minFileSize);
+            FragmentStore.setEnabled(true);
+            Result fragmentedResult = replay(contacts, fileSizes, true);
+            Log.i(LOG_TAG, "Completed bytes per contact, whole files: " + wholeResult.getCompletedBytesPerContact()
+                    + ", fragmented: " + fragmentedResult.getCompletedBytesPerContact());
+            return new Result[] { wholeResult, fragmentedResult };
+        }
+        finally
+        {
+            FragmentStore.setEnabled(fragmentationEnabled);
+            FragmentStore.setCoding(dataFragments, parityFragments);
+            FragmentStore.setMinFileSize(fragmentationMinFileSize);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         replay(List<Contact> contacts, List<Long> fileSizes,
+    ///             boolean useEstimator)
+    /// \brief      Stores the files and replays the contacts with one of the
+    ///             selections. The repository selects with a new estimator
+    ///             during the run, fed with the transfers and contacts of
+    ///             the trace only if the estimator is used, so that the
+    ///             selection falls back to the file chooser otherwise.
+    /// \param[in]  contacts - the contacts of the trace.
+    /// \param[in]  fileSizes - the sizes of the files, oldest first.
+    /// \param[in]  useEstimator - TRUE to let the estimator learn the
+    ///             contacts of the trace.
+    /// \return     Result - the bytes completed and wasted.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static Result replay(List<Contact> contacts, List<Long> fileSizes, boolean useEstimator) throws IOException, InvalidConfigurationException
+    {
+        boolean isRepositoryEmpty = DataFileRepository.getDataFiles().isEmpty();
+        if(!isRepositoryEmpty)
+        {
+            throw new IOException("The replay needs an empty data file directory.");
+        }
+
+        ContactEstimator originalEstimator = DataFileRepository.getContactEstimator();
+        ContactEstimator estimator = new ContactEstimator();
+        List<String> deliveredFileIds = new ArrayList<String>();
+        Map<String, Long> storedFileSizes = new HashMap<String, Long>();
+        try
+        {
+            storeFiles(fileSizes, storedFileSizes);
+            FragmentStore.fragmentLargeFiles();
+            DataFileRepository.setContactEstimator(estimator);
+
+            Map<String, Integer> arrivedFragments = new HashMap<String, Integer>();
+            int neededFragments = FragmentStore.getDataFragments();
+            Result result = new Result();
+            for(Contact contact : contacts)
+            {
+                long elapsedMillis = 0;
+                DataFile dataFile = null;
+                while((dataFile = DataFileRepository.selectNextFileForTransfer(Long.MAX_VALUE, contact.peerId, elapsedMillis)) != null)
+                {
+                    String fileId = dataFile.getFileId();
+                    long fileSize = dataFile.length();
+                    long transferMillis = (long) Math.ceil(fileSize * 1000.0 / contact.throughput);
+                    boolean finishes = elapsedMillis + transferMillis <= contact.durationMillis;
+                    if(!finishes)
+                    {
+                        // The contact ends in the middle of this file, which stays for a later contact.
+                        TransferRegistry.finishSending(fileId);
+                        result.wastedBytes += (long) ((contact.durationMillis - elapsedMillis) * contact.throughput / 1000);
+                        break;
+                    }
+
+                    elapsedMillis += transferMillis;
+                    if(useEstimator)
+                    {
+                        estimator.recordTransfer(contact.peerId, fileSize, transferMillis);
+                    }
+                    result.sentBytes += fileSize;
+                    DataFileRepository.acknowledgeDelivery(fileId);
+                    deliveredFileIds.add(fileId);
+
+                    String parentFileId = FragmentStore.getParentFileId(fileId);
+                    boolean isFragment = parentFileId != null;
+                    if(isFragment)
+                    {
+                        Integer arrivedCount = arrivedFragments.get(parentFileId);
+                        arrivedCount = arrivedCount == null ? 1 : arrivedCount + 1;
+                        arrivedFragments.put(parentFileId, arrivedCount);
+                        boolean fileCompleted = arrivedCount == neededFragments;
+                        if(!fileCompleted)
+                        {
+                            continue;
+                        }
+
+                        // The delivery of the file deletes its other fragments.
+                        DataFileRepository.acknowledgeDelivery(parentFileId);
+                        deliveredFileIds.add(parentFileId);
+                        fileId = parentFileId;
+                    }
+                    result.completedBytes += storedFileSizes.get(fileId);
+                    result.completedFiles++;
+                }
+                if(useEstimator)
+                {
+                    estimator.recordContact(contact.peerId, contact.durationMillis);
+                }
+                result.contacts++;
+            }
+            return result;
+        }
+        finally
+        {
+            DataFileRepository.setContactEstimator(originalEstimator);
+            deleteFiles(storedFileSizes.keySet(), deliveredFileIds);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         storeFiles(List<Long> fileSizes,
+    ///             Map<String, Long> storedFileSizes)
+    /// \brief      Stores data files of the given sizes, each a ZIP file of
+    ///             metadata and random bytes, created one millisecond apart
+    ///             in the order of the sizes.
+    /// \param[in]  fileSizes - the sizes of the files, oldest first.
+    /// \param[out] storedFileSizes - the sizes of the stored files by ID.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void storeFiles(List<Long> fileSizes, Map<String, Long> storedFileSizes) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+
+        Random random = new Random(fileSizes.size());
+        byte[] block = new byte[BLOCK_SIZE];
+        long firstCreationTimestamp = System.currentTimeMillis() - fileSizes.size();
+        for(int index = 0; index < fileSizes.size(); index++)
+        {
+            String fileId = String.format("%s%05d", FILE_PREFIX, index);
+            DataFile dataFile = new DataFile(dataFileDirectory, fileId);
+            ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(dataFile));
+            try
+            {
+                JSONObject metadata = new JSONObject();
+                metadata.put("OriginUID", ORIGIN_UID);
+                metadata.put("CreationTimestamp", firstCreationTimestamp + index);
+                metadata.put("FileName", fileId);
+                zipOutputStream.putNextEntry(new ZipEntry(METADATA_ENTRY));
+                zipOutputStream.write(metadata.toString().getBytes("UTF-8"));
+                zipOutputStream.closeEntry();
+
+                // Random bytes stored without compression keep the file at the size of the trace.
+                zipOutputStream.setLevel(Deflater.NO_COMPRESSION);
+                zipOutputStream.putNextEntry(new ZipEntry(PAYLOAD_ENTRY));
+                for(long written = 0; written < fileSizes.get(index); written += block.length)
+                {
+                    random.nextBytes(block);
+                    zipOutputStream.write(block, 0, (int) Math.min(block.length, fileSizes.get(index) - written));
+                }
+                zipOutputStream.closeEntry();
+            }
+            catch(JSONException jsonException)
+            {
+                throw new IOException("Metadata of file " + fileId + " could not be written.");
+            }
+            finally
+            {
+                zipOutputStream.close();
+            }
+            storedFileSizes.put(fileId, dataFile.length());
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         deleteFiles(Collection<String> storedFileIds,
+    ///             List<String> deliveredFileIds)
+    /// \brief      Deletes the files of a run that were not delivered, with
+    ///             their fragments, and forgets the delivered ones so that
+    ///             the next run can store them again.
+    /// \param[in]  storedFileIds - the IDs of the files stored by the run.
+    /// \param[in]  deliveredFileIds - the IDs of the files and fragments
+    ///             delivered during the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void deleteFiles(Collection<String> storedFileIds, List<String> deliveredFileIds) throws IOException
+    {
+        for(DataFile dataFile : DataFileRepository.getDataFiles())
+        {
+            String fileId = dataFile.getFileId();
+            String parentFileId = FragmentStore.getParentFileId(fileId);
+            boolean isReplayFile = storedFileIds.contains(fileId) || storedFileIds.contains(parentFileId);
+            if(isReplayFile)
+            {
+                TransferRegistry.finishSending(fileId);
+                dataFile.delete();
+                DataFileCatalog.remove(fileId);
+            }
+        }
+        for(String deliveredFileId : deliveredFileIds)
+        {
+            DataFileCatalog.remove(deliveredFileId);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readTrace(File traceFile)
+    /// \brief      Reads the contacts of a trace file.
+    /// \param[in]  traceFile - the trace file.
+    /// \return     List<Contact> - the contacts, in order.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static List<Contact> readTrace(File traceFile) throws IOException
+    {
+        List<Contact> contacts = new ArrayList<Contact>();
+        BufferedReader reader = new BufferedReader(new FileReader(traceFile));
+        try
+        {
+            String line = null;
+            while((line = reader.readLine()) != null)
+            {
+                String[] fields = line.trim().split(",");
+                boolean isContactLine = fields.length == 3;
+                if(!isContactLine)
+                {
+                    continue;
+                }
+
+                try
+                {
+                    contacts.add(new Contact(fields[0], Long.parseLong(fields[1]), Double.parseDouble(fields[2])));
+                }
+                catch(NumberFormatException numberFormatException)
+                {
+                    Log.w(LOG_TAG, "Skipping invalid trace line: " + line);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return contacts;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Contact
+    /// \brief       One contact read from the trace.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class Contact
+    {
+        private final String peerId; ///< The ID of the peer.
+        private final long durationMillis; ///< How long the contact lasted.
+        private final double throughput; ///< The link throughput in bytes per second.
+
+        private Contact(String peerId, long durationMillis, double throughput)
+        {
+            this.peerId = peerId;
+            this.durationMillis = durationMillis;
+            this.throughput = throughput;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Result
+    /// \brief       The outcome of one replay.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Result
+    {
+        private long completedBytes = 0; ///< Bytes of the files that finished.
+        private long wastedBytes = 0; ///< Bytes sent for files or fragments that did not finish within their contact.
+        private long sentBytes = 0; ///< Bytes of the files and fragments that finished, including the fragments of files not completed.
+        private int completedFiles = 0; ///< Number of files that finished.
+        private int contacts = 0; ///< Number of contacts replayed.
+
+        public long getCompletedBytes()
+        {
+            return completedBytes;
+        }
+
+        public long getWastedBytes()
+        {
+            return wastedBytes;
+        }
+
+        public long getSentBytes()
+        {
+            return sentBytes;
+        }
+
+        public int getCompletedFiles()
+        {
+            return completedFiles;
+        }
+
+        public long getCompletedBytesPerContact()
+        {
+            return contacts == 0 ? 0 : completedBytes / contacts;
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       CrashRecoveryHarness
+/// \brief       Kills the process while it receives files, to check that
+///              the receive path keeps what it acknowledged.
+///
+///              Each run of the process first calls verify, then receive.
+///              The receive threads write generated files through
+///              DataFileRepository.openIncomingFile and commitIncomingFile,
+///              take checkpoints, and record every acknowledged commit and
+///              every checkpoint in a log in the state directory, which
+///              outlives the process. The process kills itself after the
+///              given time. The next run verifies that every acknowledged
+///              file is complete and intact, and that every file with a
+///              checkpoint resumes at or after it, with intact bytes.
+///              revertLastCommit undoes the rename of the last acknowledged
+///              file between runs, as a file system that loses a rename
+///              on a power loss would, to check that recovery redoes it.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class CrashRecoveryHarness
+{
+    private static final String LOG_TAG = CrashRecoveryHarness.class.getSimpleName(); ///< Tag for logging.
+    private static final String STATE_LOG = "receive.log"; ///< Name of the log of acknowledged commits and checkpoints in the state directory.
+    private static final String ACKNOWLEDGED = "ACK"; ///< First word of the log line of an acknowledged commit.
+    private static final String CHECKPOINTED = "CKPT"; ///< First word of the log line of a checkpoint.
+    private static final String FILE_PREFIX = "crash-"; ///< Beginning of the name of the files received by the harness.
+    private static final int MIN_FILE_SIZE = 20*1024; ///< Size of the smallest received file.
+    private static final int MAX_EXTRA_FILE_SIZE = 580*1024; ///< Largest number of bytes added at random to the smallest size.
+    private static final long CHECKPOINT_BYTES = 256*1024; ///< A checkpoint is taken by the receive threads after this many bytes.
+    private static final int BLOCK_SIZE = 64*1024; ///< Number of bytes written at once.
+    private static final int COPY_BUDGET = 4; ///< Copy budget of the received files.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         verify(File stateDirectory)
+    /// \brief      Checks the files acknowledged and checkpointed by the
+    ///             previous runs against the data file directory.
+    /// \param[in]  stateDirectory - the directory holding the log of the
+    ///             previous runs.
+    /// \return     Result - the outcome of the check.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result verify(File stateDirectory) throws IOException
+    {
+        Set<String> acknowledgedIds = new LinkedHashSet<String>();
+        Map<String, Long> checkpoints = new HashMap<String, Long>();
+        readLog(stateDirectory, acknowledgedIds, checkpoints);
+
+        Result result = new Result();
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        for(String fileId : acknowledgedIds)
+        {
+            File file = new File(dataFileDirectory, fileId);
+            boolean isIntact = file.length() == getFileSize(fileId) && matches(file, fileId, file.length());
+            if(isIntact)
+            {
+                result.intactFiles++;
+            }
+            else
+            {
+                result.corruptFiles++;
+                Log.e(LOG_TAG, "Acknowledged file: " + fileId + " is missing or corrupt.");
+            }
+        }
+
+        for(Map.Entry<String, Long> checkpoint : checkpoints.entrySet())
+        {
+            String fileId = checkpoint.getKey();
+            boolean isOpen = !acknowledgedIds.contains(fileId) && !new File(dataFileDirectory, fileId).exists();
+            if(!isOpen)
+            {
+                continue;
+            }
+
+            DurableDataFileWriter writer = DataFileRepository.openIncomingFile(fileId, getFileSize(fileId));
+            long position;
+            try
+            {
+                position = writer.getPosition();
+            }
+            finally
+            {
+                writer.close();
+            }
+
+            result.resumedFiles++;
+            boolean lostCheckpoint = position < checkpoint.getValue();
+            if(lostCheckpoint)
+            {
+                result.lostCheckpoints++;
+                Log.e(LOG_TAG, "File: " + fileId + " resumes at " + position + " before its checkpoint at " + checkpoint.getValue() + ".");
+            }
+
+            boolean isPrefixIntact = matches(writer.getIncompleteFile(), fileId, position);
+            if(!isPrefixIntact)
+            {
+                result.corruptFiles++;
+                Log.e(LOG_TAG, "Received bytes of file: " + fileId + " are corrupt.");
+            }
+        }
+
+        Log.i(LOG_TAG, "Intact: " + result.intactFiles + ", corrupt: " + result.corruptFiles + ", resumed: " + result.resumedFiles
+                + ", lost checkpoints: " + result.lostCheckpoints);
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         revertLastCommit(File stateDirectory,
+    ///             File dataFileDirectory)
+    /// \brief      Renames the last acknowledged file back to its
+    ///             incomplete name. Called between runs, before the
+    ///             repository is set up.
+    /// \param[in]  stateDirectory - the directory holding the log of the
+    ///             previous runs.
+    /// \param[in]  dataFileDirectory - the data file directory.
+    /// \return     boolean - true if a file was renamed.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean revertLastCommit(File stateDirectory, File dataFileDirectory) throws IOException
+    {
+        Set<String> acknowledgedIds = new LinkedHashSet<String>();
+        readLog(stateDirectory, acknowledgedIds, new HashMap<String, Long>());
+
+        String lastFileId = null;
+        for(String fileId : acknowledgedIds)
+        {
+            lastFileId = fileId;
+        }
+
+        boolean hasCommit = lastFileId != null;
+        if(!hasCommit)
+        {
+            return false;
+        }
+
+        File file = new File(dataFileDirectory, lastFileId);
+        File incompleteFile = new File(dataFileDirectory, lastFileId + "." + DataFile.INCOMPLETE_FILE_APPENDIX);
+        return file.exists() && file.renameTo(incompleteFile);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         receive(File stateDirectory, int threadCount,
+    ///             int fileCount, long killAfterMillis)
+    /// \brief      Receives the files not received yet on several threads,
+    ///             and kills the process after the given time. Returns if
+    ///             all the files were received first.
+    /// \param[in]  stateDirectory - the directory holding the log.
+    /// \param[in]  threadCount - the number of receive threads.
+    /// \param[in]  fileCount - the number of files to receive.
+    /// \param[in]  killAfterMillis - the time after which the process is
+    ///             killed, 0 to never kill it.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void receive(File stateDirectory, final int threadCount, final int fileCount, long killAfterMillis) throws IOException, InterruptedException
+    {
+        final StateLog stateLog = new StateLog(new File(stateDirectory, STATE_LOG));
+        try
+        {
+            List<Thread> threads = new ArrayList<Thread>();
+            for(int threadIndex = 0; threadIndex < threadCount; threadIndex++)
+            {
+                final int firstFileIndex = threadIndex;
+                Thread thread = new Thread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for(int fileIndex = firstFileIndex; fileIndex < fileCount; fileIndex += threadCount)
+                        {
+                            try
+                            {
+                                receiveFile(FILE_PREFIX + fileIndex, stateLog);
+                            }
+                            catch(IOException ioException)
+                            {
+                                Log.e(LOG_TAG, "Error occured while receiving a file.", ioException);
+                            }
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+
+            boolean killsProcess = killAfterMillis > 0;
+            long killTime = System.currentTimeMillis() + killAfterMillis;
+            for(Thread thread : threads)
+            {
+                long waitMillis = killTime - System.currentTimeMillis();
+                boolean killDue = killsProcess && waitMillis <= 0;
+                if(killDue)
+                {
+                    break;
+                }
+
+                thread.join(killsProcess ? waitMillis : 0);
+            }
+
+            boolean receivedAll = true;
+            for(Thread thread : threads)
+            {
+                receivedAll = receivedAll && !thread.isAlive();
+            }
+
+            if(!receivedAll)
+            {
+                android.os.Process.killProcess(android.os.Process.myPid());
+            }
+        }
+        finally
+        {
+            stateLog.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         receiveFile(String fileId, StateLog stateLog)
+    /// \brief      Receives the rest of one file, unless it was already
+    ///             committed, and logs its checkpoints and its commit.
+    /// \param[in]  fileId - the ID of the file.
+    /// \param[in]  stateLog - the log of the harness.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void receiveFile(String fileId, StateLog stateLog) throws IOException
+    {
+        boolean isCommitted = new File(DataFileRepository.getDataFileDirectory(), fileId).exists();
+        if(isCommitted)
+        {
+            return;
+        }
+
+        long fileSize = getFileSize(fileId);
+        DurableDataFileWriter writer = DataFileRepository.openIncomingFile(fileId, fileSize);
+        byte[] block = new byte[BLOCK_SIZE];
+        long position = writer.getPosition();
+        long uncheckpointedBytes = 0;
+        while(position < fileSize)
+        {
+            int blockLength = (int) Math.min(block.length, fileSize - position);
+            for(int index = 0; index < blockLength; index++)
+            {
+                block[index] = getByte(fileId, position + index);
+            }
+
+            writer.write(block, 0, blockLength);
+            position += blockLength;
+            uncheckpointedBytes += blockLength;
+
+            boolean checkpointDue = uncheckpointedBytes >= CHECKPOINT_BYTES;
+            if(checkpointDue)
+            {
+                writer.checkpoint();
+                stateLog.append(CHECKPOINTED + " " + fileId + " " + position);
+                uncheckpointedBytes = 0;
+            }
+        }
+
+        DataFileRepository.commitIncomingFile(writer, COPY_BUDGET);
+        stateLog.append(ACKNOWLEDGED + " " + fileId);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readLog(File stateDirectory, Set<String> acknowledgedIds,
+    ///             Map<String, Long> checkpoints)
+    /// \brief      Reads the log of the previous runs. A line cut by the
+    ///             kill is ignored.
+    /// \param[in]  stateDirectory - the directory holding the log.
+    /// \param[in]  acknowledgedIds - filled with the IDs of the
+    ///             acknowledged files, in commit order.
+    /// \param[in]  checkpoints - filled with the last checkpoint of each
+    ///             file not acknowledged.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void readLog(File stateDirectory, Set<String> acknowledgedIds, Map<String, Long> checkpoints) throws IOException
+    {
+        File logFile = new File(stateDirectory, STATE_LOG);
+        if(!logFile.exists())
+        {
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new FileReader(logFile));
+        try
+        {
+            String line;
+            while((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split(" ");
+                boolean isAcknowledged = fields.length == 2 && fields[0].equals(ACKNOWLEDGED);
+                boolean isCheckpoint = fields.length == 3 && fields[0].equals(CHECKPOINTED);
+                if(isAcknowledged)
+                {
+                    acknowledgedIds.add(fields[1]);
+                    checkpoints.remove(fields[1]);
+                }
+                else if(isCheckpoint)
+                {
+                    try
+                    {
+                        checkpoints.put(fields[1], Long.parseLong(fields[2]));
+                    }
+                    catch(NumberFormatException numberFormatException)
+                    {
+                        Log.w(LOG_TAG, "Ignoring cut log line: " + line);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         matches(File file, String fileId, long length)
+    /// \brief      Checks the first bytes of a file against the bytes
+    ///             generated for it.
+    /// \param[in]  file - the file.
+    /// \param[in]  fileId - the ID the bytes were generated for.
+    /// \param[in]  length - the number of bytes to check.
+    /// \return     boolean - true if the bytes match.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static boolean matches(File file, String fileId, long length) throws IOException
+    {
+        if(!file.exists())
+        {
+            return false;
+        }
+
+        InputStream inputStream = new FileInputStream(file);
+        try
+        {
+            byte[] block = new byte[BLOCK_SIZE];
+            long position = 0;
+            while(position < length)
+            {
+                int readBytes = inputStream.read(block, 0, (int) Math.min(block.length, length - position));
+                if(readBytes < 0)
+                {
+                    return false;
+                }
+
+                for(int index = 0; index < readBytes; index++)
+                {
+                    if(block[index] != getByte(fileId, position + index))
+                    {
+                        return false;
+                    }
+                }
+                position += readBytes;
+            }
+            return true;
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getFileSize(String fileId)
+    /// \brief      Gets the size generated for a file.
+    /// \param[in]  fileId - the ID of the file.
+    /// \return     long - the size in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long getFileSize(String fileId)
+    {
+        return MIN_FILE_SIZE + new Random(fileId.hashCode()).nextInt(MAX_EXTRA_FILE_SIZE);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getByte(String fileId, long position)
+    /// \brief      Gets the byte generated for a position of a file.
+    /// \param[in]  fileId - the ID of the file.
+    /// \param[in]  position - the position in the file.
+    /// \return     byte - the byte.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static byte getByte(String fileId, long position)
+    {
+        return (byte) (fileId.hashCode()*31 + position*7 + (position >> 9));
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       StateLog
+    /// \brief       The log of acknowledged commits and checkpoints. Each
+    ///              line is written at once, so the kill can only cut the
+    ///              last one.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class StateLog
+    {
+        private final FileOutputStream outputStream; ///< Stream appending to the log file.
+
+        StateLog(File logFile) throws IOException
+        {
+            this.outputStream = new FileOutputStream(logFile, true);
+        }
+
+        synchronized void append(String line) throws IOException
+        {
+            outputStream.write((line + "\n").getBytes("UTF-8"));
+        }
+
+        void close() throws IOException
+        {
+            outputStream.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Result
+    /// \brief       The outcome of one verification.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Result
+    {
+        private int intactFiles = 0; ///< Number of acknowledged files found complete and intact.
+        private int corruptFiles = 0; ///< Number of acknowledged files missing or corrupt, and of resumed files with corrupt bytes.
+        private int resumedFiles = 0; ///< Number of files with a checkpoint that were reopened.
+        private int lostCheckpoints = 0; ///< Number of reopened files that resumed before their checkpoint.
+
+        public int getIntactFiles()
+        {
+            return intactFiles;
+        }
+
+        public int getCorruptFiles()
+        {
+            return corruptFiles;
+        }
+
+        public int getResumedFiles()
+        {
+            return resumedFiles;
+        }
+
+        public int getLostCheckpoints()
+        {
+            return lostCheckpoints;
+        }
+    }
+}
@@ -7,7 +7,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.Scanner;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -28,8 +27,10 @@ public class DataFile extends File
     static final String INCOMPLETE_FILE_APPENDIX = "dhincomplete"; ///< The appendix used for signaling a file that is incomplete (partially transferred).
     private static final String LOG_TAG = DataFile.class.getSimpleName(); ///< Tag for logging.
     private static final String ORIGIN_UID = "OriginUID"; ///< Key of the origin UID in the metadata.
+    private static final int METADATA_BUFFER_SIZE = 4*1024; ///< Size of the buffer the metadata file is first read into.
     private static final String CREATION_TIMESTAMP = "CreationTimestamp"; ///< Key of the creation timestamp in the metadata.
     private static final String FILE_NAME = "FileName"; ///< Key of the file name in the metadata.
+    private static final String PRIORITY = "Priority"; ///< Key of the priority class in the metadata.
 
     //////////////////////////////////////////////////////////////////////
     /// \fn         DataFile(String path)
@@ -72,6 +73,26 @@ public class DataFile extends File
         return isComplete;
     }
     
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getFileId()
+    /// \brief      Gets the ID of the data file, which is its name without
+    ///             the incomplete file suffix.
+    /// \return     String - the ID of the data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public String getFileId()
+    {
+        String fileName = this.getName();
+        String incompleteSuffix = '.' + INCOMPLETE_FILE_APPENDIX;
+        boolean hasIncompleteSuffix = fileName.endsWith(incompleteSuffix);
+        if(hasIncompleteSuffix)
+        {
+            return fileName.substring(0, fileName.length() - incompleteSuffix.length());
+        }
+        return fileName;
+    }
+    
     //////////////////////////////////////////////////////////////////////
     /// \fn         getRemoteIncompleteDataFileName()
     /// \brief         Get the current data file name in the remote machine.
@@ -118,7 +139,7 @@ public class DataFile extends File
             if(compareDataFileNames)
             {
                 Log.d(LOG_TAG, "Datafile found inside the repository.");
-                retrievedFile = dataFile;
+                retrievedFile = DataFileRepository.materialize(dataFile);
                 break;
             }
         }
@@ -136,7 +157,34 @@ public class DataFile extends File
     //////////////////////////////////////////////////////////////////////
     private String getMetadata(String key)
     {
-        String result = null;
+        JSONObject metadata = readMetadata();
+        if(metadata == null)
+        {
+            return null;
+        }
+        
+        try
+        {
+            return metadata.getString(key);
+        }
+        catch(JSONException jsonException)
+        {
+            Log.e(LOG_TAG, "Error occured while reading the metadata file.", jsonException);
+            return null;
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readMetadata()
+    /// \brief      Reads the metadata file out of the ZIP file.
+    /// \return     JSONObject - The metadata, or null if it could not be
+    ///             read.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    JSONObject readMetadata()
+    {
+        JSONObject result = null;
         ZipFile zipFile = null;
         try
         {
@@ -165,17 +213,12 @@ public class DataFile extends File
             // Get a String representation of the content of the metadata.
             InputStream stream = zipFile.getInputStream(entry);
             
-            // Break down the stream into tokens delimited by start of string.
-            Scanner scanner = new Scanner(stream, "UTF-8");
-            String json = scanner.useDelimiter("\\A").next();
+            // Read the whole metadata file into a pooled buffer.
+            String json = readText(stream);
             
-            // Create the JSON object with the file content.
-            JSONObject jsonObject = new JSONObject(json);
-            
-            // Get the result needed, and then close all streams.
-            result = jsonObject.getString(key);
+            // Create the JSON object with the file content, and then close all streams.
+            result = new JSONObject(json);
             stream.close();
-            scanner.close();
             zipFile.close();
         }
         catch(ZipException zipException)
@@ -197,6 +240,50 @@ public class DataFile extends File
         return result;
     }
     
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readText(InputStream stream)
+    /// \brief      Reads a whole UTF-8 stream with a pooled buffer, instead
+    ///             of allocating a new one for every metadata read.
+    /// \param[in]  stream - The stream to read.
+    /// \return     String - The content of the stream.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String readText(InputStream stream) throws IOException
+    {
+        BufferPool.Lease lease = BufferPool.leaseHeap(METADATA_BUFFER_SIZE);
+        try
+        {
+            int length = 0;
+            int bytesRead = 0;
+            while(true)
+            {
+                byte[] buffer = lease.getArray();
+                boolean bufferFull = length == buffer.length;
+                if(bufferFull)
+                {
+                    // Larger than usual, move to a buffer twice as large.
+                    BufferPool.Lease largerLease = BufferPool.leaseHeap(buffer.length * 2);
+                    System.arraycopy(buffer, 0, largerLease.getArray(), 0, length);
+                    lease.release();
+                    lease = largerLease;
+                    buffer = lease.getArray();
+                }
+                
+                bytesRead = stream.read(buffer, length, buffer.length - length);
+                if(bytesRead == -1)
+                {
+                    return new String(buffer, 0, length, "UTF-8");
+                }
+                length += bytesRead;
+            }
+        }
+        finally
+        {
+            lease.release();
+        }
+    }
+    
     //////////////////////////////////////////////////////////////////////
     /// \fn         getCreationTimestamp()
     /// \brief         Get the creation timestamp of the data file from metadata.
@@ -206,6 +293,13 @@ public class DataFile extends File
     //////////////////////////////////////////////////////////////////////
     public long getCreationTimestamp()
     {
+        // Use the catalog when it knows the value, to avoid opening the ZIP file.
+        CatalogEntry entry = getCatalogEntry();
+        boolean metadataCached = entry != null && entry.hasMetadata();
+        if(metadataCached)
+        {
+            return entry.getCreationTimestamp();
+        }
         return Long.parseLong(getMetadata(CREATION_TIMESTAMP));
     }
     
@@ -218,6 +312,14 @@ public class DataFile extends File
     //////////////////////////////////////////////////////////////////////
     public String getOriginUID()
     {
+        // Use the catalog when it knows the value, to avoid opening the ZIP file.
+        CatalogEntry entry = getCatalogEntry();
+        boolean metadataCached = entry != null && entry.hasMetadata();
+        if(metadataCached)
+        {
+            boolean originKnown = entry.getOriginUID().length() != 0;
+            return originKnown ? entry.getOriginUID() : null;
+        }
         return getMetadata(ORIGIN_UID);
     }
     
@@ -232,4 +334,99 @@ public class DataFile extends File
     {
         return getMetadata(FILE_NAME);
     }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getPriorityClass()
+    /// \brief      Get the priority class of the data file from metadata.
+    /// \return     PriorityClass - The priority class, NORMAL if the file
+    ///             was packaged without one.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public PriorityClass getPriorityClass()
+    {
+        // Use the catalog when it knows the value, to avoid opening the ZIP file.
+        CatalogEntry entry = getCatalogEntry();
+        boolean metadataCached = entry != null && entry.hasMetadata();
+        if(metadataCached)
+        {
+            return entry.getPriorityClass();
+        }
+        
+        JSONObject metadata = readMetadata();
+        return metadata == null ? PriorityClass.NORMAL : PriorityClass.fromLevel(metadata.optInt(PRIORITY, PriorityClass.NORMAL.ordinal()));
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCopyBudget()
+    /// \brief      Get the number of copies of the data file this agent may
+    ///             still hand out to peers.
+    /// \return     int - The copy budget. A budget of 1 means the file is
+    ///             only given to the collector.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public int getCopyBudget()
+    {
+        CatalogEntry entry = DataFileCatalog.getEntry(getFileId());
+        boolean budgetAssigned = entry != null && entry.getCopyBudget() > 0;
+        if(budgetAssigned)
+        {
+            return entry.getCopyBudget();
+        }
+        return DataFileRepository.getDefaultCopyBudget();
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCatalogEntry()
+    /// \brief      Gets the catalog entry of the data file. If the file is
+    ///             complete and the catalog does not know its metadata yet,
+    ///             the metadata is read from the ZIP file once and cached
+    ///             by the catalog, without writing anything.
+    /// \return     CatalogEntry - The catalog entry, or null if the file is
+    ///             incomplete and not in the catalog.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private CatalogEntry getCatalogEntry()
+    {
+        CatalogEntry entry = DataFileCatalog.getEntry(getFileId());
+        boolean needsMetadata = (entry == null || !entry.hasMetadata()) && isComplete();
+        if(needsMetadata)
+        {
+            entry = DataFileCatalog.cacheMetadata(this);
+        }
+        return entry;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createCatalogEntry(long size)
+    /// \brief      Creates a catalog entry for the data file. The metadata
+    ///             is read from the ZIP file if the file is complete. The
+    ///             values it does not have are left unknown, and so is all
+    ///             of the metadata of an incomplete file.
+    /// \param[in]  size - The full size of the data file in bytes.
+    /// \return     CatalogEntry - The new catalog entry.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    CatalogEntry createCatalogEntry(long size)
+    {
+        boolean isComplete = isComplete();
+        long creationTimestamp = 0;
+        String originUID = "";
+        
+        // Incomplete files cannot be opened as ZIP files, so their metadata is not read yet.
+        PriorityClass priorityClass = isComplete ? PriorityClass.NORMAL : null;
+        JSONObject metadata = isComplete ? readMetadata() : null;
+        if(metadata != null)
+        {
+            creationTimestamp = metadata.optLong(CREATION_TIMESTAMP, 0);
+            originUID = metadata.optString(ORIGIN_UID, "");
+            
+            // Files packaged before the priority classes have none, and are routine files.
+            priorityClass = PriorityClass.fromLevel(metadata.optInt(PRIORITY, PriorityClass.NORMAL.ordinal()));
+        }
+        return new CatalogEntry(getFileId(), size, isComplete, length(), creationTimestamp, originUID, 0, false, priorityClass);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,1378 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import net.g3ti.droidhopper.phoneagent.util.FileManager;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       DataFileCatalog
+/// \brief       Persistent catalog of the data files, so that the agent
+///              does not have to list the directory and open every ZIP
+///              file after a restart.
+///
+///              The catalog is a file of fixed size records sorted by file
+///              ID, which are read in place through a memory map: an entry
+///              is found by a binary search over the mapped records, and
+///              only the entries changed since the file was written are
+///              kept on the heap. Texts too long for their field are kept
+///              in a text area after the records. Changes are appended to
+///              a small journal, which is replayed on load and merged into
+///              the catalog once it gets long. A catalog of another format
+///              counts as corrupt. If the catalog is missing or corrupt,
+///              it is rebuilt from the data file directory.
+///
+///              The receive code may add, complete or delete data files
+///              without going through the catalog, so the catalog is
+///              reconciled with the data file directory periodically, and
+///              before a query once the directory changed. A catalog that
+///              loads is trusted as it is.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class DataFileCatalog
+{
+    private static final String LOG_TAG = DataFileCatalog.class.getSimpleName(); ///< Tag for logging.
+    private static final String CATALOG_DIRECTORY = "catalog"; ///< The catalog directory name.
+    private static final String CATALOG_FILE_NAME = "catalog.dat"; ///< The name of the catalog file.
+    private static final String TEMPORARY_CATALOG_FILE_NAME = "catalog.tmp"; ///< The name of the catalog file while it is being written.
+    private static final String JOURNAL_FILE_NAME = "catalog.journal"; ///< The name of the journal file.
+    private static final Charset CHARSET = Charset.forName("UTF-8"); ///< The charset of the text fields.
+
+    private static final int MAGIC = 0x44484354; ///< Marks the beginning of a catalog file ("DHCT").
+    private static final int VERSION = 1; ///< Version of the record format.
+    private static final int HEADER_SIZE = 20; ///< Magic, version, number of records, size of the text area and checksum of the records and text area.
+    private static final int ID_FIELD_SIZE = 64; ///< Size in bytes of the file ID field.
+    private static final int ORIGIN_FIELD_SIZE = 64; ///< Size in bytes of the origin UID field.
+    private static final int RECORD_SIZE = ID_FIELD_SIZE + 8 + 1 + 8 + 8 + ORIGIN_FIELD_SIZE + 4 + 1 + 1 + 8; ///< Size in bytes of one record.
+    private static final int JOURNAL_HEADER_SIZE = 1 + 4; ///< Operation and size of the text area of a journal record.
+    private static final byte LONG_TEXT_MARKER = (byte) 0xFF; ///< First byte of a text field holding the position of its text in the text area. Never starts a UTF-8 text.
+    private static final byte UNKNOWN_PRIORITY = -1; ///< Priority field of the entries whose metadata was not read yet.
+    private static final byte JOURNAL_PUT = 1; ///< Journal operation that adds or replaces an entry.
+    private static final byte JOURNAL_REMOVE = 2; ///< Journal operation that removes an entry.
+    private static final int COMPACTION_THRESHOLD = 1024; ///< Number of journal records after which the catalog is rewritten.
+    private static final int CHECKSUM_BUFFER_SIZE = 64*1024; ///< Size of the buffer the mapped catalog is checksummed through.
+    private static final int WRITE_BATCH_RECORDS = 256; ///< Number of records written at once by a compaction.
+    private static final long DIRECTORY_TIMESTAMP_GRANULARITY_MILLIS = 2000; ///< Coarsest modification time granularity of the file systems of the data file directory, FAT keeping 2 s.
+
+    private static boolean loaded = false; ///< TRUE once the catalog is loaded.
+    private static ByteBuffer records = null; ///< The mapped records of the catalog file, sorted by file ID, null if there is no catalog file.
+    private static ByteBuffer textArea = null; ///< The mapped texts too long for their record field, null if there is no catalog file.
+    private static int recordCount = 0; ///< The number of mapped records.
+    private static final TreeMap<String, CatalogEntry> changes = new TreeMap<String, CatalogEntry>(); ///< The entries changed since the catalog file was written, by file ID. Removed entries map to null.
+    private static int entryCount = 0; ///< The number of entries.
+    private static FileChannel journalChannel = null; ///< The journal open for appending, null if the catalog is not persisted.
+    private static int journalRecordCount = 0; ///< The number of records in the journal.
+    private static final DataFileIndex index = new DataFileIndex(); ///< The secondary indexes over the entries.
+    private static boolean indexBuilt = false; ///< TRUE once the indexes were built, they are only built when first used.
+    private static long reconciledDirectoryTimestamp = -1; ///< The modification time of the data file directory the last reconciliation saw, -1 if it has to run again.
+
+    static final IMaintenancePass MAINTENANCE_PASS = new IMaintenancePass()
+    {
+        @Override
+        public void runPass() throws InterruptedIOException
+        {
+            // Pick up the files the receive code added or deleted without the catalog.
+            reconcile();
+            compactIfDue();
+        }
+    }; ///< Reconciles the catalog with the directory, and compacts its journal when due.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         load()
+    /// \brief      Loads the catalog if it is not loaded yet. This maps the
+    ///             catalog file and replays the journal, or rebuilds the
+    ///             catalog from the directory if it is missing or corrupt.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void load()
+    {
+        if(loaded)
+        {
+            return;
+        }
+
+        loaded = true;
+        readEntries();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getIndex()
+    /// \brief      Gets the secondary indexes over the entries, building
+    ///             them the first time. Callers must hold the lock of this
+    ///             class while they use them.
+    /// \return     DataFileIndex - the indexes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static synchronized DataFileIndex getIndex()
+    {
+        load();
+        if(!indexBuilt)
+        {
+            index.rebuild(getEntries());
+            indexBuilt = true;
+        }
+        return index;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readEntries()
+    /// \brief      Reads the entries by mapping the catalog file and
+    ///             replaying the journal, or by rebuilding the catalog from
+    ///             the data file directory.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void readEntries()
+    {
+        File catalogDirectory = FileManager.getFileDirectory(CATALOG_DIRECTORY);
+        boolean isDirectoryAvailable = catalogDirectory != null;
+        if(!isDirectoryAvailable)
+        {
+            // Keep the catalog in memory only.
+            Log.w(LOG_TAG, "Catalog directory is not available, the catalog will not be persisted.");
+            rebuild();
+            return;
+        }
+
+        try
+        {
+            boolean catalogRead = readCatalog(new File(catalogDirectory, CATALOG_FILE_NAME));
+            openJournal(new File(catalogDirectory, JOURNAL_FILE_NAME));
+            if(catalogRead)
+            {
+                replayJournal();
+                Log.i(LOG_TAG, "Catalog loaded with " + entryCount + " entries.");
+
+                // Trust the loaded catalog, the next query only reconciles if the directory changes from now on.
+                File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+                long directoryTimestamp = dataFileDirectory == null ? -1 : dataFileDirectory.lastModified();
+                boolean timestampSettled = System.currentTimeMillis() - directoryTimestamp >= DIRECTORY_TIMESTAMP_GRANULARITY_MILLIS;
+                reconciledDirectoryTimestamp = timestampSettled ? directoryTimestamp : -1;
+                return;
+            }
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while loading the catalog.", ioException);
+        }
+        catch(RuntimeException exception)
+        {
+            // A record pointing out of its text area, for example.
+            Log.e(LOG_TAG, "Catalog is inconsistent.", exception);
+        }
+
+        // The catalog is missing or corrupt, so rebuild it from the directory.
+        Log.w(LOG_TAG, "Catalog is missing or corrupt, rebuilding it from the data files.");
+        rebuild();
+        try
+        {
+            if(journalChannel == null)
+            {
+                openJournal(new File(catalogDirectory, JOURNAL_FILE_NAME));
+            }
+            compact();
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while opening the journal, the catalog will not be persisted.", ioException);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getEntry(String fileId)
+    /// \brief      Gets the entry of a data file.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     CatalogEntry - the entry, or null if the file is not in
+    ///             the catalog.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized CatalogEntry getEntry(String fileId)
+    {
+        load();
+        return findEntry(fileId);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getEntries()
+    /// \brief      Gets all the entries of the catalog.
+    /// \return     List<CatalogEntry> - a copy of the entries, in file ID
+    ///             order.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized List<CatalogEntry> getEntries()
+    {
+        load();
+        List<CatalogEntry> entries = new ArrayList<CatalogEntry>(entryCount);
+        for(EntryIterator iterator = new EntryIterator(); iterator.hasNext(); )
+        {
+            entries.add(iterator.next());
+        }
+        return entries;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         update(DataFile dataFile)
+    /// \brief      Updates the entry of a data file from the file itself.
+    ///             The metadata is only read from the ZIP file if the
+    ///             catalog does not know it yet.
+    /// \param[in]  dataFile - the data file to update.
+    /// \return     CatalogEntry - the updated entry.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static CatalogEntry update(DataFile dataFile) throws IOException
+    {
+        CatalogEntry previousEntry = getEntry(dataFile.getFileId());
+        long size = dataFile.length();
+        boolean keepPreviousSize = !dataFile.isComplete() && previousEntry != null;
+        if(keepPreviousSize)
+        {
+            size = previousEntry.getSize();
+        }
+        return update(dataFile, size);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         update(DataFile dataFile, long size)
+    /// \brief      Updates the entry of a data file whose full size is
+    ///             known, for example a file being received. The ZIP file
+    ///             is read without holding the lock of the catalog. If the
+    ///             change cannot be journaled, the entry is changed in
+    ///             memory anyway and the IOException is thrown.
+    /// \param[in]  dataFile - the data file to update.
+    /// \param[in]  size - the full size of the data file in bytes.
+    /// \return     CatalogEntry - the updated entry.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static CatalogEntry update(DataFile dataFile, long size) throws IOException
+    {
+        CatalogEntry previousEntry = getEntry(dataFile.getFileId());
+        boolean metadataKnown = previousEntry != null && previousEntry.hasMetadata();
+        CatalogEntry fileEntry = null;
+        if(metadataKnown)
+        {
+            fileEntry = new CatalogEntry(dataFile.getFileId(), size, dataFile.isComplete(), dataFile.length(),
+                    previousEntry.getCreationTimestamp(), previousEntry.getOriginUID(), 0, false, previousEntry.getPriorityClass());
+        }
+        else
+        {
+            fileEntry = dataFile.createCatalogEntry(size);
+        }
+
+        synchronized(DataFileCatalog.class)
+        {
+            // The custody is not stored in the file, keep what the catalog knows now.
+            CatalogEntry entry = fileEntry;
+            CatalogEntry currentEntry = findEntry(dataFile.getFileId());
+            if(currentEntry != null)
+            {
+                entry = entry.withCustody(currentEntry.getCopyBudget(), currentEntry.isAcknowledged(), currentEntry.getAcknowledgedTimestamp());
+            }
+            put(entry);
+            return entry;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         cacheMetadata(DataFile dataFile)
+    /// \brief      Reads the metadata of a complete data file the catalog
+    ///             does not know it of, and keeps it in memory only. The
+    ///             values the metadata does not have stay unknown, and the
+    ///             file is not read again for them. Nothing is written, so
+    ///             that the getters of a data file stay side effect free.
+    /// \param[in]  dataFile - the complete data file.
+    /// \return     CatalogEntry - the entry with the metadata, kept in the
+    ///             catalog only if the file is in it.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static CatalogEntry cacheMetadata(DataFile dataFile)
+    {
+        // Reading the metadata opens the ZIP file, so it is done outside the lock.
+        CatalogEntry fileEntry = dataFile.createCatalogEntry(dataFile.length());
+        synchronized(DataFileCatalog.class)
+        {
+            CatalogEntry currentEntry = getEntry(dataFile.getFileId());
+            boolean isInCatalog = currentEntry != null;
+            if(!isInCatalog)
+            {
+                return fileEntry;
+            }
+            if(currentEntry.hasMetadata())
+            {
+                return currentEntry;
+            }
+
+            // Only the metadata is new, the rest stays as the catalog knows it.
+            CatalogEntry entry = new CatalogEntry(currentEntry.getFileId(), currentEntry.getSize(), currentEntry.isComplete(),
+                    currentEntry.getProgress(), fileEntry.getCreationTimestamp(), fileEntry.getOriginUID(), currentEntry.getCopyBudget(),
+                    currentEntry.isAcknowledged(), fileEntry.getPriorityClass(), currentEntry.getAcknowledgedTimestamp());
+            putEntry(entry);
+            return entry;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         remove(String fileId)
+    /// \brief      Removes the entry of a data file, once it was deleted.
+    ///             If the removal cannot be journaled, the entry is removed
+    ///             in memory anyway and the IOException is thrown.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void remove(String fileId) throws IOException
+    {
+        load();
+        CatalogEntry removedEntry = removeEntry(fileId);
+        boolean wasInCatalog = removedEntry != null;
+        if(wasInCatalog)
+        {
+            appendToJournal(JOURNAL_REMOVE, removedEntry);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         put(CatalogEntry entry)
+    /// \brief      Adds or replaces an entry and records it in the journal.
+    ///             If the change cannot be journaled, the entry is stored
+    ///             in memory anyway and the IOException is thrown.
+    /// \param[in]  entry - the entry to store.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static synchronized void put(CatalogEntry entry) throws IOException
+    {
+        load();
+        CatalogEntry previousEntry = putEntry(entry);
+
+        // A file is stored once the catalog first sees it complete.
+        boolean becameComplete = entry.isComplete() && !entry.isAcknowledged() && (previousEntry == null || !previousEntry.isComplete());
+        if(becameComplete)
+        {
+            boolean received = previousEntry != null;
+            DataFileMetrics.recordStored(entry.getFileId(), received);
+        }
+        appendToJournal(JOURNAL_PUT, entry);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         reconcile()
+    /// \brief      Brings the catalog in line with the data file directory:
+    ///             adds the files it does not know, marks complete the files
+    ///             renamed to complete, and removes the entries of the files
+    ///             that are not stored anymore. The delivery tombstones are
+    ///             kept. The metadata of the new files is read without
+    ///             holding the lock of the catalog.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void reconcile()
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        long startTime = System.currentTimeMillis();
+        long directoryTimestamp = dataFileDirectory == null ? 0 : dataFileDirectory.lastModified();
+        String[] fileNames = dataFileDirectory == null ? null : dataFileDirectory.list();
+        if(fileNames == null)
+        {
+            return;
+        }
+
+        String incompleteSuffix = '.' + DataFile.INCOMPLETE_FILE_APPENDIX;
+        Set<String> completeFileIds = new HashSet<String>();
+        Set<String> incompleteFileIds = new HashSet<String>();
+        for(String fileName : fileNames)
+        {
+            boolean isIncomplete = fileName.endsWith(incompleteSuffix);
+            if(isIncomplete)
+            {
+                incompleteFileIds.add(fileName.substring(0, fileName.length() - incompleteSuffix.length()));
+            }
+            else
+            {
+                completeFileIds.add(fileName);
+            }
+        }
+
+        // Compare the catalog with the directory. What is left in the sets afterwards is not in the catalog.
+        List<String> missingFileIds = new ArrayList<String>();
+        List<DataFile> newDataFiles = new ArrayList<DataFile>();
+        synchronized(DataFileCatalog.class)
+        {
+            load();
+            for(EntryIterator iterator = new EntryIterator(); iterator.hasNext(); )
+            {
+                CatalogEntry entry = iterator.next();
+                String fileId = entry.getFileId();
+                boolean isComplete = completeFileIds.remove(fileId);
+                boolean isIncomplete = incompleteFileIds.remove(fileId);
+                boolean isMissing = !isComplete && !isIncomplete && !entry.isAcknowledged();
+                if(isMissing)
+                {
+                    missingFileIds.add(fileId);
+                }
+
+                boolean becameComplete = isComplete && !entry.isComplete();
+                if(becameComplete)
+                {
+                    newDataFiles.add(new DataFile(dataFileDirectory, fileId));
+                }
+            }
+        }
+        for(String fileId : completeFileIds)
+        {
+            newDataFiles.add(new DataFile(dataFileDirectory, fileId));
+        }
+        for(String fileId : incompleteFileIds)
+        {
+            boolean hasCompleteFile = completeFileIds.contains(fileId);
+            boolean isBeingReceived = TransferRegistry.isReceiving(fileId);
+            if(!hasCompleteFile && !isBeingReceived)
+            {
+                newDataFiles.add(new DataFile(dataFileDirectory, fileId + incompleteSuffix));
+            }
+        }
+
+        // Reading the metadata opens the ZIP files, so it is done outside the lock.
+        List<CatalogEntry> newEntries = new ArrayList<CatalogEntry>();
+        for(DataFile newDataFile : newDataFiles)
+        {
+            newEntries.add(newDataFile.createCatalogEntry(newDataFile.length()));
+        }
+
+        // Apply what is still true, the receive code may have changed the files since they were listed.
+        int removedCount = 0;
+        int addedCount = 0;
+        boolean journaled = true;
+        synchronized(DataFileCatalog.class)
+        {
+            try
+            {
+                for(String fileId : missingFileIds)
+                {
+                    CatalogEntry entry = findEntry(fileId);
+                    boolean isStored = new File(dataFileDirectory, fileId).exists()
+                            || new File(dataFileDirectory, fileId + incompleteSuffix).exists()
+                            || ChunkStore.contains(fileId) || ColdStore.contains(fileId);
+                    boolean isStale = entry != null && !entry.isAcknowledged() && !isStored;
+                    if(isStale)
+                    {
+                        remove(fileId);
+                        removedCount++;
+                    }
+                }
+
+                for(CatalogEntry newEntry : newEntries)
+                {
+                    CatalogEntry previousEntry = findEntry(newEntry.getFileId());
+                    boolean isNew = previousEntry == null;
+                    boolean becameComplete = !isNew && newEntry.isComplete() && !previousEntry.isComplete();
+                    if(isNew)
+                    {
+                        put(newEntry);
+                        addedCount++;
+                    }
+                    else if(becameComplete)
+                    {
+                        put(newEntry.withCustody(previousEntry.getCopyBudget(), previousEntry.isAcknowledged(), previousEntry.getAcknowledgedTimestamp()));
+                        addedCount++;
+                    }
+                }
+            }
+            catch(IOException ioException)
+            {
+                // What was applied stays in memory for the next compaction, the rest is applied by the next reconciliation.
+                Log.e(LOG_TAG, "Error occured while journaling the reconciliation.", ioException);
+                journaled = false;
+            }
+        }
+
+        boolean changed = removedCount != 0 || addedCount != 0;
+        if(changed)
+        {
+            Log.i(LOG_TAG, "Catalog reconciled: " + addedCount + " entries added or completed, " + removedCount + " removed.");
+        }
+
+        // A change in the same tick as the listing does not move the time of the directory, so a recent time is not trusted.
+        boolean timestampSettled = startTime - directoryTimestamp >= DIRECTORY_TIMESTAMP_GRANULARITY_MILLIS;
+        synchronized(DataFileCatalog.class)
+        {
+            reconciledDirectoryTimestamp = timestampSettled && journaled ? directoryTimestamp : -1;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         reconcileIfChanged()
+    /// \brief      Reconciles the catalog with the data file directory if
+    ///             files were added, renamed or deleted in the directory
+    ///             since the last reconciliation, so that a query sees the
+    ///             files the receive code handled without the catalog. The
+    ///             check is a single stat of the directory.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void reconcileIfChanged()
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            return;
+        }
+
+        long directoryTimestamp = dataFileDirectory.lastModified();
+        synchronized(DataFileCatalog.class)
+        {
+            boolean unchanged = directoryTimestamp == reconciledDirectoryTimestamp;
+            if(unchanged)
+            {
+                return;
+            }
+        }
+        reconcile();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         rebuild()
+    /// \brief      Rebuilds the entries from the data file directory and
+    ///             from the files kept by the other stores, forgetting the
+    ///             catalog file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void rebuild()
+    {
+        records = null;
+        textArea = null;
+        recordCount = 0;
+        changes.clear();
+        entryCount = 0;
+        indexBuilt = false;
+
+        // The files kept as chunks or cold are not in the directory.
+        List<DataFile> storedDataFiles = new ArrayList<DataFile>(ChunkStore.getDataFiles());
+        storedDataFiles.addAll(ColdStore.getDataFiles());
+        for(DataFile storedDataFile : storedDataFiles)
+        {
+            putEntry(storedDataFile.createCatalogEntry(storedDataFile.length()));
+        }
+        reconcile();
+        Log.i(LOG_TAG, "Catalog rebuilt with " + entryCount + " entries.");
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readCatalog(File catalogFile)
+    /// \brief      Maps the catalog file and checks it.
+    /// \param[in]  catalogFile - the catalog file.
+    /// \return     boolean - TRUE if the catalog was read, FALSE if it is
+    ///             missing or corrupt.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static boolean readCatalog(File catalogFile) throws IOException
+    {
+        boolean catalogExists = catalogFile.exists();
+        if(!catalogExists)
+        {
+            return false;
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(catalogFile, "r");
+        try
+        {
+            // The mapping stays valid once the file is closed.
+            FileChannel channel = randomAccessFile.getChannel();
+            long catalogSize = channel.size();
+            boolean hasHeader = catalogSize >= HEADER_SIZE;
+            if(!hasHeader)
+            {
+                return false;
+            }
+
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, catalogSize);
+            int magic = buffer.getInt(0);
+            int version = buffer.getInt(4);
+            if(magic != MAGIC || version != VERSION)
+            {
+                return false;
+            }
+
+            int mappedRecordCount = buffer.getInt(8);
+            int textAreaSize = buffer.getInt(12);
+            int checksum = buffer.getInt(16);
+            boolean validHeader = mappedRecordCount >= 0 && textAreaSize >= 0
+                    && catalogSize == HEADER_SIZE + (long) mappedRecordCount * RECORD_SIZE + textAreaSize;
+            if(!validHeader)
+            {
+                return false;
+            }
+
+            // Verify the records before using any of them, without copying them out of the mapping.
+            boolean validChecksum = computeChecksum(slice(buffer, HEADER_SIZE, (int) catalogSize - HEADER_SIZE)) == checksum;
+            if(!validChecksum)
+            {
+                return false;
+            }
+
+            int recordsSize = mappedRecordCount * RECORD_SIZE;
+            records = slice(buffer, HEADER_SIZE, recordsSize);
+            textArea = slice(buffer, HEADER_SIZE + recordsSize, textAreaSize);
+            recordCount = mappedRecordCount;
+            entryCount = mappedRecordCount;
+            return true;
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         openJournal(File journalFile)
+    /// \brief      Opens the journal, creating it if needed.
+    /// \param[in]  journalFile - the journal file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void openJournal(File journalFile) throws IOException
+    {
+        journalChannel = new RandomAccessFile(journalFile, "rw").getChannel();
+        journalRecordCount = 0;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         replayJournal()
+    /// \brief      Applies the journal records to the entries. A torn or
+    ///             corrupt record ends the replay, and the journal is cut
+    ///             there.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void replayJournal() throws IOException
+    {
+        long journalSize = journalChannel.size();
+        ByteBuffer buffer = journalChannel.map(FileChannel.MapMode.READ_ONLY, 0, journalSize);
+        long validSize = 0;
+        while(true)
+        {
+            int journalRecordSize = replayJournalRecord(buffer);
+            if(journalRecordSize == 0)
+            {
+                break;
+            }
+            validSize += journalRecordSize;
+            journalRecordCount++;
+        }
+
+        // Drop whatever comes after the last valid record, and append after it.
+        boolean hasInvalidTail = validSize != journalSize;
+        if(hasInvalidTail)
+        {
+            Log.w(LOG_TAG, "Discarding " + (journalSize - validSize) + " bytes at the end of the journal.");
+            journalChannel.truncate(validSize);
+        }
+        journalChannel.position(validSize);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         replayJournalRecord(ByteBuffer buffer)
+    /// \brief      Applies the journal record at the position of the buffer
+    ///             and moves past it. A record carries the texts too long
+    ///             for their field after it.
+    /// \param[in]  buffer - the mapped journal.
+    /// \return     int - the size of the record, 0 if it is torn or
+    ///             corrupt.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int replayJournalRecord(ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        if(buffer.remaining() < JOURNAL_HEADER_SIZE)
+        {
+            return 0;
+        }
+
+        int textSize = buffer.getInt(start + 1);
+        long journalRecordSize = (long) JOURNAL_HEADER_SIZE + RECORD_SIZE + textSize + 4;
+        boolean isWhole = textSize >= 0 && buffer.remaining() >= journalRecordSize;
+        if(!isWhole)
+        {
+            return 0;
+        }
+        int checksumOffset = start + (int) journalRecordSize - 4;
+        boolean validChecksum = computeChecksum(slice(buffer, start, checksumOffset - start)) == buffer.getInt(checksumOffset);
+        if(!validChecksum)
+        {
+            return 0;
+        }
+
+        byte operation = buffer.get(start);
+        ByteBuffer texts = slice(buffer, start + JOURNAL_HEADER_SIZE + RECORD_SIZE, textSize);
+        CatalogEntry entry = readRecord(slice(buffer, start + JOURNAL_HEADER_SIZE, RECORD_SIZE), texts);
+        if(operation == JOURNAL_PUT)
+        {
+            putEntry(entry);
+        }
+        else
+        {
+            removeEntry(entry.getFileId());
+        }
+        buffer.position(start + (int) journalRecordSize);
+        return (int) journalRecordSize;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         appendToJournal(byte operation, CatalogEntry entry)
+    /// \brief      Appends a record to the journal, and compacts the
+    ///             catalog if the journal got too long. A write error is
+    ///             thrown rather than logged, as the committer takes the
+    ///             record as the proof that a file is stored. A catalog
+    ///             that is not persisted has no journal.
+    /// \param[in]  operation - the journal operation.
+    /// \param[in]  entry - the entry the operation applies to.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void appendToJournal(byte operation, CatalogEntry entry) throws IOException
+    {
+        boolean isPersisted = journalChannel != null;
+        if(!isPersisted)
+        {
+            return;
+        }
+
+        ByteArrayOutputStream texts = new ByteArrayOutputStream();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        writeRecord(record, entry, texts);
+        byte[] textBytes = texts.toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.allocate(JOURNAL_HEADER_SIZE + RECORD_SIZE + textBytes.length + 4);
+        buffer.put(operation);
+        buffer.putInt(textBytes.length);
+        buffer.put(record.array());
+        buffer.put(textBytes);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        long journalPosition = journalChannel.position();
+        try
+        {
+            while(buffer.hasRemaining())
+            {
+                journalChannel.write(buffer);
+            }
+        }
+        catch(IOException ioException)
+        {
+            // Do not leave a torn record for the next ones to follow, the replay would stop at it.
+            journalChannel.position(journalPosition);
+            throw ioException;
+        }
+        journalRecordCount++;
+
+        // Compaction is background work: during a transfer it is left to compactIfDue, however long the journal gets.
+        boolean journalTooLong = journalRecordCount >= COMPACTION_THRESHOLD;
+        if(journalTooLong && IoScheduler.tryAcquire(IoScheduler.IoClass.BACKGROUND, getCatalogSize()))
+        {
+            compact();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         compactIfDue()
+    /// \brief      Compacts the catalog if the journal got too long while
+    ///             compaction was deferred. Called by the storage manager.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void compactIfDue() throws InterruptedIOException
+    {
+        long catalogSize = 0;
+        synchronized(DataFileCatalog.class)
+        {
+            boolean journalTooLong = journalRecordCount >= COMPACTION_THRESHOLD;
+            if(!journalTooLong)
+            {
+                return;
+            }
+            catalogSize = getCatalogSize();
+        }
+
+        // Wait for the transfers outside the lock, the transfers need the catalog.
+        IoScheduler.acquire(IoScheduler.IoClass.BACKGROUND, catalogSize);
+        synchronized(DataFileCatalog.class)
+        {
+            boolean journalTooLong = journalRecordCount >= COMPACTION_THRESHOLD;
+            if(journalTooLong)
+            {
+                compact();
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCatalogSize()
+    /// \brief      Estimates the size of the catalog file written by a
+    ///             compaction.
+    /// \return     long - the size in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long getCatalogSize()
+    {
+        return HEADER_SIZE + (long) entryCount * RECORD_SIZE;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         sync()
+    /// \brief      Forces the journal records appended so far to the
+    ///             storage, so that they survive a power loss.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static synchronized void sync() throws IOException
+    {
+        boolean isPersisted = journalChannel != null;
+        if(isPersisted)
+        {
+            journalChannel.force(false);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         compact()
+    /// \brief      Merges the changed entries with the mapped records into
+    ///             a new catalog file, replaces the old one with it, maps
+    ///             it and empties the journal. The entries are streamed in
+    ///             file ID order, they are never all on the heap.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static synchronized void compact()
+    {
+        File catalogDirectory = FileManager.getFileDirectory(CATALOG_DIRECTORY);
+        boolean isPersisted = catalogDirectory != null && journalChannel != null;
+        if(!isPersisted)
+        {
+            return;
+        }
+
+        File temporaryCatalogFile = new File(catalogDirectory, TEMPORARY_CATALOG_FILE_NAME);
+        File catalogFile = new File(catalogDirectory, CATALOG_FILE_NAME);
+        try
+        {
+            // Write the new catalog to a temporary file first, so that a crash never leaves half a catalog.
+            int writtenCount = writeCatalog(temporaryCatalogFile);
+            boolean renamed = temporaryCatalogFile.renameTo(catalogFile);
+            if(!renamed)
+            {
+                throw new IOException("Catalog file could not be replaced.");
+            }
+
+            // The new file holds every change, so the changes and the journal can go.
+            changes.clear();
+            boolean catalogRead = readCatalog(catalogFile);
+            if(!catalogRead)
+            {
+                throw new IOException("Catalog file could not be read back.");
+            }
+            journalChannel.truncate(0);
+            journalChannel.position(0);
+            journalRecordCount = 0;
+            Log.d(LOG_TAG, "Catalog compacted with " + writtenCount + " entries.");
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while compacting the catalog.", ioException);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeCatalog(File file)
+    /// \brief      Writes all the entries, in file ID order, to a catalog
+    ///             file and syncs it.
+    /// \param[in]  file - the file to write.
+    /// \return     int - the number of entries written.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int writeCatalog(File file) throws IOException
+    {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            channel.position(HEADER_SIZE);
+
+            CRC32 crc = new CRC32();
+            ByteArrayOutputStream texts = new ByteArrayOutputStream();
+            ByteBuffer batch = ByteBuffer.allocate(WRITE_BATCH_RECORDS * RECORD_SIZE);
+            int writtenCount = 0;
+            for(EntryIterator iterator = new EntryIterator(); iterator.hasNext(); )
+            {
+                writeRecord(batch, iterator.next(), texts);
+                writtenCount++;
+                if(!batch.hasRemaining())
+                {
+                    writeBatch(channel, batch, crc);
+                }
+            }
+            writeBatch(channel, batch, crc);
+            byte[] textBytes = texts.toByteArray();
+            ByteBuffer textBuffer = ByteBuffer.wrap(textBytes);
+            textBuffer.position(textBytes.length);
+            writeBatch(channel, textBuffer, crc);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(writtenCount);
+            header.putInt(textBytes.length);
+            header.putInt((int) crc.getValue());
+            header.flip();
+            while(header.hasRemaining())
+            {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            return writtenCount;
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeBatch(FileChannel channel, ByteBuffer batch,
+    ///             CRC32 crc)
+    /// \brief      Writes the bytes put in a buffer so far, adds them to
+    ///             the checksum, and clears the buffer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void writeBatch(FileChannel channel, ByteBuffer batch, CRC32 crc) throws IOException
+    {
+        batch.flip();
+        crc.update(batch.array(), batch.arrayOffset(), batch.limit());
+        while(batch.hasRemaining())
+        {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         findEntry(String fileId)
+    /// \brief      Gets the entry of a data file from the changes, or from
+    ///             the mapped records with a binary search.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     CatalogEntry - the entry, or null if there is none.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static CatalogEntry findEntry(String fileId)
+    {
+        boolean isChanged = changes.containsKey(fileId);
+        if(isChanged)
+        {
+            return changes.get(fileId);
+        }
+        int recordIndex = findRecord(fileId);
+        return recordIndex < 0 ? null : readRecordAt(recordIndex);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         findRecord(String fileId)
+    /// \brief      Searches the mapped records for a file ID.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     int - the index of the record, or -1 if there is none.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int findRecord(String fileId)
+    {
+        int low = 0;
+        int high = recordCount - 1;
+        while(low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int comparison = readFileIdAt(middle).compareTo(fileId);
+            if(comparison < 0)
+            {
+                low = middle + 1;
+            }
+            else if(comparison > 0)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         putEntry(CatalogEntry entry)
+    /// \brief      Adds or replaces an entry in memory, and in the indexes
+    ///             if they are built.
+    /// \param[in]  entry - the entry to store.
+    /// \return     CatalogEntry - the replaced entry, null if there was none.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static CatalogEntry putEntry(CatalogEntry entry)
+    {
+        CatalogEntry previousEntry = findEntry(entry.getFileId());
+        changes.put(entry.getFileId(), entry);
+        if(previousEntry == null)
+        {
+            entryCount++;
+        }
+
+        if(indexBuilt)
+        {
+            if(previousEntry != null)
+            {
+                index.remove(previousEntry);
+            }
+            index.add(entry);
+        }
+        return previousEntry;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         removeEntry(String fileId)
+    /// \brief      Removes an entry in memory, and from the indexes if they
+    ///             are built.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     CatalogEntry - the removed entry, null if there was none.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static CatalogEntry removeEntry(String fileId)
+    {
+        CatalogEntry previousEntry = findEntry(fileId);
+        if(previousEntry == null)
+        {
+            return null;
+        }
+
+        // A mapped record stays until the next compaction, so it is hidden by a removed change.
+        boolean isMapped = findRecord(fileId) >= 0;
+        if(isMapped)
+        {
+            changes.put(fileId, null);
+        }
+        else
+        {
+            changes.remove(fileId);
+        }
+        entryCount--;
+
+        if(indexBuilt)
+        {
+            index.remove(previousEntry);
+        }
+        return previousEntry;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         computeChecksum(ByteBuffer buffer)
+    /// \brief      Computes the CRC of the remaining bytes of a buffer,
+    ///             through a small pooled buffer.
+    /// \param[in]  buffer - the bytes to check, left unchanged.
+    /// \return     int - the CRC.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int computeChecksum(ByteBuffer buffer)
+    {
+        ByteBuffer source = buffer.duplicate();
+        CRC32 crc = new CRC32();
+        BufferPool.Lease lease = BufferPool.leaseHeap(CHECKSUM_BUFFER_SIZE);
+        try
+        {
+            byte[] chunk = lease.getArray();
+            while(source.hasRemaining())
+            {
+                int length = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+        }
+        finally
+        {
+            lease.release();
+        }
+        return (int) crc.getValue();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         slice(ByteBuffer buffer, int offset, int length)
+    /// \brief      Gets a part of a buffer, sharing its content.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length)
+    {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readFileIdAt(int recordIndex)
+    /// \brief      Reads only the file ID of a mapped record.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String readFileIdAt(int recordIndex)
+    {
+        return readText(slice(records, recordIndex * RECORD_SIZE, ID_FIELD_SIZE), ID_FIELD_SIZE, textArea);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readRecordAt(int recordIndex)
+    /// \brief      Reads the entry of a mapped record.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static CatalogEntry readRecordAt(int recordIndex)
+    {
+        return readRecord(slice(records, recordIndex * RECORD_SIZE, RECORD_SIZE), textArea);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeRecord(ByteBuffer buffer, CatalogEntry entry,
+    ///             ByteArrayOutputStream texts)
+    /// \brief      Writes an entry as a fixed size record.
+    /// \param[in]  buffer - the buffer to write to.
+    /// \param[in]  entry - the entry to write.
+    /// \param[in]  texts - the text area the texts too long for their
+    ///             field are added to.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void writeRecord(ByteBuffer buffer, CatalogEntry entry, ByteArrayOutputStream texts)
+    {
+        writeText(buffer, entry.getFileId(), ID_FIELD_SIZE, texts);
+        buffer.putLong(entry.getSize());
+        buffer.put((byte) (entry.isComplete() ? 1 : 0));
+        buffer.putLong(entry.getProgress());
+        buffer.putLong(entry.getCreationTimestamp());
+        writeText(buffer, entry.getOriginUID(), ORIGIN_FIELD_SIZE, texts);
+        buffer.putInt(entry.getCopyBudget());
+        buffer.put((byte) (entry.isAcknowledged() ? 1 : 0));
+        buffer.put(entry.hasMetadata() ? (byte) entry.getPriorityClass().ordinal() : UNKNOWN_PRIORITY);
+        buffer.putLong(entry.getAcknowledgedTimestamp());
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readRecord(ByteBuffer buffer, ByteBuffer texts)
+    /// \brief      Reads an entry from a fixed size record.
+    /// \param[in]  buffer - the buffer to read from.
+    /// \param[in]  texts - the text area of the record.
+    /// \return     CatalogEntry - the entry read.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static CatalogEntry readRecord(ByteBuffer buffer, ByteBuffer texts)
+    {
+        String fileId = readText(buffer, ID_FIELD_SIZE, texts);
+        long size = buffer.getLong();
+        boolean complete = buffer.get() != 0;
+        long progress = buffer.getLong();
+        long creationTimestamp = buffer.getLong();
+        String originUID = readText(buffer, ORIGIN_FIELD_SIZE, texts);
+        int copyBudget = buffer.getInt();
+        boolean acknowledged = buffer.get() != 0;
+        byte priorityLevel = buffer.get();
+        PriorityClass priorityClass = priorityLevel == UNKNOWN_PRIORITY ? null : PriorityClass.fromLevel(priorityLevel);
+        long acknowledgedTimestamp = buffer.getLong();
+        return new CatalogEntry(fileId, size, complete, progress, creationTimestamp, originUID, copyBudget, acknowledged, priorityClass,
+                acknowledgedTimestamp);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeText(ByteBuffer buffer, String text, int fieldSize,
+    ///             ByteArrayOutputStream texts)
+    /// \brief      Writes a text padded with zeros to the field size. A
+    ///             text too long for the field is added to the text area,
+    ///             and the field holds its offset and length.
+    /// \param[in]  buffer - the buffer to write to.
+    /// \param[in]  text - the text to write.
+    /// \param[in]  fieldSize - the size of the field in bytes.
+    /// \param[in]  texts - the text area.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void writeText(ByteBuffer buffer, String text, int fieldSize, ByteArrayOutputStream texts)
+    {
+        byte[] bytes = text.getBytes(CHARSET);
+        int fieldEnd = buffer.position() + fieldSize;
+        boolean fitsInField = bytes.length <= fieldSize;
+        if(fitsInField)
+        {
+            buffer.put(bytes);
+        }
+        else
+        {
+            buffer.put(LONG_TEXT_MARKER);
+            buffer.putInt(texts.size());
+            buffer.putInt(bytes.length);
+            texts.write(bytes, 0, bytes.length);
+        }
+        while(buffer.position() < fieldEnd)
+        {
+            buffer.put((byte) 0);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readText(ByteBuffer buffer, int fieldSize,
+    ///             ByteBuffer texts)
+    /// \brief      Reads a text padded with zeros to the field size, or
+    ///             from the text area if the field holds its position.
+    /// \param[in]  buffer - the buffer to read from.
+    /// \param[in]  fieldSize - the size of the field in bytes.
+    /// \param[in]  texts - the text area, null if there is none.
+    /// \return     String - the text read.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String readText(ByteBuffer buffer, int fieldSize, ByteBuffer texts)
+    {
+        byte[] bytes = new byte[fieldSize];
+        buffer.get(bytes);
+        boolean isInTextArea = bytes[0] == LONG_TEXT_MARKER && texts != null;
+        if(isInTextArea)
+        {
+            ByteBuffer field = ByteBuffer.wrap(bytes, 1, 8);
+            int offset = field.getInt();
+            int length = field.getInt();
+            byte[] text = new byte[length];
+            slice(texts, offset, length).get(text);
+            return new String(text, CHARSET);
+        }
+
+        int length = 0;
+        while(length < fieldSize && bytes[length] != 0)
+        {
+            length++;
+        }
+        return new String(bytes, 0, length, CHARSET);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       EntryIterator
+    /// \brief       Iterates over all the entries in file ID order, merging
+    ///              the changed entries into the mapped records. The lock
+    ///              of the catalog must be held while iterating.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class EntryIterator implements Iterator<CatalogEntry>
+    {
+        private final Iterator<Map.Entry<String, CatalogEntry>> changeIterator = changes.entrySet().iterator(); ///< The changes, in file ID order.
+        private Map.Entry<String, CatalogEntry> nextChange; ///< The next change, null once all were merged.
+        private int recordIndex = 0; ///< The index of the next mapped record.
+        private CatalogEntry nextEntry; ///< The entry returned next, null at the end.
+
+        private EntryIterator()
+        {
+            nextChange = changeIterator.hasNext() ? changeIterator.next() : null;
+            nextEntry = advance();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return nextEntry != null;
+        }
+
+        @Override
+        public CatalogEntry next()
+        {
+            if(nextEntry == null)
+            {
+                throw new NoSuchElementException();
+            }
+            CatalogEntry entry = nextEntry;
+            nextEntry = advance();
+            return entry;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        //////////////////////////////////////////////////////////////////////
+        /// \fn         advance()
+        /// \brief      Finds the next entry, skipping the removed ones and
+        ///             the records replaced by a change.
+        /// \return     CatalogEntry - the next entry, null at the end.
+        /// \author     agent
+        /// \date       10/18/2026
+        //////////////////////////////////////////////////////////////////////
+        private CatalogEntry advance()
+        {
+            while(true)
+            {
+                boolean hasRecord = recordIndex < recordCount;
+                if(!hasRecord && nextChange == null)
+                {
+                    return null;
+                }
+
+                int comparison = !hasRecord ? 1 : (nextChange == null ? -1 : readFileIdAt(recordIndex).compareTo(nextChange.getKey()));
+                if(comparison < 0)
+                {
+                    return readRecordAt(recordIndex++);
+                }
+
+                // The change replaces or removes the record with the same ID.
+                if(comparison == 0)
+                {
+                    recordIndex++;
+                }
+                CatalogEntry changedEntry = nextChange.getValue();
+                nextChange = changeIterator.hasNext() ? changeIterator.next() : null;
+                if(changedEntry != null)
+                {
+                    return changedEntry;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       DataFileCommitter
+/// \brief       Makes received data files durable and complete in one
+///              step, grouping the syncs of concurrent transfers.
+///
+///              A commit syncs the data of the file, renames it to drop
+///              the incomplete suffix and records it as complete in the
+///              catalog journal. The data file directory is synced after
+///              the renames and before the journal, so a file recorded
+///              as complete also has its complete name after a power
+///              loss. recover() still redoes a rename the journal knows
+///              of, for a file system that does not honor the directory
+///              sync.
+///
+///              The data file directory and the catalog journal are only
+///              synced once per batch. While one batch is being synced,
+///              the requests of the other transfers queue up and form the
+///              next batch, so each transfer waits for at most two
+///              batches.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class DataFileCommitter
+{
+    private static final String LOG_TAG = DataFileCommitter.class.getSimpleName(); ///< Tag for logging.
+
+    private static final List<Request> pendingRequests = new ArrayList<Request>(); ///< The requests waiting for the next batch.
+    private static boolean batchRunning = false; ///< TRUE while a batch is being synced.
+    private static long batchCount = 0; ///< Number of batches synced.
+    private static long requestCount = 0; ///< Number of requests synced.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Request
+    /// \brief       A checkpoint or a commit waiting to be made durable.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class Request
+    {
+        private final DurableDataFileWriter writer; ///< The file to make durable.
+        private final boolean commit; ///< TRUE to complete the file, FALSE for a checkpoint.
+        private boolean done = false; ///< TRUE once the batch of the request was synced.
+        private IOException failure = null; ///< Why the request failed, null if it succeeded.
+
+        private Request(DurableDataFileWriter writer, boolean commit)
+        {
+            this.writer = writer;
+            this.commit = commit;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         open(String fileId, long fileSize)
+    /// \brief      Opens a data file to be received durably. Receiving
+    ///             resumes from the offset given by the writer. The file is
+    ///             protected from eviction until the writer is closed.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \param[in]  fileSize - the full size of the data file in bytes.
+    /// \return     DurableDataFileWriter - the writer of the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static DurableDataFileWriter open(String fileId, long fileSize) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+
+        // Part of the file already stored means the transfer resumes it.
+        CatalogEntry entry = DataFileCatalog.getEntry(fileId);
+        boolean resumed = entry != null && !entry.isComplete() && entry.getProgress() > 0;
+        DataFileMetrics.recordTransferStarted(fileId, resumed);
+
+        TransferRegistry.startReceiving(fileId);
+        boolean opened = false;
+        try
+        {
+            DurableDataFileWriter writer = new DurableDataFileWriter(dataFileDirectory, fileId, fileSize);
+            opened = true;
+            return writer;
+        }
+        finally
+        {
+            if(!opened)
+            {
+                TransferRegistry.finishReceiving(fileId);
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recover()
+    /// \brief      Redoes the commits whose rename was lost in a power
+    ///             loss. Must be called once the catalog is loaded, before
+    ///             any transfer starts.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void recover()
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            return;
+        }
+
+        for(DataFile incompleteDataFile : DataFileRepository.getIncompleteDataFiles())
+        {
+            // The journal says the file was committed, and its data was synced before that.
+            CatalogEntry entry = DataFileCatalog.getEntry(incompleteDataFile.getFileId());
+            boolean wasCommitted = entry != null && entry.isComplete() && !entry.isAcknowledged()
+                    && incompleteDataFile.length() == entry.getSize();
+            if(!wasCommitted)
+            {
+                continue;
+            }
+
+            DataFile completeDataFile = new DataFile(dataFileDirectory, incompleteDataFile.getFileId());
+            boolean renamed = !completeDataFile.exists() && incompleteDataFile.renameTo(completeDataFile);
+            if(renamed)
+            {
+                Log.i(LOG_TAG, "Recovered the commit of file " + completeDataFile.getName());
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getAverageBatchSize()
+    /// \brief      Gets the average number of requests sharing a sync.
+    /// \return     double - the average batch size, 0 if nothing was synced.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static double getAverageBatchSize()
+    {
+        synchronized(pendingRequests)
+        {
+            return batchCount == 0 ? 0 : (double) requestCount / batchCount;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         checkpoint(DurableDataFileWriter writer)
+    /// \brief      Syncs the data written so far, and records its length
+    ///             in the catalog.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void checkpoint(DurableDataFileWriter writer) throws IOException
+    {
+        await(new Request(writer, false));
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         commit(DurableDataFileWriter writer)
+    /// \brief      Syncs the data of a complete file, renames it and records
+    ///             it as complete in the catalog.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void commit(DurableDataFileWriter writer) throws IOException
+    {
+        await(new Request(writer, true));
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         commitAll(List<DurableDataFileWriter> writers)
+    /// \brief      Commits several complete files in the same batch, so
+    ///             that they share one catalog sync, for example the files
+    ///             unpacked from a bundle. The writers are closed.
+    /// \param[in]  writers - the writers of the complete files.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void commitAll(List<DurableDataFileWriter> writers) throws IOException
+    {
+        Request[] requests = new Request[writers.size()];
+        for(int i = 0; i < requests.length; i++)
+        {
+            requests[i] = new Request(writers.get(i), true);
+        }
+
+        try
+        {
+            await(requests);
+        }
+        finally
+        {
+            for(DurableDataFileWriter writer : writers)
+            {
+                writer.close();
+            }
+        }
+        StorageSpaceManager.requestCheck();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         await(Request... requests)
+    /// \brief      Queues requests and waits until their batch is synced.
+    ///             If no batch is running, the caller runs the batch of all
+    ///             the queued requests itself.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void await(Request... requests) throws IOException
+    {
+        if(requests.length == 0)
+        {
+            return;
+        }
+
+        // All the requests are queued together, so they are all in the same batch.
+        Request request = requests[requests.length - 1];
+        List<Request> batch = null;
+        boolean interrupted = false;
+        synchronized(pendingRequests)
+        {
+            for(Request queuedRequest : requests)
+            {
+                pendingRequests.add(queuedRequest);
+            }
+            while(!request.done && batchRunning)
+            {
+                try
+                {
+                    pendingRequests.wait();
+                }
+                catch(InterruptedException interruptedException)
+                {
+                    // Keep waiting, the request is already queued and will be synced anyway.
+                    interrupted = true;
+                }
+            }
+
+            if(!request.done)
+            {
+                batchRunning = true;
+                batch = new ArrayList<Request>(pendingRequests);
+                pendingRequests.clear();
+            }
+        }
+
+        if(batch != null)
+        {
+            try
+            {
+                runBatch(batch);
+            }
+            finally
+            {
+                synchronized(pendingRequests)
+                {
+                    for(Request batchRequest : batch)
+                    {
+                        batchRequest.done = true;
+                    }
+                    batchRunning = false;
+                    batchCount++;
+                    requestCount += batch.size();
+                    pendingRequests.notifyAll();
+                }
+            }
+        }
+
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        for(Request completedRequest : requests)
+        {
+            if(completedRequest.failure != null)
+            {
+                throw completedRequest.failure;
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runBatch(List<Request> batch)
+    /// \brief      Syncs the data of each file of a batch, renames the
+    ///             committed ones, and syncs the data file directory and the
+    ///             catalog journal once.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void runBatch(List<Request> batch)
+    {
+        for(Request request : batch)
+        {
+            DurableDataFileWriter writer = request.writer;
+            try
+            {
+                writer.sync();
+                if(request.commit)
+                {
+                    writer.closeChannel();
+                    DataFile incompleteFile = writer.getIncompleteFile();
+                    DataFile completeFile = writer.getCompleteFile();
+                    boolean renamed = incompleteFile.renameTo(completeFile);
+                    if(!renamed)
+                    {
+                        throw new IOException("File: " + incompleteFile.getName() + " could not be renamed.");
+                    }
+                    DataFileCatalog.update(completeFile);
+                }
+                else
+                {
+                    DataFileCatalog.update(writer.getIncompleteFile(), writer.getFileSize());
+                }
+            }
+            catch(IOException ioException)
+            {
+                request.failure = ioException;
+            }
+        }
+
+        try
+        {
+            // The names of the new and renamed files first, then the records that point at them.
+            DirectorySync.sync(DataFileRepository.getDataFileDirectory());
+            DataFileCatalog.sync();
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while syncing the batch.", ioException);
+            for(Request request : batch)
+            {
+                if(request.failure == null)
+                {
+                    request.failure = ioException;
+                }
+            }
+        }
+    }
+}
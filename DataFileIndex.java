@@ -0,0 +1,201 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       DataFileIndex
+/// \brief       Sorted secondary indexes over the catalog entries, on size,
+///              creation time, origin and completeness. The catalog keeps
+///              them up to date as entries change.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+class DataFileIndex
+{
+    static final Comparator<CatalogEntry> BY_CREATION_TIME = new Comparator<CatalogEntry>()
+    {
+        @Override
+        public int compare(CatalogEntry first, CatalogEntry second)
+        {
+            int result = compareValues(first.getCreationTimestamp(), second.getCreationTimestamp());
+            return result != 0 ? result : first.getFileId().compareTo(second.getFileId());
+        }
+    }; ///< Orders the entries by creation time, then by file ID.
+
+    static final Comparator<CatalogEntry> BY_SIZE = new Comparator<CatalogEntry>()
+    {
+        @Override
+        public int compare(CatalogEntry first, CatalogEntry second)
+        {
+            int result = compareValues(first.getSize(), second.getSize());
+            return result != 0 ? result : first.getFileId().compareTo(second.getFileId());
+        }
+    }; ///< Orders the entries by size, then by file ID.
+
+    private final NavigableSet<CatalogEntry> byCreationTime = new TreeSet<CatalogEntry>(BY_CREATION_TIME); ///< All the entries by creation time.
+    private final NavigableSet<CatalogEntry> completeByCreationTime = new TreeSet<CatalogEntry>(BY_CREATION_TIME); ///< The complete entries by creation time.
+    private final NavigableSet<CatalogEntry> bySize = new TreeSet<CatalogEntry>(BY_SIZE); ///< All the entries by size.
+    private final Map<String, NavigableSet<CatalogEntry>> byOrigin = new HashMap<String, NavigableSet<CatalogEntry>>(); ///< The entries of each origin by creation time.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         rebuild(Collection<CatalogEntry> entries)
+    /// \brief      Replaces the content of the indexes.
+    /// \param[in]  entries - all the catalog entries.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    void rebuild(Collection<CatalogEntry> entries)
+    {
+        byCreationTime.clear();
+        completeByCreationTime.clear();
+        bySize.clear();
+        byOrigin.clear();
+        for(CatalogEntry entry : entries)
+        {
+            add(entry);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         add(CatalogEntry entry)
+    /// \brief      Adds an entry to the indexes.
+    /// \param[in]  entry - the entry to add.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    void add(CatalogEntry entry)
+    {
+        // Acknowledged entries only remember that the file was delivered, it is not stored anymore.
+        if(entry.isAcknowledged())
+        {
+            return;
+        }
+
+        byCreationTime.add(entry);
+        bySize.add(entry);
+        if(entry.isComplete())
+        {
+            completeByCreationTime.add(entry);
+        }
+
+        NavigableSet<CatalogEntry> originEntries = byOrigin.get(entry.getOriginUID());
+        if(originEntries == null)
+        {
+            originEntries = new TreeSet<CatalogEntry>(BY_CREATION_TIME);
+            byOrigin.put(entry.getOriginUID(), originEntries);
+        }
+        originEntries.add(entry);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         remove(CatalogEntry entry)
+    /// \brief      Removes an entry from the indexes.
+    /// \param[in]  entry - the entry to remove, as it was added.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    void remove(CatalogEntry entry)
+    {
+        byCreationTime.remove(entry);
+        completeByCreationTime.remove(entry);
+        bySize.remove(entry);
+        NavigableSet<CatalogEntry> originEntries = byOrigin.get(entry.getOriginUID());
+        if(originEntries != null)
+        {
+            originEntries.remove(entry);
+            if(originEntries.isEmpty())
+            {
+                byOrigin.remove(entry.getOriginUID());
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getByCreationTime(String originUID, boolean completeOnly,
+    ///             long fromTimestamp, long toTimestamp)
+    /// \brief      Gets the smallest index range, in creation time order,
+    ///             holding the entries created in a time range.
+    /// \param[in]  originUID - the origin to restrict to, or null for all.
+    /// \param[in]  completeOnly - TRUE to restrict to complete entries.
+    /// \param[in]  fromTimestamp - the first creation time included.
+    /// \param[in]  toTimestamp - the first creation time excluded.
+    /// \return     NavigableSet<CatalogEntry> - a view of the index range.
+    ///             Entries of other origins or completeness may still be
+    ///             in it when both restrictions are given.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    NavigableSet<CatalogEntry> getByCreationTime(String originUID, boolean completeOnly, long fromTimestamp, long toTimestamp)
+    {
+        NavigableSet<CatalogEntry> entries = null;
+        boolean restrictToOrigin = originUID != null;
+        if(restrictToOrigin)
+        {
+            entries = byOrigin.get(originUID);
+            if(entries == null)
+            {
+                entries = new TreeSet<CatalogEntry>(BY_CREATION_TIME);
+            }
+        }
+        else
+        {
+            entries = completeOnly ? completeByCreationTime : byCreationTime;
+        }
+        return entries.subSet(timeBound(fromTimestamp), true, timeBound(toTimestamp), false);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getBySize(long minSize, long maxSize)
+    /// \brief      Gets the index range, in size order, holding the entries
+    ///             with a size in a range.
+    /// \param[in]  minSize - the first size included.
+    /// \param[in]  maxSize - the first size excluded.
+    /// \return     NavigableSet<CatalogEntry> - a view of the index range.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    NavigableSet<CatalogEntry> getBySize(long minSize, long maxSize)
+    {
+        return bySize.subSet(sizeBound(minSize), true, sizeBound(maxSize), false);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         timeBound(long timestamp)
+    /// \brief      Creates an entry sorting before all the entries created
+    ///             at a time, to bound an index range.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static CatalogEntry timeBound(long timestamp)
+    {
+        return new CatalogEntry("", 0, false, 0, timestamp, "");
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         sizeBound(long size)
+    /// \brief      Creates an entry sorting before all the entries of a
+    ///             size, to bound an index range.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static CatalogEntry sizeBound(long size)
+    {
+        return new CatalogEntry("", size, false, 0, 0, "");
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         compareValues(long first, long second)
+    /// \brief      Compares two long values.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int compareValues(long first, long second)
+    {
+        return first < second ? -1 : (first == second ? 0 : 1);
+    }
+}
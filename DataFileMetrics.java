@@ -0,0 +1,444 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.g3ti.droidhopper.phoneagent.util.FileManager;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Process;
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       DataFileMetrics
+/// \brief       Records where the data files spend their time, from the
+///              moment they are stored to the moment they are sent, and
+///              how the storage code performs along the way.
+///
+///              Lifecycle events are counted per type, and the delays
+///              between them are kept in histograms. The counters and
+///              histograms can be written periodically to snapshot files,
+///              each covering the interval since the previous one, so that
+///              the snapshots of many agents can be added up offline.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class DataFileMetrics
+{
+    private static final String LOG_TAG = DataFileMetrics.class.getSimpleName(); ///< Tag for logging.
+    private static final String METRICS_DIRECTORY = "metrics"; ///< The directory name of the snapshot files.
+    private static final String SNAPSHOT_PREFIX = "datafile-metrics-"; ///< Prefix of the snapshot file names.
+    private static final String SNAPSHOT_SUFFIX = ".json"; ///< Suffix of the snapshot file names.
+    private static final String TEMPORARY_SUFFIX = ".tmp"; ///< Suffix of a snapshot file while it is being written.
+    private static final int MAX_SNAPSHOT_FILES = 96; ///< The oldest snapshot files are deleted above this number.
+    private static final int MAX_TRACKED_FILES = 1024; ///< The least recently stored files stop being tracked above this number.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \enum        LifecycleEvent
+    /// \brief       The events in the life of a data file on this agent.
+    //////////////////////////////////////////////////////////////////////
+    public enum LifecycleEvent
+    {
+        STORED, ///< A complete file appeared, created here or received.
+        TRANSFER_STARTED, ///< A file started to be received.
+        RESUMED, ///< A file started to be received from a partial copy.
+        COMPLETED, ///< A received file became complete.
+        SELECTED, ///< A file was selected to be sent.
+        EVICTED, ///< An incomplete file was deleted to free space.
+        DELIVERED ///< A file was deleted as it reached the collector.
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \enum        EvictionReason
+    /// \brief       Why an incomplete file was deleted.
+    //////////////////////////////////////////////////////////////////////
+    public enum EvictionReason
+    {
+        WATERMARK, ///< The used space went above the high watermark.
+        SPACE_FOR_TRANSFER ///< An incoming file needed the space.
+    }
+
+    private static final long[] eventCounts = new long[LifecycleEvent.values().length]; ///< The number of events of each type.
+    private static final long[] evictionCounts = new long[EvictionReason.values().length]; ///< The number of evictions for each reason.
+    private static long evictedBytes = 0; ///< The bytes freed by evictions.
+
+    private static final LatencyHistogram storeToSendDelay = new LatencyHistogram(); ///< Milliseconds between a file being stored and being selected.
+    private static final LatencyHistogram transferDuration = new LatencyHistogram(); ///< Milliseconds between a transfer starting and the file being complete.
+    private static final LatencyHistogram resumesPerTransfer = new LatencyHistogram(); ///< Number of times a received file was resumed before completing.
+    private static final LatencyHistogram scanLatency = new LatencyHistogram(); ///< Microseconds taken to list the data files.
+    private static final LatencyHistogram selectionLatency = new LatencyHistogram(); ///< Microseconds taken to choose the file to send.
+
+    private static final Map<String, FileTimeline> timelines = new LinkedHashMap<String, FileTimeline>()
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileTimeline> eldest)
+        {
+            return size() > MAX_TRACKED_FILES;
+        }
+    }; ///< The timelines of the files tracked, by file ID.
+
+    private static long intervalStartTime = System.currentTimeMillis(); ///< When the current snapshot interval started.
+    private static ScheduledExecutorService executor; ///< The background thread writing the snapshots, null if not running.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       FileTimeline
+    /// \brief       When the events of one file happened.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class FileTimeline
+    {
+        private long storedTime = 0; ///< When the file became complete here, 0 if unknown.
+        private long transferStartTime = 0; ///< When the first transfer of the file started, 0 if not received.
+        private int resumeCount = 0; ///< The number of times the transfer was resumed.
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordTransferStarted(String fileId, boolean resumed)
+    /// \brief      Records that a file started to be received.
+    /// \param[in]  fileId - the ID of the file.
+    /// \param[in]  resumed - TRUE if a partial copy was already stored.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void recordTransferStarted(String fileId, boolean resumed)
+    {
+        FileTimeline timeline = getTimeline(fileId);
+        if(timeline.transferStartTime == 0)
+        {
+            timeline.transferStartTime = System.currentTimeMillis();
+        }
+        if(resumed)
+        {
+            timeline.resumeCount++;
+            eventCounts[LifecycleEvent.RESUMED.ordinal()]++;
+        }
+        eventCounts[LifecycleEvent.TRANSFER_STARTED.ordinal()]++;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordStored(String fileId, boolean received)
+    /// \brief      Records that a complete file appeared in the storage.
+    /// \param[in]  fileId - the ID of the file.
+    /// \param[in]  received - TRUE if the file was received, FALSE if it
+    ///             was created on this agent.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void recordStored(String fileId, boolean received)
+    {
+        long now = System.currentTimeMillis();
+        FileTimeline timeline = getTimeline(fileId);
+        timeline.storedTime = now;
+        eventCounts[LifecycleEvent.STORED.ordinal()]++;
+        if(received)
+        {
+            eventCounts[LifecycleEvent.COMPLETED.ordinal()]++;
+            boolean transferStartKnown = timeline.transferStartTime != 0;
+            if(transferStartKnown)
+            {
+                transferDuration.record(now - timeline.transferStartTime);
+            }
+            resumesPerTransfer.record(timeline.resumeCount);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordSelected(DataFile dataFile, long selectionNanos)
+    /// \brief      Records that a file was selected to be sent.
+    /// \param[in]  dataFile - the selected file.
+    /// \param[in]  selectionNanos - the time taken to choose it.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void recordSelected(DataFile dataFile, long selectionNanos)
+    {
+        eventCounts[LifecycleEvent.SELECTED.ordinal()]++;
+        selectionLatency.record(TimeUnit.NANOSECONDS.toMicros(selectionNanos));
+
+        // Files stored before the agent started are not tracked, their modification time is the best guess.
+        FileTimeline timeline = timelines.get(dataFile.getFileId());
+        long storedTime = timeline != null && timeline.storedTime != 0 ? timeline.storedTime : dataFile.lastModified();
+        if(storedTime != 0)
+        {
+            storeToSendDelay.record(System.currentTimeMillis() - storedTime);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordEvicted(String fileId, long size,
+    ///             EvictionReason reason)
+    /// \brief      Records that an incomplete file was deleted to free space.
+    /// \param[in]  fileId - the ID of the file.
+    /// \param[in]  size - the bytes freed.
+    /// \param[in]  reason - why the file was deleted.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void recordEvicted(String fileId, long size, EvictionReason reason)
+    {
+        eventCounts[LifecycleEvent.EVICTED.ordinal()]++;
+        evictionCounts[reason.ordinal()]++;
+        evictedBytes += size;
+        timelines.remove(fileId);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordDelivered(String fileId)
+    /// \brief      Records that a file was deleted as it reached the
+    ///             collector.
+    /// \param[in]  fileId - the ID of the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void recordDelivered(String fileId)
+    {
+        eventCounts[LifecycleEvent.DELIVERED.ordinal()]++;
+        timelines.remove(fileId);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordScan(long scanNanos)
+    /// \brief      Records the time taken to list the data files.
+    /// \param[in]  scanNanos - the time taken.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void recordScan(long scanNanos)
+    {
+        scanLatency.record(TimeUnit.NANOSECONDS.toMicros(scanNanos));
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getEventCount(LifecycleEvent event)
+    /// \brief      Gets the number of events of a type in the current
+    ///             interval.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getEventCount(LifecycleEvent event)
+    {
+        return eventCounts[event.ordinal()];
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         startExport(long periodMillis)
+    /// \brief      Starts writing a snapshot periodically in a low priority
+    ///             background thread. Does nothing if it is already running.
+    /// \param[in]  periodMillis - the time between two snapshots.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void startExport(long periodMillis)
+    {
+        boolean isRunning = executor != null;
+        if(isRunning)
+        {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND, LOG_TAG));
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    writeSnapshot();
+                }
+                catch(IOException ioException)
+                {
+                    Log.e(LOG_TAG, "Error occured while writing the metrics snapshot.", ioException);
+                }
+                catch(RuntimeException exception)
+                {
+                    // Do not let one failed snapshot cancel the following ones.
+                    Log.e(LOG_TAG, "Error while writing the metrics snapshot.", exception);
+                }
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         stopExport()
+    /// \brief      Stops writing snapshots.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void stopExport()
+    {
+        boolean isRunning = executor != null;
+        if(isRunning)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeSnapshot()
+    /// \brief      Writes the metrics of the current interval to a new
+    ///             snapshot file, and starts a new interval.
+    /// \return     File - the snapshot file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static File writeSnapshot() throws IOException
+    {
+        File metricsDirectory = FileManager.getFileDirectory(METRICS_DIRECTORY);
+        if(metricsDirectory == null)
+        {
+            throw new IOException("Directory " + METRICS_DIRECTORY + " is not available.");
+        }
+
+        long now = System.currentTimeMillis();
+        byte[] content = null;
+        try
+        {
+            content = takeSnapshot(now).toString().getBytes("UTF-8");
+        }
+        catch(JSONException jsonException)
+        {
+            throw new IOException("Metrics snapshot could not be created: " + jsonException.getMessage());
+        }
+
+        // Write under a temporary name, so that a collector never picks up a partial snapshot.
+        File snapshotFile = new File(metricsDirectory, SNAPSHOT_PREFIX + now + SNAPSHOT_SUFFIX);
+        File temporaryFile = new File(metricsDirectory, snapshotFile.getName() + TEMPORARY_SUFFIX);
+        OutputStream outputStream = new FileOutputStream(temporaryFile);
+        try
+        {
+            outputStream.write(content);
+        }
+        finally
+        {
+            outputStream.close();
+        }
+        boolean renamed = temporaryFile.renameTo(snapshotFile);
+        if(!renamed)
+        {
+            throw new IOException("File: " + temporaryFile.getName() + " could not be renamed.");
+        }
+
+        deleteOldSnapshots(metricsDirectory);
+        return snapshotFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         takeSnapshot(long now)
+    /// \brief      Exports the counters and histograms of the current
+    ///             interval, and resets them.
+    /// \param[in]  now - the end of the interval.
+    /// \return     JSONObject - the snapshot.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static synchronized JSONObject takeSnapshot(long now) throws JSONException
+    {
+        JSONObject snapshot = new JSONObject();
+        snapshot.put("intervalStart", intervalStartTime);
+        snapshot.put("intervalEnd", now);
+
+        JSONObject events = new JSONObject();
+        for(LifecycleEvent event : LifecycleEvent.values())
+        {
+            events.put(event.name(), eventCounts[event.ordinal()]);
+        }
+        snapshot.put("events", events);
+
+        JSONObject evictions = new JSONObject();
+        for(EvictionReason reason : EvictionReason.values())
+        {
+            evictions.put(reason.name(), evictionCounts[reason.ordinal()]);
+        }
+        evictions.put("bytes", evictedBytes);
+        snapshot.put("evictions", evictions);
+
+        JSONObject histograms = new JSONObject();
+        histograms.put("storeToSendDelayMillis", storeToSendDelay.toJSON());
+        histograms.put("transferDurationMillis", transferDuration.toJSON());
+        histograms.put("resumesPerTransfer", resumesPerTransfer.toJSON());
+        histograms.put("scanLatencyMicros", scanLatency.toJSON());
+        histograms.put("selectionLatencyMicros", selectionLatency.toJSON());
+        snapshot.put("histograms", histograms);
+
+        // Start a new interval.
+        Arrays.fill(eventCounts, 0);
+        Arrays.fill(evictionCounts, 0);
+        evictedBytes = 0;
+        storeToSendDelay.reset();
+        transferDuration.reset();
+        resumesPerTransfer.reset();
+        scanLatency.reset();
+        selectionLatency.reset();
+        intervalStartTime = now;
+        return snapshot;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         deleteOldSnapshots(File metricsDirectory)
+    /// \brief      Deletes the oldest snapshot files above
+    ///             MAX_SNAPSHOT_FILES, in case nobody collects them.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void deleteOldSnapshots(File metricsDirectory)
+    {
+        String[] fileNames = metricsDirectory.list();
+        if(fileNames == null || fileNames.length <= MAX_SNAPSHOT_FILES)
+        {
+            return;
+        }
+
+        // The names hold the timestamp, so they sort from oldest to newest when they have the same length.
+        Arrays.sort(fileNames, new Comparator<String>()
+        {
+            @Override
+            public int compare(String first, String second)
+            {
+                int result = first.length() - second.length();
+                return result != 0 ? result : first.compareTo(second);
+            }
+        });
+        for(int i = 0; i < fileNames.length - MAX_SNAPSHOT_FILES; i++)
+        {
+            boolean isSnapshot = fileNames[i].startsWith(SNAPSHOT_PREFIX) && fileNames[i].endsWith(SNAPSHOT_SUFFIX);
+            if(isSnapshot)
+            {
+                new File(metricsDirectory, fileNames[i]).delete();
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getTimeline(String fileId)
+    /// \brief      Gets the timeline of a file, starting to track it if
+    ///             needed.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static FileTimeline getTimeline(String fileId)
+    {
+        FileTimeline timeline = timelines.get(fileId);
+        if(timeline == null)
+        {
+            timeline = new FileTimeline();
+            timelines.put(fileId, timeline);
+        }
+        return timeline;
+    }
+}
@@ -34,6 +34,9 @@ namespace DroidhoppersLibrary.Datafile.Storage
         /// <summary>Number of attempts to create a directory.</summary>
         private const int maxNumberOfAttempts = 3;
 
+        /// <summary>Priority class of the files packaged without one, NORMAL on the phone agent, where 0 is the most urgent and 3 the least.</summary>
+        private const int defaultPriority = 2;
+
         /// <summary>A field that represents the beginning time for the unix timestamp. Used to determine the timestamp.</summary>
         private static readonly DateTime Jan1st1970 = new DateTime(1970, 1, 1, 0, 0, 0, DateTimeKind.Utc);
 
@@ -43,12 +46,23 @@ namespace DroidhoppersLibrary.Datafile.Storage
         #endregion
 
         #region Methods
-        /// <summary>Packages the data file with its metadata. It also copies the file.</summary>
+        /// <summary>Packages the data file with its metadata, in the default priority class. It also copies the file.</summary>
         /// <param name="dataFilefullPath">The full path of the data file to be packaged.</param>
         /// <returns>FileInfo - The file information of the packaged data file.</returns>
         /// \author  Ammar Alrashed
         /// \date    07/24/2012
         public static FileInfo PackageDataFile(string dataFilefullPath)
+        {
+            return PackageDataFile(dataFilefullPath, defaultPriority);
+        }
+
+        /// <summary>Packages the data file with its metadata. It also copies the file.</summary>
+        /// <param name="dataFilefullPath">The full path of the data file to be packaged.</param>
+        /// <param name="priority">The priority class of the file, from 0 (most urgent) to 3 (least urgent).</param>
+        /// <returns>FileInfo - The file information of the packaged data file.</returns>
+        /// \author  agent
+        /// \date    10/18/2026
+        public static FileInfo PackageDataFile(string dataFilefullPath, int priority)
         {
             string dataFileName = Path.GetFileName(dataFilefullPath);
 
@@ -63,7 +77,7 @@ namespace DroidhoppersLibrary.Datafile.Storage
                 File.Copy(dataFilefullPath, copiedFileFullPath);
 
                 // Create the metadata file inside this folder.
-                CreateMetadataFile(dataFileName, packagingDirectoryInfo.FullName);
+                CreateMetadataFile(dataFileName, packagingDirectoryInfo.FullName, priority);
 
                 // Compress the complete directory.
                 string packagedFilePath = Path.Combine(packagingDirectoryInfo.FullName, temporaryZipName);
@@ -150,9 +164,10 @@ namespace DroidhoppersLibrary.Datafile.Storage
         /// </summary>
         /// <param name="dataFileName">The data file we are packaging, where most of the metadata will come from.</param>
         /// <param name="packagingFolder">The folder where we will create the metadata file.</param>
+        /// <param name="priority">The priority class of the file, from 0 (most urgent) to 3 (least urgent).</param>
         /// \author  Sebastian Echeverria
         /// \date    10/24/2012
-        private static void CreateMetadataFile(string dataFileName, string packagingFolder)
+        private static void CreateMetadataFile(string dataFileName, string packagingFolder, int priority)
         {
             // Get the UID of the device and the current timestamp as we'll need them as metadata.
             string uid = ConfigurationSettings.GetStringSetting(ConfigurationIdentifier.UniqueIdentifier);
@@ -163,6 +178,7 @@ namespace DroidhoppersLibrary.Datafile.Storage
             metadata.FileName = dataFileName;
             metadata.CreationTimestamp = timestamp;
             metadata.OriginUID = uid;
+            metadata.Priority = priority;
 
             // The actual metadata file will have the same name as the data file, but with a JSON extension.
             string metadataFileName = Path.Combine(packagingFolder, dataFileName + ".json");
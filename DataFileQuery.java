@@ -0,0 +1,387 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       DataFileQuery
+/// \brief       Query over the data files of the repository, answered from
+///              the sorted indexes of the catalog instead of listing the
+///              directory and opening the ZIP files.
+///
+///              The conditions are combined, for example:
+///              new DataFileQuery().complete(true).fromOrigin(uid)
+///                  .createdFrom(now - hour).smallerThan(5*1024*1024).count()
+///
+///              Results are listed in creation time order, one page at a
+///              time, and each page gives the cursor of the next one.
+///              Before answering, the catalog is reconciled with the data
+///              file directory if the directory changed, so the files the
+///              receive code added or completed are seen. Fragments are
+///              data files of their own; a file replaced by its fragments
+///              is not listed anymore.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class DataFileQuery
+{
+    private static final char CURSOR_SEPARATOR = ':'; ///< Separates the timestamp from the file ID in a cursor.
+
+    private String originUID = null; ///< The origin to match, null for any origin.
+    private Boolean complete = null; ///< The completeness to match, null for any.
+    private long fromTimestamp = Long.MIN_VALUE; ///< The first creation time included.
+    private long toTimestamp = Long.MAX_VALUE; ///< The first creation time excluded.
+    private long minSize = 0; ///< The first size included.
+    private long maxSize = Long.MAX_VALUE; ///< The first size excluded.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         fromOrigin(String originUID)
+    /// \brief      Restricts the query to the files of one origin.
+    /// \param[in]  originUID - the UID of the origin.
+    /// \return     DataFileQuery - this query.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public DataFileQuery fromOrigin(String originUID)
+    {
+        this.originUID = originUID;
+        return this;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         complete(boolean complete)
+    /// \brief      Restricts the query to the complete or to the incomplete
+    ///             files.
+    /// \param[in]  complete - TRUE for the complete files only, FALSE for
+    ///             the incomplete files only.
+    /// \return     DataFileQuery - this query.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public DataFileQuery complete(boolean complete)
+    {
+        this.complete = complete;
+        return this;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createdFrom(long timestamp)
+    /// \brief      Restricts the query to the files created at or after a
+    ///             time.
+    /// \param[in]  timestamp - the creation timestamp, in milliseconds.
+    /// \return     DataFileQuery - this query.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public DataFileQuery createdFrom(long timestamp)
+    {
+        this.fromTimestamp = timestamp;
+        return this;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createdBefore(long timestamp)
+    /// \brief      Restricts the query to the files created before a time.
+    /// \param[in]  timestamp - the creation timestamp, in milliseconds.
+    /// \return     DataFileQuery - this query.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public DataFileQuery createdBefore(long timestamp)
+    {
+        this.toTimestamp = timestamp;
+        return this;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         atLeast(long size)
+    /// \brief      Restricts the query to the files of at least a size.
+    /// \param[in]  size - the size in bytes.
+    /// \return     DataFileQuery - this query.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public DataFileQuery atLeast(long size)
+    {
+        this.minSize = size;
+        return this;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         smallerThan(long size)
+    /// \brief      Restricts the query to the files smaller than a size.
+    /// \param[in]  size - the size in bytes.
+    /// \return     DataFileQuery - this query.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public DataFileQuery smallerThan(long size)
+    {
+        this.maxSize = size;
+        return this;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         count()
+    /// \brief      Counts the files matching the query, without listing them.
+    /// \return     long - the number of matching files.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long count()
+    {
+        DataFileCatalog.reconcileIfChanged();
+        synchronized(DataFileCatalog.class)
+        {
+            long count = 0;
+            for(CatalogEntry entry : getRange(false))
+            {
+                if(matches(entry))
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         totalBytes()
+    /// \brief      Adds up the size of the files matching the query, without
+    ///             listing them.
+    /// \return     long - the total size in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long totalBytes()
+    {
+        DataFileCatalog.reconcileIfChanged();
+        synchronized(DataFileCatalog.class)
+        {
+            long totalBytes = 0;
+            for(CatalogEntry entry : getRange(false))
+            {
+                if(matches(entry))
+                {
+                    totalBytes += entry.getSize();
+                }
+            }
+            return totalBytes;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         list(String cursor, int pageSize)
+    /// \brief      Lists one page of the files matching the query, in
+    ///             creation time order. A page may hold fewer files than
+    ///             the page size if files went away while it was listed,
+    ///             only a null next cursor marks the last page.
+    /// \param[in]  cursor - the cursor of the page, null for the first one.
+    /// \param[in]  pageSize - the maximum number of files in the page, at
+    ///             least 1.
+    /// \return     Page - the files of the page and the next cursor.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public Page list(String cursor, int pageSize)
+    {
+        boolean validPageSize = pageSize > 0;
+        if(!validPageSize)
+        {
+            throw new IllegalArgumentException("Invalid page size " + pageSize);
+        }
+        DataFileCatalog.reconcileIfChanged();
+
+        List<CatalogEntry> entries = new ArrayList<CatalogEntry>();
+        synchronized(DataFileCatalog.class)
+        {
+            NavigableSet<CatalogEntry> range = getRange(true);
+            boolean continuesPage = cursor != null;
+            if(continuesPage)
+            {
+                range = range.tailSet(decodeCursor(cursor), false);
+            }
+
+            for(CatalogEntry entry : range)
+            {
+                boolean pageFull = entries.size() == pageSize;
+                if(pageFull)
+                {
+                    break;
+                }
+
+                if(matches(entry))
+                {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        // Finding where each file is kept checks the stores, so it is done outside the lock.
+        List<DataFile> dataFiles = new LinkedList<DataFile>();
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        for(CatalogEntry entry : entries)
+        {
+            DataFile dataFile = dataFileDirectory == null ? null : toDataFile(dataFileDirectory, entry);
+            if(dataFile != null)
+            {
+                dataFiles.add(dataFile);
+            }
+        }
+
+        // A page that did not fill up with entries is the last one.
+        boolean mayHaveMore = entries.size() == pageSize;
+        String nextCursor = mayHaveMore ? encodeCursor(entries.get(entries.size() - 1)) : null;
+        return new Page(dataFiles, nextCursor);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getRange(boolean creationTimeOrder)
+    /// \brief      Picks the index range to scan for the query.
+    /// \param[in]  creationTimeOrder - TRUE if the range has to be in
+    ///             creation time order.
+    /// \return     NavigableSet<CatalogEntry> - the range to scan.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private NavigableSet<CatalogEntry> getRange(boolean creationTimeOrder)
+    {
+        DataFileIndex index = DataFileCatalog.getIndex();
+        boolean isEmptyQuery = fromTimestamp >= toTimestamp || minSize >= maxSize;
+        if(isEmptyQuery)
+        {
+            return new TreeSet<CatalogEntry>(DataFileIndex.BY_CREATION_TIME);
+        }
+
+        // Scan by size only if nothing else narrows the range down.
+        boolean hasTimeRange = fromTimestamp != Long.MIN_VALUE || toTimestamp != Long.MAX_VALUE;
+        boolean hasSizeRange = minSize != 0 || maxSize != Long.MAX_VALUE;
+        boolean completeOnly = Boolean.TRUE.equals(complete);
+        boolean scanBySize = !creationTimeOrder && hasSizeRange && !hasTimeRange && originUID == null && !completeOnly;
+        if(scanBySize)
+        {
+            return index.getBySize(minSize, maxSize);
+        }
+        return index.getByCreationTime(originUID, completeOnly, fromTimestamp, toTimestamp);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         matches(CatalogEntry entry)
+    /// \brief      Checks whether an entry meets all the conditions.
+    /// \param[in]  entry - the entry to check.
+    /// \return     boolean - TRUE if the entry matches.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private boolean matches(CatalogEntry entry)
+    {
+        boolean originMatches = originUID == null || originUID.equals(entry.getOriginUID());
+        boolean completenessMatches = complete == null || complete == entry.isComplete();
+        boolean timeMatches = entry.getCreationTimestamp() >= fromTimestamp && entry.getCreationTimestamp() < toTimestamp;
+        boolean sizeMatches = entry.getSize() >= minSize && entry.getSize() < maxSize;
+        return originMatches && completenessMatches && timeMatches && sizeMatches;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         toDataFile(File dataFileDirectory, CatalogEntry entry)
+    /// \brief      Gets the data file of an entry, wherever it is kept.
+    /// \param[in]  dataFileDirectory - the data file directory.
+    /// \param[in]  entry - the catalog entry.
+    /// \return     DataFile - the data file of the entry, or null if the
+    ///             file is not stored anymore.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static DataFile toDataFile(File dataFileDirectory, CatalogEntry entry)
+    {
+        String fileId = entry.getFileId();
+        DataFile dataFile = new DataFile(dataFileDirectory, fileId);
+        if(!entry.isComplete())
+        {
+            DataFile incompleteDataFile = new DataFile(dataFileDirectory, dataFile.getRemoteIncompleteDataFileName());
+            return incompleteDataFile.exists() ? incompleteDataFile : null;
+        }
+        if(dataFile.exists())
+        {
+            return dataFile;
+        }
+
+        // Complete files kept cold or as chunks are not in the directory.
+        boolean isStoredElsewhere = ColdStore.contains(fileId) || ChunkStore.contains(fileId);
+        if(isStoredElsewhere)
+        {
+            return new StoredDataFile(dataFileDirectory, fileId, entry.getSize());
+        }
+        return null;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         encodeCursor(CatalogEntry entry)
+    /// \brief      Creates the cursor of the page following an entry.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String encodeCursor(CatalogEntry entry)
+    {
+        return Long.toString(entry.getCreationTimestamp()) + CURSOR_SEPARATOR + entry.getFileId();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         decodeCursor(String cursor)
+    /// \brief      Gets the position in the creation time order a cursor
+    ///             points after.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static CatalogEntry decodeCursor(String cursor)
+    {
+        int separatorIndex = cursor.indexOf(CURSOR_SEPARATOR);
+        if(separatorIndex == -1)
+        {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+
+        try
+        {
+            long creationTimestamp = Long.parseLong(cursor.substring(0, separatorIndex));
+            String fileId = cursor.substring(separatorIndex + 1);
+            return new CatalogEntry(fileId, 0, false, 0, creationTimestamp, "");
+        }
+        catch(NumberFormatException numberFormatException)
+        {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, numberFormatException);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Page
+    /// \brief       One page of the results of a query.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Page
+    {
+        private final List<DataFile> dataFiles; ///< The data files of the page.
+        private final String nextCursor; ///< The cursor of the next page, null if this is the last one.
+
+        private Page(List<DataFile> dataFiles, String nextCursor)
+        {
+            this.dataFiles = dataFiles;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<DataFile> getDataFiles()
+        {
+            return dataFiles;
+        }
+
+        public String getNextCursor()
+        {
+            return nextCursor;
+        }
+    }
+}
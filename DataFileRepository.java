@@ -1,10 +1,15 @@
 package net.g3ti.droidhopper.phoneagent.datafile.storage;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import net.g3ti.droidhopper.phoneagent.util.FileManager;
 import net.g3ti.droidhopper.phoneagent.util.InvalidConfigurationException;
@@ -23,11 +28,34 @@ import android.util.Log;
 public class DataFileRepository
 {
     private static final String DATA_FILE_DIRECTORY = "data";  ///< The data file directory name.
+    private static final String CONTACT_DIRECTORY = "contacts"; ///< The directory name of the contact history.
+    private static final String CONTACT_HISTORY_FILE = "history"; ///< The file name of the contact history.
     private static final String LOG_TAG = DataFileRepository.class.getSimpleName(); ///< Tag for logging.
     private static final long BUFFER_SPACE = 100L*1024L*1024L; ///< Represents the buffer space of 100 MB.    
     
     private static Context context; ///< The app's running context.
+    private static final int DEFAULT_COPY_BUDGET = 8; ///< Default number of copies of a file spread in the network.
+    private static final long DELIVERY_TOMBSTONE_LIFETIME = 7L*24L*60L*60L*1000L; ///< How long a delivered file is remembered, so that it is not received again, in milliseconds.
+    private static volatile int defaultCopyBudget = DEFAULT_COPY_BUDGET; ///< Copy budget of the files that were not handed over with one.
+    private static volatile ContactEstimator contactEstimator = new ContactEstimator(); ///< Learns the contacts with the peers.
     
+    static final IMaintenancePass MAINTENANCE_PASS = new IMaintenancePass()
+    {
+        @Override
+        public void runPass()
+        {
+            try
+            {
+                sweepDeliveredFiles();
+            }
+            catch(IOException ioException)
+            {
+                // The next pass sweeps again.
+                Log.e(LOG_TAG, "Error occured while sweeping the delivered files", ioException);
+            }
+        }
+    }; ///< Deletes the copies of the delivered files in the background.
+
     //////////////////////////////////////////////////////////////////
     /// \fn         setContext(Context context)
     /// \brief      Sets the app's context.
@@ -39,6 +67,27 @@ public class DataFileRepository
     {
         DataFileRepository.context = context;
         FileManager.setContext(context);
+        
+        // Load the catalog now, so that the first selection does not have to.
+        DataFileCatalog.load();
+        
+        // Redo the commits of received files that a power loss interrupted.
+        DataFileCommitter.recover();
+        
+        // Predict the first contacts from the history of the previous runs.
+        loadContactHistory();
+        
+        // Keep space available ahead of the contacts, instead of freeing it when a file arrives.
+        StorageSpaceManager.start();
+        
+        // The background work of the stores, which do nothing while disabled.
+        StorageMaintenance.register(FragmentStore.MAINTENANCE_PASS);
+        StorageMaintenance.register(BundleStore.MAINTENANCE_PASS);
+        StorageMaintenance.register(ChunkStore.MAINTENANCE_PASS);
+        StorageMaintenance.register(ColdStore.MAINTENANCE_PASS);
+        StorageMaintenance.register(MAINTENANCE_PASS);
+        StorageMaintenance.register(DataFileCatalog.MAINTENANCE_PASS);
+        StorageMaintenance.start();
     }
     
     //////////////////////////////////////////////////////////////////////
@@ -99,7 +148,15 @@ public class DataFileRepository
                 continue;
             }
             
+            // Ignore the files other transfers are receiving right now.
+            boolean isBeingReceived = TransferRegistry.isReceiving(incompleteDataFile.getFileId());
+            if(isBeingReceived)
+            {
+                continue;
+            }
+            
             // Try to delete the first incomplete file.
+            long deletedFileSize = incompleteDataFile.length();
             boolean successfullyDeleted = incompleteDataFile.delete();
             if(!successfullyDeleted)
             {
@@ -110,7 +167,10 @@ public class DataFileRepository
             }
             
             // Check if we have enough space now.
-            Log.d(LOG_TAG, "Deleted file " + incompleteDataFile.getName());            
+            Log.d(LOG_TAG, "Deleted file " + incompleteDataFile.getName());
+            DataFileCatalog.remove(incompleteDataFile.getFileId());
+            DataFileMetrics.recordEvicted(incompleteDataFile.getFileId(), deletedFileSize, DataFileMetrics.EvictionReason.SPACE_FOR_TRANSFER);
+            StorageSpaceManager.invalidateStorageInformation();
             boolean enoughSpaceAvailable = hasEnoughSpaceAvailable(fileSize);
             if(enoughSpaceAvailable)
             {
@@ -138,20 +198,44 @@ public class DataFileRepository
     {
         DataFile selectedFile = null;
         
-        List<DataFile> dataFiles = DataFileRepository.getDataFiles();
-        Log.i(LOG_TAG, "Number of files found: " + dataFiles.size());
+        // Construct a list to hold completed and small data files, that may still be forwarded.
+        // The files whose copy budget is used up are left to selectNextFileForCollector.
+        List<DataFile> candidateDataFiles = getForwardableDataFiles(getCompleteDataFilesLessThan(maxFileSize));
         
-        // If there are files then continue, otherwise return null.
-        boolean mayContainCandidateFile = dataFiles.size() != 0;
-        if(!mayContainCandidateFile)
+        // If there are no files, return NULL.
+        Log.i(LOG_TAG, "Number of candidate files: " + candidateDataFiles.size());
+        boolean hasCandidateFiles = candidateDataFiles.size() != 0;
+        if(!hasCandidateFiles)
         {
             return null;
         }
         
-        // Construct a list to hold completed and small data files.
-        List<DataFile> candidateDataFiles = getCompleteDataFilesLessThan(maxFileSize);
-        
-        // If there are no files, return NULL.
+        // Choose a file according to the configured behavior.
+        selectedFile = chooseDataFile(candidateDataFiles);
+        return selectedFile;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         selectNextFileForTransfer(long maxFileSize, String peerId,
+    ///             long contactElapsedMillis)
+    /// \brief      Responsible for selecting the file to be transfered,
+    ///             preferring the files that are expected to finish before
+    ///             the contact with the peer ends. The transfer code hands
+    ///             the file over with handOffCustody(DataFile, String) and
+    ///             calls endContact, so that the predictions learn from it.
+    /// \param[in]  maxFileSize - The maximum file size that the files should 
+    ///             not exceed. This is measured in bytes.
+    /// \param[in]  peerId - The ID of the peer the file is sent to.
+    /// \param[in]  contactElapsedMillis - How long the contact with the peer
+    ///             has lasted so far.
+    /// \return     DataFile - The data file that best meets the criteria, NULL
+    ///             if there is no file that meets the criteria.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static DataFile selectNextFileForTransfer(long maxFileSize, String peerId, long contactElapsedMillis) throws InvalidConfigurationException
+    {
+        List<DataFile> candidateDataFiles = getForwardableDataFiles(getCompleteDataFilesLessThan(maxFileSize));
         Log.i(LOG_TAG, "Number of candidate files: " + candidateDataFiles.size());
         boolean hasCandidateFiles = candidateDataFiles.size() != 0;
         if(!hasCandidateFiles)
@@ -159,18 +243,752 @@ public class DataFileRepository
             return null;
         }
         
-        // Choose a file according to the configured behavior.
+        // Without enough history, fall back to the plain selection.
+        long remainingContactMillis = contactEstimator.predictRemainingContactTime(peerId, contactElapsedMillis);
+        double throughput = contactEstimator.getThroughput(peerId);
+        boolean canPredict = remainingContactMillis != ContactEstimator.UNKNOWN && throughput != ContactEstimator.UNKNOWN;
+        if(!canPredict)
+        {
+            return chooseDataFile(candidateDataFiles);
+        }
+        
+        // Keep the files that are expected to finish within the remaining contact time.
+        long maxTransferableBytes = (long) (remainingContactMillis * throughput);
+        Log.d(LOG_TAG, "Predicted remaining contact: " + remainingContactMillis + " ms, " + maxTransferableBytes + " bytes");
+        List<DataFile> fittingDataFiles = new LinkedList<DataFile>();
+        for(DataFile candidateDataFile : candidateDataFiles)
+        {
+            boolean expectedToFinish = candidateDataFile.length() <= maxTransferableBytes;
+            if(expectedToFinish)
+            {
+                fittingDataFiles.add(candidateDataFile);
+            }
+        }
+        
+        // If nothing is expected to finish, still use the contact rather than leaving it idle.
+        Log.i(LOG_TAG, "Number of files expected to finish: " + fittingDataFiles.size());
+        boolean hasFittingFiles = fittingDataFiles.size() != 0;
+        return chooseDataFile(hasFittingFiles ? fittingDataFiles : candidateDataFiles);
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         selectNextBundleForTransfer(long maxFileSize, String peerId)
+    /// \brief      Responsible for bundling small files to be transfered to
+    ///             a peer together. The transfer code tries it before
+    ///             selecting a single file, and hands the bundle over with
+    ///             BundleStore.handOffCustody once it was sent.
+    /// \param[in]  maxFileSize - The maximum size that the bundle should 
+    ///             not exceed. This is measured in bytes.
+    /// \param[in]  peerId - The ID of the peer the bundle is sent to.
+    /// \return     DataFile - The bundle, NULL if bundling is disabled, the
+    ///             peer does not read bundles or there are not enough small
+    ///             files to bundle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static DataFile selectNextBundleForTransfer(long maxFileSize, String peerId)
+    {
+        boolean mayBundle = BundleStore.isEnabled() && BundleStore.canReceiveBundles(peerId);
+        if(!mayBundle)
+        {
+            return null;
+        }
+        
+        List<DataFile> candidateDataFiles = getForwardableDataFiles(getCompleteDataFilesLessThan(maxFileSize));
+        try
+        {
+            DataFile bundle = BundleStore.createBundle(candidateDataFiles, maxFileSize);
+            if(bundle != null)
+            {
+                TransferRegistry.startSending(bundle.getFileId());
+            }
+            return bundle;
+        }
+        catch(IOException ioException)
+        {
+            // Send the files one by one instead.
+            Log.e(LOG_TAG, "Error occured while bundling files.", ioException);
+            return null;
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         sendDataFile(DataFile dataFile, long offset,
+    ///             OutputStream outputStream)
+    /// \brief      Responsible for sending a selected data file or bundle.
+    ///             Copies its content to the transfer stream through a
+    ///             pooled buffer, from the offset the peer resumes at. Each
+    ///             read is charged as FOREGROUND I/O as it happens, so the
+    ///             background work yields for as long as the send reads.
+    ///             The stream is not closed.
+    /// \param[in]  dataFile - The selected file.
+    /// \param[in]  offset - The number of bytes the peer already has.
+    /// \param[in]  outputStream - The stream to the peer.
+    /// \return     long - The number of bytes sent.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static long sendDataFile(DataFile dataFile, long offset, OutputStream outputStream) throws IOException
+    {
+        FileInputStream inputStream = new FileInputStream(dataFile);
+        try
+        {
+            inputStream.getChannel().position(offset);
+            return BufferPool.copy(IoScheduler.throttle(inputStream, IoScheduler.IoClass.FOREGROUND), outputStream);
+        }
+        finally
+        {
+            inputStream.close();
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         openIncomingBundle(String bundleId, long bundleSize)
+    /// \brief      Responsible for receiving a bundle from a peer. Makes
+    ///             space for it like for a single file, then opens it to
+    ///             resume from the offset given by the writer. The IDs of
+    ///             the unpacked files are reported back to the sender once
+    ///             the bundle is committed.
+    /// \param[in]  bundleId - The ID of the bundle.
+    /// \param[in]  bundleSize - The full size of the bundle in bytes.
+    /// \return     BundleWriter - The writer of the bundle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static BundleWriter openIncomingBundle(String bundleId, long bundleSize) throws IOException
+    {
+        // The members are unpacked next to the bundle, so it may take twice its size for a while.
+        boolean enoughSpace = hasEnoughSpaceAvailable(2*bundleSize) || deleteIncompleteFilesForSpace(bundleId, 2*bundleSize);
+        if(!enoughSpace)
+        {
+            throw new IOException("Not enough space to receive bundle " + bundleId);
+        }
+        return BundleStore.openIncoming(bundleId, bundleSize);
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         openIncomingFile(String fileId, long fileSize)
+    /// \brief      Responsible for receiving a data file. Makes space for
+    ///             it, then opens it to resume from its last checkpoint.
+    ///             The transfer writes to the writer, and completes the
+    ///             file with commitIncomingFile once all of it arrived.
+    ///             Bundles are received with openIncomingBundle instead.
+    /// \param[in]  fileId - The ID of the file.
+    /// \param[in]  fileSize - The full size of the file in bytes.
+    /// \return     DurableDataFileWriter - The writer of the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static DurableDataFileWriter openIncomingFile(String fileId, long fileSize) throws IOException
+    {
+        boolean isBundle = BundleStore.isBundle(fileId);
+        if(isBundle)
+        {
+            throw new IOException("Bundle " + fileId + " has to be received with openIncomingBundle.");
+        }
+        
+        boolean enoughSpace = hasEnoughSpaceAvailable(fileSize) || deleteIncompleteFilesForSpace(fileId, fileSize);
+        if(!enoughSpace)
+        {
+            throw new IOException("Not enough space to receive file " + fileId);
+        }
+        return DataFileCommitter.open(fileId, fileSize);
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         commitIncomingFile(DurableDataFileWriter writer,
+    ///             int copyBudget)
+    /// \brief      Responsible for completing a received data file. Once
+    ///             this returns, the file survives a power loss and the
+    ///             transfer may acknowledge it to the sender.
+    /// \param[in]  writer - The writer of the file, closed afterwards.
+    /// \param[in]  copyBudget - The copy budget the sender handed over
+    ///             with the file.
+    /// \return     DataFile - The complete data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static DataFile commitIncomingFile(DurableDataFileWriter writer, int copyBudget) throws IOException
+    {
+        DataFile completeFile = writer.commit();
+        acceptCustody(completeFile, copyBudget);
+        return completeFile;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         selectNextFileForCollector(long maxFileSize)
+    /// \brief      Responsible for selecting the file to be delivered to a
+    ///             collector. Unlike peers, collectors also get the files
+    ///             whose copy budget is used up, as they are the destination.
+    ///             The transfer code calls it instead of
+    ///             selectNextFileForTransfer when it talks to a collector.
+    /// \param[in]  maxFileSize - The maximum file size that the files should 
+    ///             not exceed. This is measured in bytes.
+    /// \return     DataFile - The data file that best meets the criteria, NULL
+    ///             if there is no file that meets the criteria.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static DataFile selectNextFileForCollector(long maxFileSize) throws InvalidConfigurationException
+    {
+        List<DataFile> candidateDataFiles = getCompleteDataFilesLessThan(maxFileSize);
+        Log.i(LOG_TAG, "Number of candidate files for the collector: " + candidateDataFiles.size());
+        boolean hasCandidateFiles = candidateDataFiles.size() != 0;
+        if(!hasCandidateFiles)
+        {
+            return null;
+        }
+        return chooseDataFile(candidateDataFiles);
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getForwardableDataFiles(List<DataFile> dataFiles)
+    /// \brief      Filters out the files whose copy budget is used up, which
+    ///             are kept for the collector only.
+    /// \param[in]  dataFiles - The files to filter.
+    /// \return     List<DataFile> - The files that may be handed to a peer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static List<DataFile> getForwardableDataFiles(List<DataFile> dataFiles)
+    {
+        List<DataFile> forwardableDataFiles = new LinkedList<DataFile>();
+        for(DataFile dataFile : dataFiles)
+        {
+            boolean hasCopiesLeft = dataFile.getCopyBudget() > 1;
+            if(hasCopiesLeft)
+            {
+                forwardableDataFiles.add(dataFile);
+            }
+        }
+        return forwardableDataFiles;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         handOffCustody(DataFile dataFile)
+    /// \brief      Splits the copy budget of a file that is handed to a peer:
+    ///             the peer gets half of it and this agent keeps the rest.
+    ///             This ends the transfer of the file.
+    /// \param[in]  dataFile - The file handed to the peer.
+    /// \return     int - The copy budget to give to the peer, 0 if the file
+    ///             should not be handed to a peer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static int handOffCustody(DataFile dataFile)
+    {
+        return handOffCustody(dataFile, null);
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         handOffCustody(DataFile dataFile, String peerId)
+    /// \brief      Splits the copy budget of a file that was sent to a peer,
+    ///             as handOffCustody(DataFile) does, and records the
+    ///             transfer in the contact estimator.
+    /// \param[in]  dataFile - The file handed to the peer.
+    /// \param[in]  peerId - The ID of the peer, NULL if it is not known.
+    /// \return     int - The copy budget to give to the peer, 0 if the file
+    ///             should not be handed to a peer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static int handOffCustody(DataFile dataFile, String peerId)
+    {
+        boolean knowsPeer = peerId != null;
+        if(knowsPeer)
+        {
+            recordTransfer(peerId, dataFile);
+        }
+        TransferRegistry.finishSending(dataFile.getFileId());
+        synchronized(DataFileCatalog.class)
+        {
+            int copyBudget = dataFile.getCopyBudget();
+            boolean hasCopiesLeft = copyBudget > 1;
+            if(!hasCopiesLeft)
+            {
+                return 0;
+            }
+            
+            int handedOffBudget = copyBudget / 2;
+            try
+            {
+                CatalogEntry entry = DataFileCatalog.update(dataFile);
+                DataFileCatalog.put(entry.withCustody(copyBudget - handedOffBudget, false));
+            }
+            catch(IOException ioException)
+            {
+                // The budget is split in memory, a crash before the next compaction gives the copies back.
+                Log.e(LOG_TAG, "Error occured while recording the custody of " + dataFile.getName(), ioException);
+            }
+            Log.d(LOG_TAG, "Handed off " + handedOffBudget + " copies of " + dataFile.getName());
+            return handedOffBudget;
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordTransfer(String peerId, DataFile dataFile)
+    /// \brief      Records in the contact estimator the transfer of a file
+    ///             to a peer, timed from the selection of the file. Must be
+    ///             called before the transfer of the file is finished.
+    /// \param[in]  peerId - The ID of the peer.
+    /// \param[in]  dataFile - The file sent to the peer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void recordTransfer(String peerId, DataFile dataFile)
+    {
+        long sendingMillis = TransferRegistry.getSendingMillis(dataFile.getFileId());
+        boolean wasSent = sendingMillis > 0;
+        if(wasSent)
+        {
+            contactEstimator.recordTransfer(peerId, dataFile.length(), sendingMillis);
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         endContact(String peerId, long contactDurationMillis)
+    /// \brief      Records in the contact estimator a contact with a peer
+    ///             that ended, and saves the contact history.
+    /// \param[in]  peerId - The ID of the peer.
+    /// \param[in]  contactDurationMillis - How long the contact lasted.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void endContact(String peerId, long contactDurationMillis)
+    {
+        ContactEstimator estimator = contactEstimator;
+        estimator.recordContact(peerId, contactDurationMillis);
+        
+        File contactDirectory = FileManager.getFileDirectory(CONTACT_DIRECTORY);
+        if(contactDirectory == null)
+        {
+            return;
+        }
+        try
+        {
+            estimator.save(new File(contactDirectory, CONTACT_HISTORY_FILE));
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while saving the contact history", ioException);
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         loadContactHistory()
+    /// \brief      Loads the contact history saved by endContact. The
+    ///             estimator starts empty if it cannot be read.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void loadContactHistory()
+    {
+        File contactDirectory = FileManager.getFileDirectory(CONTACT_DIRECTORY);
+        if(contactDirectory == null)
+        {
+            return;
+        }
+        try
+        {
+            contactEstimator = ContactEstimator.load(new File(contactDirectory, CONTACT_HISTORY_FILE));
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while loading the contact history", ioException);
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         acceptCustody(DataFile dataFile, int copyBudget)
+    /// \brief      Records the copy budget a peer handed over with a file.
+    /// \param[in]  dataFile - The file received.
+    /// \param[in]  copyBudget - The copy budget received with it.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void acceptCustody(DataFile dataFile, int copyBudget)
+    {
+        synchronized(DataFileCatalog.class)
+        {
+            try
+            {
+                CatalogEntry entry = DataFileCatalog.update(dataFile);
+                DataFileCatalog.put(entry.withCustody(Math.max(copyBudget, 1), entry.isAcknowledged()));
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while recording the custody of " + dataFile.getName(), ioException);
+            }
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setDefaultCopyBudget(int copyBudget)
+    /// \brief      Sets the copy budget of the files that were not handed
+    ///             over with one, such as the files created on this agent.
+    /// \param[in]  copyBudget - The copy budget, at least 1.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void setDefaultCopyBudget(int copyBudget)
+    {
+        boolean validBudget = copyBudget >= 1;
+        if(!validBudget)
+        {
+            throw new IllegalArgumentException("Invalid copy budget " + copyBudget);
+        }
+        defaultCopyBudget = copyBudget;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getDefaultCopyBudget()
+    /// \brief      Gets the copy budget of the files that were not handed
+    ///             over with one.
+    /// \return     int - The default copy budget.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static int getDefaultCopyBudget()
+    {
+        return defaultCopyBudget;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         acknowledgeDelivery(String fileId)
+    /// \brief      Records that a file reached the collector, and deletes
+    ///             it right away as no peer needs it anymore.
+    /// \param[in]  fileId - The ID of the delivered file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void acknowledgeDelivery(String fileId)
+    {
+        synchronized(DataFileCatalog.class)
+        {
+            boolean alreadyAcknowledged = isDeliveryAcknowledged(fileId);
+            if(alreadyAcknowledged)
+            {
+                return;
+            }
+            
+            // Keep the entry, so that the file is not accepted again.
+            CatalogEntry entry = DataFileCatalog.getEntry(fileId);
+            if(entry == null)
+            {
+                entry = new CatalogEntry(fileId, 0, true, 0, 0, "");
+            }
+            try
+            {
+                DataFileCatalog.put(entry.withCustody(0, true));
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while recording the delivery of " + fileId, ioException);
+            }
+        }
+        
+        TransferRegistry.finishSending(fileId);
+        deleteAllCopies(fileId);
+        DataFileMetrics.recordDelivered(fileId);
+        Log.i(LOG_TAG, "Delivery of " + fileId + " acknowledged, file deleted.");
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         deleteAllCopies(String fileId)
+    /// \brief      Deletes every copy of a file this agent holds: the data
+    ///             file, complete or not, its chunks, its cold copy and its
+    ///             fragments.
+    /// \param[in]  fileId - The ID of the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void deleteAllCopies(String fileId)
+    {
+        File dataFileDirectory = getDataFileDirectory();
+        if(dataFileDirectory != null)
+        {
+            DataFile dataFile = new DataFile(dataFileDirectory, fileId);
+            dataFile.delete();
+            new File(dataFileDirectory, dataFile.getRemoteIncompleteDataFileName()).delete();
+        }
+        try
+        {
+            ChunkStore.release(fileId);
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while releasing the chunks of " + fileId, ioException);
+        }
+        ColdStore.release(fileId);
+        try
+        {
+            FragmentStore.release(fileId);
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while releasing the fragments of " + fileId, ioException);
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         hasStoredCopy(File dataFileDirectory, String fileId)
+    /// \brief      Checks whether this agent still holds the file itself,
+    ///             complete or not, as chunks or cold.
+    /// \param[in]  dataFileDirectory - The data file directory.
+    /// \param[in]  fileId - The ID of the file.
+    /// \return     boolean - TRUE if a copy of the file is stored.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static boolean hasStoredCopy(File dataFileDirectory, String fileId)
+    {
+        DataFile dataFile = new DataFile(dataFileDirectory, fileId);
+        return dataFile.exists() || new File(dataFileDirectory, dataFile.getRemoteIncompleteDataFileName()).exists()
+                || ChunkStore.contains(fileId) || ColdStore.contains(fileId);
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         sweepDeliveredFiles()
+    /// \brief      Deletes again the copies of delivered files that came
+    ///             back, for example a cold copy written while the delivery
+    ///             was acknowledged or a fragment received afterwards, and
+    ///             forgets the deliveries acknowledged long ago. By then
+    ///             the copies other agents held have been dropped too, so
+    ///             the tombstone no longer prevents anything. Called by the
+    ///             storage manager.
+    /// \return     int - The number of deliveries forgotten.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static int sweepDeliveredFiles() throws IOException
+    {
+        File dataFileDirectory = getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            return 0;
+        }
+        
+        long now = System.currentTimeMillis();
+        int forgottenCount = 0;
+        Set<String> deliveredFileIds = new HashSet<String>();
+        for(CatalogEntry entry : DataFileCatalog.getEntries())
+        {
+            boolean isDelivered = entry.isAcknowledged();
+            if(!isDelivered)
+            {
+                continue;
+            }
+            
+            String fileId = entry.getFileId();
+            boolean isExpired = now - entry.getAcknowledgedTimestamp() > DELIVERY_TOMBSTONE_LIFETIME;
+            if(isExpired)
+            {
+                DataFileCatalog.remove(fileId);
+                forgottenCount++;
+                continue;
+            }
+            deliveredFileIds.add(fileId);
+            
+            boolean cameBack = hasStoredCopy(dataFileDirectory, fileId);
+            if(cameBack)
+            {
+                Log.d(LOG_TAG, "Deleting the copy of delivered file " + fileId + " that came back.");
+                deleteAllCopies(fileId);
+            }
+        }
+        
+        // The fragments have IDs of their own, so they are found by their parent.
+        String[] fileNames = dataFileDirectory.list();
+        if(fileNames != null)
+        {
+            for(String fileName : fileNames)
+            {
+                DataFile dataFile = new DataFile(dataFileDirectory, fileName);
+                String parentFileId = FragmentStore.getParentFileId(dataFile.getFileId());
+                boolean isFragmentOfDeliveredFile = parentFileId != null && deliveredFileIds.contains(parentFileId);
+                if(isFragmentOfDeliveredFile)
+                {
+                    dataFile.delete();
+                    DataFileCatalog.remove(dataFile.getFileId());
+                }
+            }
+        }
+        
+        boolean forgotAny = forgottenCount != 0;
+        if(forgotAny)
+        {
+            Log.i(LOG_TAG, "Forgot " + forgottenCount + " deliveries acknowledged more than " + DELIVERY_TOMBSTONE_LIFETIME + " ms ago.");
+        }
+        return forgottenCount;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         acknowledgeDeliveries(Collection<String> fileIds)
+    /// \brief      Records the deliveries a peer has heard of, and deletes
+    ///             the delivered files.
+    /// \param[in]  fileIds - The IDs of the delivered files.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void acknowledgeDeliveries(Collection<String> fileIds)
+    {
+        for(String fileId : fileIds)
+        {
+            acknowledgeDelivery(fileId);
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isDeliveryAcknowledged(String fileId)
+    /// \brief      Checks whether a file is known to have reached the
+    ///             collector, so that it is not received again.
+    /// \param[in]  fileId - The ID of the file.
+    /// \return     boolean - TRUE if the delivery was acknowledged.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean isDeliveryAcknowledged(String fileId)
+    {
+        CatalogEntry entry = DataFileCatalog.getEntry(fileId);
+        return entry != null && entry.isAcknowledged();
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getAcknowledgedFileIds()
+    /// \brief      Gets the IDs of the files known to have reached the
+    ///             collector, to share them with peers.
+    /// \return     List<String> - The IDs of the delivered files.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static List<String> getAcknowledgedFileIds()
+    {
+        List<String> acknowledgedFileIds = new LinkedList<String>();
+        for(CatalogEntry entry : DataFileCatalog.getEntries())
+        {
+            if(entry.isAcknowledged())
+            {
+                acknowledgedFileIds.add(entry.getFileId());
+            }
+        }
+        return acknowledgedFileIds;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         chooseDataFile(List<DataFile> candidateDataFiles)
+    /// \brief      Chooses one of the candidate files according to the
+    ///             configured behavior.
+    /// \param[in]  candidateDataFiles - The files to choose from.
+    /// \return     DataFile - The chosen data file, NULL if none was chosen.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static DataFile chooseDataFile(List<DataFile> candidateDataFiles) throws InvalidConfigurationException
+    {
+        long startTime = System.nanoTime();
         IFileChooser fileChooser = FileChooserFactory.createFileChooser(context);
         Log.d(LOG_TAG, "File chooser: " + fileChooser.getClass().getSimpleName());
-        selectedFile = fileChooser.chooseDataFile(candidateDataFiles);
+        DataFile selectedFile = fileChooser.chooseDataFile(candidateDataFiles);
         boolean selectedFileNotNull = selectedFile != null;
         if(selectedFileNotNull)
         {
             Log.i(LOG_TAG, "Chosen file: " + selectedFile.getName());
+            String selectedFileId = selectedFile.getFileId();
+            long selectionNanos = System.nanoTime() - startTime;
+            
+            // The background work leaves the file alone, and yields the storage, until it was handed off or the transfer gave up on it.
+            TransferRegistry.startSending(selectedFileId);
+            // A rebuilt file is charged by materialize, its reads by sendDataFile as the transfer makes them.
+            selectedFile = materialize(selectedFile);
+            if(selectedFile != null)
+            {
+                DataFileMetrics.recordSelected(selectedFile, selectionNanos);
+            }
+            else
+            {
+                TransferRegistry.finishSending(selectedFileId);
+            }
         }
         return selectedFile;
     }
     
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         materialize(DataFile dataFile)
+    /// \brief      Makes sure the content of a data file is in the data file
+    ///             directory, rebuilding it if it is kept by another store.
+    /// \param[in]  dataFile - The data file to materialize.
+    /// \return     DataFile - The data file, or NULL if its content could not
+    ///             be rebuilt.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static DataFile materialize(DataFile dataFile)
+    {
+        boolean isStoredElsewhere = dataFile instanceof StoredDataFile && !dataFile.exists();
+        if(!isStoredElsewhere)
+        {
+            return dataFile;
+        }
+        
+        try
+        {
+            // Rebuilding is on the way of a transfer, so it is foreground I/O.
+            IoScheduler.acquire(IoScheduler.IoClass.FOREGROUND, dataFile.length());
+            boolean isCold = ColdStore.contains(dataFile.getFileId());
+            if(isCold)
+            {
+                Log.d(LOG_TAG, "Decompressing cold file " + dataFile.getName());
+                return ColdStore.thaw(dataFile.getFileId());
+            }
+            Log.d(LOG_TAG, "Rebuilding file " + dataFile.getName() + " from its chunks.");
+            return ChunkStore.rebuild(dataFile.getFileId());
+        }
+        catch(IOException ioException)
+        {
+            Log.e(LOG_TAG, "Error occured while rebuilding file " + dataFile.getName(), ioException);
+            return null;
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getContext()
+    /// \brief      Gets the app's context.
+    /// \return     Context - the app's context, or null if it was not set.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static Context getContext()
+    {
+        return context;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getContactEstimator()
+    /// \brief      Gets the estimator that learns the contacts with the peers.
+    ///             The transfers are recorded by handOffCustody, the contacts
+    ///             by endContact.
+    /// \return     ContactEstimator - The contact estimator.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static ContactEstimator getContactEstimator()
+    {
+        return contactEstimator;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setContactEstimator(ContactEstimator estimator)
+    /// \brief      Replaces the contact estimator, so that a replay can
+    ///             drive the selection with its own history.
+    /// \param[in]  estimator - The contact estimator.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void setContactEstimator(ContactEstimator estimator)
+    {
+        contactEstimator = estimator;
+    }
+    
     //////////////////////////////////////////////////////////////////////
     /// \fn         getDataFileDirectory()
     /// \brief      Gives the data file directory.
@@ -194,6 +1012,7 @@ public class DataFileRepository
     //////////////////////////////////////////////////////////////////////
     public static List<DataFile> getDataFiles()
     {
+        long startTime = System.nanoTime();
         List<DataFile> dataFiles = new LinkedList<DataFile>();
         
         // Get the folder where the files are stored.
@@ -218,6 +1037,10 @@ public class DataFileRepository
             }
         }
         
+        // Add the files kept as chunks or cold, which are not in the directory.
+        dataFiles.addAll(ChunkStore.getDataFiles());
+        dataFiles.addAll(ColdStore.getDataFiles());
+        DataFileMetrics.recordScan(System.nanoTime() - startTime);
         return dataFiles;
     }
     
@@ -383,8 +1206,8 @@ public class DataFileRepository
     //////////////////////////////////////////////////////////////////
     public static boolean hasEnoughSpaceAvailable(long targetSize)
     {
-        // Read the storage statistics of the device.
-        StorageInformation storageInformation = StorageInformation.getDeviceStorageInformation();
+        // Use the storage statistics the space manager read a moment ago, if any.
+        StorageInformation storageInformation = StorageSpaceManager.getStorageInformation();
         long freeSpaceLeftInBytes = storageInformation.getFreeSpace();
         
         Log.d(LOG_TAG,"FREE SPACE: " + freeSpaceLeftInBytes);
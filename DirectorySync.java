@@ -0,0 +1,51 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       DirectorySync
+/// \brief       Syncs directories, so that the files created in them or
+///              renamed into them survive a power loss. Syncing a file
+///              does not sync its name.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+final class DirectorySync
+{
+    private DirectorySync()
+    {
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         sync(File directory)
+    /// \brief      Syncs a directory.
+    /// \param[in]  directory - the directory to sync.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void sync(File directory) throws IOException
+    {
+        try
+        {
+            FileDescriptor descriptor = Os.open(directory.getPath(), OsConstants.O_RDONLY, 0);
+            try
+            {
+                Os.fsync(descriptor);
+            }
+            finally
+            {
+                Os.close(descriptor);
+            }
+        }
+        catch(ErrnoException errnoException)
+        {
+            throw new IOException("Directory " + directory.getName() + " could not be synced: " + errnoException.getMessage());
+        }
+    }
+}
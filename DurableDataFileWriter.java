@@ -0,0 +1,329 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       DurableDataFileWriter
+/// \brief       Writes a data file being received, so that what was
+///              acknowledged survives a power loss.
+///
+///              The data is synced at checkpoints, at the chunk boundaries
+///              given by the transfer code and at least every
+///              CHECKPOINT_BYTES, and the synced length is recorded in the
+///              catalog. A transfer resumes from the last checkpoint, as
+///              bytes after it may not have reached the storage. The file
+///              becomes complete through DataFileCommitter.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class DurableDataFileWriter
+{
+    private static final long CHECKPOINT_BYTES = 1024L*1024L; ///< A checkpoint is taken at least after this many bytes.
+    private static final int WRITE_BUFFER_SIZE = 64*1024; ///< Size of the pooled direct buffer the received arrays are written through.
+
+    private final DataFile incompleteFile; ///< The incomplete file being written.
+    private final DataFile completeFile; ///< The file once complete.
+    private final long fileSize; ///< The full size of the file in bytes.
+    private final RandomAccessFile randomAccessFile; ///< The open incomplete file.
+    private final FileChannel channel; ///< The channel writing to the incomplete file.
+    private long position; ///< The number of bytes of the file written so far.
+    private long uncheckpointedBytes = 0; ///< Bytes written since the last checkpoint.
+    private boolean closed = false; ///< TRUE once the file is closed.
+    private boolean released = false; ///< TRUE once the file is not protected from eviction anymore.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         DurableDataFileWriter(File dataFileDirectory,
+    ///             String fileId, long fileSize)
+    /// \brief      Opens the incomplete file of a data file, and cuts it
+    ///             back to its last checkpoint.
+    /// \param[in]  dataFileDirectory - the data file directory.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \param[in]  fileSize - the full size of the data file in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    DurableDataFileWriter(File dataFileDirectory, String fileId, long fileSize) throws IOException
+    {
+        this.completeFile = new DataFile(dataFileDirectory, fileId);
+        this.incompleteFile = new DataFile(dataFileDirectory, completeFile.getRemoteIncompleteDataFileName());
+        this.fileSize = fileSize;
+        this.randomAccessFile = new RandomAccessFile(incompleteFile, "rw");
+        this.channel = randomAccessFile.getChannel();
+
+        // Bytes after the last checkpoint may be garbage after a power loss, so receive them again.
+        long resumeOffset = channel.size();
+        CatalogEntry entry = DataFileCatalog.getEntry(fileId);
+        boolean hasCheckpoint = entry != null && !entry.isComplete() && entry.getSize() == fileSize;
+        resumeOffset = hasCheckpoint ? Math.min(resumeOffset, entry.getProgress()) : 0;
+        channel.truncate(resumeOffset);
+        channel.position(resumeOffset);
+        position = resumeOffset;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getPosition()
+    /// \brief      Gets the offset the transfer has to resume from.
+    /// \return     long - the number of bytes already written.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long getPosition() throws IOException
+    {
+        return position;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         write(byte[] buffer, int offset, int length)
+    /// \brief      Appends received bytes, taking a checkpoint when enough
+    ///             bytes were written since the last one. The bytes go to
+    ///             the file through a pooled direct buffer.
+    /// \param[in]  buffer - the buffer holding the bytes.
+    /// \param[in]  offset - the offset of the bytes in the buffer.
+    /// \param[in]  length - the number of bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void write(byte[] buffer, int offset, int length) throws IOException
+    {
+        checkLength(length);
+        IoScheduler.acquire(IoScheduler.IoClass.FOREGROUND, length);
+        BufferPool.Lease lease = BufferPool.leaseDirect(Math.min(length, WRITE_BUFFER_SIZE));
+        try
+        {
+            ByteBuffer directBuffer = lease.getBuffer();
+            int end = offset + length;
+            while(offset < end)
+            {
+                int chunkLength = Math.min(end - offset, directBuffer.capacity());
+                directBuffer.clear();
+                directBuffer.put(buffer, offset, chunkLength);
+                directBuffer.flip();
+                writeFully(directBuffer);
+                offset += chunkLength;
+            }
+        }
+        finally
+        {
+            lease.release();
+        }
+        checkpointIfDue();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         write(ByteBuffer buffer)
+    /// \brief      Appends the remaining bytes of a buffer, taking a
+    ///             checkpoint when enough bytes were written since the
+    ///             last one. A heap buffer is written through a pooled
+    ///             direct buffer.
+    /// \param[in]  buffer - the buffer holding the bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void write(ByteBuffer buffer) throws IOException
+    {
+        boolean isHeapBuffer = buffer.hasArray();
+        if(isHeapBuffer)
+        {
+            int length = buffer.remaining();
+            write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return;
+        }
+
+        checkLength(buffer.remaining());
+        IoScheduler.acquire(IoScheduler.IoClass.FOREGROUND, buffer.remaining());
+        writeFully(buffer);
+        checkpointIfDue();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         checkLength(long length)
+    /// \brief      Rejects bytes that would go past the size of the file,
+    ///             before any of them is written.
+    /// \param[in]  length - the number of bytes to write.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void checkLength(long length) throws IOException
+    {
+        boolean fitsInFile = length <= fileSize - position;
+        if(!fitsInFile)
+        {
+            throw new IOException("File: " + incompleteFile.getName() + " would get " + (position + length) + " of " + fileSize + " bytes.");
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeFully(ByteBuffer buffer)
+    /// \brief      Writes all the remaining bytes of a buffer to the file.
+    /// \param[in]  buffer - the buffer holding the bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void writeFully(ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            int writtenBytes = channel.write(buffer);
+            position += writtenBytes;
+            uncheckpointedBytes += writtenBytes;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         checkpointIfDue()
+    /// \brief      Takes a checkpoint if enough bytes were written since
+    ///             the last one.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void checkpointIfDue() throws IOException
+    {
+        boolean checkpointDue = uncheckpointedBytes >= CHECKPOINT_BYTES;
+        if(checkpointDue)
+        {
+            checkpoint();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         checkpoint()
+    /// \brief      Makes the bytes written so far durable, at a chunk
+    ///             boundary. Checkpoints of concurrent transfers share
+    ///             their catalog sync.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void checkpoint() throws IOException
+    {
+        if(uncheckpointedBytes == 0)
+        {
+            return;
+        }
+        DataFileCommitter.checkpoint(this);
+        uncheckpointedBytes = 0;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         commit()
+    /// \brief      Makes the file durable and complete, and closes it. The
+    ///             commits of concurrent transfers share their catalog sync.
+    ///             The storage is checked afterwards, as it holds one more
+    ///             complete file.
+    /// \return     DataFile - the complete data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public DataFile commit() throws IOException
+    {
+        boolean isComplete = channel.size() == fileSize;
+        if(!isComplete)
+        {
+            throw new IOException("File: " + incompleteFile.getName() + " has " + channel.size() + " of " + fileSize + " bytes.");
+        }
+
+        try
+        {
+            DataFileCommitter.commit(this);
+        }
+        finally
+        {
+            close();
+        }
+        StorageSpaceManager.requestCheck();
+        return completeFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         close()
+    /// \brief      Closes the file without completing it, for example when
+    ///             the contact is lost. The bytes written since the last
+    ///             checkpoint are not made durable. The file can be evicted
+    ///             again once closed.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void close() throws IOException
+    {
+        try
+        {
+            closeChannel();
+        }
+        finally
+        {
+            if(!released)
+            {
+                released = true;
+                TransferRegistry.finishReceiving(completeFile.getFileId());
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         closeChannel()
+    /// \brief      Closes the incomplete file, keeping it protected from
+    ///             eviction.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    void closeChannel() throws IOException
+    {
+        if(!closed)
+        {
+            closed = true;
+            randomAccessFile.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         sync()
+    /// \brief      Forces the bytes written so far to the storage.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    void sync() throws IOException
+    {
+        channel.force(false);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getIncompleteFile()
+    /// \brief      Gets the file being written, with its incomplete suffix.
+    /// \return     DataFile - the incomplete file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    DataFile getIncompleteFile()
+    {
+        return incompleteFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCompleteFile()
+    /// \brief      Gets the file the incomplete file is renamed to once it
+    ///             is committed.
+    /// \return     DataFile - the complete file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    DataFile getCompleteFile()
+    {
+        return completeFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getFileSize()
+    /// \brief      Gets the full size of the file being received.
+    /// \return     long - the size in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    long getFileSize()
+    {
+        return fileSize;
+    }
+}
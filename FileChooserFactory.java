@@ -17,6 +17,11 @@ public class FileChooserFactory
 {
     private static final String LOG_TAG = FileChooserFactory.class.getSimpleName(); ///< Tag for logging.
     private static final UploadPriorityType DEFAULT_UPLOAD_PRIORITY_TYPE = UploadPriorityType.SMALLEST_FIRST; ///< Default upload priority type if the configuration setting is null.
+    private static UploadPriorityType originFairOrder = DEFAULT_UPLOAD_PRIORITY_TYPE; ///< Order of the files within one origin for the origin fair chooser.
+    private static OriginFairFileChooser originFairFileChooser = null; ///< The origin fair chooser, kept between selections as it queues the files.
+    private static boolean priorityClassesEnabled = false; ///< TRUE to send the files by priority class first, then in the configured order.
+    private static PriorityClassFileChooser priorityClassFileChooser = null; ///< The priority class chooser, kept between selections as it queues the files.
+    private static UploadPriorityType priorityClassOrder = null; ///< Order of the files within one class for the priority class chooser.
     
     //////////////////////////////////////////////////////////////////////
     /// \fn         createFileChooser(Context context)
@@ -70,6 +75,13 @@ public class FileChooserFactory
         
         IFileChooser chooser = null;
         
+        // The priority classes are applied on top of the size and age based orders.
+        boolean usePriorityClasses = isPriorityClassesEnabled() && uploadPriority != UploadPriorityType.ORIGIN_FAIR;
+        if(usePriorityClasses)
+        {
+            return getPriorityClassFileChooser(uploadPriority);
+        }
+        
         // Choose one of the file choosers.
         switch(uploadPriority)
         {
@@ -85,6 +97,9 @@ public class FileChooserFactory
             case SMALLEST_FIRST:
                 chooser = new SmallestFileChooser();
                 break;
+            case ORIGIN_FAIR:
+                chooser = getOriginFairFileChooser();
+                break;
             default:
                 chooser = null;
                 Log.e(LOG_TAG, "Choosing upload priority failed, the given upload priority is " + uploadPrioritySetting);
@@ -92,4 +107,88 @@ public class FileChooserFactory
         }
         return chooser;
     }    
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setOriginFairOrder(UploadPriorityType uploadPriority)
+    /// \brief      Sets the order of the files within one origin, used by
+    ///             the origin fair chooser.
+    /// \param[in]  uploadPriority - One of the size or age based upload
+    ///             priorities.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setOriginFairOrder(UploadPriorityType uploadPriority)
+    {
+        boolean orderChanged = uploadPriority != originFairOrder;
+        if(orderChanged)
+        {
+            originFairOrder = uploadPriority;
+            originFairFileChooser = null;
+        }
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setPriorityClassesEnabled(boolean enabled)
+    /// \brief      Enables or disables sending the files by priority class
+    ///             first. The configured upload priority still orders the
+    ///             files within a class. The origin fair order does not use
+    ///             the priority classes.
+    /// \param[in]  enabled - TRUE to use the priority classes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setPriorityClassesEnabled(boolean enabled)
+    {
+        priorityClassesEnabled = enabled;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isPriorityClassesEnabled()
+    /// \brief      Checks whether the files are sent by priority class first.
+    /// \return     boolean - TRUE if the priority classes are used.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized boolean isPriorityClassesEnabled()
+    {
+        return priorityClassesEnabled;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getPriorityClassFileChooser(UploadPriorityType uploadPriority)
+    /// \brief      Gets the priority class chooser for an order within the
+    ///             classes, creating it the first time or when the order
+    ///             changed.
+    /// \param[in]  uploadPriority - One of the size or age based upload
+    ///             priorities.
+    /// \return     PriorityClassFileChooser - The priority class chooser.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static synchronized PriorityClassFileChooser getPriorityClassFileChooser(UploadPriorityType uploadPriority)
+    {
+        boolean orderChanged = uploadPriority != priorityClassOrder;
+        if(priorityClassFileChooser == null || orderChanged)
+        {
+            priorityClassFileChooser = new PriorityClassFileChooser(new UploadOrderComparator(uploadPriority));
+            priorityClassOrder = uploadPriority;
+        }
+        return priorityClassFileChooser;
+    }
+    
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getOriginFairFileChooser()
+    /// \brief      Gets the origin fair chooser, creating it the first time.
+    /// \return     OriginFairFileChooser - The origin fair chooser.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static synchronized OriginFairFileChooser getOriginFairFileChooser()
+    {
+        if(originFairFileChooser == null)
+        {
+            originFairFileChooser = new OriginFairFileChooser(new UploadOrderComparator(originFairOrder));
+        }
+        return originFairFileChooser;
+    }
 }
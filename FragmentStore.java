@@ -0,0 +1,995 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       FragmentStore
+/// \brief       Optional store that splits large complete data files into
+///              k + m Reed-Solomon fragments, so that different peers can
+///              carry different fragments of a file too large for a single
+///              contact, and the collector rebuilds it from any k of them.
+///
+///              Each fragment is a data file of its own, a ZIP file holding
+///              the metadata of the original file with the fragment fields
+///              added, and one block of the code. Fragments are named
+///              "frag-<index>-<k>-<m>-<file ID>", so they are selected,
+///              forwarded, catalogued and evicted like any other data file,
+///              and never mistaken for the original file. Names longer than
+///              64 bytes are kept by the catalog in its text area, like any
+///              long file ID. Acknowledging the delivery of the original
+///              file deletes its fragments.
+///
+///              Fragmenting reads and writes through the I/O scheduler as
+///              background I/O, without holding the lock of the store, so
+///              that rebuilding a file does not wait for the transfers.
+///              Files being received or sent are left as they are.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class FragmentStore
+{
+    private static final String LOG_TAG = FragmentStore.class.getSimpleName(); ///< Tag for logging.
+    private static final String FRAGMENT_PREFIX = "frag-"; ///< Beginning of the name of every fragment.
+    private static final String METADATA_ENTRY = "fragment.json"; ///< Name of the metadata entry in a fragment.
+    private static final String FRAGMENT_ENTRY = "fragment.bin"; ///< Name of the fragment data entry in a fragment.
+    private static final String PARENT_FILE_ID = "ParentFileId"; ///< Key of the ID of the original file in the metadata.
+    private static final String FRAGMENT_INDEX = "FragmentIndex"; ///< Key of the index of the fragment in the metadata.
+    private static final String DATA_FRAGMENTS = "DataFragments"; ///< Key of k in the metadata.
+    private static final String PARITY_FRAGMENTS = "ParityFragments"; ///< Key of m in the metadata.
+    private static final String PARENT_SIZE = "ParentSize"; ///< Key of the size of the original file in the metadata.
+    private static final String FRAGMENT_SIZE = "FragmentSize"; ///< Key of the size of the fragment data in the metadata.
+    private static final int BLOCK_SIZE = 64*1024; ///< Number of bytes of each fragment encoded or decoded at once.
+    private static final int DEFAULT_DATA_FRAGMENTS = 4; ///< Default number of fragments needed to rebuild a file.
+    private static final int DEFAULT_PARITY_FRAGMENTS = 2; ///< Default number of fragments that may be lost.
+    private static final long DEFAULT_MIN_FILE_SIZE = 16L*1024L*1024L; ///< Default size from which complete files are fragmented.
+    private static final Object PASS_LOCK = new Object(); ///< Held while fragmenting, so that one file is fragmented at a time.
+
+    private static boolean enabled = false; ///< TRUE if large complete files should be fragmented.
+    private static int dataFragments = DEFAULT_DATA_FRAGMENTS; ///< Number of fragments needed to rebuild a file, k.
+    private static int parityFragments = DEFAULT_PARITY_FRAGMENTS; ///< Number of fragments that may be lost, m.
+    private static long minFileSize = DEFAULT_MIN_FILE_SIZE; ///< Size from which complete files are fragmented.
+    private static long encodedBytes = 0; ///< The bytes fragmented since the agent started.
+    private static long encodeNanos = 0; ///< The time spent fragmenting since the agent started.
+    private static long decodedBytes = 0; ///< The bytes rebuilt since the agent started.
+    private static long decodeNanos = 0; ///< The time spent rebuilding since the agent started.
+
+    static final IMaintenancePass MAINTENANCE_PASS = new IMaintenancePass()
+    {
+        @Override
+        public void runPass()
+        {
+            fragmentLargeFiles();
+        }
+    }; ///< Fragments the large complete files in the background.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       FragmentName
+    /// \brief       The fields of the name of a fragment.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class FragmentName
+    {
+        private final int index; ///< The index of the fragment, data fragments first.
+        private final int dataFragments; ///< Number of fragments needed to rebuild the file.
+        private final int parityFragments; ///< Number of fragments that may be lost.
+        private final String parentFileId; ///< The ID of the original file.
+
+        private FragmentName(int index, int dataFragments, int parityFragments, String parentFileId)
+        {
+            this.index = index;
+            this.dataFragments = dataFragments;
+            this.parityFragments = parityFragments;
+            this.parentFileId = parentFileId;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setEnabled(boolean enabled)
+    /// \brief      Enables or disables the fragmentation of large files.
+    ///             Fragments already stored are kept either way.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setEnabled(boolean enabled)
+    {
+        FragmentStore.enabled = enabled;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isEnabled()
+    /// \brief      Checks whether large files are fragmented.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setCoding(int dataFragments, int parityFragments)
+    /// \brief      Sets how the next files are fragmented.
+    /// \param[in]  dataFragments - the number of fragments needed to
+    ///             rebuild a file, k.
+    /// \param[in]  parityFragments - the number of fragments that may be
+    ///             lost, m.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setCoding(int dataFragments, int parityFragments)
+    {
+        boolean validCoding = dataFragments >= 1 && parityFragments >= 0 && dataFragments + parityFragments <= 256;
+        if(!validCoding)
+        {
+            throw new IllegalArgumentException("Invalid coding (data: " + dataFragments + ", parity: " + parityFragments + ")");
+        }
+        FragmentStore.dataFragments = dataFragments;
+        FragmentStore.parityFragments = parityFragments;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getDataFragments()
+    /// \brief      Gets the number of fragments needed to rebuild a file.
+    /// \return     int - k.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized int getDataFragments()
+    {
+        return dataFragments;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getParityFragments()
+    /// \brief      Gets the number of fragments that may be lost.
+    /// \return     int - m.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized int getParityFragments()
+    {
+        return parityFragments;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setMinFileSize(long minFileSize)
+    /// \brief      Sets the size from which complete files are fragmented.
+    /// \param[in]  minFileSize - the size in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setMinFileSize(long minFileSize)
+    {
+        FragmentStore.minFileSize = minFileSize;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getMinFileSize()
+    /// \brief      Gets the size from which complete files are fragmented.
+    /// \return     long - the size in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getMinFileSize()
+    {
+        return minFileSize;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isFragment(String fileId)
+    /// \brief      Checks whether a data file is a fragment of another one.
+    /// \param[in]  fileId - the ID of the data file.
+    /// \return     boolean - TRUE if the file is a fragment.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean isFragment(String fileId)
+    {
+        return parseName(fileId) != null;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getParentFileId(String fileId)
+    /// \brief      Gets the ID of the file a fragment was cut from.
+    /// \param[in]  fileId - the ID of the fragment.
+    /// \return     String - the ID of the original file, or null if the
+    ///             file is not a fragment.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static String getParentFileId(String fileId)
+    {
+        FragmentName fragmentName = parseName(fileId);
+        return fragmentName == null ? null : fragmentName.parentFileId;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         fragmentLargeFiles()
+    /// \brief      Fragments the complete files of the data file directory
+    ///             that are at least the minimum size and are not in a
+    ///             transfer. Does nothing if the store is disabled.
+    /// \return     int - the number of files fragmented.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static int fragmentLargeFiles()
+    {
+        if(!isEnabled())
+        {
+            return 0;
+        }
+        long minimumFileSize = getMinFileSize();
+
+        int fragmentedFiles = 0;
+        for(DataFile dataFile : DataFileRepository.getCompleteDataFiles())
+        {
+            // Files kept by the chunk store stay there, as rebuilding them would undo the deduplication.
+            String fileId = dataFile.getFileId();
+            boolean isCandidate = !(dataFile instanceof StoredDataFile) && !isFragment(fileId)
+                    && !TransferRegistry.isInTransfer(fileId) && dataFile.length() >= minimumFileSize;
+            if(!isCandidate)
+            {
+                continue;
+            }
+
+            try
+            {
+                boolean fragmented = !fragment(dataFile).isEmpty();
+                if(fragmented)
+                {
+                    fragmentedFiles++;
+                }
+            }
+            catch(InterruptedIOException interruptedIOException)
+            {
+                Log.d(LOG_TAG, "Fragmentation interrupted.");
+                break;
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while fragmenting file " + dataFile.getName(), ioException);
+            }
+        }
+        return fragmentedFiles;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         fragment(DataFile dataFile)
+    /// \brief      Splits a complete data file into k + m fragments stored
+    ///             in the data file directory, and deletes the data file.
+    ///             The copy budget of the file is split between the
+    ///             fragments, see splitCopyBudget.
+    /// \param[in]  dataFile - the complete data file to fragment.
+    /// \return     List<DataFile> - the fragments, in index order, or an
+    ///             empty list if the file was selected for a transfer
+    ///             while it was being fragmented.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static List<DataFile> fragment(DataFile dataFile) throws IOException
+    {
+        synchronized(PASS_LOCK)
+        {
+            return fragmentFile(dataFile);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         fragmentFile(DataFile dataFile)
+    /// \brief      Fragments a data file while holding the pass lock. Only
+    ///             storing the fragments and deleting the data file are
+    ///             done under the lock of the store.
+    /// \param[in]  dataFile - the complete data file to fragment.
+    /// \return     List<DataFile> - the fragments, in index order, or an
+    ///             empty list if the file was kept as it is.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static List<DataFile> fragmentFile(DataFile dataFile) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+        String fileId = dataFile.getFileId();
+        boolean canFragment = dataFile.isComplete() && dataFile.exists() && !isFragment(fileId) && !TransferRegistry.isInTransfer(fileId);
+        if(!canFragment)
+        {
+            throw new IOException("File: " + dataFile.getName() + " cannot be fragmented.");
+        }
+        JSONObject metadata = dataFile.readMetadata();
+        if(metadata == null)
+        {
+            throw new IOException("File: " + dataFile.getName() + " has no metadata.");
+        }
+
+        long startTime = System.nanoTime();
+        int k = 0;
+        int m = 0;
+        synchronized(FragmentStore.class)
+        {
+            k = dataFragments;
+            m = parityFragments;
+        }
+        ReedSolomonCodec codec = new ReedSolomonCodec(k, m);
+        long fileSize = dataFile.length();
+        long fragmentSize = (fileSize + k - 1) / k;
+        int copyBudget = dataFile.getCopyBudget();
+
+        // Write every fragment with the incomplete suffix, so that none is offered before all are durable.
+        List<DataFile> fragments = new ArrayList<DataFile>();
+        List<DataFile> incompleteFragments = new ArrayList<DataFile>();
+        List<FileOutputStream> fileStreams = new ArrayList<FileOutputStream>();
+        List<ZipOutputStream> zipStreams = new ArrayList<ZipOutputStream>();
+        List<BufferPool.Lease> leases = new ArrayList<BufferPool.Lease>();
+        RandomAccessFile input = new RandomAccessFile(dataFile, "r");
+        boolean written = false;
+        try
+        {
+            for(int index = 0; index < k + m; index++)
+            {
+                DataFile fragment = new DataFile(dataFileDirectory, getFragmentName(index, k, m, fileId));
+                DataFile incompleteFragment = new DataFile(dataFileDirectory, fragment.getRemoteIncompleteDataFileName());
+                fragments.add(fragment);
+                incompleteFragments.add(incompleteFragment);
+
+                FileOutputStream fileStream = new FileOutputStream(incompleteFragment);
+                fileStreams.add(fileStream);
+                ZipOutputStream zipStream = new ZipOutputStream(fileStream);
+                zipStreams.add(zipStream);
+
+                // The original file is already compressed, so only store the fragment.
+                zipStream.setLevel(Deflater.NO_COMPRESSION);
+                zipStream.putNextEntry(new ZipEntry(METADATA_ENTRY));
+                zipStream.write(createMetadata(metadata, fileId, index, k, m, fileSize, fragmentSize).getBytes("UTF-8"));
+                zipStream.closeEntry();
+                zipStream.putNextEntry(new ZipEntry(FRAGMENT_ENTRY));
+                leases.add(BufferPool.leaseHeap(BLOCK_SIZE));
+            }
+
+            byte[][] blocks = new byte[k + m][];
+            for(int index = 0; index < k + m; index++)
+            {
+                blocks[index] = leases.get(index).getArray();
+            }
+            byte[][] dataBlocks = new byte[k][];
+            byte[][] parityBlocks = new byte[m][];
+            System.arraycopy(blocks, 0, dataBlocks, 0, k);
+            System.arraycopy(blocks, k, parityBlocks, 0, m);
+
+            // Data fragment i is bytes [i * fragmentSize, (i + 1) * fragmentSize) of the file, padded with zeros.
+            FileChannel inputChannel = input.getChannel();
+            for(long offset = 0; offset < fragmentSize; offset += BLOCK_SIZE)
+            {
+                int length = (int) Math.min(BLOCK_SIZE, fragmentSize - offset);
+
+                // Each block reads k blocks and writes k + m, and yields to the transfers first.
+                IoScheduler.acquire(IoScheduler.IoClass.BACKGROUND, (long) (2*k + m) * length);
+                for(int index = 0; index < k; index++)
+                {
+                    readBlock(inputChannel, index * fragmentSize + offset, fileSize, dataBlocks[index], length);
+                }
+                codec.encode(dataBlocks, parityBlocks, length);
+                for(int index = 0; index < k + m; index++)
+                {
+                    zipStreams.get(index).write(blocks[index], 0, length);
+                }
+            }
+
+            // The original file is deleted next, so the fragments have to be durable before.
+            for(int index = 0; index < k + m; index++)
+            {
+                zipStreams.get(index).closeEntry();
+                zipStreams.get(index).finish();
+                fileStreams.get(index).getChannel().force(false);
+            }
+            written = true;
+        }
+        finally
+        {
+            input.close();
+            for(BufferPool.Lease lease : leases)
+            {
+                lease.release();
+            }
+            for(ZipOutputStream zipStream : zipStreams)
+            {
+                zipStream.close();
+            }
+            if(!written)
+            {
+                for(DataFile incompleteFragment : incompleteFragments)
+                {
+                    incompleteFragment.delete();
+                }
+            }
+        }
+
+        synchronized(FragmentStore.class)
+        {
+            // The file may have been selected to be sent, or delivered, while it was being fragmented. Keep it as it is then.
+            boolean keepFile = TransferRegistry.isInTransfer(fileId) || !dataFile.exists();
+            if(keepFile)
+            {
+                for(DataFile incompleteFragment : incompleteFragments)
+                {
+                    incompleteFragment.delete();
+                }
+                return new ArrayList<DataFile>();
+            }
+
+            for(int index = 0; index < k + m; index++)
+            {
+                DataFile fragment = fragments.get(index);
+                boolean renamed = incompleteFragments.get(index).renameTo(fragment);
+                if(!renamed)
+                {
+                    throw new IOException("File: " + incompleteFragments.get(index).getName() + " could not be renamed.");
+                }
+                DataFileRepository.acceptCustody(fragment, splitCopyBudget(copyBudget, index, k, m));
+            }
+
+            boolean successfullyDeleted = dataFile.delete();
+            if(!successfullyDeleted)
+            {
+                // Keep the file as it is, and forget the fragments.
+                release(fileId);
+                throw new IOException("File: " + dataFile.getName() + " could not be deleted after being fragmented.");
+            }
+            DataFileCatalog.remove(fileId);
+
+            encodedBytes += fileSize;
+            encodeNanos += System.nanoTime() - startTime;
+        }
+        Log.d(LOG_TAG, "Fragmented file " + dataFile.getName() + " into " + k + " + " + m + " fragments.");
+        return fragments;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         splitCopyBudget(int copyBudget, int index, int k, int m)
+    /// \brief      Gets the copy budget of one fragment of a file. The
+    ///             fragments share the budget so that together they spread
+    ///             about as many bytes as the copies of the file would: k
+    ///             times the budget of the file, in fragment copies, split
+    ///             evenly between the k + m fragments.
+    /// \param[in]  copyBudget - the copy budget of the file.
+    /// \param[in]  index - the index of the fragment.
+    /// \param[in]  k - the number of data fragments.
+    /// \param[in]  m - the number of parity fragments.
+    /// \return     int - the copy budget of the fragment, at least 1.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static int splitCopyBudget(int copyBudget, int index, int k, int m)
+    {
+        long fragmentCopies = (long) copyBudget * k;
+        int fragmentCount = k + m;
+        long fragmentBudget = fragmentCopies / fragmentCount + (index < fragmentCopies % fragmentCount ? 1 : 0);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, fragmentBudget));
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getFragments(String parentFileId)
+    /// \brief      Gets the complete fragments of a file that this agent
+    ///             holds.
+    /// \param[in]  parentFileId - the ID of the original file.
+    /// \return     List<DataFile> - the fragments, an empty list if there
+    ///             are none.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static List<DataFile> getFragments(String parentFileId)
+    {
+        List<DataFile> fragments = new LinkedList<DataFile>();
+        for(DataFile dataFile : DataFileRepository.getCompleteDataFiles())
+        {
+            boolean isFragmentOfParent = parentFileId.equals(getParentFileId(dataFile.getFileId()));
+            if(isFragmentOfParent)
+            {
+                fragments.add(dataFile);
+            }
+        }
+        return fragments;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         canReconstruct(String parentFileId)
+    /// \brief      Checks whether enough fragments of a file are held to
+    ///             rebuild it.
+    /// \param[in]  parentFileId - the ID of the original file.
+    /// \return     boolean - TRUE if at least k distinct fragments are held.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean canReconstruct(String parentFileId)
+    {
+        return selectFragments(getFragments(parentFileId)) != null;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         reconstructAll()
+    /// \brief      Rebuilds every file of which enough fragments are held,
+    ///             as done by the collector once fragments arrived.
+    /// \return     List<DataFile> - the rebuilt data files.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static List<DataFile> reconstructAll()
+    {
+        Map<String, List<DataFile>> fragmentsByParent = new HashMap<String, List<DataFile>>();
+        for(DataFile dataFile : DataFileRepository.getCompleteDataFiles())
+        {
+            String parentFileId = getParentFileId(dataFile.getFileId());
+            if(parentFileId == null)
+            {
+                continue;
+            }
+            List<DataFile> fragments = fragmentsByParent.get(parentFileId);
+            if(fragments == null)
+            {
+                fragments = new LinkedList<DataFile>();
+                fragmentsByParent.put(parentFileId, fragments);
+            }
+            fragments.add(dataFile);
+        }
+
+        List<DataFile> rebuiltFiles = new LinkedList<DataFile>();
+        for(Map.Entry<String, List<DataFile>> parent : fragmentsByParent.entrySet())
+        {
+            boolean hasEnoughFragments = selectFragments(parent.getValue()) != null;
+            if(!hasEnoughFragments)
+            {
+                continue;
+            }
+
+            try
+            {
+                rebuiltFiles.add(reconstruct(parent.getKey()));
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while rebuilding file " + parent.getKey(), ioException);
+            }
+        }
+        return rebuiltFiles;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         reconstruct(String parentFileId)
+    /// \brief      Rebuilds a file from any k of its fragments into the
+    ///             data file directory, and deletes its fragments. The file
+    ///             is written with the incomplete suffix and renamed at the
+    ///             end.
+    /// \param[in]  parentFileId - the ID of the original file.
+    /// \return     DataFile - the rebuilt data file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized DataFile reconstruct(String parentFileId) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            throw new IOException("Data file directory is not available.");
+        }
+        List<DataFile> fragments = selectFragments(getFragments(parentFileId));
+        if(fragments == null)
+        {
+            throw new IOException("Not enough fragments of " + parentFileId + " to rebuild it.");
+        }
+
+        long startTime = System.nanoTime();
+        FragmentName firstName = parseName(fragments.get(0).getFileId());
+        int k = firstName.dataFragments;
+        ReedSolomonCodec codec = new ReedSolomonCodec(k, firstName.parityFragments);
+        JSONObject metadata = fragments.get(0).readMetadata();
+        if(metadata == null)
+        {
+            throw new IOException("Fragment " + fragments.get(0).getName() + " has no metadata.");
+        }
+        long fileSize = metadata.optLong(PARENT_SIZE, -1);
+        long fragmentSize = metadata.optLong(FRAGMENT_SIZE, -1);
+        boolean validSizes = fileSize >= 0 && fragmentSize == (fileSize + k - 1) / k;
+        if(!validSizes)
+        {
+            throw new IOException("Fragment " + fragments.get(0).getName() + " has invalid sizes.");
+        }
+
+        int[] indexes = new int[k];
+        for(int i = 0; i < k; i++)
+        {
+            indexes[i] = parseName(fragments.get(i).getFileId()).index;
+        }
+        int[][] decodingMatrix = codec.getDecodingMatrix(indexes);
+
+        DataFile dataFile = new DataFile(dataFileDirectory, parentFileId);
+        File incompleteFile = new File(dataFileDirectory, dataFile.getRemoteIncompleteDataFileName());
+        List<ZipInputStream> zipStreams = new ArrayList<ZipInputStream>();
+        List<BufferPool.Lease> leases = new ArrayList<BufferPool.Lease>();
+        RandomAccessFile output = new RandomAccessFile(incompleteFile, "rw");
+        try
+        {
+            byte[][] fragmentBlocks = new byte[k][];
+            byte[][] dataBlocks = new byte[k][];
+            for(int i = 0; i < k; i++)
+            {
+                zipStreams.add(openFragmentEntry(fragments.get(i)));
+                leases.add(BufferPool.leaseHeap(BLOCK_SIZE));
+                fragmentBlocks[i] = leases.get(leases.size() - 1).getArray();
+                leases.add(BufferPool.leaseHeap(BLOCK_SIZE));
+                dataBlocks[i] = leases.get(leases.size() - 1).getArray();
+            }
+
+            FileChannel outputChannel = output.getChannel();
+            outputChannel.truncate(0);
+            for(long offset = 0; offset < fragmentSize; offset += BLOCK_SIZE)
+            {
+                int length = (int) Math.min(BLOCK_SIZE, fragmentSize - offset);
+                for(int i = 0; i < k; i++)
+                {
+                    readFully(zipStreams.get(i), fragmentBlocks[i], length, fragments.get(i));
+                }
+                codec.decode(decodingMatrix, fragmentBlocks, dataBlocks, length);
+                for(int index = 0; index < k; index++)
+                {
+                    // Leave out the zeros padding the last data fragment.
+                    long position = index * fragmentSize + offset;
+                    int writtenLength = (int) Math.min(length, fileSize - position);
+                    if(writtenLength > 0)
+                    {
+                        writeBlock(outputChannel, position, dataBlocks[index], writtenLength);
+                    }
+                }
+            }
+
+            // Reading to the end of each entry checks its CRC, so a corrupt fragment fails the rebuild.
+            for(int i = 0; i < k; i++)
+            {
+                boolean hasExtraBytes = zipStreams.get(i).read() != -1;
+                if(hasExtraBytes)
+                {
+                    throw new IOException("Fragment " + fragments.get(i).getName() + " is longer than expected.");
+                }
+            }
+
+            // The fragments are deleted once the file is rebuilt, so its data has to be durable before the rename.
+            outputChannel.force(false);
+        }
+        catch(IOException ioException)
+        {
+            output.close();
+            incompleteFile.delete();
+            throw ioException;
+        }
+        finally
+        {
+            output.close();
+            for(BufferPool.Lease lease : leases)
+            {
+                lease.release();
+            }
+            for(ZipInputStream zipStream : zipStreams)
+            {
+                zipStream.close();
+            }
+        }
+
+        boolean renamed = incompleteFile.renameTo(dataFile);
+        if(!renamed)
+        {
+            throw new IOException("File: " + incompleteFile.getName() + " could not be renamed.");
+        }
+        DataFileCatalog.update(dataFile);
+        release(parentFileId);
+
+        decodedBytes += fileSize;
+        decodeNanos += System.nanoTime() - startTime;
+        Log.d(LOG_TAG, "Rebuilt file " + dataFile.getName() + " from fragments " + Arrays.toString(indexes));
+        return dataFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         release(String parentFileId)
+    /// \brief      Deletes the fragments of a file this agent holds,
+    ///             complete or not, for example once the file was
+    ///             delivered.
+    /// \param[in]  parentFileId - the ID of the original file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void release(String parentFileId) throws IOException
+    {
+        File dataFileDirectory = DataFileRepository.getDataFileDirectory();
+        if(dataFileDirectory == null)
+        {
+            return;
+        }
+        String[] fileNames = dataFileDirectory.list();
+        if(fileNames == null)
+        {
+            return;
+        }
+
+        for(String fileName : fileNames)
+        {
+            DataFile dataFile = new DataFile(dataFileDirectory, fileName);
+            boolean isFragmentOfParent = parentFileId.equals(getParentFileId(dataFile.getFileId()));
+            if(isFragmentOfParent)
+            {
+                dataFile.delete();
+                DataFileCatalog.remove(dataFile.getFileId());
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getEncodeThroughput()
+    /// \brief      Gets the fragmentation throughput since the agent
+    ///             started, including the file I/O.
+    /// \return     double - the throughput in bytes per second, 0 if
+    ///             nothing was fragmented.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized double getEncodeThroughput()
+    {
+        return encodeNanos == 0 ? 0 : encodedBytes * 1e9 / encodeNanos;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getDecodeThroughput()
+    /// \brief      Gets the rebuild throughput since the agent started,
+    ///             including the file I/O.
+    /// \return     double - the throughput in bytes per second, 0 if
+    ///             nothing was rebuilt.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized double getDecodeThroughput()
+    {
+        return decodeNanos == 0 ? 0 : decodedBytes * 1e9 / decodeNanos;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         selectFragments(List<DataFile> fragments)
+    /// \brief      Picks k fragments with distinct indexes and the same
+    ///             coding, preferring the data fragments as they need the
+    ///             least decoding.
+    /// \return     List<DataFile> - k fragments, or null if there are not
+    ///             enough.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static List<DataFile> selectFragments(List<DataFile> fragments)
+    {
+        Map<String, DataFile[]> fragmentsByCoding = new HashMap<String, DataFile[]>();
+        for(DataFile fragment : fragments)
+        {
+            FragmentName fragmentName = parseName(fragment.getFileId());
+            String coding = fragmentName.dataFragments + "-" + fragmentName.parityFragments;
+            DataFile[] fragmentsByIndex = fragmentsByCoding.get(coding);
+            if(fragmentsByIndex == null)
+            {
+                fragmentsByIndex = new DataFile[fragmentName.dataFragments + fragmentName.parityFragments];
+                fragmentsByCoding.put(coding, fragmentsByIndex);
+            }
+            fragmentsByIndex[fragmentName.index] = fragment;
+        }
+
+        for(DataFile[] fragmentsByIndex : fragmentsByCoding.values())
+        {
+            int k = parseName(firstNonNull(fragmentsByIndex).getFileId()).dataFragments;
+            List<DataFile> selectedFragments = new ArrayList<DataFile>();
+            for(int index = 0; index < fragmentsByIndex.length && selectedFragments.size() < k; index++)
+            {
+                if(fragmentsByIndex[index] != null)
+                {
+                    selectedFragments.add(fragmentsByIndex[index]);
+                }
+            }
+            boolean hasEnoughFragments = selectedFragments.size() == k;
+            if(hasEnoughFragments)
+            {
+                return selectedFragments;
+            }
+        }
+        return null;
+    }
+
+    private static DataFile firstNonNull(DataFile[] dataFiles)
+    {
+        for(DataFile dataFile : dataFiles)
+        {
+            if(dataFile != null)
+            {
+                return dataFile;
+            }
+        }
+        return null;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getFragmentName(int index, int k, int m, String parentFileId)
+    /// \brief      Gets the name of a fragment of a file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String getFragmentName(int index, int k, int m, String parentFileId)
+    {
+        return FRAGMENT_PREFIX + index + '-' + k + '-' + m + '-' + parentFileId;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         parseName(String fileId)
+    /// \brief      Reads the fields of the name of a fragment.
+    /// \return     FragmentName - the fields, or null if the file is not a
+    ///             fragment.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static FragmentName parseName(String fileId)
+    {
+        boolean hasPrefix = fileId.startsWith(FRAGMENT_PREFIX);
+        if(!hasPrefix)
+        {
+            return null;
+        }
+
+        String[] fields = fileId.substring(FRAGMENT_PREFIX.length()).split("-", 4);
+        if(fields.length != 4)
+        {
+            return null;
+        }
+        try
+        {
+            int index = Integer.parseInt(fields[0]);
+            int k = Integer.parseInt(fields[1]);
+            int m = Integer.parseInt(fields[2]);
+            boolean validFields = k >= 1 && m >= 0 && 0 <= index && index < k + m && fields[3].length() > 0;
+            return validFields ? new FragmentName(index, k, m, fields[3]) : null;
+        }
+        catch(NumberFormatException numberFormatException)
+        {
+            return null;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createMetadata(JSONObject parentMetadata, String parentFileId,
+    ///             int index, int k, int m, long parentSize, long fragmentSize)
+    /// \brief      Creates the metadata of a fragment: the metadata of the
+    ///             original file, so that the fragment is ordered and
+    ///             attributed like it, with the fragment fields added.
+    /// \return     String - the metadata in JSON.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static String createMetadata(JSONObject parentMetadata, String parentFileId, int index, int k, int m,
+            long parentSize, long fragmentSize) throws IOException
+    {
+        try
+        {
+            JSONObject metadata = new JSONObject(parentMetadata.toString());
+            metadata.put(PARENT_FILE_ID, parentFileId);
+            metadata.put(FRAGMENT_INDEX, index);
+            metadata.put(DATA_FRAGMENTS, k);
+            metadata.put(PARITY_FRAGMENTS, m);
+            metadata.put(PARENT_SIZE, parentSize);
+            metadata.put(FRAGMENT_SIZE, fragmentSize);
+            return metadata.toString();
+        }
+        catch(JSONException jsonException)
+        {
+            throw new IOException("Metadata of the fragments of " + parentFileId + " could not be created.");
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         openFragmentEntry(DataFile fragment)
+    /// \brief      Opens the fragment data entry of a fragment.
+    /// \return     ZipInputStream - the stream, positioned at the beginning
+    ///             of the fragment data.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static ZipInputStream openFragmentEntry(DataFile fragment) throws IOException
+    {
+        ZipInputStream zipStream = new ZipInputStream(new FileInputStream(fragment));
+        ZipEntry entry = zipStream.getNextEntry();
+        while(entry != null && !entry.getName().equals(FRAGMENT_ENTRY))
+        {
+            entry = zipStream.getNextEntry();
+        }
+        if(entry == null)
+        {
+            zipStream.close();
+            throw new IOException("Fragment " + fragment.getName() + " has no fragment data.");
+        }
+        return zipStream;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readBlock(FileChannel channel, long position, long fileSize,
+    ///             byte[] block, int length)
+    /// \brief      Reads a block of the original file, with zeros past its
+    ///             end.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void readBlock(FileChannel channel, long position, long fileSize, byte[] block, int length) throws IOException
+    {
+        int availableLength = (int) Math.max(0, Math.min(length, fileSize - position));
+        ByteBuffer buffer = ByteBuffer.wrap(block, 0, availableLength);
+        while(buffer.hasRemaining())
+        {
+            int bytesRead = channel.read(buffer, position + buffer.position());
+            if(bytesRead == -1)
+            {
+                throw new IOException("File ended before " + fileSize + " bytes.");
+            }
+        }
+        Arrays.fill(block, availableLength, length, (byte) 0);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeBlock(FileChannel channel, long position, byte[] block,
+    ///             int length)
+    /// \brief      Writes a block of the rebuilt file at its position.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void writeBlock(FileChannel channel, long position, byte[] block, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(block, 0, length);
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readFully(InputStream stream, byte[] block, int length,
+    ///             DataFile fragment)
+    /// \brief      Reads a block of a fragment.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void readFully(InputStream stream, byte[] block, int length, DataFile fragment) throws IOException
+    {
+        int offset = 0;
+        while(offset < length)
+        {
+            int bytesRead = stream.read(block, offset, length - offset);
+            if(bytesRead == -1)
+            {
+                throw new IOException("Fragment " + fragment.getName() + " is shorter than expected.");
+            }
+            offset += bytesRead;
+        }
+    }
+}
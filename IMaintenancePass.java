@@ -0,0 +1,22 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.InterruptedIOException;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       IMaintenancePass
+/// \brief       Represents a piece of background storage work that
+///              StorageMaintenance runs periodically.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public interface IMaintenancePass
+{
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runPass()
+    /// \brief      Runs the work once. The pass should yield to the
+    ///             transfers and do nothing if its store is disabled.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    void runPass() throws InterruptedIOException;
+}
@@ -0,0 +1,335 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       IoScheduler
+/// \brief       Shares the storage between the transfers and the
+///              background storage work, such as eviction, chunking,
+///              fragmentation, recompression and catalog compaction.
+///
+///              Each class of I/O has a token bucket limiting its rate,
+///              and the transfers are not limited by default. Background
+///              I/O also waits as long as a transfer is active, or was
+///              active less than FOREGROUND_LINGER_MILLIS ago, so a short
+///              contact gets the full throughput of the storage. A send is
+///              active from the selection of its file until it is handed
+///              off, acknowledged or times out, and a receive until its
+///              writer is closed, as kept by the TransferRegistry. The linger only covers the gaps between
+///              the files of a contact.
+///
+///              Background work must not wait while holding a lock that a
+///              transfer may need. Work done under such a lock uses
+///              tryAcquire and gives up its turn instead.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class IoScheduler
+{
+    private static final long FOREGROUND_LINGER_MILLIS = 1000L; ///< Time after the last transfer I/O during which the transfer is still considered active.
+    private static final long PREEMPTION_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100); ///< How often pre-empted background I/O checks whether the transfers are over.
+    private static final long DEFAULT_BACKGROUND_RATE = 2L*1024L*1024L; ///< Default background rate in bytes per second.
+    private static final long DEFAULT_BACKGROUND_BURST = 256L*1024L; ///< Default background burst in bytes.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \enum        IoClass
+    /// \brief       The classes of I/O, in priority order.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public enum IoClass
+    {
+        FOREGROUND, ///< I/O of the transfers, which a contact waits for.
+        BACKGROUND; ///< Storage work that can wait for the agent to be idle.
+    }
+
+    private static final TokenBucket[] buckets = { new TokenBucket(0, 0), new TokenBucket(DEFAULT_BACKGROUND_RATE, DEFAULT_BACKGROUND_BURST) }; ///< The token bucket of each class.
+    private static final long[] grantedBytes = new long[IoClass.values().length]; ///< The bytes granted to each class.
+    private static final LatencyHistogram[] waitHistograms = { new LatencyHistogram(), new LatencyHistogram() }; ///< The wait of each class per request, in microseconds.
+    private static long lastForegroundNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(FOREGROUND_LINGER_MILLIS); ///< When the transfers last asked for I/O.
+    private static long preemptionCount = 0; ///< Number of background requests that waited for a transfer.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       TokenBucket
+    /// \brief       Limits the rate of a class of I/O. A request is granted
+    ///              as soon as the bucket is not in debt, and may put it in
+    ///              debt, so requests larger than the burst are allowed and
+    ///              paid for by the following ones.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class TokenBucket
+    {
+        private long bytesPerSecond; ///< The rate of the class, 0 if it is not limited.
+        private long burstBytes; ///< The most tokens the bucket holds.
+        private double tokens; ///< The tokens available, negative when in debt.
+        private long lastRefillNanos = System.nanoTime(); ///< When the tokens were last added.
+
+        private TokenBucket(long bytesPerSecond, long burstBytes)
+        {
+            setLimit(bytesPerSecond, burstBytes);
+        }
+
+        private void setLimit(long bytesPerSecond, long burstBytes)
+        {
+            this.bytesPerSecond = bytesPerSecond;
+            this.burstBytes = burstBytes;
+            this.tokens = Math.min(tokens, burstBytes);
+        }
+
+        //////////////////////////////////////////////////////////////////////
+        /// \fn         take(long bytes, long now)
+        /// \brief      Takes the tokens of a request if the bucket is not in
+        ///             debt.
+        /// \return     long - 0 if the request is granted, otherwise the
+        ///             nanoseconds until the debt is paid.
+        /// \author     agent
+        /// \date       10/18/2026
+        //////////////////////////////////////////////////////////////////////
+        private long take(long bytes, long now)
+        {
+            boolean isLimited = bytesPerSecond > 0;
+            if(!isLimited)
+            {
+                return 0;
+            }
+
+            tokens = Math.min(burstBytes, tokens + (now - lastRefillNanos) * bytesPerSecond / 1e9);
+            lastRefillNanos = now;
+            boolean inDebt = tokens < 0;
+            if(inDebt)
+            {
+                return (long) Math.ceil(-tokens * 1e9 / bytesPerSecond);
+            }
+            tokens -= bytes;
+            return 0;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setLimit(IoClass ioClass, long bytesPerSecond, long burstBytes)
+    /// \brief      Sets the token bucket of a class of I/O.
+    /// \param[in]  ioClass - the class of I/O.
+    /// \param[in]  bytesPerSecond - the rate of the class, 0 for no limit.
+    /// \param[in]  burstBytes - the bytes the class may use at once after
+    ///             being idle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setLimit(IoClass ioClass, long bytesPerSecond, long burstBytes)
+    {
+        boolean validLimit = bytesPerSecond >= 0 && burstBytes >= 0;
+        if(!validLimit)
+        {
+            throw new IllegalArgumentException("Invalid limit (rate: " + bytesPerSecond + ", burst: " + burstBytes + ")");
+        }
+        buckets[ioClass.ordinal()].setLimit(bytesPerSecond, burstBytes);
+        IoScheduler.class.notifyAll();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         acquire(IoClass ioClass, long bytes)
+    /// \brief      Waits until a class of I/O may use the storage for a
+    ///             number of bytes. Background I/O also waits for the
+    ///             transfers to be over.
+    /// \param[in]  ioClass - the class of the I/O.
+    /// \param[in]  bytes - the number of bytes about to be read or written.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void acquire(IoClass ioClass, long bytes) throws InterruptedIOException
+    {
+        long startTime = System.nanoTime();
+        synchronized(IoScheduler.class)
+        {
+            boolean isForeground = ioClass == IoClass.FOREGROUND;
+            if(isForeground)
+            {
+                lastForegroundNanos = startTime;
+            }
+
+            boolean preempted = false;
+            while(true)
+            {
+                long now = System.nanoTime();
+                long waitNanos = 0;
+                boolean mustYield = !isForeground && isForegroundActive(now);
+                if(mustYield)
+                {
+                    preempted = true;
+                    waitNanos = PREEMPTION_POLL_NANOS;
+                }
+                else
+                {
+                    waitNanos = buckets[ioClass.ordinal()].take(bytes, now);
+                }
+
+                boolean granted = waitNanos == 0;
+                if(granted)
+                {
+                    break;
+                }
+                try
+                {
+                    TimeUnit.NANOSECONDS.timedWait(IoScheduler.class, waitNanos);
+                }
+                catch(InterruptedException interruptedException)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the storage.");
+                }
+            }
+
+            grantedBytes[ioClass.ordinal()] += bytes;
+            waitHistograms[ioClass.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+            if(preempted)
+            {
+                preemptionCount++;
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         tryAcquire(IoClass ioClass, long bytes)
+    /// \brief      Lets a class of I/O use the storage for a number of bytes
+    ///             only if it does not have to wait, for the work done while
+    ///             holding a lock.
+    /// \param[in]  ioClass - the class of the I/O.
+    /// \param[in]  bytes - the number of bytes about to be read or written.
+    /// \return     boolean - TRUE if the I/O may go on now.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized boolean tryAcquire(IoClass ioClass, long bytes)
+    {
+        long now = System.nanoTime();
+        boolean isForeground = ioClass == IoClass.FOREGROUND;
+        if(isForeground)
+        {
+            lastForegroundNanos = now;
+        }
+        else if(isForegroundActive(now))
+        {
+            preemptionCount++;
+            return false;
+        }
+
+        boolean granted = buckets[ioClass.ordinal()].take(bytes, now) == 0;
+        if(granted)
+        {
+            grantedBytes[ioClass.ordinal()] += bytes;
+            waitHistograms[ioClass.ordinal()].record(0);
+        }
+        return granted;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         throttle(InputStream inputStream, IoClass ioClass)
+    /// \brief      Wraps a stream so that each read is acquired for a class
+    ///             of I/O.
+    /// \param[in]  inputStream - the stream to read.
+    /// \param[in]  ioClass - the class of the reads.
+    /// \return     InputStream - the throttled stream.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static InputStream throttle(InputStream inputStream, final IoClass ioClass)
+    {
+        return new FilterInputStream(inputStream)
+        {
+            @Override
+            public int read() throws IOException
+            {
+                int value = super.read();
+                if(value != -1)
+                {
+                    acquire(ioClass, 1);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException
+            {
+                // Charged after the read, so the stream end is not charged. The next read pays the wait.
+                int bytesRead = super.read(buffer, offset, length);
+                if(bytesRead > 0)
+                {
+                    acquire(ioClass, bytesRead);
+                }
+                return bytesRead;
+            }
+        };
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isForegroundActive()
+    /// \brief      Checks whether background I/O has to yield to the
+    ///             transfers right now.
+    /// \return     boolean - TRUE if a transfer is active.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized boolean isForegroundActive()
+    {
+        return isForegroundActive(System.nanoTime());
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getGrantedBytes(IoClass ioClass)
+    /// \brief      Gets the bytes granted to a class of I/O since the agent
+    ///             started.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getGrantedBytes(IoClass ioClass)
+    {
+        return grantedBytes[ioClass.ordinal()];
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getWaitMicros(IoClass ioClass, double percentile)
+    /// \brief      Gets a percentile of the wait of the requests of a class
+    ///             of I/O, to check that the transfers are not slowed down.
+    /// \param[in]  ioClass - the class of I/O.
+    /// \param[in]  percentile - the percentile, from 0 to 100.
+    /// \return     long - the wait in microseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getWaitMicros(IoClass ioClass, double percentile)
+    {
+        return waitHistograms[ioClass.ordinal()].getValueAtPercentile(percentile);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getPreemptionCount()
+    /// \brief      Gets the number of background requests that yielded to
+    ///             a transfer since the agent started.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized long getPreemptionCount()
+    {
+        return preemptionCount;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isForegroundActive(long now)
+    /// \brief      Checks whether a file is being sent or received, or a
+    ///             transfer used the storage or chose a file within the
+    ///             linger time.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static boolean isForegroundActive(long now)
+    {
+        boolean recentForegroundIo = now - lastForegroundNanos < TimeUnit.MILLISECONDS.toNanos(FOREGROUND_LINGER_MILLIS);
+        boolean recentTransfer = TransferRegistry.getMillisSinceLastTransfer() < FOREGROUND_LINGER_MILLIS;
+        return TransferRegistry.isTransferActive() || recentForegroundIo || recentTransfer;
+    }
+}
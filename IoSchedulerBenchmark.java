@@ -0,0 +1,286 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       IoSchedulerBenchmark
+/// \brief       Measures a transfer next to background storage work, with
+///              the background work unscheduled and going through the
+///              IoScheduler.
+///
+///              The transfer sends a source file with
+///              DataFileRepository.sendDataFile into a file received with
+///              DataFileRepository.openIncomingFile, so that both its reads
+///              and its writes go through the transfer path, with a
+///              checkpoint every CHECKPOINT_BYTES. The background work
+///              writes blocks to a scratch file and syncs it every
+///              BACKGROUND_SYNC_BYTES, as the chunking and cold passes do.
+///              The latency of each received write and the background
+///              bytes written during the transfer are recorded. The
+///              received file, the source and the scratch file are
+///              deleted afterwards.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class IoSchedulerBenchmark
+{
+    private static final String LOG_TAG = IoSchedulerBenchmark.class.getSimpleName(); ///< Tag for logging.
+    private static final String SOURCE_FILE_NAME = "io-benchmark-source"; ///< Name of the sent file in the work directory.
+    private static final String BACKGROUND_FILE_NAME = "io-benchmark-background"; ///< Name of the file written by the background work in the work directory.
+    private static final String RECEIVED_FILE_ID = "io-benchmark-received"; ///< ID of the received file.
+    private static final int BLOCK_SIZE = 64*1024; ///< Number of bytes written at once by the source, the background work and the copy.
+    private static final long CHECKPOINT_BYTES = 1024L*1024L; ///< The transfer takes a checkpoint after this many bytes.
+    private static final long BACKGROUND_SYNC_BYTES = 256L*1024L; ///< The background work syncs its file after this many bytes.
+    private static final long BACKGROUND_FILE_SIZE = 256L*1024L*1024L; ///< The background work wraps around in its file after this many bytes.
+    private static final long SETTLE_MILLIS = 300L; ///< Time the background work runs alone before the transfer starts.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(File workDirectory, long transferBytes)
+    /// \brief      Runs the transfer alone, next to unscheduled background
+    ///             work, then next to scheduled background work.
+    /// \param[in]  workDirectory - the directory of the source and scratch
+    ///             files, on the same storage as the data file directory.
+    /// \param[in]  transferBytes - the size of the transferred file.
+    /// \return     Result[] - the result of each run, in that order.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result[] run(File workDirectory, long transferBytes) throws IOException, InterruptedException
+    {
+        DataFile sourceFile = new DataFile(workDirectory, SOURCE_FILE_NAME);
+        writeSourceFile(sourceFile, transferBytes);
+        try
+        {
+            Result[] results = new Result[Mode.values().length];
+            for(Mode mode : Mode.values())
+            {
+                results[mode.ordinal()] = run(mode, workDirectory, sourceFile);
+                Log.i(LOG_TAG, mode + ": " + results[mode.ordinal()].getMegabytesPerSecond() + " MB/s, write p50 "
+                        + results[mode.ordinal()].getWriteMicros(50) + " us, p99 " + results[mode.ordinal()].getWriteMicros(99)
+                        + " us, max " + results[mode.ordinal()].getWriteMicros(100) + " us, background bytes "
+                        + results[mode.ordinal()].getBackgroundBytes());
+            }
+            return results;
+        }
+        finally
+        {
+            sourceFile.delete();
+            new File(workDirectory, BACKGROUND_FILE_NAME).delete();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(Mode mode, File workDirectory, DataFile sourceFile)
+    /// \brief      Runs the transfer once, with the given background work.
+    /// \param[in]  mode - the background work.
+    /// \param[in]  workDirectory - the directory of the scratch file.
+    /// \param[in]  sourceFile - the file to send.
+    /// \return     Result - the measures of the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static Result run(Mode mode, File workDirectory, DataFile sourceFile) throws IOException, InterruptedException
+    {
+        BackgroundWork backgroundWork = null;
+        boolean hasBackgroundWork = mode != Mode.ALONE;
+        if(hasBackgroundWork)
+        {
+            backgroundWork = new BackgroundWork(new File(workDirectory, BACKGROUND_FILE_NAME), mode == Mode.SCHEDULED_BACKGROUND);
+            backgroundWork.start();
+            Thread.sleep(SETTLE_MILLIS);
+        }
+
+        final Result result = new Result();
+        long startBackgroundBytes = backgroundWork != null ? backgroundWork.writtenBytes : 0;
+        final DurableDataFileWriter writer = DataFileRepository.openIncomingFile(RECEIVED_FILE_ID, sourceFile.length());
+        try
+        {
+            OutputStream receivingStream = new OutputStream()
+            {
+                private long uncheckpointedBytes = 0; ///< Bytes received since the last checkpoint.
+
+                @Override
+                public void write(int value) throws IOException
+                {
+                    write(new byte[] { (byte) value }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException
+                {
+                    long startNanos = System.nanoTime();
+                    writer.write(buffer, offset, length);
+                    uncheckpointedBytes += length;
+                    boolean checkpointDue = uncheckpointedBytes >= CHECKPOINT_BYTES;
+                    if(checkpointDue)
+                    {
+                        writer.checkpoint();
+                        uncheckpointedBytes = 0;
+                    }
+                    result.writeMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+                }
+            };
+
+            long startNanos = System.nanoTime();
+            result.transferredBytes = DataFileRepository.sendDataFile(sourceFile, 0, receivingStream);
+            writer.checkpoint();
+            result.elapsedNanos = System.nanoTime() - startNanos;
+        }
+        finally
+        {
+            writer.close();
+            writer.getIncompleteFile().delete();
+            DataFileCatalog.remove(RECEIVED_FILE_ID);
+            if(backgroundWork != null)
+            {
+                result.backgroundBytes = backgroundWork.writtenBytes - startBackgroundBytes;
+                backgroundWork.finish();
+            }
+        }
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeSourceFile(File sourceFile, long size)
+    /// \brief      Writes the file to send, and syncs it so that its
+    ///             writes do not overlap with the runs.
+    /// \param[in]  sourceFile - the file to write.
+    /// \param[in]  size - the size of the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void writeSourceFile(File sourceFile, long size) throws IOException
+    {
+        FileOutputStream outputStream = new FileOutputStream(sourceFile);
+        try
+        {
+            byte[] block = new byte[BLOCK_SIZE];
+            for(long position = 0; position < size; position += block.length)
+            {
+                outputStream.write(block, 0, (int) Math.min(block.length, size - position));
+            }
+            outputStream.getFD().sync();
+        }
+        finally
+        {
+            outputStream.close();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \enum        Mode
+    /// \brief       The background work next to the transfer.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private enum Mode
+    {
+        ALONE, ///< No background work.
+        UNSCHEDULED_BACKGROUND, ///< Background work that does not ask the scheduler.
+        SCHEDULED_BACKGROUND; ///< Background work that acquires its I/O as BACKGROUND.
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       BackgroundWork
+    /// \brief       A thread writing and syncing a scratch file until it
+    ///              is finished.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class BackgroundWork extends Thread
+    {
+        private final File file; ///< The scratch file.
+        private final boolean scheduled; ///< TRUE to acquire each write as BACKGROUND I/O.
+        private volatile boolean finished = false; ///< Set to stop the work.
+        private volatile long writtenBytes = 0; ///< Bytes written so far.
+
+        BackgroundWork(File file, boolean scheduled)
+        {
+            this.file = file;
+            this.scheduled = scheduled;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                try
+                {
+                    FileChannel channel = randomAccessFile.getChannel();
+                    ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+                    while(!finished)
+                    {
+                        if(scheduled)
+                        {
+                            IoScheduler.acquire(IoScheduler.IoClass.BACKGROUND, BLOCK_SIZE);
+                        }
+                        block.clear();
+                        channel.write(block, writtenBytes % BACKGROUND_FILE_SIZE);
+                        writtenBytes += BLOCK_SIZE;
+
+                        boolean syncDue = writtenBytes % BACKGROUND_SYNC_BYTES == 0;
+                        if(syncDue)
+                        {
+                            channel.force(false);
+                        }
+                    }
+                }
+                finally
+                {
+                    randomAccessFile.close();
+                }
+            }
+            catch(IOException ioException)
+            {
+                Log.e(LOG_TAG, "Error occured while running the background work.", ioException);
+            }
+        }
+
+        void finish() throws InterruptedException
+        {
+            finished = true;
+            join();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Result
+    /// \brief       The measures of one run.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Result
+    {
+        private final LatencyHistogram writeMicros = new LatencyHistogram(); ///< Latency of each received write, in microseconds.
+        private long transferredBytes = 0; ///< Bytes sent and received.
+        private long elapsedNanos = 0; ///< Time taken by the transfer.
+        private long backgroundBytes = 0; ///< Bytes written by the background work during the transfer.
+
+        public long getMegabytesPerSecond()
+        {
+            return elapsedNanos == 0 ? 0 : transferredBytes * TimeUnit.SECONDS.toNanos(1) / elapsedNanos / (1024L*1024L);
+        }
+
+        public long getWriteMicros(double percentile)
+        {
+            return writeMicros.getValueAtPercentile(percentile);
+        }
+
+        public long getBackgroundBytes()
+        {
+            return backgroundBytes;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       LatencyHistogram
+/// \brief       Histogram of positive values with a bounded relative
+///              error, in the style of HdrHistogram. Each power of two
+///              range is split in SUB_BUCKETS / 2 linear buckets, so a value
+///              is known within about 6%, with a fixed number of counters
+///              and no allocation when recording.
+///
+///              The non-empty buckets are exported with their lowest value,
+///              so that histograms from several agents can be added up.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5; ///< Number of bits of the values below which every value has its own bucket.
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; ///< Number of values that have their own bucket.
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2; ///< Number of buckets per power of two above SUB_BUCKETS.
+    private static final int MAX_VALUE_BITS = 40; ///< Values of this many bits or more are counted as the largest value.
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1; ///< The largest value that can be recorded.
+
+    private final long[] counts = new long[getBucketIndex(MAX_VALUE) + 1]; ///< The number of values in each bucket.
+    private long totalCount = 0; ///< The number of values recorded.
+    private long totalValue = 0; ///< The sum of the values recorded.
+    private long minValue = Long.MAX_VALUE; ///< The smallest value recorded.
+    private long maxValue = 0; ///< The largest value recorded.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         record(long value)
+    /// \brief      Records a value. Negative values are counted as 0, and
+    ///             values above MAX_VALUE as MAX_VALUE.
+    /// \param[in]  value - the value to record.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized void record(long value)
+    {
+        long boundedValue = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts[getBucketIndex(boundedValue)]++;
+        totalCount++;
+        totalValue += boundedValue;
+        minValue = Math.min(minValue, boundedValue);
+        maxValue = Math.max(maxValue, boundedValue);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCount()
+    /// \brief      Gets the number of values recorded.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized long getCount()
+    {
+        return totalCount;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getMean()
+    /// \brief      Gets the mean of the values recorded.
+    /// \return     double - the mean, 0 if no value was recorded.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized double getMean()
+    {
+        return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getValueAtPercentile(double percentile)
+    /// \brief      Gets the value below which a percentage of the recorded
+    ///             values are, within the precision of the buckets.
+    /// \param[in]  percentile - the percentage, from 0 to 100.
+    /// \return     long - the highest value of the bucket holding the
+    ///             percentile, 0 if no value was recorded.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized long getValueAtPercentile(double percentile)
+    {
+        if(totalCount == 0)
+        {
+            return 0;
+        }
+
+        long targetCount = Math.max(1, (long) Math.ceil(totalCount * Math.min(percentile, 100) / 100));
+        long runningCount = 0;
+        for(int i = 0; i < counts.length; i++)
+        {
+            runningCount += counts[i];
+            if(runningCount >= targetCount)
+            {
+                return Math.min(getHighestValue(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         reset()
+    /// \brief      Forgets all the values recorded.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized void reset()
+    {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalValue = 0;
+        minValue = Long.MAX_VALUE;
+        maxValue = 0;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         toJSON()
+    /// \brief      Exports the summary and the non-empty buckets of the
+    ///             histogram.
+    /// \return     JSONObject - the count, min, max, mean, main percentiles
+    ///             and the buckets as [lowest value, count] pairs.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public synchronized JSONObject toJSON() throws JSONException
+    {
+        JSONObject json = new JSONObject();
+        json.put("count", totalCount);
+        json.put("min", totalCount == 0 ? 0 : minValue);
+        json.put("max", maxValue);
+        json.put("mean", getMean());
+        json.put("p50", getValueAtPercentile(50));
+        json.put("p90", getValueAtPercentile(90));
+        json.put("p99", getValueAtPercentile(99));
+
+        JSONArray buckets = new JSONArray();
+        for(int i = 0; i < counts.length; i++)
+        {
+            if(counts[i] != 0)
+            {
+                JSONArray bucket = new JSONArray();
+                bucket.put(getLowestValue(i));
+                bucket.put(counts[i]);
+                buckets.put(bucket);
+            }
+        }
+        json.put("buckets", buckets);
+        return json;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getBucketIndex(long value)
+    /// \brief      Gets the bucket counting a value. Values below
+    ///             SUB_BUCKETS have their own bucket, above it each power of
+    ///             two is split in HALF_SUB_BUCKETS buckets.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int getBucketIndex(long value)
+    {
+        int magnitude = Math.max(0, (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1));
+        int subBucket = (int) (value >>> magnitude);
+        return magnitude * HALF_SUB_BUCKETS + subBucket;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getLowestValue(int index)
+    /// \brief      Gets the lowest value counted by a bucket.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long getLowestValue(int index)
+    {
+        int magnitude = Math.max(0, index / HALF_SUB_BUCKETS - 1);
+        long subBucket = index - magnitude * HALF_SUB_BUCKETS;
+        return subBucket << magnitude;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getHighestValue(int index)
+    /// \brief      Gets the highest value counted by a bucket.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long getHighestValue(int index)
+    {
+        int magnitude = Math.max(0, index / HALF_SUB_BUCKETS - 1);
+        long subBucket = index - magnitude * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
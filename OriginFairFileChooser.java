@@ -0,0 +1,279 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class         OriginFairFileChooser
+/// \brief         File chooser that shares the uploads fairly between the
+///                origins of the files, using deficit round-robin with a
+///                weight per origin. Within one origin, the files are
+///                chosen in the configured order.
+///
+///                The round and the deficit of each origin are kept between
+///                calls whatever the candidates are, so that a selection
+///                that filters the files differently, for a peer or for the
+///                collector, does not reset them. An origin whose turn comes
+///                while none of its files are candidates still gets its
+///                quantum, up to a few rounds, to use on the next calls.
+///                Origins that were not seen for a while leave the round.
+///                Each call only scans the
+///                candidates for the next file of each origin, without
+///                sorting them. A file that is being sent is left out, so
+///                that it is not charged again until its transfer ends.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class OriginFairFileChooser implements IFileChooser
+{
+    private static final String LOG_TAG = OriginFairFileChooser.class.getSimpleName(); ///< Tag for logging.
+    private static final long QUANTUM_BYTES = 1024L*1024L; ///< Bytes an origin of weight 1 may send per round.
+    private static final int DEFAULT_WEIGHT = 1; ///< Weight of the origins that were not given one.
+    private static final int MAX_SAVED_ROUNDS = 8; ///< Number of quanta an origin may save up while none of its files are candidates.
+    private static final long ORIGIN_TIMEOUT_MILLIS = 10L*60L*1000L; ///< How long an origin stays in the round without candidates.
+    private static final Map<String, Integer> weights = new HashMap<String, Integer>(); ///< The weights by origin UID.
+
+    private final Comparator<DataFile> comparator; ///< The order of the files within an origin.
+    private Map<String, String> originsByFileName = new HashMap<String, String>(); ///< The origin UID of the files seen in the last call.
+    private final Map<String, Long> deficits = new HashMap<String, Long>(); ///< The bytes each origin may still send in its turn.
+    private final Map<String, Long> lastSeenTimestamps = new HashMap<String, Long>(); ///< When each origin last had candidates.
+    private final List<String> roundOrigins = new ArrayList<String>(); ///< The origins seen so far, in round-robin order.
+    private int currentOriginIndex = 0; ///< Index of the origin whose turn it is.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         OriginFairFileChooser(Comparator<DataFile> comparator)
+    /// \brief      Initializes the chooser with the order to use within
+    ///             each origin.
+    /// \param[in]  comparator - The order of the files within an origin.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public OriginFairFileChooser(Comparator<DataFile> comparator)
+    {
+        this.comparator = comparator;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setOriginWeight(String originUID, int weight)
+    /// \brief      Sets the share of the uploads given to an origin,
+    ///             relative to the other origins.
+    /// \param[in]  originUID - The UID of the origin.
+    /// \param[in]  weight - The weight of the origin, at least 1.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void setOriginWeight(String originUID, int weight)
+    {
+        boolean validWeight = weight >= 1;
+        if(!validWeight)
+        {
+            throw new IllegalArgumentException("Invalid weight " + weight + " for origin " + originUID);
+        }
+
+        synchronized(weights)
+        {
+            weights.put(originUID, weight);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         chooseDataFile(List<DataFile> dataFiles)
+    /// \brief      Chooses the next file of the origin whose turn it is.
+    ///             The origins without candidates this time keep their
+    ///             place and their deficit.
+    /// \param[in]  dataFiles - The data files to choose from.
+    /// \return     DataFile - The data file chosen.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    @Override
+    public synchronized DataFile chooseDataFile(List<DataFile> dataFiles)
+    {
+        long now = System.currentTimeMillis();
+        Map<String, DataFile> nextFiles = findNextFiles(dataFiles, now);
+        boolean isEmpty = nextFiles.isEmpty();
+        if(isEmpty)
+        {
+            return null;
+        }
+
+        // An origin that saved up while its files were not candidates spends it first, then the origin whose turn it is
+        // goes on. The other origins only have less than their next file left, unless their files were not candidates.
+        int originCount = roundOrigins.size();
+        for(int offset = 1; offset <= originCount; offset++)
+        {
+            String origin = roundOrigins.get((currentOriginIndex + offset) % originCount);
+            DataFile nextFile = nextFiles.get(origin);
+            boolean canSend = nextFile != null && nextFile.length() <= deficits.get(origin);
+            if(canSend)
+            {
+                return choose(origin, nextFile, now);
+            }
+        }
+
+        while(true)
+        {
+            // Visit each origin once, until one has enough deficit for its next file.
+            for(int visitedOrigins = 0; visitedOrigins < originCount; visitedOrigins++)
+            {
+                String origin = roundOrigins.get(currentOriginIndex);
+                DataFile nextFile = nextFiles.get(origin);
+                boolean canSend = nextFile != null && nextFile.length() <= deficits.get(origin);
+                if(canSend)
+                {
+                    return choose(origin, nextFile, now);
+                }
+
+                // The turn of this origin is over, give the next one its quantum.
+                currentOriginIndex = (currentOriginIndex + 1) % originCount;
+                String nextOrigin = roundOrigins.get(currentOriginIndex);
+                long nextDeficit = deficits.get(nextOrigin) + getQuantum(nextOrigin);
+                boolean hasFiles = nextFiles.containsKey(nextOrigin);
+                if(!hasFiles)
+                {
+                    nextDeficit = Math.max(deficits.get(nextOrigin), Math.min(nextDeficit, MAX_SAVED_ROUNDS * getQuantum(nextOrigin)));
+                }
+                deficits.put(nextOrigin, nextDeficit);
+            }
+
+            // No origin could send, so skip the rounds it would take until one can.
+            long roundsNeeded = Long.MAX_VALUE;
+            for(Map.Entry<String, DataFile> nextFile : nextFiles.entrySet())
+            {
+                String origin = nextFile.getKey();
+                long missingBytes = nextFile.getValue().length() - deficits.get(origin);
+                long quantum = getQuantum(origin);
+                roundsNeeded = Math.min(roundsNeeded, Math.max(0, (missingBytes + quantum - 1) / quantum));
+            }
+            for(String origin : nextFiles.keySet())
+            {
+                deficits.put(origin, deficits.get(origin) + roundsNeeded * getQuantum(origin));
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         choose(String origin, DataFile nextFile, long now)
+    /// \brief      Charges a chosen file to its origin.
+    /// \param[in]  origin - The origin UID of the file.
+    /// \param[in]  nextFile - The file chosen.
+    /// \param[in]  now - The current time in milliseconds.
+    /// \return     DataFile - The file chosen.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private DataFile choose(String origin, DataFile nextFile, long now)
+    {
+        deficits.put(origin, deficits.get(origin) - nextFile.length());
+        Log.d(LOG_TAG, "Chose file " + nextFile.getName() + " from origin " + origin);
+        return nextFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         findNextFiles(List<DataFile> dataFiles, long now)
+    /// \brief      Finds the next file of each origin among the candidates,
+    ///             leaving out the files being sent. The origins seen
+    ///             for the first time join the round at the end, with
+    ///             nothing saved up, and the origins not seen for a while
+    ///             leave it.
+    /// \param[in]  dataFiles - The current candidate files.
+    /// \param[in]  now - The current time in milliseconds.
+    /// \return     Map<String, DataFile> - The next file by origin UID, for
+    ///             the origins with candidates.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private Map<String, DataFile> findNextFiles(List<DataFile> dataFiles, long now)
+    {
+        // Only remember the origins of the current candidates, the others are looked up again if they come back.
+        Map<String, String> previousOrigins = originsByFileName;
+        originsByFileName = new HashMap<String, String>(previousOrigins.size());
+        Map<String, DataFile> nextFiles = new HashMap<String, DataFile>();
+        for(DataFile dataFile : dataFiles)
+        {
+            String fileName = dataFile.getName();
+            String origin = previousOrigins.get(fileName);
+            if(origin == null)
+            {
+                origin = dataFile.getOriginUID();
+                origin = origin == null ? "" : origin;
+            }
+            originsByFileName.put(fileName, origin);
+
+            boolean isKnownOrigin = deficits.containsKey(origin);
+            if(!isKnownOrigin)
+            {
+                deficits.put(origin, 0L);
+                roundOrigins.add(origin);
+            }
+            lastSeenTimestamps.put(origin, now);
+
+            // A file chosen before is charged again only once its transfer ended without a hand off.
+            DataFile nextFile = nextFiles.get(origin);
+            boolean comesFirst = nextFile == null || comparator.compare(dataFile, nextFile) < 0;
+            if(comesFirst && !TransferRegistry.isBeingSent(dataFile.getFileId()))
+            {
+                nextFiles.put(origin, dataFile);
+            }
+        }
+
+        for(int originIndex = roundOrigins.size() - 1; originIndex >= 0; originIndex--)
+        {
+            String origin = roundOrigins.get(originIndex);
+            boolean timedOut = now - lastSeenTimestamps.get(origin) >= ORIGIN_TIMEOUT_MILLIS;
+            if(timedOut)
+            {
+                removeOrigin(originIndex);
+            }
+        }
+        return nextFiles;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         removeOrigin(int originIndex)
+    /// \brief      Removes an origin from the round, keeping the turn on
+    ///             the same origin.
+    /// \param[in]  originIndex - The index of the origin in the round.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void removeOrigin(int originIndex)
+    {
+        String origin = roundOrigins.remove(originIndex);
+        deficits.remove(origin);
+        lastSeenTimestamps.remove(origin);
+        boolean shiftsCurrentOrigin = originIndex < currentOriginIndex;
+        if(shiftsCurrentOrigin)
+        {
+            currentOriginIndex--;
+        }
+        boolean pastLastOrigin = currentOriginIndex >= roundOrigins.size();
+        if(pastLastOrigin)
+        {
+            currentOriginIndex = 0;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getQuantum(String origin)
+    /// \brief      Gets the bytes an origin may send per round.
+    /// \param[in]  origin - The origin UID.
+    /// \return     long - The quantum of the origin in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long getQuantum(String origin)
+    {
+        Integer weight = null;
+        synchronized(weights)
+        {
+            weight = weights.get(origin);
+        }
+        return QUANTUM_BYTES * (weight == null ? DEFAULT_WEIGHT : weight);
+    }
+}
@@ -0,0 +1,34 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+//////////////////////////////////////////////////////////////////////
+/// \enum        PriorityClass
+/// \brief       How urgently a data file has to reach the collector. The
+///              class is given when the file is packaged, as the "Priority"
+///              value of its metadata, from 0 (URGENT) to 3 (LOW). Files
+///              packaged without one are NORMAL.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public enum PriorityClass
+{
+    URGENT, ///< Sent before everything else, for example an alert capture.
+    HIGH, ///< Sent before the routine files.
+    NORMAL, ///< Routine files.
+    LOW; ///< Sent when nothing else is waiting, for example bulk logs.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         fromLevel(int level)
+    /// \brief      Gets the priority class of a metadata value.
+    /// \param[in]  level - the value, 0 being the most urgent.
+    /// \return     PriorityClass - the class, NORMAL if the value is not
+    ///             a known level.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static PriorityClass fromLevel(int level)
+    {
+        PriorityClass[] priorityClasses = values();
+        boolean knownLevel = 0 <= level && level < priorityClasses.length;
+        return knownLevel ? priorityClasses[level] : NORMAL;
+    }
+}
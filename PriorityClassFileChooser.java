@@ -0,0 +1,297 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class         PriorityClassFileChooser
+/// \brief         File chooser that sends the files of the most urgent
+///                priority class first, using one queue per class. Within a
+///                class, the files are chosen in the configured order.
+///
+///                A file that waits for an aging period moves up one class,
+///                and keeps moving up as it keeps waiting, so the low
+///                classes are never starved. The waiting time counts from
+///                the time the file was stored, so it survives restarts.
+///
+///                The queues are kept between calls, and each class also
+///                keeps its files by next promotion time, so queueing,
+///                promoting and choosing a file are O(log n). A file is
+///                queued with the order key it had when queued, so the
+///                queues stay sorted when its size or age on disk changes.
+///                A candidate that replaces the queued object of the same
+///                name, as when a store moves the file, is queued again
+///                with the waiting time it already had.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class PriorityClassFileChooser implements IFileChooser
+{
+    private static final String LOG_TAG = PriorityClassFileChooser.class.getSimpleName(); ///< Tag for logging.
+    private static final long DEFAULT_AGING_MILLIS = 30L*60L*1000L; ///< Default time a file waits before moving up one class.
+    private static final int LEVELS = PriorityClass.values().length; ///< Number of queues, one per class.
+    private static volatile long agingMillis = DEFAULT_AGING_MILLIS; ///< Time a file waits before moving up one class.
+
+    private final UploadOrderComparator comparator; ///< The order of the files within a class.
+    private final List<TreeSet<QueuedFile>> queues = new ArrayList<TreeSet<QueuedFile>>(); ///< The queued files of each level, in the configured order.
+    private final List<TreeSet<QueuedFile>> promotionQueues = new ArrayList<TreeSet<QueuedFile>>(); ///< The queued files of each level, by next promotion time.
+    private final Map<String, QueuedFile> queuedFiles = new HashMap<String, QueuedFile>(); ///< The queued files by name.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       QueuedFile
+    /// \brief       A queued file with its current level.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static class QueuedFile
+    {
+        private final DataFile dataFile; ///< The queued file.
+        private final long orderKey; ///< The order key of the file within its class when it was queued.
+        private final int baseLevel; ///< The level of the priority class of the file.
+        private final long waitStart; ///< When the file started waiting.
+        private int level; ///< The level the file is queued at, 0 being the most urgent.
+        private long promotionTime; ///< When the file moves up one level.
+
+        private QueuedFile(DataFile dataFile, long orderKey, int baseLevel, long waitStart)
+        {
+            this.dataFile = dataFile;
+            this.orderKey = orderKey;
+            this.baseLevel = baseLevel;
+            this.waitStart = waitStart;
+        }
+    }
+
+    private static final Comparator<QueuedFile> BY_PROMOTION_TIME = new Comparator<QueuedFile>()
+    {
+        @Override
+        public int compare(QueuedFile first, QueuedFile second)
+        {
+            int result = first.promotionTime < second.promotionTime ? -1 : (first.promotionTime == second.promotionTime ? 0 : 1);
+            return result != 0 ? result : first.dataFile.getName().compareTo(second.dataFile.getName());
+        }
+    }; ///< Orders the queued files by next promotion time, then by name.
+
+    private static final Comparator<QueuedFile> BY_ORDER_KEY = new Comparator<QueuedFile>()
+    {
+        @Override
+        public int compare(QueuedFile first, QueuedFile second)
+        {
+            int result = first.orderKey < second.orderKey ? -1 : (first.orderKey == second.orderKey ? 0 : 1);
+            return result != 0 ? result : first.dataFile.getName().compareTo(second.dataFile.getName());
+        }
+    }; ///< Orders the queued files by the order key they were queued with, then by name.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         PriorityClassFileChooser(UploadOrderComparator comparator)
+    /// \brief      Initializes the chooser with the order to use within
+    ///             each class.
+    /// \param[in]  comparator - The order of the files within a class.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public PriorityClassFileChooser(UploadOrderComparator comparator)
+    {
+        this.comparator = comparator;
+        for(int level = 0; level < LEVELS; level++)
+        {
+            queues.add(new TreeSet<QueuedFile>(BY_ORDER_KEY));
+            promotionQueues.add(new TreeSet<QueuedFile>(BY_PROMOTION_TIME));
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setAgingPeriod(long agingMillis)
+    /// \brief      Sets the time a file waits before moving up one class.
+    ///             Takes effect on the following promotions.
+    /// \param[in]  agingMillis - The aging period in milliseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void setAgingPeriod(long agingMillis)
+    {
+        boolean validPeriod = agingMillis > 0;
+        if(!validPeriod)
+        {
+            throw new IllegalArgumentException("Invalid aging period " + agingMillis);
+        }
+        PriorityClassFileChooser.agingMillis = agingMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         chooseDataFile(List<DataFile> dataFiles)
+    /// \brief      Chooses the first file of the most urgent non-empty
+    ///             level, after moving up the files that waited enough.
+    /// \param[in]  dataFiles - The data files to choose from.
+    /// \return     DataFile - The data file chosen.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    @Override
+    public synchronized DataFile chooseDataFile(List<DataFile> dataFiles)
+    {
+        long now = System.currentTimeMillis();
+        updateQueues(dataFiles, now);
+        promoteWaitingFiles(now);
+
+        for(int level = 0; level < LEVELS; level++)
+        {
+            TreeSet<QueuedFile> queue = queues.get(level);
+            if(!queue.isEmpty())
+            {
+                DataFile chosenFile = queue.first().dataFile;
+                Log.d(LOG_TAG, "Chose file " + chosenFile.getName() + " at level " + level);
+                return chosenFile;
+            }
+        }
+        return null;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         updateQueues(List<DataFile> dataFiles, long now)
+    /// \brief      Queues the candidate files that are new, queues again the
+    ///             candidates that replace the queued object of their name,
+    ///             and removes the queued files that are not candidates
+    ///             anymore.
+    /// \param[in]  dataFiles - The current candidate files.
+    /// \param[in]  now - The current time.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void updateQueues(List<DataFile> dataFiles, long now)
+    {
+        Set<String> candidateNames = new HashSet<String>();
+        for(DataFile dataFile : dataFiles)
+        {
+            String fileName = dataFile.getName();
+            candidateNames.add(fileName);
+            QueuedFile queuedFile = queuedFiles.get(fileName);
+            boolean isQueued = queuedFile != null;
+            if(!isQueued)
+            {
+                enqueue(dataFile, now);
+            }
+            else if(queuedFile.dataFile != dataFile)
+            {
+                requeue(queuedFile, dataFile);
+            }
+        }
+
+        Iterator<QueuedFile> queuedFileIterator = queuedFiles.values().iterator();
+        while(queuedFileIterator.hasNext())
+        {
+            QueuedFile queuedFile = queuedFileIterator.next();
+            boolean isCandidate = candidateNames.contains(queuedFile.dataFile.getName());
+            if(!isCandidate)
+            {
+                queuedFileIterator.remove();
+                removeFromLevel(queuedFile);
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         enqueue(DataFile dataFile, long now)
+    /// \brief      Queues a file at the level of its class, moved up by the
+    ///             aging periods it already waited.
+    /// \param[in]  dataFile - The file to queue.
+    /// \param[in]  now - The current time.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void enqueue(DataFile dataFile, long now)
+    {
+        // The priority class comes from the catalog, the ZIP file is only read if it is not catalogued yet.
+        int baseLevel = dataFile.getPriorityClass().ordinal();
+        // Files kept outside the data file directory have no modification time, they start waiting now.
+        long storedTime = dataFile.lastModified();
+        long waitStart = storedTime == 0 ? now : Math.min(storedTime, now);
+        QueuedFile queuedFile = new QueuedFile(dataFile, comparator.getOrderKey(dataFile), baseLevel, waitStart);
+        long waitedPeriods = (now - waitStart) / agingMillis;
+        queuedFile.level = (int) Math.max(0, baseLevel - waitedPeriods);
+        addToLevel(queuedFile);
+        queuedFiles.put(dataFile.getName(), queuedFile);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         requeue(QueuedFile queuedFile, DataFile dataFile)
+    /// \brief      Replaces a queued file by the candidate of the same name,
+    ///             keeping its class, waiting time and level, and taking
+    ///             the order key of the candidate.
+    /// \param[in]  queuedFile - The queued file.
+    /// \param[in]  dataFile - The candidate that replaces it.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void requeue(QueuedFile queuedFile, DataFile dataFile)
+    {
+        removeFromLevel(queuedFile);
+        QueuedFile replacement = new QueuedFile(dataFile, comparator.getOrderKey(dataFile), queuedFile.baseLevel, queuedFile.waitStart);
+        replacement.level = queuedFile.level;
+        addToLevel(replacement);
+        queuedFiles.put(dataFile.getName(), replacement);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         promoteWaitingFiles(long now)
+    /// \brief      Moves up one level the files whose promotion time has
+    ///             come. Each file is promoted at most once per level.
+    /// \param[in]  now - The current time.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void promoteWaitingFiles(long now)
+    {
+        // Go from the least urgent level up, so a file due for two promotions gets both in one call.
+        for(int level = LEVELS - 1; level > 0; level--)
+        {
+            TreeSet<QueuedFile> promotionQueue = promotionQueues.get(level);
+            while(!promotionQueue.isEmpty() && promotionQueue.first().promotionTime <= now)
+            {
+                QueuedFile queuedFile = promotionQueue.first();
+                removeFromLevel(queuedFile);
+                queuedFile.level--;
+                addToLevel(queuedFile);
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         addToLevel(QueuedFile queuedFile)
+    /// \brief      Adds a file to the queues of its level, with the time it
+    ///             moves up to the next level.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void addToLevel(QueuedFile queuedFile)
+    {
+        queues.get(queuedFile.level).add(queuedFile);
+        boolean canMoveUp = queuedFile.level > 0;
+        if(canMoveUp)
+        {
+            long periodsToWait = queuedFile.baseLevel - queuedFile.level + 1;
+            queuedFile.promotionTime = queuedFile.waitStart + periodsToWait * agingMillis;
+            promotionQueues.get(queuedFile.level).add(queuedFile);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         removeFromLevel(QueuedFile queuedFile)
+    /// \brief      Removes a file from the queues of its level.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private void removeFromLevel(QueuedFile queuedFile)
+    {
+        queues.get(queuedFile.level).remove(queuedFile);
+        promotionQueues.get(queuedFile.level).remove(queuedFile);
+    }
+}
@@ -0,0 +1,48 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Process;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       PriorityThreadFactory
+/// \brief       Creates daemon threads with a given Android thread
+///              priority, for the background work of the storage.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+class PriorityThreadFactory implements ThreadFactory
+{
+    private final int priority; ///< The Android priority of the threads.
+    private final String name; ///< The name of the threads.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         PriorityThreadFactory(int priority, String name)
+    /// \brief      Creates the factory.
+    /// \param[in]  priority - the Android priority of the threads.
+    /// \param[in]  name - the name of the threads.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    PriorityThreadFactory(int priority, String name)
+    {
+        this.priority = priority;
+        this.name = name;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable)
+    {
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Process.setThreadPriority(priority);
+                runnable.run();
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
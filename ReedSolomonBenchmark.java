@@ -0,0 +1,213 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       ReedSolomonBenchmark
+/// \brief       Measures the encode and decode throughput of the
+///              ReedSolomonCodec used by the fragment store, on one thread
+///              and on several threads at once.
+///
+///              Each thread encodes its own random data blocks, then
+///              rebuilds them with the first m data blocks lost, which is
+///              the most expensive decode. The throughput counts the data
+///              bytes, over the time all the threads took. Each run is done
+///              once to warm up before it is measured. The delivery gain of
+///              fragmenting is measured by ContactTraceReplay.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class ReedSolomonBenchmark
+{
+    private static final String LOG_TAG = ReedSolomonBenchmark.class.getSimpleName(); ///< Tag for logging.
+    private static final long DATA_SEED = 1L; ///< Seed of the random data blocks.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(int dataShards, int parityShards, int blockSize,
+    ///             int rounds, int threadCount)
+    /// \brief      Encodes and decodes blocks on several threads at once.
+    /// \param[in]  dataShards - the number of data shards, k.
+    /// \param[in]  parityShards - the number of parity shards, m, at most
+    ///             k.
+    /// \param[in]  blockSize - the size of each shard block in bytes.
+    /// \param[in]  rounds - the number of blocks each thread encodes and
+    ///             decodes.
+    /// \param[in]  threadCount - the number of threads.
+    /// \return     Result - the measures of the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static Result run(int dataShards, int parityShards, int blockSize, int rounds, int threadCount) throws InterruptedException
+    {
+        if(parityShards > dataShards)
+        {
+            throw new IllegalArgumentException("Parity shards " + parityShards + " exceed data shards " + dataShards);
+        }
+
+        ReedSolomonCodec codec = new ReedSolomonCodec(dataShards, parityShards);
+        run(codec, dataShards, parityShards, blockSize, rounds, threadCount);
+        Result result = run(codec, dataShards, parityShards, blockSize, rounds, threadCount);
+        Log.i(LOG_TAG, "RS(" + dataShards + "," + parityShards + ") on " + threadCount + " threads: encode "
+                + result.getEncodeThroughput() + " B/s, decode " + result.getDecodeThroughput() + " B/s, "
+                + result.getCorruptBlocks() + " corrupt blocks");
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         run(final ReedSolomonCodec codec, final int dataShards,
+    ///             final int parityShards, final int blockSize,
+    ///             final int rounds, int threadCount)
+    /// \brief      Runs the threads once, all encoding, then all decoding.
+    /// \return     Result - the measures of the run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static Result run(final ReedSolomonCodec codec, final int dataShards, final int parityShards, final int blockSize,
+            final int rounds, int threadCount) throws InterruptedException
+    {
+        final Result result = new Result();
+        final int[] shardIndexes = new int[dataShards];
+        for(int index = 0; index < dataShards; index++)
+        {
+            // The first m data shards are lost, the first m parity shards replace them.
+            shardIndexes[index] = index < parityShards ? dataShards + index : index;
+        }
+        final int[][] decodingMatrix = codec.getDecodingMatrix(shardIndexes);
+
+        final byte[][][] data = new byte[threadCount][dataShards][blockSize];
+        final byte[][][] parity = new byte[threadCount][parityShards][blockSize];
+        Random random = new Random(DATA_SEED);
+        for(byte[][] threadData : data)
+        {
+            for(byte[] block : threadData)
+            {
+                random.nextBytes(block);
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        runThreads(threadCount, new ThreadTask()
+        {
+            @Override
+            public void run(int thread)
+            {
+                for(int round = 0; round < rounds; round++)
+                {
+                    codec.encode(data[thread], parity[thread], blockSize);
+                }
+            }
+        });
+        result.encodeNanos = System.nanoTime() - startNanos;
+
+        startNanos = System.nanoTime();
+        runThreads(threadCount, new ThreadTask()
+        {
+            @Override
+            public void run(int thread)
+            {
+                byte[][] shards = new byte[dataShards][];
+                for(int index = 0; index < dataShards; index++)
+                {
+                    int shardIndex = shardIndexes[index];
+                    shards[index] = shardIndex < dataShards ? data[thread][shardIndex] : parity[thread][shardIndex - dataShards];
+                }
+
+                byte[][] rebuilt = new byte[dataShards][blockSize];
+                for(int round = 0; round < rounds; round++)
+                {
+                    codec.decode(decodingMatrix, shards, rebuilt, blockSize);
+                }
+
+                boolean isIntact = Arrays.deepEquals(rebuilt, data[thread]);
+                if(!isIntact)
+                {
+                    synchronized(result)
+                    {
+                        result.corruptBlocks++;
+                    }
+                }
+            }
+        });
+        result.decodeNanos = System.nanoTime() - startNanos;
+        result.dataBytes = (long) threadCount * rounds * dataShards * blockSize;
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runThreads(int threadCount, final ThreadTask task)
+    /// \brief      Runs a task on several threads and waits for them all.
+    /// \param[in]  threadCount - the number of threads.
+    /// \param[in]  task - the task, given the index of its thread.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void runThreads(int threadCount, final ThreadTask task) throws InterruptedException
+    {
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int thread = 0; thread < threadCount; thread++)
+        {
+            final int threadIndex = thread;
+            threads.add(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    task.run(threadIndex);
+                }
+            }));
+        }
+        for(Thread thread : threads)
+        {
+            thread.start();
+        }
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       ThreadTask
+    /// \brief       The work of one benchmark thread.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private interface ThreadTask
+    {
+        void run(int thread);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \class       Result
+    /// \brief       The measures of one run.
+    /// \author      agent
+    /// \date        10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static class Result
+    {
+        private long dataBytes = 0; ///< Data bytes encoded, and decoded, by all the threads.
+        private long encodeNanos = 0; ///< Time all the threads took to encode.
+        private long decodeNanos = 0; ///< Time all the threads took to decode.
+        private int corruptBlocks = 0; ///< Number of threads whose rebuilt blocks differ from the data.
+
+        public double getEncodeThroughput()
+        {
+            return encodeNanos == 0 ? 0 : dataBytes * 1e9 / encodeNanos;
+        }
+
+        public double getDecodeThroughput()
+        {
+            return decodeNanos == 0 ? 0 : dataBytes * 1e9 / decodeNanos;
+        }
+
+        public int getCorruptBlocks()
+        {
+            return corruptBlocks;
+        }
+    }
+}
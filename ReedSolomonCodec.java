@@ -0,0 +1,277 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       ReedSolomonCodec
+/// \brief       Systematic Reed-Solomon erasure code over GF(256). The k
+///              data shards are kept as they are, and m parity shards are
+///              added, so that the data can be rebuilt from any k of the
+///              k + m shards.
+///
+///              The parity rows of the encoding matrix form a Cauchy
+///              matrix, so every k by k submatrix of the full matrix can
+///              be inverted.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class ReedSolomonCodec
+{
+    private static final int FIELD_SIZE = 256; ///< Number of elements of GF(256).
+    private static final int GENERATOR_POLYNOMIAL = 0x11D; ///< Reduction polynomial of the field.
+    private static final int[] EXP = new int[2 * FIELD_SIZE]; ///< Powers of the generator, twice so that sums of logs need no modulo.
+    private static final int[] LOG = new int[FIELD_SIZE]; ///< Logarithms of the non-zero elements.
+    private static final byte[][] MULTIPLY = new byte[FIELD_SIZE][FIELD_SIZE]; ///< Products of all the pairs of elements.
+
+    static
+    {
+        int value = 1;
+        for(int i = 0; i < FIELD_SIZE - 1; i++)
+        {
+            EXP[i] = value;
+            LOG[value] = i;
+            value <<= 1;
+            if(value >= FIELD_SIZE)
+            {
+                value ^= GENERATOR_POLYNOMIAL;
+            }
+        }
+        for(int i = FIELD_SIZE - 1; i < EXP.length; i++)
+        {
+            EXP[i] = EXP[i - (FIELD_SIZE - 1)];
+        }
+        for(int a = 0; a < FIELD_SIZE; a++)
+        {
+            for(int b = 0; b < FIELD_SIZE; b++)
+            {
+                MULTIPLY[a][b] = (byte) multiply(a, b);
+            }
+        }
+    }
+
+    private final int dataShards; ///< Number of data shards, k.
+    private final int parityShards; ///< Number of parity shards, m.
+    private final int[][] parityRows; ///< The parity rows of the encoding matrix.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         ReedSolomonCodec(int dataShards, int parityShards)
+    /// \brief      Initializes the codec for a number of data and parity
+    ///             shards.
+    /// \param[in]  dataShards - the number of data shards, k.
+    /// \param[in]  parityShards - the number of parity shards, m.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public ReedSolomonCodec(int dataShards, int parityShards)
+    {
+        boolean validShards = dataShards >= 1 && parityShards >= 0 && dataShards + parityShards <= FIELD_SIZE;
+        if(!validShards)
+        {
+            throw new IllegalArgumentException("Invalid shard counts (data: " + dataShards + ", parity: " + parityShards + ")");
+        }
+
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.parityRows = new int[parityShards][dataShards];
+        for(int row = 0; row < parityShards; row++)
+        {
+            for(int column = 0; column < dataShards; column++)
+            {
+                // Cauchy matrix with x = k + row and y = column, which are all distinct.
+                parityRows[row][column] = inverse((dataShards + row) ^ column);
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         encode(byte[][] data, byte[][] parity, int length)
+    /// \brief      Computes the parity of a block of each data shard.
+    /// \param[in]  data - one block per data shard.
+    /// \param[out] parity - one block per parity shard, overwritten.
+    /// \param[in]  length - the number of bytes of each block to encode.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void encode(byte[][] data, byte[][] parity, int length)
+    {
+        for(int row = 0; row < parityShards; row++)
+        {
+            combine(parityRows[row], data, parity[row], length);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getDecodingMatrix(int[] shardIndexes)
+    /// \brief      Computes the matrix rebuilding the data shards from k
+    ///             available shards.
+    /// \param[in]  shardIndexes - the indexes of k distinct shards, data
+    ///             shards being 0 to k - 1 and parity shards k to k + m - 1.
+    /// \return     int[][] - the matrix to pass to decode, with the same
+    ///             order of shards.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public int[][] getDecodingMatrix(int[] shardIndexes)
+    {
+        if(shardIndexes.length != dataShards)
+        {
+            throw new IllegalArgumentException("Exactly " + dataShards + " shards are needed, got " + shardIndexes.length);
+        }
+
+        // The rows of the encoding matrix that produced the available shards.
+        int[][] matrix = new int[dataShards][];
+        for(int i = 0; i < dataShards; i++)
+        {
+            int shardIndex = shardIndexes[i];
+            if(shardIndex < dataShards)
+            {
+                matrix[i] = new int[dataShards];
+                matrix[i][shardIndex] = 1;
+            }
+            else
+            {
+                matrix[i] = parityRows[shardIndex - dataShards].clone();
+            }
+        }
+        return invert(matrix);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         decode(int[][] decodingMatrix, byte[][] shards,
+    ///             byte[][] data, int length)
+    /// \brief      Rebuilds a block of each data shard from a block of k
+    ///             available shards.
+    /// \param[in]  decodingMatrix - the matrix from getDecodingMatrix.
+    /// \param[in]  shards - one block per available shard, in the order
+    ///             given to getDecodingMatrix.
+    /// \param[out] data - one block per data shard, overwritten.
+    /// \param[in]  length - the number of bytes of each block to decode.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public void decode(int[][] decodingMatrix, byte[][] shards, byte[][] data, int length)
+    {
+        for(int row = 0; row < dataShards; row++)
+        {
+            combine(decodingMatrix[row], shards, data[row], length);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         combine(int[] coefficients, byte[][] inputs,
+    ///             byte[] output, int length)
+    /// \brief      Computes the linear combination of blocks with the given
+    ///             coefficients.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void combine(int[] coefficients, byte[][] inputs, byte[] output, int length)
+    {
+        byte[] products = MULTIPLY[coefficients[0]];
+        byte[] input = inputs[0];
+        for(int i = 0; i < length; i++)
+        {
+            output[i] = products[input[i] & 0xFF];
+        }
+        for(int j = 1; j < coefficients.length; j++)
+        {
+            products = MULTIPLY[coefficients[j]];
+            input = inputs[j];
+            for(int i = 0; i < length; i++)
+            {
+                output[i] ^= products[input[i] & 0xFF];
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         invert(int[][] matrix)
+    /// \brief      Inverts a square matrix with Gauss-Jordan elimination.
+    /// \return     int[][] - the inverse of the matrix.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int[][] invert(int[][] matrix)
+    {
+        int size = matrix.length;
+        int[][] inverse = new int[size][size];
+        for(int i = 0; i < size; i++)
+        {
+            inverse[i][i] = 1;
+        }
+
+        for(int column = 0; column < size; column++)
+        {
+            // Find a row with a non-zero pivot, and move it up.
+            int pivotRow = column;
+            while(pivotRow < size && matrix[pivotRow][column] == 0)
+            {
+                pivotRow++;
+            }
+            if(pivotRow == size)
+            {
+                throw new IllegalArgumentException("The shards given cannot rebuild the data.");
+            }
+            swapRows(matrix, column, pivotRow);
+            swapRows(inverse, column, pivotRow);
+
+            // Scale the pivot to 1, then clear the column in every other row.
+            int pivotInverse = inverse(matrix[column][column]);
+            scaleRow(matrix[column], pivotInverse);
+            scaleRow(inverse[column], pivotInverse);
+            for(int row = 0; row < size; row++)
+            {
+                int factor = matrix[row][column];
+                if(row != column && factor != 0)
+                {
+                    for(int i = 0; i < size; i++)
+                    {
+                        matrix[row][i] ^= multiply(factor, matrix[column][i]);
+                        inverse[row][i] ^= multiply(factor, inverse[column][i]);
+                    }
+                }
+            }
+        }
+        return inverse;
+    }
+
+    private static void swapRows(int[][] matrix, int first, int second)
+    {
+        int[] row = matrix[first];
+        matrix[first] = matrix[second];
+        matrix[second] = row;
+    }
+
+    private static void scaleRow(int[] row, int factor)
+    {
+        for(int i = 0; i < row.length; i++)
+        {
+            row[i] = multiply(row[i], factor);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         multiply(int a, int b)
+    /// \brief      Multiplies two elements of GF(256).
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int multiply(int a, int b)
+    {
+        if(a == 0 || b == 0)
+        {
+            return 0;
+        }
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         inverse(int a)
+    /// \brief      Gets the multiplicative inverse of a non-zero element of
+    ///             GF(256).
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int inverse(int a)
+    {
+        return EXP[(FIELD_SIZE - 1) - LOG[a]];
+    }
+}
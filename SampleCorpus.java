@@ -0,0 +1,212 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       SampleCorpus
+/// \brief       Writes the data files the benchmarks store, packaged as
+///              the agents package them: a ZIP file with a metadata entry
+///              and a payload entry.
+///
+///              Sensor log files hold CSV lines of a generated sensor log,
+///              timestamped 20 ms apart with jittered coordinates and
+///              acceleration. Consecutive files can cover overlapping lines,
+///              as an origin re-exporting its recent history does. Random
+///              files hold random bytes, which do not compress.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+final class SampleCorpus
+{
+    private static final String ORIGIN_UID = "sample"; ///< Origin UID in the metadata of the files.
+    private static final String METADATA_ENTRY = "metadata.json"; ///< Name of the metadata entry of the files.
+    private static final String SENSOR_LOG_ENTRY = "samples.csv"; ///< Name of the payload entry of the sensor log files.
+    private static final String RANDOM_ENTRY = "payload.bin"; ///< Name of the payload entry of the random files.
+    private static final long FIRST_SAMPLE_TIME = 1700000000000L; ///< Timestamp of the first line of a sensor log.
+    private static final long SAMPLE_PERIOD_MILLIS = 20L; ///< Time between two lines of a sensor log.
+    private static final int BLOCK_SIZE = 64*1024; ///< Number of random bytes written, or bytes read for a CRC, at once.
+
+    private SampleCorpus()
+    {
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         createSensorLog(int lineCount, long seed)
+    /// \brief      Generates the lines of a sensor log.
+    /// \param[in]  lineCount - the number of lines.
+    /// \param[in]  seed - the seed of the jitter.
+    /// \return     List<String> - the lines, each ending with a newline.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static List<String> createSensorLog(int lineCount, long seed)
+    {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<String>(lineCount);
+        for(int index = 0; index < lineCount; index++)
+        {
+            long timestamp = FIRST_SAMPLE_TIME + index * SAMPLE_PERIOD_MILLIS;
+            lines.add(String.format(Locale.US, "%d,%.4f,%.4f,%.2f\n", timestamp, 38.9 + random.nextGaussian() * 1e-3,
+                    -77.0 + random.nextGaussian() * 1e-3, 9.81 + random.nextGaussian() * 0.05));
+        }
+        return lines;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeSensorLogFile(File directory, String fileId,
+    ///             List<String> sensorLog, int firstLine, int lineCount,
+    ///             boolean stored)
+    /// \brief      Writes a data file holding lines of a sensor log.
+    /// \param[in]  directory - the directory of the file.
+    /// \param[in]  fileId - the ID of the file.
+    /// \param[in]  sensorLog - the lines of the sensor log.
+    /// \param[in]  firstLine - the index of the first line of the file.
+    /// \param[in]  lineCount - the number of lines of the file.
+    /// \param[in]  stored - TRUE to store the payload without compression,
+    ///             FALSE to deflate it.
+    /// \return     DataFile - the file written.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static DataFile writeSensorLogFile(File directory, String fileId, List<String> sensorLog, int firstLine, int lineCount, boolean stored) throws IOException
+    {
+        StringBuilder payload = new StringBuilder();
+        for(int index = firstLine; index < firstLine + lineCount; index++)
+        {
+            payload.append(sensorLog.get(index));
+        }
+        byte[] payloadBytes = payload.toString().getBytes("UTF-8");
+
+        DataFile dataFile = new DataFile(directory, fileId);
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(dataFile));
+        try
+        {
+            writeMetadata(zipOutputStream, fileId);
+            ZipEntry payloadEntry = new ZipEntry(SENSOR_LOG_ENTRY);
+            if(stored)
+            {
+                CRC32 crc = new CRC32();
+                crc.update(payloadBytes);
+                payloadEntry.setMethod(ZipEntry.STORED);
+                payloadEntry.setSize(payloadBytes.length);
+                payloadEntry.setCrc(crc.getValue());
+            }
+            zipOutputStream.putNextEntry(payloadEntry);
+            zipOutputStream.write(payloadBytes);
+            zipOutputStream.closeEntry();
+        }
+        finally
+        {
+            zipOutputStream.close();
+        }
+        return dataFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeRandomFile(File directory, String fileId,
+    ///             long payloadSize, Random random)
+    /// \brief      Writes a data file holding random bytes, deflated at no
+    ///             compression so that the file keeps about the size of
+    ///             its payload.
+    /// \param[in]  directory - the directory of the file.
+    /// \param[in]  fileId - the ID of the file.
+    /// \param[in]  payloadSize - the number of random bytes.
+    /// \param[in]  random - the source of the bytes.
+    /// \return     DataFile - the file written.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static DataFile writeRandomFile(File directory, String fileId, long payloadSize, Random random) throws IOException
+    {
+        DataFile dataFile = new DataFile(directory, fileId);
+        ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(dataFile));
+        try
+        {
+            writeMetadata(zipOutputStream, fileId);
+            zipOutputStream.setLevel(Deflater.NO_COMPRESSION);
+            zipOutputStream.putNextEntry(new ZipEntry(RANDOM_ENTRY));
+            byte[] block = new byte[BLOCK_SIZE];
+            for(long written = 0; written < payloadSize; written += block.length)
+            {
+                random.nextBytes(block);
+                zipOutputStream.write(block, 0, (int) Math.min(block.length, payloadSize - written));
+            }
+            zipOutputStream.closeEntry();
+        }
+        finally
+        {
+            zipOutputStream.close();
+        }
+        return dataFile;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCrc(File file)
+    /// \brief      Computes the CRC of the content of a file.
+    /// \param[in]  file - the file.
+    /// \return     long - the CRC32 of the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static long getCrc(File file) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        InputStream inputStream = new FileInputStream(file);
+        try
+        {
+            byte[] block = new byte[BLOCK_SIZE];
+            int bytesRead = 0;
+            while((bytesRead = inputStream.read(block)) != -1)
+            {
+                crc.update(block, 0, bytesRead);
+            }
+        }
+        finally
+        {
+            inputStream.close();
+        }
+        return crc.getValue();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         writeMetadata(ZipOutputStream zipOutputStream,
+    ///             String fileId)
+    /// \brief      Writes the metadata entry of a file.
+    /// \param[in]  zipOutputStream - the stream of the file.
+    /// \param[in]  fileId - the ID of the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void writeMetadata(ZipOutputStream zipOutputStream, String fileId) throws IOException
+    {
+        try
+        {
+            JSONObject metadata = new JSONObject();
+            metadata.put("OriginUID", ORIGIN_UID);
+            metadata.put("CreationTimestamp", System.currentTimeMillis());
+            metadata.put("FileName", fileId);
+            zipOutputStream.putNextEntry(new ZipEntry(METADATA_ENTRY));
+            zipOutputStream.write(metadata.toString().getBytes("UTF-8"));
+            zipOutputStream.closeEntry();
+        }
+        catch(JSONException jsonException)
+        {
+            throw new IOException("Metadata of file " + fileId + " could not be written.");
+        }
+    }
+}
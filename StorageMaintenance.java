@@ -0,0 +1,133 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Process;
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       StorageMaintenance
+/// \brief       Runs the registered maintenance passes of the stores one
+///              after the other, periodically, in a low priority
+///              background thread. Each store registers its own pass.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class StorageMaintenance
+{
+    private static final String LOG_TAG = StorageMaintenance.class.getSimpleName(); ///< Tag for logging.
+    private static final long DEFAULT_PERIOD_MILLIS = 30L*1000L; ///< Default time between two maintenance runs.
+
+    private static final List<IMaintenancePass> passes = new CopyOnWriteArrayList<IMaintenancePass>(); ///< The registered passes, in the order they run.
+    private static long periodMillis = DEFAULT_PERIOD_MILLIS; ///< Time between two maintenance runs.
+    private static ScheduledExecutorService executor; ///< The thread running the passes, null if not running.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         register(IMaintenancePass pass)
+    /// \brief      Adds a pass to the maintenance. A pass registered twice
+    ///             still runs once per maintenance run.
+    /// \param[in]  pass - the pass to run.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void register(IMaintenancePass pass)
+    {
+        synchronized(passes)
+        {
+            boolean isRegistered = passes.contains(pass);
+            if(!isRegistered)
+            {
+                passes.add(pass);
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setPeriod(long periodMillis)
+    /// \brief      Sets the time between two maintenance runs. Takes effect
+    ///             the next time the maintenance is started.
+    /// \param[in]  periodMillis - the period in milliseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setPeriod(long periodMillis)
+    {
+        StorageMaintenance.periodMillis = periodMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         start()
+    /// \brief      Starts running the passes periodically. Does nothing if
+    ///             the maintenance is already running.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void start()
+    {
+        boolean isRunning = executor != null;
+        if(isRunning)
+        {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND, LOG_TAG));
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runPasses();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        Log.i(LOG_TAG, "Storage maintenance started.");
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         stop()
+    /// \brief      Stops the maintenance, interrupting the running pass.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void stop()
+    {
+        boolean isRunning = executor != null;
+        if(isRunning)
+        {
+            executor.shutdownNow();
+            executor = null;
+            Log.i(LOG_TAG, "Storage maintenance stopped.");
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         runPasses()
+    /// \brief      Runs every registered pass once. A failed pass does not
+    ///             keep the next ones from running.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void runPasses()
+    {
+        for(IMaintenancePass pass : passes)
+        {
+            try
+            {
+                pass.runPass();
+            }
+            catch(InterruptedIOException interruptedIOException)
+            {
+                Log.d(LOG_TAG, "Maintenance interrupted.");
+                return;
+            }
+            catch(RuntimeException exception)
+            {
+                Log.e(LOG_TAG, "Error during the storage maintenance.", exception);
+            }
+        }
+    }
+}
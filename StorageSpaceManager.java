@@ -0,0 +1,325 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Process;
+import android.util.Log;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       StorageSpaceManager
+/// \brief       Frees storage space in the background, before a contact
+///              needs it. When the used space goes above the high watermark,
+///              incomplete data files are evicted until the used space is
+///              down to the low watermark. The checks run in a low
+///              priority background thread of their own, so that they are
+///              not held back by the maintenance of the stores.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class StorageSpaceManager
+{
+    private static final String LOG_TAG = StorageSpaceManager.class.getSimpleName(); ///< Tag for logging.
+    private static final double DEFAULT_HIGH_WATERMARK = 0.90; ///< Default fraction of the total space above which eviction starts.
+    private static final double DEFAULT_LOW_WATERMARK = 0.80; ///< Default fraction of the total space that eviction tries to get down to.
+    private static final long DEFAULT_CHECK_PERIOD_MILLIS = 30L*1000L; ///< Default time between two storage checks.
+    private static final long RECENTLY_MODIFIED_GRACE_MILLIS = 60L*1000L; ///< Incomplete files modified more recently than this are assumed to be in transfer.
+    private static final long EVICTION_IO_BYTES = 64L*1024L; ///< Storage I/O charged for deleting one file, in bytes of the background class.
+    private static final long MAX_CACHED_STORAGE_AGE_MILLIS = 5L*1000L; ///< Age up to which the cached storage information is used instead of reading the storage.
+
+    private static double highWatermark = DEFAULT_HIGH_WATERMARK; ///< Fraction of the total space above which eviction starts.
+    private static double lowWatermark = DEFAULT_LOW_WATERMARK; ///< Fraction of the total space that eviction tries to get down to.
+    private static long checkPeriodMillis = DEFAULT_CHECK_PERIOD_MILLIS; ///< Time between two storage checks.
+    private static ScheduledExecutorService executor; ///< The thread that checks the storage and evicts, null if not running.
+    private static final Object CHECK_LOCK = new Object(); ///< Serializes the storage checks, without blocking the callers of requestCheck().
+    private static volatile StorageInformation cachedStorageInformation; ///< The storage information read last.
+    private static volatile long cachedStorageMillis = 0; ///< When the cached storage information was read.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setWatermarks(double highWatermark, double lowWatermark)
+    /// \brief      Sets the watermarks used to decide when to evict and
+    ///             how much.
+    /// \param[in]  highWatermark - fraction of the total space (0 to 1)
+    ///             above which eviction starts.
+    /// \param[in]  lowWatermark - fraction of the total space (0 to 1)
+    ///             that eviction tries to get down to.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setWatermarks(double highWatermark, double lowWatermark)
+    {
+        boolean validWatermarks = 0 <= lowWatermark && lowWatermark <= highWatermark && highWatermark <= 1;
+        if(!validWatermarks)
+        {
+            throw new IllegalArgumentException("Invalid watermarks (high: " + highWatermark + ", low: " + lowWatermark + ")");
+        }
+
+        StorageSpaceManager.highWatermark = highWatermark;
+        StorageSpaceManager.lowWatermark = lowWatermark;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         setCheckPeriod(long checkPeriodMillis)
+    /// \brief      Sets the time between two storage checks. Takes effect
+    ///             the next time the manager is started.
+    /// \param[in]  checkPeriodMillis - the period in milliseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void setCheckPeriod(long checkPeriodMillis)
+    {
+        StorageSpaceManager.checkPeriodMillis = checkPeriodMillis;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         start()
+    /// \brief      Starts checking the storage periodically. Does nothing if
+    ///             it is already running.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void start()
+    {
+        boolean isRunning = executor != null;
+        if(isRunning)
+        {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new PriorityThreadFactory(Process.THREAD_PRIORITY_BACKGROUND, LOG_TAG));
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    // Periodic checks yield to the transfers, the space is not needed right away.
+                    checkStorage(true);
+                }
+                catch(RuntimeException exception)
+                {
+                    // Do not let one failed check cancel the following ones.
+                    Log.e(LOG_TAG, "Error while checking the storage.", exception);
+                }
+            }
+        }, 0, checkPeriodMillis, TimeUnit.MILLISECONDS);
+
+        Log.i(LOG_TAG, "Storage space manager started.");
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         stop()
+    /// \brief      Stops checking the storage.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void stop()
+    {
+        boolean isRunning = executor != null;
+        if(isRunning)
+        {
+            executor.shutdownNow();
+            executor = null;
+            Log.i(LOG_TAG, "Storage space manager stopped.");
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         requestCheck()
+    /// \brief      Asks for a storage check right away, for example after
+    ///             a file was received. The check evicts without yielding to
+    ///             the transfers, as they are the ones needing the space.
+    ///             Does nothing if the manager is not running.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static synchronized void requestCheck()
+    {
+        boolean isRunning = executor != null;
+        if(isRunning)
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        checkStorage(false);
+                    }
+                    catch(RuntimeException exception)
+                    {
+                        Log.e(LOG_TAG, "Error while checking the storage.", exception);
+                    }
+                }
+            });
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getCachedStorageInformation()
+    /// \brief      Gets the storage information read last, without touching
+    ///             the storage.
+    /// \return     StorageInformation - the last storage information, or
+    ///             null if it has not been read yet.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static StorageInformation getCachedStorageInformation()
+    {
+        return cachedStorageInformation;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getStorageInformation()
+    /// \brief      Gets the storage information, reading the storage only
+    ///             if the cached information is more than a few seconds old.
+    /// \return     StorageInformation - the storage information.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static StorageInformation getStorageInformation()
+    {
+        StorageInformation storageInformation = cachedStorageInformation;
+        boolean isFresh = storageInformation != null && System.currentTimeMillis() - cachedStorageMillis < MAX_CACHED_STORAGE_AGE_MILLIS;
+        if(isFresh)
+        {
+            return storageInformation;
+        }
+        return readStorageInformation();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         invalidateStorageInformation()
+    /// \brief      Makes the next getStorageInformation() read the storage,
+    ///             after files were deleted or written outside of a check.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void invalidateStorageInformation()
+    {
+        cachedStorageMillis = 0;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         readStorageInformation()
+    /// \brief      Reads the storage information and caches it.
+    /// \return     StorageInformation - the storage information.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static StorageInformation readStorageInformation()
+    {
+        StorageInformation storageInformation = StorageInformation.getDeviceStorageInformation();
+        cachedStorageMillis = System.currentTimeMillis();
+        cachedStorageInformation = storageInformation;
+        return storageInformation;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         checkStorage(boolean yieldToTransfers)
+    /// \brief      Reads the storage information and evicts incomplete files
+    ///             if the used space is above the high watermark.
+    /// \param[in]  yieldToTransfers - TRUE to stop evicting while a
+    ///             transfer is active, FALSE to evict anyway.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    static void checkStorage(boolean yieldToTransfers)
+    {
+        synchronized(CHECK_LOCK)
+        {
+            StorageInformation storageInformation = readStorageInformation();
+
+            long totalSpace = storageInformation.getTotalSpace();
+            long usedSpace = totalSpace - storageInformation.getFreeSpace();
+            long highWatermarkBytes = (long) (totalSpace * highWatermark);
+            Log.d(LOG_TAG, "USED SPACE: " + usedSpace + ", HIGH WATERMARK: " + highWatermarkBytes);
+
+            boolean aboveHighWatermark = usedSpace > highWatermarkBytes;
+            if(!aboveHighWatermark)
+            {
+                return;
+            }
+
+            long lowWatermarkBytes = (long) (totalSpace * lowWatermark);
+            long bytesToFree = usedSpace - lowWatermarkBytes;
+            long freedBytes = evictIncompleteFiles(bytesToFree, yieldToTransfers);
+            Log.i(LOG_TAG, "Evicted " + freedBytes + " bytes out of " + bytesToFree + " bytes needed.");
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         evictIncompleteFiles(long bytesToFree,
+    ///             boolean yieldToTransfers)
+    /// \brief      Deletes incomplete files, least recently modified first,
+    ///             until the requested amount of space has been freed.
+    ///             Files that are being received are skipped.
+    /// \param[in]  bytesToFree - the amount of space to free, in bytes.
+    /// \param[in]  yieldToTransfers - TRUE to stop while a transfer is
+    ///             active.
+    /// \return     long - the amount of space that was actually freed.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static long evictIncompleteFiles(long bytesToFree, boolean yieldToTransfers)
+    {
+        List<DataFile> incompleteDataFiles = DataFileRepository.getIncompleteDataFiles();
+        Collections.sort(incompleteDataFiles, new LastModifiedComparator());
+
+        long freedBytes = 0;
+        long now = System.currentTimeMillis();
+        for(DataFile incompleteDataFile : incompleteDataFiles)
+        {
+            boolean enoughSpaceFreed = freedBytes >= bytesToFree;
+            if(enoughSpaceFreed)
+            {
+                break;
+            }
+
+            // Skip the files that are being received, or that look like they are.
+            String fileName = incompleteDataFile.getName();
+            boolean isProtected = TransferRegistry.isReceiving(incompleteDataFile.getFileId());
+            boolean isRecentlyModified = now - incompleteDataFile.lastModified() < RECENTLY_MODIFIED_GRACE_MILLIS;
+            if(isProtected || isRecentlyModified)
+            {
+                continue;
+            }
+
+            // A delete sweep slows transfers down, so a periodic one yields to them and goes on at the next check.
+            boolean mayDelete = !yieldToTransfers || IoScheduler.tryAcquire(IoScheduler.IoClass.BACKGROUND, EVICTION_IO_BYTES);
+            if(!mayDelete)
+            {
+                Log.d(LOG_TAG, "Eviction deferred, a transfer is active.");
+                break;
+            }
+
+            long fileSize = incompleteDataFile.length();
+            boolean successfullyDeleted = incompleteDataFile.delete();
+            if(!successfullyDeleted)
+            {
+                Log.w(LOG_TAG, "File: " + fileName + " could not be deleted.");
+                continue;
+            }
+
+            Log.d(LOG_TAG, "Evicted file " + fileName);
+            try
+            {
+                DataFileCatalog.remove(incompleteDataFile.getFileId());
+            }
+            catch(IOException ioException)
+            {
+                // The entry is gone from memory, and leaves the catalog file at the next compaction.
+                Log.e(LOG_TAG, "Error occured while removing " + fileName + " from the catalog.", ioException);
+            }
+            DataFileMetrics.recordEvicted(incompleteDataFile.getFileId(), fileSize, DataFileMetrics.EvictionReason.WATERMARK);
+            freedBytes += fileSize;
+        }
+        return freedBytes;
+    }
+}
@@ -0,0 +1,47 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.io.File;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       StoredDataFile
+/// \brief       Represents a complete data file whose content is not in
+///              the data file directory, but kept by another store of the
+///              repository. It reports the size of the data file itself,
+///              and has to be materialized before its content is read.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+class StoredDataFile extends DataFile
+{
+    private static final long serialVersionUID = 2319648829446733610L; ///< A number used to verify serialization from senders and receivers.
+    private final long logicalLength; ///< The size of the data file in bytes.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         StoredDataFile(File dir, String name, long logicalLength)
+    /// \brief      Initialize the object with the size of the data file.
+    /// \param[in]  dir - The data file directory.
+    /// \param[in]  name - The data file name.
+    /// \param[in]  logicalLength - The size of the data file in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    StoredDataFile(File dir, String name, long logicalLength)
+    {
+        super(dir, name);
+        this.logicalLength = logicalLength;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         length()
+    /// \brief      Gets the size of the data file, even though it is not in
+    ///             the data file directory.
+    /// \return     long - The size of the data file in bytes.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    @Override
+    public long length()
+    {
+        return logicalLength;
+    }
+}
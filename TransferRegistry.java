@@ -0,0 +1,215 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+//////////////////////////////////////////////////////////////////////
+/// \class       TransferRegistry
+/// \brief       Keeps track of the files being received and sent, so that
+///              the background work leaves them alone and yields the
+///              storage to the transfers.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class TransferRegistry
+{
+    private static final long SEND_TIMEOUT_MILLIS = 10L*60L*1000L; ///< Time after which a file selected to be sent counts as sent, if the transfer never said it finished.
+
+    private static final Set<String> receivingFileIds = Collections.synchronizedSet(new HashSet<String>()); ///< IDs of the files currently being received.
+    private static final Map<String, Long> sendingFileIds = new HashMap<String, Long>(); ///< IDs of the files currently being sent, with when they were selected.
+    private static volatile long lastTransferMillis = System.currentTimeMillis(); ///< When a transfer last started, ended or chose a file.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         startReceiving(String fileId)
+    /// \brief      Records that a file is being received, which keeps it
+    ///             from being evicted.
+    /// \param[in]  fileId - the ID of the file being received.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void startReceiving(String fileId)
+    {
+        receivingFileIds.add(fileId);
+        recordTransferActivity();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         finishReceiving(String fileId)
+    /// \brief      Records that a file is not being received anymore.
+    /// \param[in]  fileId - the ID of the file that was being received.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void finishReceiving(String fileId)
+    {
+        receivingFileIds.remove(fileId);
+        recordTransferActivity();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isReceiving(String fileId)
+    /// \brief      Checks whether a file is being received.
+    /// \param[in]  fileId - the ID of the file.
+    /// \return     boolean - TRUE if the file is being received.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean isReceiving(String fileId)
+    {
+        return receivingFileIds.contains(fileId);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         startSending(String fileId)
+    /// \brief      Records that a file was selected to be sent, so that the
+    ///             background work leaves it where it is until the transfer
+    ///             is over.
+    /// \param[in]  fileId - the ID of the file being sent.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void startSending(String fileId)
+    {
+        synchronized(sendingFileIds)
+        {
+            sendingFileIds.put(fileId, System.currentTimeMillis());
+        }
+        recordTransferActivity();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         finishSending(String fileId)
+    /// \brief      Records that a file is not being sent anymore, whether
+    ///             the transfer succeeded or not. A file whose transfer
+    ///             never finishes counts as sent after a timeout.
+    /// \param[in]  fileId - the ID of the file that was being sent.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void finishSending(String fileId)
+    {
+        synchronized(sendingFileIds)
+        {
+            sendingFileIds.remove(fileId);
+        }
+        recordTransferActivity();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getSendingMillis(String fileId)
+    /// \brief      Gets how long ago a file being sent was selected.
+    /// \param[in]  fileId - the ID of the file.
+    /// \return     long - the time in milliseconds, -1 if the file is not
+    ///             being sent.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static long getSendingMillis(String fileId)
+    {
+        synchronized(sendingFileIds)
+        {
+            Long startTimestamp = sendingFileIds.get(fileId);
+            return startTimestamp == null ? -1 : System.currentTimeMillis() - startTimestamp;
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isBeingSent(String fileId)
+    /// \brief      Checks whether a file is being sent.
+    /// \param[in]  fileId - the ID of the file.
+    /// \return     boolean - TRUE if the file is being sent.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean isBeingSent(String fileId)
+    {
+        synchronized(sendingFileIds)
+        {
+            removeTimedOutSends();
+            return sendingFileIds.containsKey(fileId);
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isInTransfer(String fileId)
+    /// \brief      Checks whether a file is being received or sent, so
+    ///             that it must not be moved, rewritten or deleted.
+    /// \param[in]  fileId - the ID of the file.
+    /// \return     boolean - TRUE if the file is in a transfer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean isInTransfer(String fileId)
+    {
+        return isReceiving(fileId) || isBeingSent(fileId);
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         removeTimedOutSends()
+    /// \brief      Forgets the files selected to be sent longer ago than
+    ///             the send timeout. The caller holds the lock of the sent
+    ///             files.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static void removeTimedOutSends()
+    {
+        long now = System.currentTimeMillis();
+        Iterator<Long> startTimestamps = sendingFileIds.values().iterator();
+        while(startTimestamps.hasNext())
+        {
+            boolean timedOut = now - startTimestamps.next() >= SEND_TIMEOUT_MILLIS;
+            if(timedOut)
+            {
+                startTimestamps.remove();
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         recordTransferActivity()
+    /// \brief      Records that a transfer is going on, so that the
+    ///             background work waits for the agent to be idle.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static void recordTransferActivity()
+    {
+        lastTransferMillis = System.currentTimeMillis();
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         isTransferActive()
+    /// \brief      Checks whether a file is being received or sent.
+    /// \return     boolean - TRUE if at least one file is in a transfer.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static boolean isTransferActive()
+    {
+        boolean isReceiving = !receivingFileIds.isEmpty();
+        synchronized(sendingFileIds)
+        {
+            removeTimedOutSends();
+            return isReceiving || !sendingFileIds.isEmpty();
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getMillisSinceLastTransfer()
+    /// \brief      Gets how long ago a transfer last started, ended or
+    ///             chose a file. Counts from the start of the agent if no
+    ///             transfer happened yet.
+    /// \return     long - the time in milliseconds.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public static long getMillisSinceLastTransfer()
+    {
+        return System.currentTimeMillis() - lastTransferMillis;
+    }
+}
@@ -0,0 +1,101 @@
+package net.g3ti.droidhopper.phoneagent.datafile.storage;
+
+import java.util.Comparator;
+
+import net.g3ti.droidhopper.phoneagent.datafile.configuration.UploadPriorityType;
+
+//////////////////////////////////////////////////////////////////////
+/// \class         UploadOrderComparator
+/// \brief         Orders data files the same way the file chooser of an
+///                upload priority picks them, the file picked first coming
+///                first. Files that compare equal are ordered by name, so
+///                that the order is total.
+/// \author      agent
+/// \date        10/18/2026
+//////////////////////////////////////////////////////////////////////
+public class UploadOrderComparator implements Comparator<DataFile>
+{
+    private final UploadPriorityType uploadPriority; ///< The upload priority whose order is followed.
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         UploadOrderComparator(UploadPriorityType uploadPriority)
+    /// \brief      Initializes the comparator with the order to follow.
+    /// \param[in]  uploadPriority - One of the size or age based upload
+    ///             priorities.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public UploadOrderComparator(UploadPriorityType uploadPriority)
+    {
+        this.uploadPriority = uploadPriority;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         compare(DataFile first, DataFile second)
+    /// \brief      Compares two data files according to the upload priority.
+    /// \param[in]  first - The first data file.
+    /// \param[in]  second - The second data file.
+    /// \return     int - Negative if the first file should be sent first,
+    ///             positive if the second one should.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    @Override
+    public int compare(DataFile first, DataFile second)
+    {
+        int result = compareValues(getOrderKey(first), getOrderKey(second));
+        boolean sameOrder = result == 0;
+        if(sameOrder)
+        {
+            result = first.getName().compareTo(second.getName());
+        }
+        return result;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         getOrderKey(DataFile dataFile)
+    /// \brief      Gets the value the upload priority orders a file by,
+    ///             smaller values being sent first. Callers that keep files
+    ///             sorted can store it, as the size and the age of a file
+    ///             read from disk may change while it is queued.
+    /// \param[in]  dataFile - The data file.
+    /// \return     long - The order key of the file.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    public long getOrderKey(DataFile dataFile)
+    {
+        long orderKey = 0;
+        switch(uploadPriority)
+        {
+            case LARGEST_FIRST:
+                orderKey = -dataFile.length();
+                break;
+            case NEWEST_FIRST:
+                orderKey = -dataFile.getCreationTimestamp();
+                break;
+            case OLDEST_FIRST:
+                orderKey = dataFile.getCreationTimestamp();
+                break;
+            case SMALLEST_FIRST:
+                orderKey = dataFile.length();
+                break;
+            default:
+                throw new IllegalArgumentException("Upload priority " + uploadPriority + " does not define a file order");
+        }
+        return orderKey;
+    }
+
+    //////////////////////////////////////////////////////////////////////
+    /// \fn         compareValues(long first, long second)
+    /// \brief      Compares two long values.
+    /// \return     int - Negative, zero or positive as the first value is
+    ///             smaller, equal or larger than the second one.
+    /// \author     agent
+    /// \date       10/18/2026
+    //////////////////////////////////////////////////////////////////////
+    private static int compareValues(long first, long second)
+    {
+        return first < second ? -1 : (first == second ? 0 : 1);
+    }
+}